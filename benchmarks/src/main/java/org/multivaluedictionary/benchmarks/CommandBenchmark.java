@@ -0,0 +1,105 @@
+package org.multivaluedictionary.benchmarks;
+
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+import org.multivaluedictionary.CommandProcessor;
+import org.multivaluedictionary.MultiValueDictionary;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of parsing and dispatching command lines, with output discarded so only the command path is measured
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommandBenchmark {
+
+    @Param({"10000"})
+    public int keyCount;
+
+    @Param({"4"})
+    public int averageMembers;
+
+    private Dataset dataset;
+    private CommandProcessor processor;
+    private PrintWriter out;
+    private String[] membersCommands;
+    private String[] valueExistsCommands;
+    private String[] addCommands;
+    private String[] removeCommands;
+    private int counter;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        dataset = new Dataset(keyCount, averageMembers, Dataset.SetSizeDistribution.UNIFORM);
+        MultiValueDictionary dictionary = dataset.fill(new MultiValueDictionary());
+        processor = new CommandProcessor(dictionary, null, null);
+        out = new PrintWriter(new NullWriter());
+        membersCommands = new String[keyCount];
+        valueExistsCommands = new String[keyCount];
+        addCommands = new String[keyCount];
+        removeCommands = new String[keyCount];
+        for (int rank = 0; rank < keyCount; rank++) {
+            membersCommands[rank] = "MEMBERS " + dataset.keys[rank];
+            valueExistsCommands[rank] = "VALUEEXISTS " + dataset.keys[rank] + " " + dataset.members[rank][0];
+            addCommands[rank] = "ADD " + dataset.keys[rank] + " benchmark-member";
+            removeCommands[rank] = "REMOVE " + dataset.keys[rank] + " benchmark-member";
+        }
+    }
+
+    @Benchmark
+    public boolean members() {
+        return processor.execute(membersCommands[dataset.lookup(counter++)], out);
+    }
+
+    @Benchmark
+    public boolean valueExists() {
+        return processor.execute(valueExistsCommands[dataset.lookup(counter++)], out);
+    }
+
+    @Benchmark
+    public boolean addThenRemove() {
+        int rank = dataset.lookup(counter++);
+        processor.execute(addCommands[rank], out);
+        return processor.execute(removeCommands[rank], out);
+    }
+
+    @Benchmark
+    public boolean unsupported() {
+        return processor.execute("NOSUCHCOMMAND foo bar", out);
+    }
+
+    /**
+     * Writer that discards everything
+     */
+    private static class NullWriter extends Writer {
+
+        @Override
+        public void write(char[] buffer, int offset, int length) {
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
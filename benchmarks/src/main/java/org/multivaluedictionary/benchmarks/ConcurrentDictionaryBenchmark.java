@@ -0,0 +1,82 @@
+package org.multivaluedictionary.benchmarks;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.multivaluedictionary.ConcurrentMultiValueDictionary;
+import org.multivaluedictionary.MultiValueDictionary;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+/**
+ * Throughput of the thread-safe dictionary under contention. Run with -t to choose the thread count, for example
+ * -t 1, -t 4 and -t max, and compare the scores
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConcurrentDictionaryBenchmark {
+
+    @Param({"100000"})
+    public int keyCount;
+
+    @Param({"4"})
+    public int averageMembers;
+
+    @Param({"UNIFORM", "ZIPFIAN"})
+    public Dataset.SetSizeDistribution distribution;
+
+    private Dataset dataset;
+    private MultiValueDictionary dictionary;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        dataset = new Dataset(keyCount, averageMembers, distribution);
+        dictionary = dataset.fill(new ConcurrentMultiValueDictionary());
+    }
+
+    @Benchmark
+    public Set<String> getMembers(ThreadState thread) {
+        return dictionary.getMembers(dataset.keys[dataset.lookup(thread.counter++)]);
+    }
+
+    /**
+     * Adds a member unique to the calling thread and removes it again
+     */
+    @Benchmark
+    public void addThenRemove(ThreadState thread) {
+        String key = dataset.keys[dataset.lookup(thread.counter++)];
+        dictionary.add(key, thread.member);
+        dictionary.remove(key, thread.member);
+    }
+
+    /**
+     * Per-thread lookup position and member name
+     */
+    @State(Scope.Thread)
+    public static class ThreadState {
+
+        int counter;
+        String member;
+
+        @Setup(Level.Trial)
+        public void setUp(ThreadParams params) {
+            counter = params.getThreadIndex() * 7919;
+            member = "benchmark-member-" + params.getThreadIndex();
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package org.multivaluedictionary.benchmarks;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.multivaluedictionary.MultiValueDictionary;
+
+/**
+ * Deterministic key-member data used to fill the dictionaries under benchmark
+ */
+public final class Dataset {
+
+    /** Seed shared by every benchmark so runs of different versions see the same data */
+    private static final long SEED = 42;
+
+    /** Number of distinct member values keys draw from */
+    private static final int VOCABULARY = 10_000;
+
+    /** Number of precomputed lookup positions cycled through by the benchmarks */
+    private static final int LOOKUPS = 1 << 16;
+
+    /** Every key, in rank order */
+    final String[] keys;
+
+    /** Members of every key, in rank order */
+    final String[][] members;
+
+    /** Random key ranks to look up */
+    final int[] lookups;
+
+    /**
+     * Generates a dataset
+     * @param keyCount number of keys
+     * @param averageMembers average number of members per key
+     * @param distribution how set sizes are spread over the keys
+     */
+    Dataset(int keyCount, int averageMembers, SetSizeDistribution distribution) {
+        Random random = new Random(SEED);
+        int[] sizes = distribution.sizes(keyCount, averageMembers);
+        keys = new String[keyCount];
+        members = new String[keyCount][];
+        for (int rank = 0; rank < keyCount; rank++) {
+            keys[rank] = "key:" + rank;
+            members[rank] = new String[sizes[rank]];
+            int first = random.nextInt(VOCABULARY);
+            for (int i = 0; i < sizes[rank]; i++) {
+                members[rank][i] = "member:" + ((first + i) % Math.max(VOCABULARY, sizes[rank]));
+            }
+        }
+        lookups = new int[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) {
+            lookups[i] = random.nextInt(keyCount);
+        }
+    }
+
+    /**
+     * Adds every key-member pair of the dataset to a dictionary
+     * @param dictionary dictionary to fill
+     * @return the filled dictionary
+     */
+    <T extends MultiValueDictionary> T fill(T dictionary) {
+        for (int rank = 0; rank < keys.length; rank++) {
+            for (String member : members[rank]) {
+                dictionary.add(keys[rank], member);
+            }
+        }
+        return dictionary;
+    }
+
+    /**
+     * Obtains the rank of the key to use for a lookup
+     * @param counter ever-increasing lookup counter
+     * @return rank of a key
+     */
+    int lookup(int counter) {
+        return lookups[counter & (LOOKUPS - 1)];
+    }
+
+    /**
+     * How member counts are spread over the keys of a dataset
+     */
+    public enum SetSizeDistribution {
+
+        /** Every key has the average number of members */
+        UNIFORM {
+            @Override
+            int[] sizes(int keyCount, int averageMembers) {
+                int[] sizes = new int[keyCount];
+                Arrays.fill(sizes, averageMembers);
+                return sizes;
+            }
+        },
+
+        /** The key of rank r has members in proportion to 1/r, so a few keys hold most members */
+        ZIPFIAN {
+            @Override
+            int[] sizes(int keyCount, int averageMembers) {
+                double harmonic = 0;
+                for (int rank = 1; rank <= keyCount; rank++) {
+                    harmonic += 1.0 / rank;
+                }
+                long total = (long) keyCount * averageMembers;
+                int[] sizes = new int[keyCount];
+                for (int rank = 1; rank <= keyCount; rank++) {
+                    sizes[rank - 1] = (int) Math.max(1, Math.round(total / (harmonic * rank)));
+                }
+                return sizes;
+            }
+        };
+
+        /**
+         * Computes the member count of every key
+         * @param keyCount number of keys
+         * @param averageMembers average number of members per key
+         * @return member count of each key, in rank order
+         */
+        abstract int[] sizes(int keyCount, int averageMembers);
+    }
+}
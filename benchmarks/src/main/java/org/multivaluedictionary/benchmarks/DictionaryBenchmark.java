@@ -0,0 +1,180 @@
+package org.multivaluedictionary.benchmarks;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.multivaluedictionary.MultiValueDictionary;
+import org.multivaluedictionary.StorageMode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Single-threaded cost of every public operation of the multi-value dictionary
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DictionaryBenchmark {
+
+    @Param({"1000", "100000"})
+    public int keyCount;
+
+    @Param({"4"})
+    public int averageMembers;
+
+    @Param({"UNIFORM", "ZIPFIAN"})
+    public Dataset.SetSizeDistribution distribution;
+
+    @Param({"HASH", "ENCODED", "OFF_HEAP"})
+    public StorageMode storage;
+
+    private Dataset dataset;
+    private MultiValueDictionary dictionary;
+    private int counter;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        dataset = new Dataset(keyCount, averageMembers, distribution);
+        dictionary = dataset.fill(new MultiValueDictionary(storage));
+    }
+
+    @Benchmark
+    public int getKeys() {
+        return dictionary.getKeys().size();
+    }
+
+    @Benchmark
+    public Set<String> getMembers() {
+        return dictionary.getMembers(dataset.keys[dataset.lookup(counter++)]);
+    }
+
+    @Benchmark
+    public boolean keyExists() {
+        return dictionary.keyExists(dataset.keys[dataset.lookup(counter++)]);
+    }
+
+    @Benchmark
+    public boolean valueExists() {
+        int rank = dataset.lookup(counter++);
+        return dictionary.valueExists(dataset.keys[rank], dataset.members[rank][0]);
+    }
+
+    /**
+     * Adds a member that is not there yet and removes it again, keeping the dictionary unchanged between calls
+     */
+    @Benchmark
+    public void addThenRemove() {
+        String key = dataset.keys[dataset.lookup(counter++)];
+        dictionary.add(key, "benchmark-member");
+        dictionary.remove(key, "benchmark-member");
+    }
+
+    /**
+     * Adds a brand new key and removes it along with its only member
+     */
+    @Benchmark
+    public void addThenRemoveKey() {
+        dictionary.add("benchmark-key", "benchmark-member");
+        dictionary.remove("benchmark-key", "benchmark-member");
+    }
+
+    /**
+     * Removes a whole key and puts its members back
+     */
+    @Benchmark
+    public void removeAllThenRestore() {
+        int rank = dataset.lookup(counter++);
+        dictionary.removeAll(dataset.keys[rank]);
+        for (String member : dataset.members[rank]) {
+            dictionary.add(dataset.keys[rank], member);
+        }
+    }
+
+    @Benchmark
+    public int getAllMembers() {
+        return dictionary.getAllMembers().size();
+    }
+
+    @Benchmark
+    public long membersStream() {
+        return dictionary.membersStream().count();
+    }
+
+    @Benchmark
+    public void getItems(Blackhole blackhole) {
+        for (Map.Entry<String, Set<String>> entry : dictionary.getItems().entrySet()) {
+            for (String member : entry.getValue()) {
+                blackhole.consume(member);
+            }
+        }
+    }
+
+    @Benchmark
+    public void forEachItem(Blackhole blackhole) {
+        dictionary.forEachItem((key, member) -> blackhole.consume(member));
+    }
+
+    /**
+     * Intersects the largest key with a randomly chosen one
+     */
+    @Benchmark
+    public Set<String> getIntersection() {
+        return dictionary.getIntersection(dataset.keys[0], dataset.keys[dataset.lookup(counter++)]);
+    }
+
+    @Benchmark
+    public Set<String> getUnion() {
+        return dictionary.getUnion(dataset.keys[1], dataset.keys[dataset.lookup(counter++)]);
+    }
+
+    @Benchmark
+    public Set<String> getDifference() {
+        return dictionary.getDifference(dataset.keys[dataset.lookup(counter++)], dataset.keys[0]);
+    }
+
+    @Benchmark
+    public Set<String> getKeysForMember() {
+        int rank = dataset.lookup(counter++);
+        return dictionary.getKeysForMember(dataset.members[rank][0]);
+    }
+
+    /**
+     * Clears a freshly filled dictionary; the refill is part of the untimed setup of each call
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 5)
+    @Measurement(iterations = 20)
+    public void clear(ClearState state) {
+        state.dictionary.clear();
+    }
+
+    /**
+     * Filled dictionary for each call of the clear benchmark
+     */
+    @State(Scope.Thread)
+    public static class ClearState {
+
+        MultiValueDictionary dictionary;
+
+        @Setup(Level.Invocation)
+        public void fill(DictionaryBenchmark benchmark) {
+            dictionary = benchmark.dataset.fill(new MultiValueDictionary(benchmark.storage));
+        }
+    }
+}
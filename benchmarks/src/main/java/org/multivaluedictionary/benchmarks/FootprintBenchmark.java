@@ -0,0 +1,92 @@
+package org.multivaluedictionary.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.multivaluedictionary.MultiValueDictionary;
+import org.multivaluedictionary.StorageMode;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of building a dictionary of mostly small sets. Run with {@code -prof gc} to see the bytes allocated per fill;
+ * the footprint counters report the estimated heap held by the member sets against the same sets as plain HashSets
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FootprintBenchmark {
+
+    @Param({"10000"})
+    public int keyCount;
+
+    @Param({"1", "3", "16"})
+    public int averageMembers;
+
+    @Param({"UNIFORM", "ZIPFIAN"})
+    public Dataset.SetSizeDistribution distribution;
+
+    @Param({"HASH", "ENCODED"})
+    public StorageMode storage;
+
+    private Dataset dataset;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        dataset = new Dataset(keyCount, averageMembers, distribution);
+    }
+
+    /**
+     * Fills a new dictionary with every key-member pair of the dataset
+     */
+    @Benchmark
+    public MultiValueDictionary fill(Footprint footprint) {
+        MultiValueDictionary dictionary = dataset.fill(new MultiValueDictionary(storage));
+        footprint.record(dictionary);
+        return dictionary;
+    }
+
+    /**
+     * Estimated member set footprint of the last filled dictionary, reported next to the timings
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Footprint {
+
+        /** Estimated heap held by the member sets, in bytes */
+        public long memberBytes;
+
+        /** Estimated heap the member sets would hold as plain HashSets, in bytes */
+        public long hashSetBytes;
+
+        private boolean recorded;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            recorded = false;
+            memberBytes = 0;
+            hashSetBytes = 0;
+        }
+
+        void record(MultiValueDictionary dictionary) {
+            if (!recorded) {
+                recorded = true;
+                memberBytes = dictionary.estimatedMemberBytes();
+                hashSetBytes = dictionary.estimatedHashLayoutBytes();
+            }
+        }
+    }
+}
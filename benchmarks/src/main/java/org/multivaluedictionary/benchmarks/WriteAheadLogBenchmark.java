@@ -0,0 +1,90 @@
+package org.multivaluedictionary.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.multivaluedictionary.ConcurrentMultiValueDictionary;
+import org.multivaluedictionary.MultiValueDictionary;
+import org.multivaluedictionary.WriteAheadLog;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+/**
+ * Throughput of writes to the thread-safe dictionary with a write-ahead log under each sync policy, written as on the
+ * command line. Run with -t to see several writers share fsyncs; the log's sync count and mean fsync latency are
+ * printed after each trial. The log is written to the temporary directory, so point java.io.tmpdir at the disk to
+ * measure
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WriteAheadLogBenchmark {
+
+    @Param({"10000"})
+    public int keyCount;
+
+    @Param({"always", "100ms", "65536b"})
+    public String sync;
+
+    private Path path;
+    private MultiValueDictionary dictionary;
+    private WriteAheadLog wal;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        path = Files.createTempFile("benchmark", ".wal");
+        dictionary = new ConcurrentMultiValueDictionary();
+        wal = dictionary.enableWriteAheadLog(path, WriteAheadLog.SyncPolicy.parse(sync));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        wal.close();
+        System.out.printf("%n%d fsyncs, mean %.1f us, %.0f records/s%n", wal.getSyncCount(),
+                wal.getAverageSyncMicros(), wal.getRecordsPerSecond());
+        Files.deleteIfExists(path);
+    }
+
+    /**
+     * Adds a member unique to the calling thread and removes it again, appending two records
+     */
+    @Benchmark
+    public void addThenRemove(ThreadState thread) {
+        String key = "key" + (thread.counter++ % keyCount);
+        dictionary.add(key, thread.member);
+        dictionary.remove(key, thread.member);
+    }
+
+    /**
+     * Per-thread key position and member name
+     */
+    @State(Scope.Thread)
+    public static class ThreadState {
+
+        int counter;
+        String member;
+
+        @Setup(Level.Trial)
+        public void setUp(ThreadParams params) {
+            counter = params.getThreadIndex() * 7919;
+            member = "benchmark-member-" + params.getThreadIndex();
+        }
+    }
+}
@@ -1,11 +1,19 @@
 package org.multivaluedictionary;
 
-import java.util.Arrays;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
-import java.util.NoSuchElementException;
 import java.util.Scanner;
-import java.util.Set;
 
 /**
  * Interface to interact with the in-memory multi-value dictionary
@@ -15,176 +23,295 @@ public class Application {
     /** In-memory multi-value dictionary */
     private static MultiValueDictionary dictionary = new MultiValueDictionary();
 
+    /** Interval between write-ahead log fsyncs unless --wal-sync says otherwise */
+    private static final long DEFAULT_WAL_SYNC_MILLIS = 100;
+
+    /** Size of the reader and writer buffers used in batch mode */
+    private static final int BATCH_BUFFER_CHARS = 64 * 1024;
+
+    /** How long shutdown waits for the server to stop and close the dictionary's resources */
+    private static final long SHUTDOWN_WAIT_MILLIS = 5000;
+
     /**
      * Entry point into the application. Reroutes to commandLineInterface to begin taking in user input and interactions
-     * with the multi-value dictionary
+     * with the multi-value dictionary, or to serve when a port is given. With --shards the commands are routed to the
+     * given dictionary servers instead of a local dictionary
      * @param args command-line arguments
+     * @throws IOException snapshot, write-ahead log or server failed
      */
-    public static void main(String[] args) {
-        commandLineInterface();
-    }
-
-    /**
-     * Takes in user input in order to interact with the in-memory multi-value dictionary
-     */
-    private static void commandLineInterface() {
-        String userInput;
-        Scanner in = new Scanner(System.in);
-
-        do {
-            System.out.print("> ");
-            userInput = in.nextLine();
-            List<String> splitInput = Arrays.asList(userInput.split(" "));
-
-            switch (splitInput.get(0)) {
-                case "KEYS":
-                    if (splitInput.size() != 1) {
-                        System.out.println(") ERROR, Incorrect number of arguments\n");
-                    } else {
-                        Set<String> keys = dictionary.getKeys();
-                        if (keys == null) {
-                            System.out.println("(empty set)\n");
-                        } else {
-                            int keyNum = 1;
-                            for (String key : keys) {
-                                System.out.printf("%d) %s\n", keyNum++, key);
-                            }
-                            System.out.println();
-                        }
-                    }
+    public static void main(String[] args) throws IOException {
+        Path snapshotPath = null;
+        Path walPath = null;
+        WriteAheadLog wal = null;
+        int port = -1;
+        int replicationPort = -1;
+        String replicaOf = null;
+        List<Shard> shards = null;
+        boolean batch = false;
+        Path scriptPath = null;
+        Path bulkLoadPath = null;
+        int flushEvery = 0;
+        StorageMode storageMode = StorageMode.HASH;
+        boolean reverseIndex = false;
+        boolean keyIndex = false;
+        boolean metrics = false;
+        long maxMembers = Long.MAX_VALUE;
+        long maxBytes = Long.MAX_VALUE;
+        EvictionPolicy evictionPolicy = EvictionPolicy.leastRecentlyUsed();
+        WriteAheadLog.SyncPolicy walSync = WriteAheadLog.SyncPolicy.everyMillis(DEFAULT_WAL_SYNC_MILLIS);
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--storage":
+                    storageMode = StorageMode.valueOf(optionValue(args, ++i).toUpperCase().replace('-', '_'));
                     break;
-                case "MEMBERS":
-                    if (splitInput.size() != 2) {
-                        System.out.println(") ERROR, Incorrect number of arguments\n");
-                    } else {
-                        try {
-                            Set<String> members = dictionary.getMembers(splitInput.get(1));
-                            int memberNum = 1;
-                            for (String member : members) {
-                                System.out.printf("%d) %s\n", memberNum++, member);
-                            }
-                            System.out.println();
-                        } catch (NoSuchElementException nsee) {
-                            System.out.println(") ERROR, " + nsee.getMessage() + "\n");
-                        }
-                    }
+                case "--reverse-index":
+                    reverseIndex = true;
                     break;
-                case "ADD":
-                    if (splitInput.size() != 3) {
-                        System.out.println(") ERROR, Incorrect number of arguments\n");
-                    } else {
-                        try {
-                            dictionary.add(splitInput.get(1), splitInput.get(2));
-                            System.out.println(") Added\n");
-                        } catch (UnsupportedOperationException uoe) {
-                            System.out.println(") ERROR, " + uoe.getMessage() + "\n");
-                        }
-                    }
+                case "--key-index":
+                    keyIndex = true;
                     break;
-                case "REMOVE":
-                    if (splitInput.size() != 3) {
-                        System.out.println(") ERROR, Incorrect number of arguments\n");
-                    } else {
-                        try {
-                            dictionary.remove(splitInput.get(1), splitInput.get(2));
-                            System.out.println(") Removed\n");
-                        } catch (NoSuchElementException nsee) {
-                            System.out.println(") ERROR, " + nsee.getMessage() + "\n");
-                        }
-                    }
+                case "--metrics":
+                    metrics = true;
                     break;
-                case "REMOVEALL":
-                    if (splitInput.size() != 2) {
-                        System.out.println(") ERROR, Incorrect number of arguments\n");
-                    } else {
-                        try {
-                            dictionary.removeAll(splitInput.get(1));
-                            System.out.println(") Removed\n");
-                        } catch (NoSuchElementException nsee) {
-                            System.out.println(") ERROR, " + nsee.getMessage() + "\n");
-                        }
-                    }
+                case "--wal":
+                    walPath = Paths.get(optionValue(args, ++i));
                     break;
-                case "CLEAR":
-                    if (splitInput.size() != 1) {
-                        System.out.println(") ERROR, Incorrect number of arguments\n");
-                    } else {
-                        dictionary.clear();
-                        System.out.println(") Cleared\n");
-                    }
+                case "--snapshot":
+                    snapshotPath = Paths.get(optionValue(args, ++i));
                     break;
-                case "KEYEXISTS":
-                    if (splitInput.size() != 2) {
-                        System.out.println(") ERROR, Incorrect number of arguments\n");
-                    } else {
-                        System.out.println(") " + dictionary.keyExists(splitInput.get(1)) + "\n");
-                    }
+                case "--bulk-load":
+                    bulkLoadPath = Paths.get(optionValue(args, ++i));
                     break;
-                case "VALUEEXISTS":
-                    if (splitInput.size() != 3) {
-                        System.out.println(") ERROR, Incorrect number of arguments\n");
-                    } else {
-                        System.out.println(") " + dictionary.valueExists(splitInput.get(1), splitInput.get(2)) + "\n");
-                    }
+                case "--port":
+                    port = Integer.parseInt(optionValue(args, ++i));
                     break;
-                case "ALLMEMBERS":
-                    if (splitInput.size() != 1) {
-                        System.out.println(") ERROR, Incorrect number of arguments\n");
-                    } else {
-                        List<String> members = dictionary.getAllMembers();
-                        if (members == null) {
-                            System.out.println("(empty set)\n");
-                        } else {
-                            int memberNum = 1;
-                            for (String member : members) {
-                                System.out.printf("%d) %s\n", memberNum++, member);
-                            }
-                            System.out.println();
-                        }
-                    }
+                case "--replication-port":
+                    replicationPort = Integer.parseInt(optionValue(args, ++i));
                     break;
-                case "ITEMS":
-                    if (splitInput.size() != 1) {
-                        System.out.println(") ERROR, Incorrect number of arguments\n");
-                    } else {
-                        Map<String, Set<String>> items = dictionary.getItems();
-                        if (items == null) {
-                            System.out.println("(empty set)\n");
-                        } else {
-                            int itemNum = 1;
-                            for (String key : items.keySet()) {
-                                for (String member : items.get(key)) {
-                                    System.out.printf("%d) %s: %s\n", itemNum++, key, member);
-                                }
-                            }
-                            System.out.println();
-                        }
+                case "--replica-of":
+                    replicaOf = optionValue(args, ++i);
+                    if (replicaOf.lastIndexOf(':') < 0) {
+                        System.err.println("--replica-of takes host:port");
+                        return;
                     }
                     break;
-                case "INTERSECTION":
-                    if (splitInput.size() != 3) {
-                        System.out.println(") ERROR, Incorrect number of arguments\n");
-                    } else {
-                        Set<String> intersection = dictionary.getIntersection(splitInput.get(1), splitInput.get(2));
-                        if (intersection.isEmpty()) {
-                            System.out.println("(empty set)\n");
-                        } else {
-                            int memberNum = 1;
-                            for (String member : intersection) {
-                                System.out.printf("%d) %s\n", memberNum++, member);
-                            }
-                            System.out.println();
+                case "--shards":
+                    shards = new ArrayList<>();
+                    for (String address : optionValue(args, ++i).split(",")) {
+                        int separator = address.lastIndexOf(':');
+                        if (separator < 0) {
+                            System.err.println("--shards takes host:port,host:port,...");
+                            return;
                         }
+                        shards.add(new RemoteShard(address.substring(0, separator),
+                                Integer.parseInt(address.substring(separator + 1))));
                     }
                     break;
-                case "EXIT":
+                case "--batch":
+                    batch = true;
                     break;
-                default:
-                    System.out.println(") ERROR, Unsupported operation; please try again\n");
+                case "--script":
+                    batch = true;
+                    scriptPath = Paths.get(optionValue(args, ++i));
+                    break;
+                case "--flush-every":
+                    flushEvery = Integer.parseInt(optionValue(args, ++i));
+                    break;
+                case "--max-members":
+                    maxMembers = Long.parseLong(optionValue(args, ++i));
+                    break;
+                case "--max-memory":
+                    maxBytes = parseBytes(optionValue(args, ++i));
+                    break;
+                case "--eviction":
+                    evictionPolicy = EvictionPolicy.parse(optionValue(args, ++i));
                     break;
+                case "--wal-sync":
+                    walSync = WriteAheadLog.SyncPolicy.parse(optionValue(args, ++i));
+                    break;
+                default:
+                    System.err.println("Unsupported option: " + args[i]);
+                    return;
+            }
+        }
+
+        boolean replicated = replicationPort >= 0 || replicaOf != null;
+        if (replicated && storageMode != StorageMode.HASH) {
+            System.err.println("Replication only supports the hash storage mode");
+            return;
+        }
+        dictionary = replicated ? new ConcurrentMultiValueDictionary() : new MultiValueDictionary(storageMode);
+        if (reverseIndex) {
+            dictionary.enableReverseIndex();
+        }
+        if (keyIndex) {
+            dictionary.enableKeyIndex();
+        }
+        if (metrics) {
+            dictionary.enableMetrics();
+        }
+        if (snapshotPath != null && Files.exists(snapshotPath)) {
+            dictionary.loadSnapshot(snapshotPath);
+        }
+        if (bulkLoadPath != null) {
+            System.err.println(CommandProcessor.describe(BulkLoader.load(dictionary, bulkLoadPath)));
+        }
+        if (walPath != null) {
+            wal = dictionary.enableWriteAheadLog(walPath, walSync);
+        }
+        if (maxMembers != Long.MAX_VALUE || maxBytes != Long.MAX_VALUE) {
+            dictionary.enableEviction(evictionPolicy, maxMembers, maxBytes);
+        }
+        ReplicationPrimary primary = null;
+        ReplicaClient replica = null;
+        CommandProcessor processor = new CommandProcessor(dictionary, snapshotPath, wal);
+        if (replicationPort >= 0) {
+            primary = ((ConcurrentMultiValueDictionary) dictionary).enableReplication(replicationPort);
+            System.err.println("Replicating on port " + primary.getPort());
+        }
+        if (replicaOf != null) {
+            int separator = replicaOf.lastIndexOf(':');
+            replica = ((ConcurrentMultiValueDictionary) dictionary).replicateFrom(replicaOf.substring(0, separator),
+                    Integer.parseInt(replicaOf.substring(separator + 1)));
+            processor.setReadOnly(true);
+        }
+        ShardRouter router = null;
+        if (shards != null) {
+            router = new ShardRouter(shards);
+            router.registerCommands(processor.getCommands());
+        }
+        try {
+            if (port >= 0) {
+                serve(processor, port);
+            } else if (batch) {
+                Reader input = scriptPath == null
+                        ? new InputStreamReader(System.in, StandardCharsets.UTF_8)
+                        : Files.newBufferedReader(scriptPath, StandardCharsets.UTF_8);
+                batchInterface(processor, input, flushEvery);
+            } else {
+                commandLineInterface(processor);
             }
-        } while (!userInput.equals("EXIT"));
+        } finally {
+            if (router != null) {
+                router.close();
+            }
+            if (replica != null) {
+                replica.close();
+            }
+            if (primary != null) {
+                primary.close();
+            }
+            if (wal != null) {
+                wal.close();
+            }
+        }
+    }
+
+    /**
+     * Obtains the value following an option on the command line
+     * @param args command-line arguments
+     * @param index position of the value
+     * @return value of the option
+     * @throws IllegalArgumentException option has no value
+     */
+    private static String optionValue(String[] args, int index) throws IllegalArgumentException {
+        if (index >= args.length) {
+            throw new IllegalArgumentException("missing value for option " + args[index - 1]);
+        }
+        return args[index];
+    }
+
+    /**
+     * Parses a size in bytes with an optional k, m or g suffix for powers of 1024
+     * @param value size to parse
+     * @return size in bytes
+     * @throws NumberFormatException value is not a size
+     */
+    private static long parseBytes(String value) throws NumberFormatException {
+        String lower = value.toLowerCase();
+        int shift = lower.endsWith("k") ? 10 : lower.endsWith("m") ? 20 : lower.endsWith("g") ? 30 : 0;
+        String digits = shift == 0 ? lower : lower.substring(0, lower.length() - 1);
+        return Long.parseLong(digits) << shift;
+    }
+
+    /**
+     * Takes in user input in order to interact with the in-memory multi-value dictionary
+     * @param processor executes the commands the user enters
+     */
+    private static void commandLineInterface(CommandProcessor processor) {
+        String userInput;
+        Scanner in = new Scanner(System.in);
+        PrintWriter out = new PrintWriter(System.out, true);
+
+        do {
+            System.out.print("> ");
+            userInput = in.nextLine();
+        } while (processor.execute(userInput, out));
 
         in.close();
     }
+
+    /**
+     * Executes every command of a script without prompting. Input is read through one large buffered reader and
+     * results go through one buffered writer that is flushed at the end, or every given number of commands. A
+     * summary of the run is printed to standard error
+     * @param processor executes the commands of the script
+     * @param input script to execute, one command per line
+     * @param flushEvery number of commands between flushes of the results, or 0 to flush only at the end
+     * @throws IOException script could not be read
+     */
+    private static void batchInterface(CommandProcessor processor, Reader input, int flushEvery) throws IOException {
+        PrintWriter out = new PrintWriter(new BufferedWriter(
+                new OutputStreamWriter(System.out, StandardCharsets.UTF_8), BATCH_BUFFER_CHARS), false);
+        long commands = 0;
+        long start = System.nanoTime();
+        try (BufferedReader in = new BufferedReader(input, BATCH_BUFFER_CHARS)) {
+            String userInput;
+            while ((userInput = in.readLine()) != null) {
+                commands++;
+                if (!processor.execute(userInput, out)) {
+                    break;
+                }
+                if (flushEvery > 0 && commands % flushEvery == 0) {
+                    out.flush();
+                }
+            }
+        } finally {
+            out.flush();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.err.printf("%d commands in %.3f s (%.0f ops/sec)%n", commands, seconds,
+                seconds > 0 ? commands / seconds : 0.0);
+    }
+
+    /**
+     * Serves the multi-value dictionary over TCP until the process is stopped. On shutdown the event loop is stopped
+     * and the shutdown waits briefly for this thread to finish closing the dictionary's resources
+     * @param processor executes the commands of every connection
+     * @param port port to listen on
+     * @throws IOException server failed
+     */
+    private static void serve(CommandProcessor processor, int port) throws IOException {
+        try (DictionaryServer server = new DictionaryServer(processor, port)) {
+            stopOnShutdown(server, Thread.currentThread());
+            System.out.println("Listening on port " + server.getPort());
+            server.run();
+        }
+    }
+
+    /**
+     * Stops a server's event loop on shutdown and waits briefly for the thread running it to finish
+     * @param server server to stop
+     * @param serverThread thread running the server's event loop
+     */
+    private static void stopOnShutdown(DictionaryServer server, Thread serverThread) {
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.close();
+            try {
+                serverThread.join(SHUTDOWN_WAIT_MILLIS);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+    }
 }
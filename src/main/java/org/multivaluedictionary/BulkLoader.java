@@ -0,0 +1,291 @@
+package org.multivaluedictionary;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Loads key-member pairs from delimited text files. Each line holds a key followed by one or more members, separated
+ * by commas in CSV files and by tabs in TSV files; quoting is not supported, and lines without a key or a member are
+ * skipped. The file is split into ranges that are parsed in parallel on the common fork/join pool, the partial results
+ * are merged as the tasks join, and the merged keys are added to the dictionary in one putAll
+ */
+public final class BulkLoader {
+
+    /** Ranges larger than this are split in two before being parsed */
+    private static final long SPLIT_BYTES = 8 * 1024 * 1024;
+
+    /** How far past its range a task maps at first to finish its last line */
+    private static final long LINE_SLACK_BYTES = 64 * 1024;
+
+    private BulkLoader() {
+    }
+
+    /**
+     * Loads a file, using tabs as the delimiter if its name ends in .tsv and commas otherwise
+     * @param dictionary multi-value dictionary to add the pairs to
+     * @param file file to load
+     * @return what was loaded and how quickly
+     * @throws IOException file could not be read
+     */
+    public static Result load(MultiValueDictionary dictionary, Path file) throws IOException {
+        boolean tabs = file.getFileName().toString().toLowerCase().endsWith(".tsv");
+        return load(dictionary, file, tabs ? '\t' : ',');
+    }
+
+    /**
+     * Loads a file
+     * @param dictionary multi-value dictionary to add the pairs to
+     * @param file file to load
+     * @param delimiter character separating the key and members of each line
+     * @return what was loaded and how quickly
+     * @throws IOException file could not be read
+     */
+    public static Result load(MultiValueDictionary dictionary, Path file, char delimiter) throws IOException {
+        if (delimiter > 0x7F || delimiter == '\n' || delimiter == '\r') {
+            throw new IllegalArgumentException("delimiter must be an ASCII character other than a line break");
+        }
+        long start = System.nanoTime();
+        Partition partition;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            partition = size == 0 ? new Partition() : new ParseTask(channel, 0, size, (byte) delimiter).invoke();
+        } catch (UncheckedIOException uioe) {
+            throw uioe.getCause();
+        }
+        int added = dictionary.putAll(partition.members);
+        return new Result(partition.lines, partition.skippedLines, partition.pairs, added,
+                System.nanoTime() - start);
+    }
+
+    /**
+     * Outcome of a bulk load
+     */
+    public static final class Result {
+
+        private final long lines;
+        private final long skippedLines;
+        private final long pairs;
+        private final long added;
+        private final long elapsedNanos;
+
+        Result(long lines, long skippedLines, long pairs, long added, long elapsedNanos) {
+            this.lines = lines;
+            this.skippedLines = skippedLines;
+            this.pairs = pairs;
+            this.added = added;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        /**
+         * Obtains the number of non-empty lines read
+         * @return number of lines
+         */
+        public long getLines() {
+            return lines;
+        }
+
+        /**
+         * Obtains the number of lines skipped because they lacked a key or a member
+         * @return number of skipped lines
+         */
+        public long getSkippedLines() {
+            return skippedLines;
+        }
+
+        /**
+         * Obtains the number of key-member pairs read, including those the dictionary already held
+         * @return number of pairs read
+         */
+        public long getPairs() {
+            return pairs;
+        }
+
+        /**
+         * Obtains the number of members added to the dictionary
+         * @return number of members added
+         */
+        public long getAdded() {
+            return added;
+        }
+
+        /**
+         * Obtains how long the load took, from opening the file to the last member added
+         * @return elapsed time in nanoseconds
+         */
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        /**
+         * Obtains the load rate
+         * @return key-member pairs read per second
+         */
+        public double getPairsPerSecond() {
+            return elapsedNanos > 0 ? pairs * 1e9 / elapsedNanos : 0;
+        }
+    }
+
+    /**
+     * Pairs parsed from part of a file
+     */
+    private static final class Partition {
+
+        /** Members read for each key, possibly with duplicates */
+        private final Map<String, Collection<String>> members = new HashMap<>();
+
+        private long lines;
+        private long skippedLines;
+        private long pairs;
+
+        /**
+         * Merges another partition into this one
+         * @param other partition to merge
+         * @return this partition
+         */
+        Partition merge(Partition other) {
+            if (other.members.size() > members.size()) {
+                return other.merge(this);
+            }
+            for (Map.Entry<String, Collection<String>> entry : other.members.entrySet()) {
+                Collection<String> existing = members.putIfAbsent(entry.getKey(), entry.getValue());
+                if (existing != null) {
+                    existing.addAll(entry.getValue());
+                }
+            }
+            lines += other.lines;
+            skippedLines += other.skippedLines;
+            pairs += other.pairs;
+            return this;
+        }
+    }
+
+    /**
+     * Parses the lines starting within a byte range of the file. A line belongs to the range it starts in, so a range
+     * skips a line cut at its start and reads past its end to finish its last line
+     */
+    private static final class ParseTask extends RecursiveTask<Partition> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient FileChannel channel;
+        private final long start;
+        private final long end;
+        private final byte delimiter;
+
+        ParseTask(FileChannel channel, long start, long end, byte delimiter) {
+            this.channel = channel;
+            this.start = start;
+            this.end = end;
+            this.delimiter = delimiter;
+        }
+
+        @Override
+        protected Partition compute() {
+            if (end - start > SPLIT_BYTES) {
+                long middle = start + (end - start) / 2;
+                ParseTask right = new ParseTask(channel, middle, end, delimiter);
+                right.fork();
+                Partition left = new ParseTask(channel, start, middle, delimiter).compute();
+                return left.merge(right.join());
+            }
+            try {
+                return parse();
+            } catch (IOException ioe) {
+                throw new UncheckedIOException(ioe);
+            }
+        }
+
+        /**
+         * Parses the range through a mapping that reaches a little past its end, mapping further if its last line
+         * turns out to be longer
+         * @return pairs parsed from the range
+         * @throws IOException file could not be read
+         */
+        private Partition parse() throws IOException {
+            long base = Math.max(0, start - 1);
+            long available = channel.size() - base;
+            long slack = LINE_SLACK_BYTES;
+            while (true) {
+                long length = Math.min(available, Math.min(end - base + slack, Integer.MAX_VALUE));
+                Partition partition = parse(channel.map(FileChannel.MapMode.READ_ONLY, base, length),
+                        length == available);
+                if (partition != null || length == Integer.MAX_VALUE) {
+                    return partition == null ? new Partition() : partition;
+                }
+                slack *= 4;
+            }
+        }
+
+        /**
+         * Parses the lines of the range from a mapping
+         * @param buffer mapping starting at the byte before the range, or at the range if it starts the file
+         * @param toEndOfFile whether the mapping reaches the end of the file
+         * @return pairs parsed from the range, or null if the mapping ends inside the range's last line
+         */
+        private Partition parse(MappedByteBuffer buffer, boolean toEndOfFile) {
+            int limit = buffer.limit();
+            int position = start == 0 ? 0 : 1;
+            if (start > 0 && buffer.get(0) != '\n') {
+                while (position < limit && buffer.get(position) != '\n') {
+                    position++;
+                }
+                position++;
+            }
+
+            Partition partition = new Partition();
+            byte[] scratch = new byte[256];
+            List<String> fields = new ArrayList<>();
+            int rangeEnd = (int) Math.min(end - Math.max(0, start - 1), limit);
+            while (position < rangeEnd) {
+                int lineEnd = position;
+                while (lineEnd < limit && buffer.get(lineEnd) != '\n') {
+                    lineEnd++;
+                }
+                if (lineEnd == limit && !toEndOfFile) {
+                    return null;
+                }
+                int contentEnd = lineEnd > position && buffer.get(lineEnd - 1) == '\r' ? lineEnd - 1 : lineEnd;
+                if (contentEnd > position) {
+                    fields.clear();
+                    int fieldStart = position;
+                    for (int i = position; i <= contentEnd; i++) {
+                        if (i == contentEnd || buffer.get(i) == delimiter) {
+                            if (i > fieldStart || fields.isEmpty()) {
+                                if (i - fieldStart > scratch.length) {
+                                    scratch = new byte[Math.max(i - fieldStart, scratch.length * 2)];
+                                }
+                                for (int j = fieldStart; j < i; j++) {
+                                    scratch[j - fieldStart] = buffer.get(j);
+                                }
+                                fields.add(new String(scratch, 0, i - fieldStart, StandardCharsets.UTF_8));
+                            }
+                            fieldStart = i + 1;
+                        }
+                    }
+                    partition.lines++;
+                    if (fields.size() < 2 || fields.get(0).isEmpty()) {
+                        partition.skippedLines++;
+                    } else {
+                        Collection<String> members = partition.members.computeIfAbsent(fields.get(0),
+                                k -> new ArrayList<>());
+                        members.addAll(fields.subList(1, fields.size()));
+                        partition.pairs += fields.size() - 1;
+                    }
+                }
+                position = lineEnd + 1;
+            }
+            return partition;
+        }
+    }
+}
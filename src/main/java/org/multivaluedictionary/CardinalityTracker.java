@@ -0,0 +1,110 @@
+package org.multivaluedictionary;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Counts the members of a multi-value dictionary and sketches how many of them are distinct, kept up to date as a
+ * mutation listener so that neither question needs a pass over the dictionary. A HyperLogLog sketch cannot forget a
+ * member, so the distinct estimate covers every member added since the dictionary was last empty, including members
+ * removed since; the sketch starts over each time the dictionary empties
+ */
+class CardinalityTracker implements MutationListener {
+
+    /** Members across all keys */
+    private final LongAdder members = new LongAdder();
+
+    /** Members added since the dictionary was last empty */
+    private final HyperLogLog distinct = new HyperLogLog();
+
+    /**
+     * Shared by additions and held exclusively to reset the sketch, so that an addition on another key cannot offer
+     * its member between the check that the dictionary is empty and the reset
+     */
+    private final ReadWriteLock resetLock = new ReentrantReadWriteLock();
+
+    /**
+     * Initializes the tracker from the current contents of a key-member(s) pairing
+     * @param dictionary key-member(s) pairing to count, or null if there is none
+     */
+    CardinalityTracker(Map<String, Set<String>> dictionary) {
+        if (dictionary != null) {
+            for (Set<String> keyMembers : dictionary.values()) {
+                members.add(keyMembers.size());
+                for (String member : keyMembers) {
+                    distinct.offer(member);
+                }
+            }
+        }
+    }
+
+    /**
+     * Obtains the number of members across all keys
+     * @return member count
+     */
+    long getMemberCount() {
+        return members.sum();
+    }
+
+    /**
+     * Estimates the number of distinct members added since the dictionary was last empty
+     * @return estimated distinct member count
+     */
+    long estimateDistinctMembers() {
+        return distinct.estimate();
+    }
+
+    @Override
+    public void added(String key, String member) {
+        resetLock.readLock().lock();
+        try {
+            members.increment();
+            distinct.offer(member);
+        } finally {
+            resetLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void removed(String key, String member) {
+        members.decrement();
+        resetIfEmpty();
+    }
+
+    @Override
+    public void removedAll(String key, Set<String> removed) {
+        members.add(-removed.size());
+        resetIfEmpty();
+    }
+
+    @Override
+    public void cleared() {
+        resetLock.writeLock().lock();
+        try {
+            members.reset();
+            distinct.reset();
+        } finally {
+            resetLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Starts the sketch over if the dictionary is empty, checking again once additions are held off
+     */
+    private void resetIfEmpty() {
+        if (members.sum() != 0) {
+            return;
+        }
+        resetLock.writeLock().lock();
+        try {
+            if (members.sum() == 0) {
+                distinct.reset();
+            }
+        } finally {
+            resetLock.writeLock().unlock();
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package org.multivaluedictionary;
+
+/**
+ * One mutation of a multi-value dictionary, as published to change subscribers
+ */
+public final class ChangeEvent {
+
+    /**
+     * Kinds of mutation
+     */
+    public enum Type {
+        /** A member was added to a key */
+        ADDED,
+        /** A member was removed from a key */
+        REMOVED,
+        /** A key was removed with all of its members */
+        REMOVED_ALL,
+        /** Every key was removed */
+        CLEARED
+    }
+
+    private final Type type;
+    private final String key;
+    private final String member;
+
+    /**
+     * Initializes an event
+     * @param type kind of mutation
+     * @param key key that changed, or null for CLEARED
+     * @param member member added or removed, or null for REMOVED_ALL and CLEARED
+     */
+    ChangeEvent(Type type, String key, String member) {
+        this.type = type;
+        this.key = key;
+        this.member = member;
+    }
+
+    /**
+     * Obtains the kind of mutation
+     * @return type of the event
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Obtains the key that changed
+     * @return key, or null for CLEARED
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * Obtains the member added or removed
+     * @return member, or null for REMOVED_ALL and CLEARED
+     */
+    public String getMember() {
+        return member;
+    }
+
+    /**
+     * Describes the event the way WATCH prints it, such as "added foo bar" or "removedall foo"
+     * @return description of the event
+     */
+    @Override
+    public String toString() {
+        String name = type.name().toLowerCase().replace("_", "");
+        return key == null ? name : member == null ? name + " " + key : name + " " + key + " " + member;
+    }
+}
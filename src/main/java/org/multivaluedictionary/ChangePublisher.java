@@ -0,0 +1,260 @@
+package org.multivaluedictionary;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publishes the mutations of a multi-value dictionary to subscribers as they happen, so that copies such as caches can
+ * follow the dictionary instead of polling it. Only mutations of keys matching the publisher's pattern are published;
+ * a clear is published to every subscriber.
+ *
+ * Writers never wait for subscribers: each mutation is appended to every subscription's buffer and delivered from an
+ * executor, in batches of up to a set number of events, one batch per item requested. A subscriber that falls so far
+ * behind that its buffer fills is failed with an IllegalStateException and dropped, and should resynchronize from the
+ * dictionary's contents before subscribing again. Events of one key arrive in the order the mutations happened.
+ * Contents replaced by loading a snapshot are not published
+ */
+public final class ChangePublisher implements Flow.Publisher<List<ChangeEvent>>, MutationListener, Closeable {
+
+    /** Most events in one batch unless told otherwise */
+    public static final int DEFAULT_MAX_BATCH = 256;
+
+    /** Most events buffered for one subscriber before it is dropped, unless told otherwise */
+    public static final int DEFAULT_MAX_BUFFERED = 64 * 1024;
+
+    /** Dictionary whose mutations are published */
+    private final MultiValueDictionary dictionary;
+
+    /** Keys whose mutations are published, or null for every key */
+    private final GlobPattern pattern;
+
+    private final int maxBatch;
+    private final int maxBuffered;
+
+    /** Runs the delivery of batches to subscribers */
+    private final Executor executor;
+
+    private final List<ChangeSubscription> subscriptions = new CopyOnWriteArrayList<>();
+
+    private volatile boolean closed;
+
+    /**
+     * Initializes a publisher; it only receives mutations once registered as a listener of the dictionary
+     * @param dictionary dictionary whose mutations are published
+     * @param pattern glob pattern of the keys whose mutations are published, or null for every key
+     * @param maxBatch most events in one batch
+     * @param maxBuffered most events buffered for one subscriber before it is dropped
+     * @param executor runs the delivery of batches to subscribers
+     */
+    ChangePublisher(MultiValueDictionary dictionary, String pattern, int maxBatch, int maxBuffered,
+            Executor executor) {
+        if (maxBatch <= 0 || maxBuffered <= 0) {
+            throw new IllegalArgumentException("batch and buffer sizes must be positive");
+        }
+        this.dictionary = dictionary;
+        this.pattern = pattern == null ? null : new GlobPattern(pattern);
+        this.maxBatch = maxBatch;
+        this.maxBuffered = maxBuffered;
+        this.executor = Objects.requireNonNull(executor);
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super List<ChangeEvent>> subscriber) {
+        ChangeSubscription subscription = new ChangeSubscription(Objects.requireNonNull(subscriber));
+        subscriber.onSubscribe(subscription);
+        subscriptions.add(subscription);
+        if (closed) {
+            subscription.complete();
+        }
+    }
+
+    /**
+     * Obtains the number of subscribers still receiving events
+     * @return current subscribers
+     */
+    public int getSubscriberCount() {
+        return subscriptions.size();
+    }
+
+    @Override
+    public void added(String key, String member) {
+        publish(ChangeEvent.Type.ADDED, key, member);
+    }
+
+    @Override
+    public void removed(String key, String member) {
+        publish(ChangeEvent.Type.REMOVED, key, member);
+    }
+
+    @Override
+    public void removedAll(String key, Set<String> members) {
+        publish(ChangeEvent.Type.REMOVED_ALL, key, null);
+    }
+
+    @Override
+    public void cleared() {
+        publish(ChangeEvent.Type.CLEARED, null, null);
+    }
+
+    /**
+     * Stops publishing; every subscriber receives the events already buffered for it and is then completed
+     */
+    @Override
+    public void close() {
+        closed = true;
+        dictionary.removeListener(this);
+        for (ChangeSubscription subscription : subscriptions) {
+            subscription.complete();
+        }
+    }
+
+    private void publish(ChangeEvent.Type type, String key, String member) {
+        if (subscriptions.isEmpty() || (key != null && pattern != null && !pattern.matches(key))) {
+            return;
+        }
+        ChangeEvent event = new ChangeEvent(type, key, member);
+        for (ChangeSubscription subscription : subscriptions) {
+            subscription.offer(event);
+        }
+    }
+
+    /**
+     * Buffer and demand of one subscriber. Signals from writers, requests and closing only schedule a delivery pass;
+     * a counter of pending signals makes sure one pass runs at a time and that none is missed, so the subscriber is
+     * called from one thread at a time without any locking
+     */
+    private final class ChangeSubscription implements Flow.Subscription, Runnable {
+
+        private final Flow.Subscriber<? super List<ChangeEvent>> subscriber;
+        private final Queue<ChangeEvent> buffer = new ConcurrentLinkedQueue<>();
+
+        /** Events in the buffer, counted separately since counting the queue takes linear time */
+        private final AtomicInteger buffered = new AtomicInteger();
+
+        /** Batches requested but not yet delivered, or Long.MAX_VALUE if unlimited */
+        private final AtomicLong demand = new AtomicLong();
+
+        /** Signals not yet handled by a delivery pass */
+        private final AtomicInteger signals = new AtomicInteger();
+
+        /** Set once the subscriber has cancelled or been sent its last signal */
+        private volatile boolean done;
+
+        /** Set once the publisher is closed */
+        private volatile boolean completed;
+
+        /** Failure to send the subscriber in place of further events, or null */
+        private volatile Throwable failure;
+
+        ChangeSubscription(Flow.Subscriber<? super List<ChangeEvent>> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                fail(new IllegalArgumentException("requested " + n + " items; requests must be positive"));
+                return;
+            }
+            demand.accumulateAndGet(n, (current, added) -> current + added < 0 ? Long.MAX_VALUE : current + added);
+            signal();
+        }
+
+        @Override
+        public void cancel() {
+            done = true;
+            subscriptions.remove(this);
+            buffer.clear();
+        }
+
+        /**
+         * Buffers an event for delivery, or fails the subscriber if its buffer is full
+         * @param event event to deliver
+         */
+        void offer(ChangeEvent event) {
+            if (done || failure != null) {
+                return;
+            }
+            if (buffered.incrementAndGet() > maxBuffered) {
+                fail(new IllegalStateException("subscriber fell more than " + maxBuffered + " changes behind"));
+                return;
+            }
+            buffer.add(event);
+            signal();
+        }
+
+        /**
+         * Completes the subscriber once the events buffered so far are delivered
+         */
+        void complete() {
+            completed = true;
+            subscriptions.remove(this);
+            signal();
+        }
+
+        private void fail(Throwable throwable) {
+            if (failure == null) {
+                failure = throwable;
+            }
+            subscriptions.remove(this);
+            signal();
+        }
+
+        private void signal() {
+            if (signals.getAndIncrement() == 0) {
+                try {
+                    executor.execute(this);
+                } catch (RejectedExecutionException ree) {
+                    cancel();
+                }
+            }
+        }
+
+        /**
+         * Delivers as many batches as requested and buffered, then any failure or completion, repeating while more
+         * signals arrived during the pass
+         */
+        @Override
+        public void run() {
+            int pending = 1;
+            do {
+                while (!done && failure == null && demand.get() > 0 && !buffer.isEmpty()) {
+                    List<ChangeEvent> batch = new ArrayList<>(Math.min(maxBatch, buffered.get()));
+                    ChangeEvent event;
+                    while (batch.size() < maxBatch && (event = buffer.poll()) != null) {
+                        batch.add(event);
+                    }
+                    buffered.addAndGet(-batch.size());
+                    if (demand.get() != Long.MAX_VALUE) {
+                        demand.decrementAndGet();
+                    }
+                    try {
+                        subscriber.onNext(Collections.unmodifiableList(batch));
+                    } catch (RuntimeException re) {
+                        fail(re);
+                    }
+                }
+                if (!done && failure != null) {
+                    done = true;
+                    buffer.clear();
+                    subscriber.onError(failure);
+                } else if (!done && completed && buffer.isEmpty()) {
+                    done = true;
+                    subscriber.onComplete();
+                }
+                pending = signals.addAndGet(-pending);
+            } while (pending != 0);
+        }
+    }
+}
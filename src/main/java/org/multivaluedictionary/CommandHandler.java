@@ -0,0 +1,18 @@
+package org.multivaluedictionary;
+
+import java.io.PrintWriter;
+
+/**
+ * Executes one kind of command once its name has been looked up and its number of arguments checked
+ */
+@FunctionalInterface
+public interface CommandHandler {
+
+    /**
+     * Executes a command and prints its result
+     * @param tokens tokenized command line; token 0 is the command name and its arguments follow
+     * @param out where to print the result
+     * @return false if the command asked to end the session, true otherwise
+     */
+    boolean execute(CommandTokenizer tokens, PrintWriter out);
+}
@@ -0,0 +1,732 @@
+package org.multivaluedictionary;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parses and executes the text commands understood by the multi-value dictionary, independently of where the commands
+ * come from and where their results go. Each line is split by a reusable tokenizer and dispatched through a registry
+ * of commands with declared numbers of arguments, so a processor must only be used by one thread at a time
+ */
+public class CommandProcessor {
+
+    /** Most time to live deadlines looked at before each command, so that expiry never stalls one for long */
+    private static final int SWEEP_BATCH = 16;
+
+    /** Multi-value dictionary the commands act on */
+    private final MultiValueDictionary dictionary;
+
+    /** Snapshot written and read by SAVE and LOAD without a file, or null if there is none */
+    private final Path snapshotPath;
+
+    /** Write-ahead log of every change, or null if there is none */
+    private final WriteAheadLog wal;
+
+    /** Every supported command */
+    private final CommandRegistry commands = new CommandRegistry();
+
+    /** Whether commands that modify the dictionary are refused, as they are on a replica */
+    private volatile boolean readOnly;
+
+    /** Tokens of the command line being executed */
+    private final CommandTokenizer tokens = new CommandTokenizer();
+
+    /** Watches started by WATCH, by the writer their changes are printed to; guarded by itself */
+    private final Map<PrintWriter, List<Watch>> watches = new IdentityHashMap<>();
+
+    /**
+     * Initializes the processor over a multi-value dictionary
+     * @param dictionary multi-value dictionary the commands act on
+     * @param snapshotPath snapshot used by SAVE and LOAD without a file, or null if there is none
+     * @param wal write-ahead log of the dictionary, or null if there is none
+     */
+    public CommandProcessor(MultiValueDictionary dictionary, Path snapshotPath, WriteAheadLog wal) {
+        this.dictionary = dictionary;
+        this.snapshotPath = snapshotPath;
+        this.wal = wal;
+        commands.register("KEYS", 0, 1, this::keys)
+                .register("KEYRANGE", 2, this::keyRange)
+                .register("SCAN", 1, 5, this::scan)
+                .register("MEMBERS", 1, this::members)
+                .register("SSCAN", 2, 6, this::scanMembers)
+                .register("ADD", 2, writing(this::add))
+                .register("REMOVE", 2, writing(this::remove))
+                .register("REMOVEALL", 1, writing(this::removeAll))
+                .register("CLEAR", 0, writing(this::clear))
+                .register("COUNT", 0, this::count)
+                .register("SCARD", 1, this::memberCount)
+                .register("DISTINCTCOUNT", 0, this::distinctCount)
+                .register("KEYEXISTS", 1, this::keyExists)
+                .register("VALUEEXISTS", 2, this::valueExists)
+                .register("ALLMEMBERS", 0, this::allMembers)
+                .register("ITEMS", 0, this::items)
+                .register("ISCAN", 1, 5, this::scanItems)
+                .register("INTERSECTION", 2, CommandRegistry.VARIADIC, this::intersection)
+                .register("UNION", 2, CommandRegistry.VARIADIC, this::union)
+                .register("DIFF", 2, CommandRegistry.VARIADIC, this::difference)
+                .register("INTERSECTIONSTORE", 3, CommandRegistry.VARIADIC, writing(this::storeIntersection))
+                .register("UNIONSTORE", 3, CommandRegistry.VARIADIC, writing(this::storeUnion))
+                .register("DIFFSTORE", 3, CommandRegistry.VARIADIC, writing(this::storeDifference))
+                .register("KEYSFOR", 1, this::keysFor)
+                .register("EXPIRE", 2, 3, writing(this::expire))
+                .register("BULKLOAD", 1, writing(this::bulkLoad))
+                .register("SAVE", 0, 1, this::save)
+                .register("LOAD", 0, 1, writing(this::load))
+                .register("STATS", 0, this::stats)
+                .register("WATCH", 0, 1, this::watch)
+                .register("UNWATCH", 0, this::unwatch)
+                .register("EXIT", 0, (tokens, out) -> false);
+    }
+
+    /**
+     * Obtains the registry of supported commands, through which further commands can be added
+     * @return command registry of this processor
+     */
+    public CommandRegistry getCommands() {
+        return commands;
+    }
+
+    /**
+     * Refuses or accepts commands that modify the dictionary from now on. Replicas are read-only, since the primary's
+     * stream is the only thing that may change them
+     * @param readOnly true to refuse commands that modify the dictionary
+     */
+    public void setReadOnly(boolean readOnly) {
+        this.readOnly = readOnly;
+    }
+
+    /**
+     * Executes one command line and prints its result. The result is printed while holding the writer's monitor, so
+     * changes printed to the same writer by WATCH never land in the middle of it
+     * @param userInput command line to execute
+     * @param out where to print the result
+     * @return false if the command asked to end the session, true otherwise
+     */
+    public boolean execute(CharSequence userInput, PrintWriter out) {
+        synchronized (out) {
+            sweepExpired();
+            tokens.reset(userInput);
+            CommandRegistry.Command command = commands.lookup(tokens);
+            Metrics metrics = dictionary.getMetrics();
+            if (metrics == null) {
+                return run(command, out);
+            }
+            long start = System.nanoTime();
+            try {
+                return run(command, out);
+            } finally {
+                metrics.recordCommand(command == null ? "UNSUPPORTED" : command.getName(), System.nanoTime() - start);
+            }
+        }
+    }
+
+    /**
+     * Removes a small batch of keys and members whose time to live has run out. Runs before every command, and
+     * servers should also call it while idle
+     * @return number of members removed
+     */
+    public int sweepExpired() {
+        return dictionary.sweepExpired(SWEEP_BATCH);
+    }
+
+    /**
+     * Executes the tokenized command line and prints its result, without recording metrics
+     * @param command command named by the line, or null if there is none
+     * @param out where to print the result
+     * @return false if the command asked to end the session, true otherwise
+     */
+    private boolean run(CommandRegistry.Command command, PrintWriter out) {
+        if (command == null) {
+            out.println(") ERROR, Unsupported operation; please try again\n");
+            return true;
+        }
+        if (!command.acceptsArguments(tokens)) {
+            out.println(") ERROR, Incorrect number of arguments\n");
+            return true;
+        }
+        return command.execute(tokens, out);
+    }
+
+    /**
+     * Wraps the handler of a command that modifies the dictionary so that it is refused while read-only
+     * @param handler executes the command
+     * @return handler that checks for read-only first
+     */
+    private CommandHandler writing(CommandHandler handler) {
+        return (tokens, out) -> {
+            if (readOnly) {
+                out.println(") ERROR, read-only replica; send writes to the primary\n");
+                return true;
+            }
+            return handler.execute(tokens, out);
+        };
+    }
+
+    private boolean keys(CommandTokenizer tokens, PrintWriter out) {
+        Collection<String> keys = tokens.size() == 2 ? dictionary.getKeysMatching(tokens.get(1))
+                : dictionary.getKeys();
+        if (keys == null || keys.isEmpty()) {
+            out.println("(empty set)\n");
+        } else {
+            int keyNum = 1;
+            for (String key : keys) {
+                out.printf("%d) %s\n", keyNum++, key);
+            }
+            out.println();
+        }
+        return true;
+    }
+
+    private boolean keyRange(CommandTokenizer tokens, PrintWriter out) {
+        String from = tokens.get(1);
+        String to = tokens.get(2);
+        if (!isRangeBound(from) || !isRangeBound(to)) {
+            out.println(") ERROR, range bounds must be -, + or a key starting with [ or (\n");
+            return true;
+        }
+        List<String> keys = dictionary.getKeyRange(from.equals("-") ? null : from.substring(1), from.startsWith("["),
+                to.equals("+") ? null : to.substring(1), to.startsWith("["));
+        if (keys.isEmpty()) {
+            out.println("(empty set)\n");
+        } else {
+            int keyNum = 1;
+            for (String key : keys) {
+                out.printf("%d) %s\n", keyNum++, key);
+            }
+            out.println();
+        }
+        return true;
+    }
+
+    private boolean scan(CommandTokenizer tokens, PrintWriter out) {
+        ScanOptions options = ScanOptions.parse(tokens, 2, out);
+        if (options != null) {
+            try {
+                printPage(out, dictionary.scan(tokens.get(1), options.pattern, options.count));
+            } catch (IllegalArgumentException iae) {
+                out.println(") ERROR, " + iae.getMessage() + "\n");
+            }
+        }
+        return true;
+    }
+
+    private boolean scanMembers(CommandTokenizer tokens, PrintWriter out) {
+        ScanOptions options = ScanOptions.parse(tokens, 3, out);
+        if (options != null) {
+            try {
+                printPage(out, dictionary.scanMembers(tokens.get(1), tokens.get(2), options.pattern, options.count));
+            } catch (IllegalArgumentException iae) {
+                out.println(") ERROR, " + iae.getMessage() + "\n");
+            }
+        }
+        return true;
+    }
+
+    private boolean scanItems(CommandTokenizer tokens, PrintWriter out) {
+        ScanOptions options = ScanOptions.parse(tokens, 2, out);
+        if (options != null) {
+            try {
+                printPage(out, dictionary.scanItems(tokens.get(1), options.pattern, options.count));
+            } catch (IllegalArgumentException iae) {
+                out.println(") ERROR, " + iae.getMessage() + "\n");
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Prints one page of a scan: the cursor resuming it, then its keys, members or key-member pairs
+     * @param out where to print the page
+     * @param page page to print
+     */
+    private static void printPage(PrintWriter out, ScanResult<?> page) {
+        out.printf(") cursor %s\n", page.getCursor());
+        if (page.getItems().isEmpty()) {
+            out.println("(empty set)\n");
+            return;
+        }
+        int itemNum = 1;
+        for (Object item : page.getItems()) {
+            if (item instanceof Map.Entry) {
+                Map.Entry<?, ?> entry = (Map.Entry<?, ?>) item;
+                out.printf("%d) %s: %s\n", itemNum++, entry.getKey(), entry.getValue());
+            } else {
+                out.printf("%d) %s\n", itemNum++, item);
+            }
+        }
+        out.println();
+    }
+
+    /**
+     * Determines whether a KEYRANGE argument is a bound: - or + for no bound, or a key prefixed by [ when it is in
+     * the range itself and ( when it is not
+     * @param bound argument to check
+     * @return true if the argument is a bound
+     */
+    private static boolean isRangeBound(String bound) {
+        return bound.equals("-") || bound.equals("+") || bound.startsWith("[") || bound.startsWith("(");
+    }
+
+    private boolean members(CommandTokenizer tokens, PrintWriter out) {
+        Set<String> members = dictionary.membersOrEmpty(tokens.get(1));
+        if (members.isEmpty()) {
+            out.println(") ERROR, key does not exist\n");
+        } else {
+            int memberNum = 1;
+            for (String member : members) {
+                out.printf("%d) %s\n", memberNum++, member);
+            }
+            out.println();
+        }
+        return true;
+    }
+
+    private boolean add(CommandTokenizer tokens, PrintWriter out) {
+        if (dictionary.tryAdd(tokens.get(1), tokens.get(2))) {
+            out.println(") Added\n");
+        } else {
+            out.println(") ERROR, value already exists\n");
+        }
+        return true;
+    }
+
+    private boolean remove(CommandTokenizer tokens, PrintWriter out) {
+        String key = tokens.get(1);
+        if (dictionary.tryRemove(key, tokens.get(2))) {
+            out.println(") Removed\n");
+        } else if (dictionary.keyExists(key)) {
+            out.println(") ERROR, value does not exist\n");
+        } else {
+            out.println(") ERROR, key does not exist\n");
+        }
+        return true;
+    }
+
+    private boolean removeAll(CommandTokenizer tokens, PrintWriter out) {
+        if (dictionary.tryRemoveAll(tokens.get(1))) {
+            out.println(") Removed\n");
+        } else {
+            out.println(") ERROR, key does not exist\n");
+        }
+        return true;
+    }
+
+    private boolean clear(CommandTokenizer tokens, PrintWriter out) {
+        dictionary.clear();
+        out.println(") Cleared\n");
+        return true;
+    }
+
+    private boolean count(CommandTokenizer tokens, PrintWriter out) {
+        out.printf("1) keys %d\n2) members %d\n\n", dictionary.getKeyCount(), dictionary.getTotalMemberCount());
+        return true;
+    }
+
+    private boolean memberCount(CommandTokenizer tokens, PrintWriter out) {
+        out.println(") " + dictionary.getMemberCount(tokens.get(1)) + "\n");
+        return true;
+    }
+
+    private boolean distinctCount(CommandTokenizer tokens, PrintWriter out) {
+        out.println(") " + dictionary.estimateDistinctMembers() + "\n");
+        return true;
+    }
+
+    private boolean keyExists(CommandTokenizer tokens, PrintWriter out) {
+        out.println(") " + dictionary.keyExists(tokens.get(1)) + "\n");
+        return true;
+    }
+
+    private boolean valueExists(CommandTokenizer tokens, PrintWriter out) {
+        out.println(") " + dictionary.valueExists(tokens.get(1), tokens.get(2)) + "\n");
+        return true;
+    }
+
+    private boolean allMembers(CommandTokenizer tokens, PrintWriter out) {
+        Iterator<String> members = dictionary.membersStream().iterator();
+        if (!members.hasNext()) {
+            out.println("(empty set)\n");
+        } else {
+            int memberNum = 1;
+            while (members.hasNext()) {
+                out.printf("%d) %s\n", memberNum++, members.next());
+            }
+            out.println();
+        }
+        return true;
+    }
+
+    private boolean items(CommandTokenizer tokens, PrintWriter out) {
+        Iterator<Map.Entry<String, Set<String>>> items = dictionary.entriesStream().iterator();
+        if (!items.hasNext()) {
+            out.println("(empty set)\n");
+        } else {
+            int itemNum = 1;
+            while (items.hasNext()) {
+                Map.Entry<String, Set<String>> item = items.next();
+                for (String member : item.getValue()) {
+                    out.printf("%d) %s: %s\n", itemNum++, item.getKey(), member);
+                }
+            }
+            out.println();
+        }
+        return true;
+    }
+
+    private boolean intersection(CommandTokenizer tokens, PrintWriter out) {
+        printMembers(out, dictionary.getIntersection(tokens.from(1)));
+        return true;
+    }
+
+    private boolean union(CommandTokenizer tokens, PrintWriter out) {
+        printMembers(out, dictionary.getUnion(tokens.from(1)));
+        return true;
+    }
+
+    private boolean difference(CommandTokenizer tokens, PrintWriter out) {
+        printMembers(out, dictionary.getDifference(tokens.get(1), tokens.from(2)));
+        return true;
+    }
+
+    private boolean storeIntersection(CommandTokenizer tokens, PrintWriter out) {
+        out.println(") Stored " + dictionary.storeIntersection(tokens.get(1), tokens.from(2)) + "\n");
+        return true;
+    }
+
+    private boolean storeUnion(CommandTokenizer tokens, PrintWriter out) {
+        out.println(") Stored " + dictionary.storeUnion(tokens.get(1), tokens.from(2)) + "\n");
+        return true;
+    }
+
+    private boolean storeDifference(CommandTokenizer tokens, PrintWriter out) {
+        out.println(") Stored " + dictionary.storeDifference(tokens.get(1), tokens.get(2), tokens.from(3)) + "\n");
+        return true;
+    }
+
+    private boolean keysFor(CommandTokenizer tokens, PrintWriter out) {
+        Set<String> keys = dictionary.getKeysForMember(tokens.get(1));
+        if (keys.isEmpty()) {
+            out.println("(empty set)\n");
+        } else {
+            int keyNum = 1;
+            for (String key : keys) {
+                out.printf("%d) %s\n", keyNum++, key);
+            }
+            out.println();
+        }
+        return true;
+    }
+
+    private boolean expire(CommandTokenizer tokens, PrintWriter out) {
+        try {
+            long ttlSeconds = tokens.parseLong(tokens.size() - 1);
+            long ttlMillis = TimeUnit.SECONDS.toMillis(ttlSeconds);
+            if (tokens.size() == 3) {
+                dictionary.expire(tokens.get(1), ttlMillis);
+            } else {
+                dictionary.expire(tokens.get(1), tokens.get(2), ttlMillis);
+            }
+            out.println(") Expiry set\n");
+        } catch (NumberFormatException nfe) {
+            out.println(") ERROR, time to live must be a whole number of seconds\n");
+        } catch (NoSuchElementException | IllegalArgumentException e) {
+            out.println(") ERROR, " + e.getMessage() + "\n");
+        }
+        return true;
+    }
+
+    private boolean bulkLoad(CommandTokenizer tokens, PrintWriter out) {
+        try {
+            BulkLoader.Result result = BulkLoader.load(dictionary, Paths.get(tokens.get(1)));
+            out.println(") " + describe(result) + "\n");
+        } catch (IOException ioe) {
+            out.println(") ERROR, " + ioe.getMessage() + "\n");
+        }
+        return true;
+    }
+
+    /**
+     * Describes the outcome of a bulk load in one line
+     * @param result outcome of the bulk load
+     * @return description of what was loaded and how quickly
+     */
+    static String describe(BulkLoader.Result result) {
+        return String.format("Loaded %d members from %d lines (%d skipped) in %.3f s (%.0f pairs/sec)",
+                result.getAdded(), result.getLines(), result.getSkippedLines(), result.getElapsedNanos() / 1e9,
+                result.getPairsPerSecond());
+    }
+
+    private boolean save(CommandTokenizer tokens, PrintWriter out) {
+        if (tokens.size() == 1 && snapshotPath == null) {
+            out.println(") ERROR, Incorrect number of arguments\n");
+            return true;
+        }
+        Path path = tokens.size() == 2 ? Paths.get(tokens.get(1)) : snapshotPath;
+        try {
+            dictionary.saveSnapshot(path);
+            // a replica keeps applying its primary's stream while saving, so records logged after the snapshot's
+            // view was taken may be missing from it; replaying the whole log over the snapshot gives the same result
+            if (wal != null && path.equals(snapshotPath) && !readOnly) {
+                wal.truncate();
+            }
+            out.println(") Saved\n");
+        } catch (IOException ioe) {
+            out.println(") ERROR, " + ioe.getMessage() + "\n");
+        }
+        return true;
+    }
+
+    private boolean load(CommandTokenizer tokens, PrintWriter out) {
+        if (tokens.size() == 1 && snapshotPath == null) {
+            out.println(") ERROR, Incorrect number of arguments\n");
+        } else if (wal != null) {
+            out.println(") ERROR, cannot load while the write-ahead log is enabled\n");
+        } else if (dictionary instanceof ConcurrentMultiValueDictionary
+                && ((ConcurrentMultiValueDictionary) dictionary).isReplicationEnabled()) {
+            // the loaded contents are not streamed, so replicas would silently diverge
+            out.println(") ERROR, cannot load while replication is enabled\n");
+        } else {
+            try {
+                dictionary.loadSnapshot(tokens.size() == 2 ? Paths.get(tokens.get(1)) : snapshotPath);
+                out.println(") Loaded\n");
+            } catch (IOException ioe) {
+                out.println(") ERROR, " + ioe.getMessage() + "\n");
+            }
+        }
+        return true;
+    }
+
+    private boolean stats(CommandTokenizer tokens, PrintWriter out) {
+        dictionary.exportMetrics(new PrintingExporter(out));
+        out.println();
+        return true;
+    }
+
+    private boolean watch(CommandTokenizer tokens, PrintWriter out) {
+        ChangePublisher publisher = dictionary.publishChanges(tokens.size() == 2 ? tokens.get(1) : null);
+        Watch watch = new Watch(publisher, out);
+        synchronized (watches) {
+            watches.computeIfAbsent(out, writer -> new ArrayList<>()).add(watch);
+        }
+        out.println(") Watching\n");
+        publisher.subscribe(watch);
+        return true;
+    }
+
+    private boolean unwatch(CommandTokenizer tokens, PrintWriter out) {
+        stopWatches(out);
+        out.println(") Unwatched\n");
+        return true;
+    }
+
+    /**
+     * Stops every WATCH printing to a writer, such as when the connection the writer belongs to closes, so that the
+     * watches stop listening to the dictionary even if no change they match ever happens again
+     * @param out writer the watches print to
+     */
+    public void stopWatches(PrintWriter out) {
+        List<Watch> stopped;
+        synchronized (watches) {
+            stopped = watches.remove(out);
+        }
+        if (stopped != null) {
+            for (Watch watch : stopped) {
+                watch.stop();
+            }
+        }
+    }
+
+    /**
+     * Obtains the number of watches still printing changes
+     * @return running watches over every writer
+     */
+    int getWatchCount() {
+        synchronized (watches) {
+            int count = 0;
+            for (List<Watch> started : watches.values()) {
+                count += started.size();
+            }
+            return count;
+        }
+    }
+
+    /**
+     * Prints a set of members as a numbered list, or as an empty set if there are none
+     * @param out where to print the members
+     * @param members members to print
+     */
+    private static void printMembers(PrintWriter out, Set<String> members) {
+        if (members.isEmpty()) {
+            out.println("(empty set)\n");
+        } else {
+            int memberNum = 1;
+            for (String member : members) {
+                out.printf("%d) %s\n", memberNum++, member);
+            }
+            out.println();
+        }
+    }
+
+    /**
+     * Prints each exported figure as a numbered line; latencies are printed in microseconds
+     */
+    private static class PrintingExporter implements MetricsExporter {
+
+        private final PrintWriter out;
+        private int lineNum = 1;
+
+        PrintingExporter(PrintWriter out) {
+            this.out = out;
+        }
+
+        @Override
+        public void gauge(String name, long value) {
+            out.printf("%d) %s %d\n", lineNum++, name, value);
+        }
+
+        @Override
+        public void latency(String name, LatencyHistogram histogram) {
+            out.printf("%d) %s count=%d mean=%.1fus p50=%.1fus p99=%.1fus p999=%.1fus max=%.1fus\n", lineNum++, name,
+                    histogram.getCount(), histogram.getMean() / 1000, histogram.getPercentile(50) / 1000.0,
+                    histogram.getPercentile(99) / 1000.0, histogram.getPercentile(99.9) / 1000.0,
+                    histogram.getMax() / 1000.0);
+        }
+    }
+
+    /**
+     * MATCH and COUNT options of the scan commands
+     */
+    private static final class ScanOptions {
+
+        /** Keys or members returned when COUNT is not given */
+        private static final int DEFAULT_COUNT = 10;
+
+        private String pattern;
+        private int count = DEFAULT_COUNT;
+
+        /**
+         * Parses the options following the cursor of a scan command, printing an error if they are malformed
+         * @param tokens tokens of the command line
+         * @param first position of the first option
+         * @param out where to print an error
+         * @return parsed options, or null if an error was printed
+         */
+        static ScanOptions parse(CommandTokenizer tokens, int first, PrintWriter out) {
+            ScanOptions options = new ScanOptions();
+            for (int i = first; i < tokens.size(); i += 2) {
+                if (i + 1 == tokens.size()) {
+                    out.println(") ERROR, syntax error\n");
+                    return null;
+                }
+                if (tokens.tokenEquals(i, "MATCH")) {
+                    options.pattern = tokens.get(i + 1);
+                } else if (tokens.tokenEquals(i, "COUNT")) {
+                    try {
+                        long count = tokens.parseLong(i + 1);
+                        if (count <= 0) {
+                            throw new NumberFormatException();
+                        }
+                        options.count = (int) Math.min(count, Integer.MAX_VALUE);
+                    } catch (NumberFormatException nfe) {
+                        out.println(") ERROR, count must be a positive whole number\n");
+                        return null;
+                    }
+                } else {
+                    out.println(") ERROR, syntax error\n");
+                    return null;
+                }
+            }
+            return options;
+        }
+    }
+
+    /**
+     * Prints the changes published to one WATCH as they arrive, each batch as a numbered list under a ") changes"
+     * line. One batch is requested at a time, and the watch ends by itself once its writer reports an error, such as
+     * when the connection it belongs to has closed or holds more unsent output than it allows
+     */
+    private final class Watch implements Flow.Subscriber<List<ChangeEvent>> {
+
+        private final ChangePublisher publisher;
+        private final PrintWriter out;
+        private volatile Flow.Subscription subscription;
+
+        Watch(ChangePublisher publisher, PrintWriter out) {
+            this.publisher = publisher;
+            this.out = out;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(1);
+        }
+
+        @Override
+        public void onNext(List<ChangeEvent> changes) {
+            StringBuilder text = new StringBuilder(") changes\n");
+            int changeNum = 1;
+            for (ChangeEvent change : changes) {
+                text.append(changeNum++).append(") ").append(change).append('\n');
+            }
+            boolean failed;
+            synchronized (out) {
+                out.println(text);
+                out.flush();
+                failed = out.checkError();
+                if (failed) {
+                    out.println(") ERROR, watch ended: changes are not being read\n");
+                    out.flush();
+                }
+            }
+            if (failed) {
+                stop();
+            } else {
+                subscription.request(1);
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            synchronized (out) {
+                out.println(") ERROR, watch ended: " + throwable.getMessage() + "\n");
+                out.flush();
+            }
+            forget();
+        }
+
+        @Override
+        public void onComplete() {
+            forget();
+        }
+
+        /**
+         * Cancels the subscription and stops publishing
+         */
+        void stop() {
+            subscription.cancel();
+            forget();
+        }
+
+        private void forget() {
+            publisher.close();
+            synchronized (watches) {
+                List<Watch> started = watches.get(out);
+                if (started != null && started.remove(this) && started.isEmpty()) {
+                    watches.remove(out);
+                }
+            }
+        }
+    }
+}
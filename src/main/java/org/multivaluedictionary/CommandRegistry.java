@@ -0,0 +1,158 @@
+package org.multivaluedictionary;
+
+import java.io.PrintWriter;
+import java.util.Arrays;
+
+/**
+ * Maps command names to their handlers and declared number of arguments. Names are looked up straight from a
+ * tokenized line by hashing the characters of its first token, so dispatching a command allocates nothing
+ */
+public final class CommandRegistry {
+
+    /** Upper bound for commands that take any number of arguments from their minimum */
+    public static final int VARIADIC = Integer.MAX_VALUE;
+
+    /** Open-addressed table of the registered commands; its length is a power of two */
+    private Command[] table = new Command[32];
+
+    /** Number of registered commands */
+    private int size;
+
+    /**
+     * Registers a command, replacing any command already registered under the same name
+     * @param name name the command is invoked by
+     * @param minArguments fewest arguments the command takes, not counting its name
+     * @param maxArguments most arguments the command takes, or VARIADIC if there is no limit
+     * @param handler executes the command
+     * @return this registry
+     */
+    public CommandRegistry register(String name, int minArguments, int maxArguments, CommandHandler handler) {
+        if (name.isEmpty() || name.indexOf(' ') >= 0) {
+            throw new IllegalArgumentException("command names must be a single non-empty token: '" + name + "'");
+        }
+        if (minArguments < 0 || maxArguments < minArguments) {
+            throw new IllegalArgumentException("invalid number of arguments for " + name);
+        }
+        if ((size + 1) * 2 > table.length) {
+            Command[] old = table;
+            table = new Command[old.length * 2];
+            for (Command command : old) {
+                if (command != null) {
+                    table[slot(command.name, command.name.hashCode())] = command;
+                }
+            }
+        }
+        int slot = slot(name, name.hashCode());
+        if (table[slot] == null) {
+            size++;
+        }
+        table[slot] = new Command(name, minArguments, maxArguments, handler);
+        return this;
+    }
+
+    /**
+     * Registers a command that takes exactly a given number of arguments
+     * @param name name the command is invoked by
+     * @param arguments number of arguments, not counting its name
+     * @param handler executes the command
+     * @return this registry
+     */
+    public CommandRegistry register(String name, int arguments, CommandHandler handler) {
+        return register(name, arguments, arguments, handler);
+    }
+
+    /**
+     * Finds the command named by the first token of a tokenized line
+     * @param tokens tokenized command line
+     * @return command, or null if the line is empty or names no registered command
+     */
+    public Command lookup(CommandTokenizer tokens) {
+        if (tokens.size() == 0) {
+            return null;
+        }
+        int mask = table.length - 1;
+        for (int slot = tokens.tokenHash(0) & mask; table[slot] != null; slot = (slot + 1) & mask) {
+            if (tokens.tokenEquals(0, table[slot].name)) {
+                return table[slot];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Obtains the names of every registered command
+     * @return command names in alphabetical order
+     */
+    public String[] getNames() {
+        String[] names = new String[size];
+        int i = 0;
+        for (Command command : table) {
+            if (command != null) {
+                names[i++] = command.name;
+            }
+        }
+        Arrays.sort(names);
+        return names;
+    }
+
+    /**
+     * Finds the slot holding a name, or the empty slot it belongs in
+     * @param name command name
+     * @param hash hash code of the name
+     * @return slot in the table
+     */
+    private int slot(String name, int hash) {
+        int mask = table.length - 1;
+        int slot = hash & mask;
+        while (table[slot] != null && !table[slot].name.equals(name)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * A registered command
+     */
+    public static final class Command {
+
+        private final String name;
+        private final int minArguments;
+        private final int maxArguments;
+        private final CommandHandler handler;
+
+        Command(String name, int minArguments, int maxArguments, CommandHandler handler) {
+            this.name = name;
+            this.minArguments = minArguments;
+            this.maxArguments = maxArguments;
+            this.handler = handler;
+        }
+
+        /**
+         * Obtains the name the command is invoked by
+         * @return command name
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Determines whether a tokenized line passes the command the number of arguments it declared
+         * @param tokens tokenized command line, including the command name
+         * @return true if the number of arguments is within the declared bounds
+         */
+        public boolean acceptsArguments(CommandTokenizer tokens) {
+            int arguments = tokens.size() - 1;
+            return arguments >= minArguments && arguments <= maxArguments;
+        }
+
+        /**
+         * Executes the command
+         * @param tokens tokenized command line
+         * @param out where to print the result
+         * @return false if the command asked to end the session, true otherwise
+         */
+        public boolean execute(CommandTokenizer tokens, PrintWriter out) {
+            return handler.execute(tokens, out);
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package org.multivaluedictionary;
+
+import java.nio.CharBuffer;
+import java.util.Arrays;
+
+/**
+ * Reusable tokenizer that splits a command line on single spaces without copying it. Tokens are recorded as offsets
+ * into the line and only become strings when a handler asks for one, so parsing a command allocates nothing beyond
+ * the strings the command actually uses. Splitting follows {@code String.split(" ")}: consecutive spaces produce
+ * empty tokens and trailing empty tokens are dropped. A tokenizer is not thread-safe
+ */
+public final class CommandTokenizer {
+
+    /** Line being tokenized */
+    private CharSequence line = "";
+
+    /** Start offset of each token */
+    private int[] starts = new int[8];
+
+    /** End offset, exclusive, of each token */
+    private int[] ends = new int[8];
+
+    /** Number of tokens in the line */
+    private int count;
+
+    /**
+     * Splits a command line into tokens, replacing the previous line
+     * @param line command line to tokenize; must not change until the tokenizer is reset again
+     * @return number of tokens
+     */
+    public int reset(CharSequence line) {
+        this.line = line;
+        count = 0;
+        int length = line.length();
+        int start = 0;
+        for (int i = 0; i <= length; i++) {
+            if (i == length || line.charAt(i) == ' ') {
+                if (count == starts.length) {
+                    starts = Arrays.copyOf(starts, count * 2);
+                    ends = Arrays.copyOf(ends, count * 2);
+                }
+                starts[count] = start;
+                ends[count++] = i;
+                start = i + 1;
+            }
+        }
+        while (count > 0 && starts[count - 1] == ends[count - 1]) {
+            count--;
+        }
+        return count;
+    }
+
+    /**
+     * Obtains the number of tokens in the current line
+     * @return number of tokens
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Obtains a token as a string
+     * @param index position of the token, the command name being 0
+     * @return token
+     * @throws IndexOutOfBoundsException there is no such token
+     */
+    public String get(int index) {
+        checkIndex(index);
+        if (line instanceof String) {
+            return ((String) line).substring(starts[index], ends[index]);
+        }
+        if (line instanceof CharBuffer && ((CharBuffer) line).hasArray()) {
+            CharBuffer buffer = (CharBuffer) line;
+            return new String(buffer.array(), buffer.arrayOffset() + buffer.position() + starts[index], length(index));
+        }
+        return line.subSequence(starts[index], ends[index]).toString();
+    }
+
+    /**
+     * Obtains every token from a position onwards as strings
+     * @param from position of the first token to take
+     * @return tokens from the given position onwards
+     */
+    public String[] from(int from) {
+        String[] tokens = new String[Math.max(0, count - from)];
+        for (int i = 0; i < tokens.length; i++) {
+            tokens[i] = get(from + i);
+        }
+        return tokens;
+    }
+
+    /**
+     * Obtains the length of a token
+     * @param index position of the token
+     * @return number of characters in the token
+     */
+    public int length(int index) {
+        checkIndex(index);
+        return ends[index] - starts[index];
+    }
+
+    /**
+     * Determines whether a token equals a string, without creating a string for the token
+     * @param index position of the token
+     * @param value string to compare with
+     * @return true if the token holds exactly the characters of the string
+     */
+    public boolean tokenEquals(int index, String value) {
+        if (length(index) != value.length()) {
+            return false;
+        }
+        int start = starts[index];
+        for (int i = 0; i < value.length(); i++) {
+            if (line.charAt(start + i) != value.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Computes the hash code the token would have as a string, without creating the string
+     * @param index position of the token
+     * @return {@code String.hashCode} of the token
+     */
+    public int tokenHash(int index) {
+        checkIndex(index);
+        int hash = 0;
+        for (int i = starts[index]; i < ends[index]; i++) {
+            hash = 31 * hash + line.charAt(i);
+        }
+        return hash;
+    }
+
+    /**
+     * Parses a token as a decimal long, without creating a string for it
+     * @param index position of the token
+     * @return value of the token
+     * @throws NumberFormatException token is not a decimal long
+     */
+    public long parseLong(int index) {
+        checkIndex(index);
+        int start = starts[index];
+        int end = ends[index];
+        boolean negative = start < end && line.charAt(start) == '-';
+        int i = negative || (start < end && line.charAt(start) == '+') ? start + 1 : start;
+        if (i == end) {
+            throw new NumberFormatException("For input string: \"" + get(index) + "\"");
+        }
+        long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+        long value = 0;
+        for (; i < end; i++) {
+            int digit = Character.digit(line.charAt(i), 10);
+            if (digit < 0 || value < limit / 10 || value * 10 < limit + digit) {
+                throw new NumberFormatException("For input string: \"" + get(index) + "\"");
+            }
+            value = value * 10 - digit;
+        }
+        return negative ? value : -value;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("token " + index + " of " + count);
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package org.multivaluedictionary;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Member set whose layout follows its size: a single member is held directly, a handful are held in a small array
+ * that is scanned linearly, and only larger sets use a HashSet. Sets shrink back to the smaller layouts as members
+ * are removed, with some slack so that a set hovering around a threshold does not convert on every call. The set
+ * object itself never changes, so callers holding it keep seeing the key's members
+ */
+class CompactMemberSet extends AbstractSet<String> {
+
+    /** Most members held in an array before converting to a HashSet */
+    static final int ARRAY_THRESHOLD = 8;
+
+    /** Size at which a HashSet converts back to an array */
+    private static final int HASH_TO_ARRAY_SIZE = ARRAY_THRESHOLD / 2;
+
+    /** Null when empty, the member itself when there is one, a String[] up to the threshold, a HashSet past it */
+    private Object members;
+
+    /** Number of members held in an array */
+    private int arraySize;
+
+    @Override
+    public int size() {
+        if (members == null) {
+            return 0;
+        } else if (members instanceof String) {
+            return 1;
+        } else if (members instanceof String[]) {
+            return arraySize;
+        }
+        return hashSet().size();
+    }
+
+    @Override
+    public boolean contains(Object member) {
+        if (members == null || member == null) {
+            return false;
+        } else if (members instanceof String) {
+            return members.equals(member);
+        } else if (members instanceof String[]) {
+            return indexOf(member) >= 0;
+        }
+        return hashSet().contains(member);
+    }
+
+    @Override
+    public boolean add(String member) {
+        if (member == null) {
+            throw new NullPointerException("member");
+        }
+        if (members == null) {
+            members = member;
+            return true;
+        } else if (members instanceof String) {
+            if (members.equals(member)) {
+                return false;
+            }
+            String[] array = new String[4];
+            array[0] = (String) members;
+            array[1] = member;
+            members = array;
+            arraySize = 2;
+            return true;
+        } else if (members instanceof String[]) {
+            if (indexOf(member) >= 0) {
+                return false;
+            }
+            String[] array = (String[]) members;
+            if (arraySize < ARRAY_THRESHOLD) {
+                if (arraySize == array.length) {
+                    array = Arrays.copyOf(array, ARRAY_THRESHOLD);
+                    members = array;
+                }
+                array[arraySize++] = member;
+                return true;
+            }
+            HashSet<String> set = new HashSet<>(Arrays.asList(array));
+            set.add(member);
+            members = set;
+            arraySize = 0;
+            return true;
+        }
+        return hashSet().add(member);
+    }
+
+    @Override
+    public boolean remove(Object member) {
+        if (members == null || member == null) {
+            return false;
+        } else if (members instanceof String) {
+            if (!members.equals(member)) {
+                return false;
+            }
+            members = null;
+            return true;
+        } else if (members instanceof String[]) {
+            int index = indexOf(member);
+            if (index < 0) {
+                return false;
+            }
+            removeAt(index);
+            return true;
+        }
+        HashSet<String> set = hashSet();
+        if (!set.remove(member)) {
+            return false;
+        }
+        if (set.size() <= HASH_TO_ARRAY_SIZE) {
+            String[] array = new String[ARRAY_THRESHOLD];
+            arraySize = 0;
+            for (String remaining : set) {
+                array[arraySize++] = remaining;
+            }
+            members = array;
+        }
+        return true;
+    }
+
+    @Override
+    public void clear() {
+        members = null;
+        arraySize = 0;
+    }
+
+    @Override
+    public Iterator<String> iterator() {
+        if (members == null) {
+            return Collections.emptyIterator();
+        } else if (members instanceof String) {
+            return new Iterator<String>() {
+                private boolean done;
+                private boolean removable;
+
+                @Override
+                public boolean hasNext() {
+                    return !done;
+                }
+
+                @Override
+                public String next() {
+                    if (done) {
+                        throw new NoSuchElementException();
+                    }
+                    done = true;
+                    removable = true;
+                    return (String) members;
+                }
+
+                @Override
+                public void remove() {
+                    if (!removable) {
+                        throw new IllegalStateException();
+                    }
+                    removable = false;
+                    members = null;
+                }
+            };
+        } else if (members instanceof String[]) {
+            // removing may collapse the array to a single member, which is then treated as an array of one
+            return new Iterator<String>() {
+                private int index;
+                private boolean removable;
+
+                @Override
+                public boolean hasNext() {
+                    return index < (members instanceof String ? 1 : members instanceof String[] ? arraySize : 0);
+                }
+
+                @Override
+                public String next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    removable = true;
+                    String member = members instanceof String ? (String) members : ((String[]) members)[index];
+                    index++;
+                    return member;
+                }
+
+                @Override
+                public void remove() {
+                    if (!removable) {
+                        throw new IllegalStateException();
+                    }
+                    removable = false;
+                    if (members instanceof String) {
+                        members = null;
+                    } else {
+                        removeAt(--index);
+                    }
+                }
+            };
+        }
+        return hashSet().iterator();
+    }
+
+    /**
+     * Estimates the heap held by this set in its current layout, counting each member as its own String
+     * @return estimated size in bytes
+     */
+    long estimatedBytes() {
+        long bytes = MemoryEstimator.OBJECT_HEADER_BYTES + MemoryEstimator.REFERENCE_BYTES + 4;
+        if (members instanceof String[]) {
+            bytes += MemoryEstimator.arrayBytes(MemoryEstimator.REFERENCE_BYTES, ((String[]) members).length);
+            for (int i = 0; i < arraySize; i++) {
+                bytes += MemoryEstimator.stringBytes(((String[]) members)[i]);
+            }
+        } else if (members instanceof String) {
+            bytes += MemoryEstimator.stringBytes((String) members);
+        } else if (members != null) {
+            bytes += MemoryEstimator.hashSetBytes(hashSet());
+        }
+        return bytes;
+    }
+
+    private int indexOf(Object member) {
+        String[] array = (String[]) members;
+        for (int i = 0; i < arraySize; i++) {
+            if (array[i].equals(member)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Removes an array member by moving the last one into its place, falling back to a single member when one is
+     * left. Iteration stays correct because the moved member is visited next, at the same index even once the
+     * array has collapsed
+     * @param index position of the member to remove
+     */
+    private void removeAt(int index) {
+        String[] array = (String[]) members;
+        array[index] = array[--arraySize];
+        array[arraySize] = null;
+        if (arraySize == 1) {
+            members = array[0];
+            arraySize = 0;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private HashSet<String> hashSet() {
+        return (HashSet<String>) members;
+    }
+}
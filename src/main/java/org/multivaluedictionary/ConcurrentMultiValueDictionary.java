@@ -0,0 +1,397 @@
+package org.multivaluedictionary;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Thread-safe multi-value dictionary. Keys live in a ConcurrentHashMap and each key's members live in a concurrent
+ * set; every mutation of a key happens inside ConcurrentHashMap.compute, so add/remove are atomic per key without a
+ * global lock and operations on different keys proceed in parallel
+ */
+public class ConcurrentMultiValueDictionary extends MultiValueDictionary {
+
+    /** Streams mutations to replicas, only present once replication is enabled */
+    private volatile ReplicationPrimary replicationPrimary;
+
+    /** Copies a primary's mutations into this dictionary, only present while this is a replica */
+    private volatile ReplicaClient replicaClient;
+
+    /**
+     * Initializes dictionary to be empty upon creation
+     */
+    public ConcurrentMultiValueDictionary() {
+        super(new ConcurrentHashMap<>());
+    }
+
+    /**
+     * Initializes dictionary to be a copy of an initial key-member(s) pairing
+     * @param dictionary initial key-member(s) pairing
+     */
+    public ConcurrentMultiValueDictionary(Map<String, Set<String>> dictionary) {
+        this();
+        for (Map.Entry<String, Set<String>> entry : dictionary.entrySet()) {
+            Set<String> members = newMemberSet();
+            members.addAll(entry.getValue());
+            this.dictionary.put(entry.getKey(), members);
+        }
+        recountMembers();
+    }
+
+    /**
+     * Atomically adds a new member to a key, or a new key-member pair if the key does not already exist. A member
+     * that is already there is reported without locking the key
+     * @param key key to add a member to
+     * @param member member to add
+     * @return true if the member was added, false if the key already held it
+     */
+    @Override
+    public boolean tryAdd(String key, String member) {
+        long start = startTimer();
+        try {
+            expireIfDue(key);
+            ensureWritable();
+            Set<String> existing = dictionary.get(key);
+            if (existing != null && existing.contains(member)) {
+                return false;
+            }
+            boolean[] added = new boolean[1];
+            dictionary.compute(key, (k, current) -> {
+                if (current != null && current.contains(member)) {
+                    return current;
+                }
+                Set<String> members = current == null ? newMemberSet() : writableMembers(key, current);
+                members.add(member);
+                added[0] = true;
+                fireAdded(key, member);
+                return members;
+            });
+            if (added[0]) {
+                evictIfNeeded(key);
+            }
+            return added[0];
+        } finally {
+            syncWriteAheadLog();
+            stopTimer(Metrics.Operation.ADD, start);
+        }
+    }
+
+    /**
+     * Atomically adds several members to a key, creating the key if it does not already exist. Members the key
+     * already holds are skipped, and the key is locked once for all of them
+     * @param key key to add the members to
+     * @param members members to add
+     * @return number of members that were added
+     */
+    @Override
+    public int addAll(String key, Collection<String> members) {
+        long start = startTimer();
+        try {
+            expireIfDue(key);
+            ensureWritable();
+            int[] added = new int[1];
+            dictionary.compute(key, (k, current) -> {
+                Set<String> target = current;
+                boolean writable = false;
+                for (String member : members) {
+                    if (target == null) {
+                        target = newMemberSet();
+                        writable = true;
+                    } else if (target.contains(member)) {
+                        continue;
+                    } else if (!writable) {
+                        target = writableMembers(key, target);
+                        writable = true;
+                    }
+                    target.add(member);
+                    fireAdded(key, member);
+                    added[0]++;
+                }
+                return target;
+            });
+            if (added[0] > 0) {
+                evictIfNeeded(key);
+            }
+            return added[0];
+        } finally {
+            syncWriteAheadLog();
+            stopTimer(Metrics.Operation.ADD_ALL, start);
+        }
+    }
+
+    /**
+     * Atomically removes desired member from the desired key, removing the key along with its last member. A
+     * missing key or member is reported without locking the key
+     * @param key key to remove member from
+     * @param member member to remove
+     * @return true if the member was removed, false if the key or member does not exist
+     */
+    @Override
+    public boolean tryRemove(String key, String member) {
+        long start = startTimer();
+        try {
+            expireIfDue(key);
+            ensureWritable();
+            Set<String> existing = dictionary.get(key);
+            if (existing == null || !existing.contains(member)) {
+                return false;
+            }
+            boolean[] removed = new boolean[1];
+            dictionary.computeIfPresent(key, (k, current) -> {
+                if (!current.contains(member)) {
+                    return current;
+                }
+                Set<String> members = writableMembers(key, current);
+                members.remove(member);
+                removed[0] = true;
+                fireRemoved(key, member);
+                return members.isEmpty() ? null : members;
+            });
+            return removed[0];
+        } finally {
+            syncWriteAheadLog();
+            stopTimer(Metrics.Operation.REMOVE, start);
+        }
+    }
+
+    /**
+     * Atomically removes all members of the desired key as well as the key itself. A missing key is reported without
+     * locking it
+     * @param key key to remove
+     * @return true if the key was removed, false if it does not exist
+     */
+    @Override
+    public boolean tryRemoveAll(String key) {
+        long start = startTimer();
+        try {
+            expireIfDue(key);
+            ensureWritable();
+            if (!dictionary.containsKey(key)) {
+                return false;
+            }
+            boolean[] removed = new boolean[1];
+            dictionary.computeIfPresent(key, (k, members) -> {
+                removed[0] = true;
+                fireRemovedAll(key, members);
+                return null;
+            });
+            return removed[0];
+        } finally {
+            syncWriteAheadLog();
+            stopTimer(Metrics.Operation.REMOVE_ALL, start);
+        }
+    }
+
+    /**
+     * Clears entire multi-value dictionary. Each key is removed atomically, but keys added while the clear is running
+     * may survive it
+     */
+    @Override
+    public void clear() {
+        long start = startTimer();
+        try {
+            ensureWritable();
+            for (String key : dictionary.keySet()) {
+                dictionary.computeIfPresent(key, (k, members) -> {
+                    fireRemovedAll(key, members);
+                    return null;
+                });
+            }
+        } finally {
+            syncWriteAheadLog();
+            stopTimer(Metrics.Operation.CLEAR, start);
+        }
+    }
+
+    /**
+     * Checks whether or not the key in question exist in the multi-value dictionary
+     * @param key key to verify
+     * @return true if the key exists, false otherwise
+     */
+    @Override
+    public boolean keyExists(String key) {
+        long start = startTimer();
+        try {
+            expireIfDue(key);
+            return dictionary.containsKey(key);
+        } finally {
+            stopTimer(Metrics.Operation.KEY_EXISTS, start);
+        }
+    }
+
+    /**
+     * Checks whether or not the desired member exists for a specific key in the multi-value dictionary
+     * @param key key whose members will be checked for existence of a desired member
+     * @param member member to verify
+     * @return true if the desired member exists for the key in question, false otherwise
+     */
+    @Override
+    public boolean valueExists(String key, String member) {
+        long start = startTimer();
+        try {
+            expireIfDue(key);
+            recordAccess(key);
+            Set<String> members = dictionary.get(key);
+            return members != null && members.contains(member);
+        } finally {
+            stopTimer(Metrics.Operation.VALUE_EXISTS, start);
+        }
+    }
+
+    /**
+     * Obtains all members across all keys in the multi-value dictionary
+     * @return list of all members across all keys in the multi-value dictionary
+     */
+    @Override
+    public List<String> getAllMembers() {
+        long start = startTimer();
+        try {
+            List<String> allMembers = new ArrayList<>();
+            for (Set<String> members : dictionary.values()) {
+                allMembers.addAll(members);
+            }
+            return allMembers.isEmpty() ? null : allMembers;
+        } finally {
+            stopTimer(Metrics.Operation.GET_ALL_MEMBERS, start);
+        }
+    }
+
+    /**
+     * Copies the key references of the dictionary into a view one key at a time, each under the lock writers of that
+     * key hold, so that a write either completes before its key is copied or sees the view and copies the set. Each
+     * key is copied at its own moment, so the view is consistent per key but not a single point in time across keys:
+     * of two writes to different keys, it may hold the later one and miss the earlier
+     * @param current dictionary to copy
+     * @param view empty map to copy into
+     */
+    @Override
+    protected void captureView(Map<String, Set<String>> current, Map<String, Set<String>> view) {
+        for (String key : current.keySet()) {
+            current.computeIfPresent(key, (k, members) -> {
+                view.put(k, members);
+                return members;
+            });
+        }
+    }
+
+    /**
+     * Replays an existing write-ahead log into the dictionary and then appends every further mutation to it. Records
+     * are appended while the key is locked, but the fsyncs the policy calls for run once each mutation has released
+     * its lock, so a slow disk never stalls other writers to keys sharing the lock
+     * @param path log file; created if it does not exist
+     * @param policy when appended records are forced to disk
+     * @return open write-ahead log
+     * @throws IOException log could not be replayed or opened
+     */
+    @Override
+    public WriteAheadLog enableWriteAheadLog(Path path, WriteAheadLog.SyncPolicy policy) throws IOException {
+        WriteAheadLog log = super.enableWriteAheadLog(path, policy);
+        log.deferSyncs();
+        return log;
+    }
+
+    /**
+     * Writes a binary snapshot of a view of the dictionary, replacing the file atomically. Writers carry on while the
+     * snapshot is written, such as a replica applying its primary's stream, and each key is saved as of the moment
+     * the view copied it
+     * @param path file to write the snapshot to
+     * @throws IOException snapshot could not be written
+     */
+    @Override
+    public void saveSnapshot(Path path) throws IOException {
+        snapshotView().saveSnapshot(path);
+    }
+
+    /**
+     * Streams every mutation from now on to replicas connecting on a port, sending each a full snapshot first. The
+     * caller owns the returned primary and closes it on shutdown
+     * @param port port to listen for replicas on, or 0 for any free port
+     * @return running replication primary
+     * @throws IOException port could not be bound
+     */
+    public synchronized ReplicationPrimary enableReplication(int port) throws IOException {
+        ReplicationPrimary primary = new ReplicationPrimary(this, port);
+        addListener(primary);
+        replicationPrimary = primary;
+        return primary;
+    }
+
+    /**
+     * Determines whether mutations are streamed to replicas. Contents replaced by loadSnapshot are not streamed, so
+     * snapshots should not be loaded while it is
+     * @return true once replication has been enabled
+     */
+    public boolean isReplicationEnabled() {
+        return replicationPrimary != null;
+    }
+
+    /**
+     * Makes this dictionary a replica of a primary from now on: its contents are replaced by the primary's at the
+     * first full sync and follow every mutation of the primary after that. The caller owns the returned client and
+     * closes it on shutdown
+     * @param host host of the primary
+     * @param port replication port of the primary
+     * @return running replica client
+     */
+    public synchronized ReplicaClient replicateFrom(String host, int port) {
+        ReplicaClient client = new ReplicaClient(this, host, port);
+        replicaClient = client;
+        return client;
+    }
+
+    /**
+     * Hands the metrics of the base dictionary to an exporter, followed by the progress of replication if this
+     * dictionary is a primary or a replica
+     * @param exporter exporter to hand the metrics to
+     */
+    @Override
+    public void exportMetrics(MetricsExporter exporter) {
+        super.exportMetrics(exporter);
+        ReplicationPrimary primary = replicationPrimary;
+        if (primary != null) {
+            exporter.gauge("replicas", primary.getReplicaCount());
+            exporter.gauge("replicationSequence", primary.getSequence());
+            exporter.gauge("replicationFullSyncs", primary.getFullSyncs());
+        }
+        ReplicaClient client = replicaClient;
+        if (client != null) {
+            exporter.gauge("replicationSynced", client.isSynced() ? 1 : 0);
+            exporter.gauge("replicationSequence", client.getAppliedSequence());
+            exporter.gauge("replicationLagRecords", client.getLagRecords());
+            exporter.gauge("replicationLagMillis", client.getLagMillis());
+            exporter.gauge("replicationFullSyncs", client.getFullSyncs());
+        }
+    }
+
+    /**
+     * Creates an empty concurrent map to hold the dictionary
+     * @param expectedKeys number of keys the map should hold without resizing
+     * @return empty map
+     */
+    @Override
+    protected Map<String, Set<String>> newDictionary(int expectedKeys) {
+        return new ConcurrentHashMap<>(Math.max(16, expectedKeys));
+    }
+
+    /**
+     * Leaves the map as it is: other threads may be writing to it, so it cannot be swapped for a larger one
+     * @param expectedKeys number of keys about to be added
+     */
+    @Override
+    protected void presize(int expectedKeys) {
+    }
+
+    /**
+     * Creates an empty concurrent member set for a new key
+     * @return empty member set
+     */
+    @Override
+    protected Set<String> newMemberSet() {
+        return ConcurrentHashMap.newKeySet();
+    }
+}
@@ -0,0 +1,59 @@
+package org.multivaluedictionary;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Assigns keys to shards by consistent hashing. Each shard is placed on a ring of 64-bit hashes at many points, its
+ * virtual nodes, and a key belongs to the shard of the first point at or after the key's own hash. Adding or removing
+ * a shard only moves the keys between its points and their neighbours, about 1/N of them, and the virtual nodes keep
+ * every shard's share close to even. Lookups binary search a sorted array of points
+ */
+final class ConsistentHashRing {
+
+    /** Hash of every point on the ring, in ascending order */
+    private final long[] points;
+
+    /** Shard owning each point */
+    private final int[] owners;
+
+    /**
+     * Initializes the ring. A shard's points are derived from its name, so the same names always give the same ring
+     * @param shardNames unique name of each shard, in shard order
+     * @param virtualNodes points each shard is placed at
+     */
+    ConsistentHashRing(List<String> shardNames, int virtualNodes) {
+        if (shardNames.isEmpty() || virtualNodes <= 0) {
+            throw new IllegalArgumentException("a ring needs at least one shard and one virtual node per shard");
+        }
+        int count = shardNames.size() * virtualNodes;
+        long[] placed = new long[count];
+        Integer[] order = new Integer[count];
+        for (int shard = 0; shard < shardNames.size(); shard++) {
+            for (int node = 0; node < virtualNodes; node++) {
+                placed[shard * virtualNodes + node] = Hashing.hash64(shardNames.get(shard) + "#" + node);
+                order[shard * virtualNodes + node] = shard * virtualNodes + node;
+            }
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(placed[a], placed[b]));
+        points = new long[count];
+        owners = new int[count];
+        for (int i = 0; i < count; i++) {
+            points[i] = placed[order[i]];
+            owners[i] = order[i] / virtualNodes;
+        }
+    }
+
+    /**
+     * Finds the shard a key belongs to
+     * @param key key to place
+     * @return position of the owning shard in the list the ring was built from
+     */
+    int shardFor(String key) {
+        int index = Arrays.binarySearch(points, Hashing.hash64(key));
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return owners[index == points.length ? 0 : index];
+    }
+}
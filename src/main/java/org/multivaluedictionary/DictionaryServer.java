@@ -0,0 +1,333 @@
+package org.multivaluedictionary;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Serves the command set of the multi-value dictionary over TCP from a single non-blocking event loop. Clients send
+ * newline-terminated commands and may pipeline as many as they like; every complete command in a read is executed in
+ * order and their results are written back with a single flush. Because one thread executes every command, the
+ * shared dictionary needs no locking. Output printed to a connection from other threads, such as the changes a WATCH
+ * prints, is handed to the event loop when flushed and written on its next turn; a client that does not read it
+ * fast enough has its watches ended rather than its output grow without bound
+ */
+public class DictionaryServer implements Closeable {
+
+    /** Longest the event loop waits for network events before sweeping expired entries */
+    private static final long SWEEP_INTERVAL_MILLIS = 100;
+
+    /** Size of each connection's read buffer; longer command lines grow it */
+    private static final int READ_BUFFER_BYTES = 16 * 1024;
+
+    /** Longest command line accepted; a client sending a longer one is answered with an error and disconnected */
+    static final int MAX_LINE_BYTES = 1024 * 1024;
+
+    /** Most output waiting to be sent to one client, in characters, before a WATCH printing to it is ended */
+    private static final int MAX_PENDING_OUTPUT = 4 * 1024 * 1024;
+
+    /** Executes the commands of every connection */
+    private final CommandProcessor processor;
+
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+
+    /** Cleared by close to stop the event loop */
+    private volatile boolean running = true;
+
+    /** Thread running the event loop, or null until run is called */
+    private volatile Thread eventLoop;
+
+    /** Connections with output flushed from other threads, waiting for the event loop to write it */
+    private final Queue<Connection> pushed = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Binds the server to a port; commands are only served once run is called
+     * @param processor executes the commands of every connection
+     * @param port port to listen on, or 0 for any free port
+     * @throws IOException port could not be bound
+     */
+    public DictionaryServer(CommandProcessor processor, int port) throws IOException {
+        this.processor = processor;
+        this.selector = Selector.open();
+        this.serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port));
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    /**
+     * Obtains the port the server is listening on
+     * @return bound port
+     * @throws IOException port could not be read
+     */
+    public int getPort() throws IOException {
+        return ((InetSocketAddress) serverChannel.getLocalAddress()).getPort();
+    }
+
+    /**
+     * Runs the event loop on the calling thread until the server is closed. While no client is sending commands, the
+     * loop wakes up regularly to sweep expired entries
+     * @throws IOException selector failed
+     */
+    public void run() throws IOException {
+        eventLoop = Thread.currentThread();
+        try {
+            while (running) {
+                if (selector.select(SWEEP_INTERVAL_MILLIS) == 0) {
+                    processor.sweepExpired();
+                }
+                Connection flushed;
+                while ((flushed = pushed.poll()) != null) {
+                    try {
+                        flushed.flushResults();
+                    } catch (IOException ioe) {
+                        flushed.close();
+                    }
+                }
+                Iterator<SelectionKey> selected = selector.selectedKeys().iterator();
+                while (selected.hasNext()) {
+                    SelectionKey key = selected.next();
+                    selected.remove();
+                    try {
+                        if (key.isAcceptable()) {
+                            accept();
+                        } else {
+                            Connection connection = (Connection) key.attachment();
+                            if (key.isReadable()) {
+                                connection.read();
+                            }
+                            if (key.isValid() && key.isWritable()) {
+                                connection.write();
+                            }
+                        }
+                    } catch (IOException ioe) {
+                        close(key);
+                    }
+                }
+            }
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                close(key);
+            }
+            selector.close();
+        }
+    }
+
+    /**
+     * Stops the event loop, which then closes every connection and the listening socket
+     */
+    @Override
+    public void close() {
+        running = false;
+        selector.wakeup();
+    }
+
+    private static void close(SelectionKey key) throws IOException {
+        if (key.attachment() != null) {
+            ((Connection) key.attachment()).close();
+        } else {
+            key.cancel();
+            key.channel().close();
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel != null) {
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+            key.attach(new Connection(channel, key));
+        }
+    }
+
+    /**
+     * Buffers of one client connection
+     */
+    private class Connection {
+
+        private final SocketChannel channel;
+        private final SelectionKey key;
+        private ByteBuffer input = ByteBuffer.allocate(READ_BUFFER_BYTES);
+        private ByteBuffer output;
+        private CharBuffer line = CharBuffer.allocate(READ_BUFFER_BYTES);
+        private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        private final StringWriter results = new StringWriter();
+
+        /**
+         * Prints results into the buffer; a flush from another thread asks the event loop to write them, and the
+         * writer reports an error once too much output is waiting, which ends any WATCH printing to it
+         */
+        private final PrintWriter resultWriter = new PrintWriter(results) {
+            @Override
+            public void flush() {
+                super.flush();
+                if (Thread.currentThread() != eventLoop) {
+                    pushed.add(Connection.this);
+                    selector.wakeup();
+                }
+            }
+
+            @Override
+            public boolean checkError() {
+                return super.checkError() || unsent + results.getBuffer().length() > MAX_PENDING_OUTPUT;
+            }
+        };
+
+        /** Bytes of output not yet accepted by the socket, as last seen by the event loop */
+        private volatile int unsent;
+        private boolean closing;
+
+        Connection(SocketChannel channel, SelectionKey key) {
+            this.channel = channel;
+            this.key = key;
+        }
+
+        /**
+         * Reads what the client sent, executes every complete command in it and queues their results as one write.
+         * A line that fills the largest read buffer without ending is refused and the connection closed
+         * @throws IOException connection failed
+         */
+        void read() throws IOException {
+            if (!input.hasRemaining() && input.capacity() >= MAX_LINE_BYTES) {
+                resultWriter.println(") ERROR, command line longer than " + MAX_LINE_BYTES + " bytes\n");
+                closing = true;
+                input.clear();
+                flushResults();
+                return;
+            }
+            if (!input.hasRemaining()) {
+                ByteBuffer grown = ByteBuffer.allocate(input.capacity() * 2);
+                input.flip();
+                grown.put(input);
+                input = grown;
+            }
+            if (channel.read(input) < 0) {
+                closing = true;
+            }
+
+            input.flip();
+            byte[] bytes = input.array();
+            ByteBuffer lineBytes = input.duplicate();
+            int lineStart = 0;
+            for (int i = 0; i < input.limit() && !closing; i++) {
+                if (bytes[i] == '\n') {
+                    int lineEnd = i > lineStart && bytes[i - 1] == '\r' ? i - 1 : i;
+                    lineBytes.limit(lineEnd).position(lineStart);
+                    lineStart = i + 1;
+                    if (!processor.execute(decode(lineBytes), resultWriter)) {
+                        closing = true;
+                    }
+                }
+            }
+            input.position(closing ? input.limit() : lineStart);
+            input.compact();
+            flushResults();
+        }
+
+        /**
+         * Writes everything printed to the connection so far, as far as the socket accepts it
+         * @throws IOException connection failed
+         */
+        void flushResults() throws IOException {
+            if (key.isValid()) {
+                write();
+            }
+        }
+
+        /**
+         * Writes as much output as the socket accepts, waiting for writability if some is left. Results printed while
+         * earlier output is still being sent stay in the result buffer and are encoded as one write once it is sent
+         * @throws IOException connection failed
+         */
+        void write() throws IOException {
+            while (true) {
+                if (output == null || !output.hasRemaining()) {
+                    output = takeResults();
+                }
+                if (output == null) {
+                    break;
+                }
+                channel.write(output);
+                if (output.hasRemaining()) {
+                    break;
+                }
+            }
+            unsent = output == null ? 0 : output.remaining();
+            if (output != null) {
+                key.interestOps(SelectionKey.OP_WRITE);
+            } else if (closing) {
+                close();
+            } else {
+                key.interestOps(SelectionKey.OP_READ);
+            }
+        }
+
+        /**
+         * Encodes and empties everything printed to the connection since the last call
+         * @return encoded output, or null if nothing was printed
+         */
+        private ByteBuffer takeResults() {
+            synchronized (resultWriter) {
+                if (results.getBuffer().length() == 0) {
+                    return null;
+                }
+                byte[] encoded = results.toString().getBytes(StandardCharsets.UTF_8);
+                results.getBuffer().setLength(0);
+                return ByteBuffer.wrap(encoded);
+            }
+        }
+
+        /**
+         * Decodes one command line into the connection's reusable character buffer, growing it if the line is longer
+         * @param bytes UTF-8 bytes of the line, between position and limit
+         * @return decoded line, valid until the next line is decoded
+         */
+        private CharBuffer decode(ByteBuffer bytes) {
+            int start = bytes.position();
+            while (true) {
+                decoder.reset();
+                line.clear();
+                CoderResult result = decoder.decode(bytes, line, true);
+                if (!result.isOverflow()) {
+                    result = decoder.flush(line);
+                }
+                if (!result.isOverflow()) {
+                    line.flip();
+                    return line;
+                }
+                line = CharBuffer.allocate(line.capacity() * 2);
+                bytes.position(start);
+            }
+        }
+
+        /**
+         * Closes the connection and stops every WATCH printing to it
+         * @throws IOException connection could not be closed
+         */
+        void close() throws IOException {
+            key.cancel();
+            processor.stopWatches(resultWriter);
+            resultWriter.close();
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package org.multivaluedictionary;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Read-only point-in-time view of a multi-value dictionary. The view shares member sets with the dictionary until
+ * the dictionary next writes to them, when the dictionary copies the set first, so taking a view copies key
+ * references only and it never changes afterwards, however long it is read for and whatever writers do meanwhile.
+ * A view of a dictionary written to while the view was taken is consistent per key rather than across keys
+ */
+public final class DictionaryView {
+
+    /** Key-member(s) pairing as of when the view was taken; never modified */
+    private final Map<String, Set<String>> dictionary;
+
+    /**
+     * Initializes the view over a pairing that nothing will modify
+     * @param dictionary key-member(s) pairing as of when the view was taken
+     */
+    DictionaryView(Map<String, Set<String>> dictionary) {
+        this.dictionary = dictionary;
+    }
+
+    /**
+     * Obtains all keys in the view
+     * @return unmodifiable set of all keys, empty if there are none
+     */
+    public Set<String> getKeys() {
+        return Collections.unmodifiableSet(dictionary.keySet());
+    }
+
+    /**
+     * Obtains all members of a specific key in the view
+     * @param key key to obtain all members from
+     * @return unmodifiable set of all members of the key
+     * @throws NoSuchElementException key does not exist
+     */
+    public Set<String> getMembers(String key) throws NoSuchElementException {
+        Set<String> members = dictionary.get(key);
+        if (members == null) {
+            throw new NoSuchElementException("key does not exist");
+        }
+        return Collections.unmodifiableSet(members);
+    }
+
+    /**
+     * Checks whether or not the key in question exists in the view
+     * @param key key to verify
+     * @return true if the key exists, false otherwise
+     */
+    public boolean keyExists(String key) {
+        return dictionary.containsKey(key);
+    }
+
+    /**
+     * Checks whether or not the desired member exists for a specific key in the view
+     * @param key key whose members will be checked for existence of a desired member
+     * @param member member to verify
+     * @return true if the desired member exists for the key in question, false otherwise
+     */
+    public boolean valueExists(String key, String member) {
+        Set<String> members = dictionary.get(key);
+        return members != null && members.contains(member);
+    }
+
+    /**
+     * Obtains the number of keys in the view
+     * @return number of keys
+     */
+    public int size() {
+        return dictionary.size();
+    }
+
+    /**
+     * Obtains a lazy stream over all members across all keys in the view
+     * @return stream of all members, empty if there are none
+     */
+    public Stream<String> membersStream() {
+        return StreamSupport.stream(new MemberSpliterator(dictionary.values().spliterator()), false);
+    }
+
+    /**
+     * Obtains a lazy stream over all key-member(s) pairings in the view
+     * @return stream of pairings with unmodifiable member sets, empty if there are none
+     */
+    public Stream<Map.Entry<String, Set<String>>> entriesStream() {
+        return dictionary.entrySet().stream().map(entry ->
+                new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), Collections.unmodifiableSet(entry.getValue())));
+    }
+
+    /**
+     * Writes a binary snapshot of the view, replacing the file atomically. Writers to the dictionary carry on while
+     * the snapshot is written
+     * @param path file to write the snapshot to
+     * @throws IOException snapshot could not be written
+     */
+    public void saveSnapshot(Path path) throws IOException {
+        Snapshot.write(dictionary, path);
+    }
+
+    /**
+     * Performs an action for every key-member pair in the view
+     * @param action action to perform with each key and member
+     */
+    public void forEachItem(BiConsumer<String, String> action) {
+        for (Map.Entry<String, Set<String>> entry : dictionary.entrySet()) {
+            String key = entry.getKey();
+            for (String member : entry.getValue()) {
+                action.accept(key, member);
+            }
+        }
+    }
+}
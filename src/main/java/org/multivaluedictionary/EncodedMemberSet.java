@@ -0,0 +1,87 @@
+package org.multivaluedictionary;
+
+import java.util.AbstractSet;
+import java.util.Iterator;
+
+/**
+ * Member set that stores interned member ids in a primitive int set and decodes them back into strings only as they
+ * are read
+ */
+class EncodedMemberSet extends AbstractSet<String> {
+
+    /** Dictionary-wide member string table */
+    private final MemberDictionary memberDictionary;
+
+    /** Ids of the members of this key */
+    private final IntHashSet ids = new IntHashSet();
+
+    /**
+     * Initializes the member set to be empty upon creation
+     * @param memberDictionary dictionary-wide member string table
+     */
+    EncodedMemberSet(MemberDictionary memberDictionary) {
+        this.memberDictionary = memberDictionary;
+    }
+
+    @Override
+    public int size() {
+        return ids.size();
+    }
+
+    @Override
+    public boolean contains(Object member) {
+        if (!(member instanceof String)) {
+            return false;
+        }
+        int id = memberDictionary.idOf((String) member);
+        return id != MemberDictionary.NO_ID && ids.contains(id);
+    }
+
+    @Override
+    public boolean add(String member) {
+        return ids.add(memberDictionary.intern(member));
+    }
+
+    @Override
+    public boolean remove(Object member) {
+        if (!(member instanceof String)) {
+            return false;
+        }
+        int id = memberDictionary.idOf((String) member);
+        return id != MemberDictionary.NO_ID && ids.remove(id);
+    }
+
+    @Override
+    public void clear() {
+        ids.clear();
+    }
+
+    @Override
+    public Iterator<String> iterator() {
+        IntHashSet.Cursor cursor = ids.cursor();
+        return new Iterator<String>() {
+            @Override
+            public boolean hasNext() {
+                return cursor.hasNext();
+            }
+
+            @Override
+            public String next() {
+                return memberDictionary.decode(cursor.next());
+            }
+
+            @Override
+            public void remove() {
+                cursor.remove();
+            }
+        };
+    }
+
+    /**
+     * Estimates the heap held by this set, excluding the shared member dictionary
+     * @return estimated size in bytes
+     */
+    long estimatedBytes() {
+        return MemoryEstimator.OBJECT_HEADER_BYTES + 8 + ids.estimatedBytes();
+    }
+}
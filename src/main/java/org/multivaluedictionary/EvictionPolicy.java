@@ -0,0 +1,101 @@
+package org.multivaluedictionary;
+
+/**
+ * Chooses which key to evict once a multi-value dictionary is over its budget. Like Redis, policies do not keep keys
+ * in access order; each eviction looks at a small random sample of keys and evicts the best candidate among them,
+ * which approximates the exact policy closely at a fraction of its cost
+ */
+public interface EvictionPolicy {
+
+    /** Keys sampled per eviction by the built-in policies */
+    int DEFAULT_SAMPLES = 5;
+
+    /**
+     * Obtains how many keys are sampled for each eviction
+     * @return sample size, at least 1
+     */
+    int getSampleSize();
+
+    /**
+     * Compares two sampled keys
+     * @param candidate key just sampled
+     * @param current best victim sampled so far
+     * @return true if the candidate should be evicted rather than the current victim
+     */
+    boolean isBetterVictim(KeyUsage candidate, KeyUsage current);
+
+    /**
+     * Evicts the least recently used of the sampled keys
+     * @return eviction policy
+     */
+    static EvictionPolicy leastRecentlyUsed() {
+        return new EvictionPolicy() {
+            @Override
+            public int getSampleSize() {
+                return DEFAULT_SAMPLES;
+            }
+
+            @Override
+            public boolean isBetterVictim(KeyUsage candidate, KeyUsage current) {
+                return candidate.getLastAccessNanos() - current.getLastAccessNanos() < 0;
+            }
+        };
+    }
+
+    /**
+     * Evicts the least frequently used of the sampled keys, the least recently used of them on a tie
+     * @return eviction policy
+     */
+    static EvictionPolicy leastFrequentlyUsed() {
+        return new EvictionPolicy() {
+            @Override
+            public int getSampleSize() {
+                return DEFAULT_SAMPLES;
+            }
+
+            @Override
+            public boolean isBetterVictim(KeyUsage candidate, KeyUsage current) {
+                int byFrequency = Integer.compare(candidate.getFrequency(), current.getFrequency());
+                return byFrequency < 0
+                        || byFrequency == 0 && candidate.getLastAccessNanos() - current.getLastAccessNanos() < 0;
+            }
+        };
+    }
+
+    /**
+     * Evicts a random key
+     * @return eviction policy
+     */
+    static EvictionPolicy random() {
+        return new EvictionPolicy() {
+            @Override
+            public int getSampleSize() {
+                return 1;
+            }
+
+            @Override
+            public boolean isBetterVictim(KeyUsage candidate, KeyUsage current) {
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Parses an eviction policy as written on the command line: "lru", "lfu" or "random"
+     * @param value policy to parse
+     * @return eviction policy
+     * @throws IllegalArgumentException value is not an eviction policy
+     */
+    static EvictionPolicy parse(String value) throws IllegalArgumentException {
+        switch (value) {
+            case "lru":
+                return leastRecentlyUsed();
+            case "lfu":
+                return leastFrequentlyUsed();
+            case "random":
+                return random();
+            default:
+                throw new IllegalArgumentException("unsupported eviction policy " + value);
+        }
+    }
+}
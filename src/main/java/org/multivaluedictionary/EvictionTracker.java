@@ -0,0 +1,300 @@
+package org.multivaluedictionary;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps a multi-value dictionary within a budget of members and estimated bytes by evicting whole keys. Sizes are
+ * kept up to date as a mutation listener. Reads only stamp the usage of their key, without locking or allocating;
+ * the stamp is the time of the most recent write, so recency is as fine-grained as the writes that can cause an
+ * eviction. Keys are also kept in an array so that evictions can sample them at random
+ */
+class EvictionTracker implements MutationListener {
+
+    /** Frequency a new key starts at, so it is not evicted before it has had a chance to be used */
+    private static final int INITIAL_FREQUENCY = 5;
+
+    /** Highest frequency; reaching it takes about a million accesses */
+    private static final int MAX_FREQUENCY = 255;
+
+    /** How quickly incrementing the frequency gets less likely as it grows */
+    private static final int FREQUENCY_LOG_FACTOR = 10;
+
+    /** Time without use after which the frequency drops by one */
+    private static final long FREQUENCY_DECAY_NANOS = 60_000_000_000L;
+
+    /** Estimated heap of a key beyond its string: the map entry and an empty member set */
+    private static final long KEY_OVERHEAD_BYTES = MemoryEstimator.HASH_ENTRY_BYTES + MemoryEstimator.HASH_SET_BYTES;
+
+    private final MultiValueDictionary owner;
+    private final EvictionPolicy policy;
+    private final long maxMembers;
+    private final long maxBytes;
+
+    /** Usage of each key */
+    private final Map<String, Usage> usageByKey = new ConcurrentHashMap<>();
+
+    /** Usage of each key again, for sampling; guarded by this */
+    private Usage[] sampleable = new Usage[16];
+    private int keyCount;
+
+    private final AtomicLong members = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private final LongAdder evictedKeys = new LongAdder();
+    private final LongAdder evictedMembers = new LongAdder();
+
+    /** System.nanoTime of the most recent write, used to stamp accesses */
+    private volatile long clock = System.nanoTime();
+
+    /**
+     * Initializes the tracker from the current contents of a multi-value dictionary
+     * @param owner multi-value dictionary to keep within budget
+     * @param dictionary its current key-member(s) pairing
+     * @param policy chooses which key to evict
+     * @param maxMembers most members across all keys
+     * @param maxBytes most estimated bytes held by keys and members
+     */
+    EvictionTracker(MultiValueDictionary owner, Map<String, Set<String>> dictionary, EvictionPolicy policy,
+                    long maxMembers, long maxBytes) {
+        this.owner = owner;
+        this.policy = policy;
+        this.maxMembers = maxMembers;
+        this.maxBytes = maxBytes;
+        for (Map.Entry<String, Set<String>> entry : dictionary.entrySet()) {
+            for (String member : entry.getValue()) {
+                added(entry.getKey(), member);
+            }
+        }
+    }
+
+    /**
+     * Creates a tracker with the same budget and eviction counts over new contents
+     * @param dictionary new key-member(s) pairing
+     * @return rebuilt tracker
+     */
+    EvictionTracker rebuild(Map<String, Set<String>> dictionary) {
+        EvictionTracker rebuilt = new EvictionTracker(owner, dictionary, policy, maxMembers, maxBytes);
+        rebuilt.evictedKeys.add(evictedKeys.sum());
+        rebuilt.evictedMembers.add(evictedMembers.sum());
+        return rebuilt;
+    }
+
+    /**
+     * Records a read of a key
+     * @param key key that was read
+     */
+    void touch(String key) {
+        Usage usage = usageByKey.get(key);
+        if (usage != null) {
+            usage.access(clock);
+        }
+    }
+
+    /**
+     * Evicts keys chosen by the policy until the dictionary is within budget again
+     * @param protectedKey key that was just written and is only evicted if it is the last one, or null
+     */
+    void evictIfNeeded(String protectedKey) {
+        while (members.get() > maxMembers || bytes.get() > maxBytes) {
+            Usage victim = chooseVictim(protectedKey);
+            if (victim == null) {
+                return;
+            }
+            int memberCount = victim.memberCount;
+            if (owner.tryRemoveAll(victim.key)) {
+                evictedKeys.increment();
+                evictedMembers.add(memberCount);
+            }
+        }
+    }
+
+    long getEvictedKeys() {
+        return evictedKeys.sum();
+    }
+
+    long getEvictedMembers() {
+        return evictedMembers.sum();
+    }
+
+    long getEstimatedBytes() {
+        return bytes.get();
+    }
+
+    @Override
+    public void added(String key, String member) {
+        long now = System.nanoTime();
+        clock = now;
+        Usage usage = usageByKey.get(key);
+        if (usage == null) {
+            usage = new Usage(key, now);
+            usageByKey.put(key, usage);
+            register(usage);
+        }
+        long memberBytes = MemoryEstimator.stringBytes(member) + MemoryEstimator.HASH_ENTRY_BYTES;
+        usage.memberCount++;
+        usage.bytes += memberBytes;
+        usage.access(now);
+        members.incrementAndGet();
+        bytes.addAndGet(memberBytes);
+    }
+
+    @Override
+    public void removed(String key, String member) {
+        Usage usage = usageByKey.get(key);
+        if (usage == null) {
+            return;
+        }
+        long memberBytes = MemoryEstimator.stringBytes(member) + MemoryEstimator.HASH_ENTRY_BYTES;
+        usage.memberCount--;
+        usage.bytes -= memberBytes;
+        members.decrementAndGet();
+        bytes.addAndGet(-memberBytes);
+        if (usage.memberCount <= 0) {
+            forget(usage);
+        }
+    }
+
+    @Override
+    public void removedAll(String key, Set<String> members) {
+        Usage usage = usageByKey.get(key);
+        if (usage != null) {
+            this.members.addAndGet(-usage.memberCount);
+            bytes.addAndGet(-(usage.bytes - usage.keyBytes));
+            forget(usage);
+        }
+    }
+
+    @Override
+    public synchronized void cleared() {
+        usageByKey.clear();
+        Arrays.fill(sampleable, 0, keyCount, null);
+        keyCount = 0;
+        members.set(0);
+        bytes.set(0);
+    }
+
+    /**
+     * Samples keys and lets the policy choose among them
+     * @param protectedKey key not to choose unless it is the only one
+     * @return key usage of the victim, or null if there are no keys
+     */
+    private synchronized Usage chooseVictim(String protectedKey) {
+        if (keyCount == 0) {
+            return null;
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int sampleSize = policy.getSampleSize();
+        Usage victim = null;
+        for (int sampled = 0, attempts = 0; sampled < sampleSize && attempts < sampleSize * 4; attempts++) {
+            Usage candidate = sampleable[random.nextInt(keyCount)];
+            if (keyCount > 1 && candidate.key.equals(protectedKey)) {
+                continue;
+            }
+            sampled++;
+            if (victim == null || policy.isBetterVictim(candidate, victim)) {
+                victim = candidate;
+            }
+        }
+        return victim;
+    }
+
+    private synchronized void register(Usage usage) {
+        if (keyCount == sampleable.length) {
+            sampleable = Arrays.copyOf(sampleable, keyCount * 2);
+        }
+        usage.index = keyCount;
+        sampleable[keyCount++] = usage;
+        bytes.addAndGet(usage.keyBytes);
+    }
+
+    /**
+     * Stops tracking a key that has gone, moving the last sampleable key into its place
+     * @param usage usage of the key
+     */
+    private synchronized void forget(Usage usage) {
+        if (!usageByKey.remove(usage.key, usage)) {
+            return;
+        }
+        Usage last = sampleable[--keyCount];
+        sampleable[usage.index] = last;
+        last.index = usage.index;
+        sampleable[keyCount] = null;
+        bytes.addAndGet(-usage.keyBytes);
+    }
+
+    /**
+     * Usage of one key. Sizes are written by mutations of the key, which never run at once for the same key; access
+     * figures are written racily by readers, which at worst loses an increment
+     */
+    private static class Usage implements KeyUsage {
+
+        final String key;
+        final long keyBytes;
+        int memberCount;
+        long bytes;
+        long lastAccess;
+        int frequency = INITIAL_FREQUENCY;
+
+        /** Position in the sampleable array; guarded by the tracker */
+        int index;
+
+        Usage(String key, long now) {
+            this.key = key;
+            this.keyBytes = MemoryEstimator.stringBytes(key) + KEY_OVERHEAD_BYTES;
+            this.bytes = keyBytes;
+            this.lastAccess = now;
+        }
+
+        /**
+         * Records an access: decays the frequency for the time since the last one, then increments it with a
+         * probability that falls as it grows
+         * @param now time of the access
+         */
+        void access(long now) {
+            int decayed = decayedFrequency(now);
+            if (decayed < MAX_FREQUENCY) {
+                int base = Math.max(0, decayed - INITIAL_FREQUENCY);
+                if (ThreadLocalRandom.current().nextInt(base * FREQUENCY_LOG_FACTOR + 1) == 0) {
+                    decayed++;
+                }
+            }
+            frequency = decayed;
+            lastAccess = now;
+        }
+
+        private int decayedFrequency(long now) {
+            long periods = (now - lastAccess) / FREQUENCY_DECAY_NANOS;
+            return periods <= 0 ? frequency : (int) Math.max(0, frequency - periods);
+        }
+
+        @Override
+        public String getKey() {
+            return key;
+        }
+
+        @Override
+        public long getLastAccessNanos() {
+            return lastAccess;
+        }
+
+        @Override
+        public int getFrequency() {
+            return decayedFrequency(System.nanoTime());
+        }
+
+        @Override
+        public int getMemberCount() {
+            return memberCount;
+        }
+
+        @Override
+        public long getEstimatedBytes() {
+            return bytes;
+        }
+    }
+}
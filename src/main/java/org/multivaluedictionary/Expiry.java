@@ -0,0 +1,274 @@
+package org.multivaluedictionary;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Time to live of keys and members of one multi-value dictionary. A deadline belongs to the member set the key had
+ * when it was set, so a key that is removed and added again starts without one; a copy made of the set for a view
+ * takes its deadlines over. Expired entries are removed through
+ * the dictionary's own remove and removeAll, so every listener sees them go, either lazily when the key is next used
+ * or by the sweeper in small batches taken from a timing wheel
+ */
+class Expiry implements MutationListener {
+
+    /** Resolution of the timing wheel */
+    private static final long TICK_MILLIS = 10;
+
+    /** Multi-value dictionary whose entries expire */
+    private final MultiValueDictionary owner;
+
+    /** Milliseconds of a monotonic clock */
+    private final LongSupplier clock;
+
+    /** Clock reading that deadlines are measured from */
+    private final long origin;
+
+    /** Deadline of each key with a time to live */
+    private final Map<String, Deadline> keyDeadlines = new ConcurrentHashMap<>();
+
+    /** Deadlines of the members with a time to live, by key */
+    private final Map<String, MemberDeadlines> memberDeadlines = new ConcurrentHashMap<>();
+
+    /** Keys to look at once their earliest deadline passes; guarded by itself */
+    private final TimingWheel wheel = new TimingWheel(TICK_MILLIS);
+
+    /**
+     * Set while the current thread removes expired entries, whose removals call back into expireIfDue; they are left
+     * alone so that many members expiring together do not recurse once per member
+     */
+    private final ThreadLocal<boolean[]> expiring = ThreadLocal.withInitial(() -> new boolean[1]);
+
+    /**
+     * Initializes expiry with no deadlines
+     * @param owner multi-value dictionary whose entries expire
+     * @param clock milliseconds of a monotonic clock
+     */
+    Expiry(MultiValueDictionary owner, LongSupplier clock) {
+        this.owner = owner;
+        this.clock = clock;
+        this.origin = clock.getAsLong();
+    }
+
+    /**
+     * Sets the time to live of a key, replacing any it had
+     * @param key key to expire
+     * @param members current member set of the key
+     * @param ttlMillis milliseconds from now until the key expires
+     */
+    void expireKey(String key, Set<String> members, long ttlMillis) {
+        long deadline = now() + ttlMillis;
+        keyDeadlines.put(key, new Deadline(members, deadline));
+        schedule(key, deadline);
+    }
+
+    /**
+     * Sets the time to live of one member of a key, replacing any it had
+     * @param key key holding the member
+     * @param members current member set of the key
+     * @param member member to expire
+     * @param ttlMillis milliseconds from now until the member expires
+     */
+    void expireMember(String key, Set<String> members, String member, long ttlMillis) {
+        long deadline = now() + ttlMillis;
+        MemberDeadlines deadlines = memberDeadlines.compute(key, (k, current) ->
+                current == null || !current.isFor(members) ? new MemberDeadlines(members) : current);
+        deadlines.byMember.put(member, deadline);
+        schedule(key, deadline);
+    }
+
+    /**
+     * Removes a key, or those of its members, whose time to live has run out. Does nothing when called back from the
+     * removals it makes itself
+     * @param key key to check
+     * @return number of members removed
+     */
+    int expireIfDue(String key) {
+        boolean[] active = expiring.get();
+        if (active[0]) {
+            return 0;
+        }
+        active[0] = true;
+        try {
+            return removeExpired(key);
+        } finally {
+            active[0] = false;
+        }
+    }
+
+    private int removeExpired(String key) {
+        Map<String, Set<String>> dictionary = owner.dictionary;
+        long now = now();
+        Deadline keyDeadline = keyDeadlines.get(key);
+        if (keyDeadline != null) {
+            Set<String> members = dictionary.get(key);
+            if (!keyDeadline.isFor(members)) {
+                keyDeadlines.remove(key, keyDeadline);
+            } else if (keyDeadline.deadline <= now && keyDeadlines.remove(key, keyDeadline)) {
+                int size = members.size();
+                return owner.tryRemoveAll(key) ? size : 0;
+            }
+        }
+
+        MemberDeadlines deadlines = memberDeadlines.get(key);
+        int removed = 0;
+        if (deadlines != null) {
+            if (!deadlines.isFor(dictionary.get(key))) {
+                memberDeadlines.remove(key, deadlines);
+                return 0;
+            }
+            for (Map.Entry<String, Long> entry : deadlines.byMember.entrySet()) {
+                if (entry.getValue() <= now && deadlines.byMember.remove(entry.getKey(), entry.getValue())) {
+                    if (owner.tryRemove(key, entry.getKey())) {
+                        removed++;
+                    }
+                }
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Removes expired entries of the keys whose deadlines have passed, looking at no more than a bounded number of
+     * deadlines so that a burst of expiries is spread over several sweeps
+     * @param maxDeadlines most deadlines to look at
+     * @return number of members removed
+     */
+    int sweep(int maxDeadlines) {
+        List<String> due;
+        synchronized (wheel) {
+            if (wheel.size() == 0) {
+                return 0;
+            }
+            due = wheel.poll(now(), maxDeadlines);
+        }
+        int removed = 0;
+        for (String key : due) {
+            removed += expireIfDue(key);
+        }
+        return removed;
+    }
+
+    /**
+     * Moves the deadlines of a member set onto a copy of it that is about to replace it under its key. Until the copy
+     * is stored, the set it replaces still counts as theirs
+     * @param key key of the members
+     * @param members member set being replaced
+     * @param copy copy replacing it
+     */
+    void memberSetCopied(String key, Set<String> members, Set<String> copy) {
+        Deadline keyDeadline = keyDeadlines.get(key);
+        if (keyDeadline != null && keyDeadline.isFor(members)) {
+            keyDeadline.rebind(copy);
+        }
+        MemberDeadlines deadlines = memberDeadlines.get(key);
+        if (deadlines != null && deadlines.isFor(members)) {
+            deadlines.rebind(copy);
+        }
+    }
+
+    @Override
+    public void added(String key, String member) {
+    }
+
+    @Override
+    public void removed(String key, String member) {
+        MemberDeadlines deadlines = memberDeadlines.get(key);
+        if (deadlines != null) {
+            deadlines.byMember.remove(member);
+        }
+    }
+
+    @Override
+    public void removedAll(String key, Set<String> members) {
+        keyDeadlines.remove(key);
+        memberDeadlines.remove(key);
+    }
+
+    @Override
+    public void cleared() {
+        keyDeadlines.clear();
+        memberDeadlines.clear();
+    }
+
+    /**
+     * Checks whether two member sets are the same set, counting two views of the same off-heap key record as one
+     * @param current member set the key has now, or null
+     * @param recorded member set a deadline was set on
+     * @return true if they are the same set
+     */
+    private static boolean sameMemberSet(Set<String> current, Set<String> recorded) {
+        return current == recorded || current instanceof OffHeapDictionary.OffHeapMemberSet
+                && ((OffHeapDictionary.OffHeapMemberSet) current).isSameSet(recorded);
+    }
+
+    private void schedule(String key, long deadline) {
+        synchronized (wheel) {
+            wheel.schedule(key, deadline);
+        }
+    }
+
+    private long now() {
+        return clock.getAsLong() - origin;
+    }
+
+    /**
+     * Member set deadlines are tied to, and the set it replaced through a copy, which remains valid for as long as it
+     * may still be stored under the key
+     */
+    private static class BoundSet {
+
+        private volatile Set<String> members;
+        private volatile Set<String> replaced;
+
+        BoundSet(Set<String> members) {
+            this.members = members;
+        }
+
+        /**
+         * Checks whether the deadlines belong to the member set a key has now
+         * @param current member set of the key, or null
+         * @return true if it is the bound set or the one it replaced
+         */
+        boolean isFor(Set<String> current) {
+            return current != null && (sameMemberSet(current, members) || current == replaced);
+        }
+
+        /**
+         * Binds the deadlines to a copy of the bound set
+         * @param copy copy about to replace the bound set
+         */
+        void rebind(Set<String> copy) {
+            replaced = members;
+            members = copy;
+        }
+    }
+
+    /**
+     * Deadline of a key, tied to the member set it was set on
+     */
+    private static class Deadline extends BoundSet {
+
+        final long deadline;
+
+        Deadline(Set<String> members, long deadline) {
+            super(members);
+            this.deadline = deadline;
+        }
+    }
+
+    /**
+     * Deadlines of the members of a key, tied to the member set they were set on
+     */
+    private static class MemberDeadlines extends BoundSet {
+
+        final Map<String, Long> byMember = new ConcurrentHashMap<>();
+
+        MemberDeadlines(Set<String> members) {
+            super(members);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package org.multivaluedictionary;
+
+/**
+ * Interfaces of the reactive streams protocol, with the same shape and rules as java.util.concurrent.Flow, which only
+ * exists from Java 9. A publisher sends a subscriber items only as fast as the subscriber asks for them through its
+ * subscription, so a slow subscriber slows its own stream rather than the publisher
+ */
+public final class Flow {
+
+    private Flow() {
+    }
+
+    /**
+     * Produces items for any number of subscribers
+     * @param <T> type of the items published
+     */
+    public interface Publisher<T> {
+
+        /**
+         * Adds a subscriber, which is handed its subscription through onSubscribe before anything else
+         * @param subscriber subscriber to add
+         */
+        void subscribe(Subscriber<? super T> subscriber);
+    }
+
+    /**
+     * Receives the items of one subscription. The methods of one subscriber are never called concurrently
+     * @param <T> type of the items received
+     */
+    public interface Subscriber<T> {
+
+        /**
+         * Called once, before any other method, with the subscription used to ask for items
+         * @param subscription subscription of this subscriber
+         */
+        void onSubscribe(Subscription subscription);
+
+        /**
+         * Called with the next item, only ever as many times as items were requested
+         * @param item next item
+         */
+        void onNext(T item);
+
+        /**
+         * Called once if the subscription fails; nothing is called after it
+         * @param throwable reason for the failure
+         */
+        void onError(Throwable throwable);
+
+        /**
+         * Called once when the publisher has no more items; nothing is called after it
+         */
+        void onComplete();
+    }
+
+    /**
+     * Link between a publisher and one of its subscribers
+     */
+    public interface Subscription {
+
+        /**
+         * Asks for more items, adding to any requested but not yet delivered. Requesting Long.MAX_VALUE items removes
+         * the limit
+         * @param n number of further items, which must be positive
+         */
+        void request(long n);
+
+        /**
+         * Stops delivering items; items already on their way may still arrive
+         */
+        void cancel();
+    }
+}
@@ -0,0 +1,131 @@
+package org.multivaluedictionary;
+
+/**
+ * Glob pattern over keys, in the syntax of Redis KEYS: {@code *} matches any run of characters, {@code ?} any one
+ * character, {@code [abc]}, {@code [a-z]} and {@code [^a]} a character in or out of a set, and a backslash makes the
+ * next character literal
+ */
+final class GlobPattern {
+
+    private final String pattern;
+
+    /** Characters every match starts with, up to the first wildcard */
+    private final String literalPrefix;
+
+    /** Whether the pattern is its literal prefix followed by a single trailing star */
+    private final boolean prefixOnly;
+
+    /**
+     * Compiles a pattern
+     * @param pattern glob pattern
+     */
+    GlobPattern(String pattern) {
+        this.pattern = pattern;
+        StringBuilder prefix = new StringBuilder();
+        int i = 0;
+        while (i < pattern.length()) {
+            char c = pattern.charAt(i);
+            if (c == '*' || c == '?' || c == '[') {
+                break;
+            }
+            if (c == '\\' && i + 1 < pattern.length()) {
+                c = pattern.charAt(++i);
+            }
+            prefix.append(c);
+            i++;
+        }
+        this.literalPrefix = prefix.toString();
+        this.prefixOnly = i == pattern.length() - 1 && pattern.charAt(i) == '*';
+    }
+
+    /**
+     * Obtains the characters every matching key starts with, so that only keys with that prefix need checking
+     * @return literal prefix of the pattern, empty if it starts with a wildcard
+     */
+    String getLiteralPrefix() {
+        return literalPrefix;
+    }
+
+    /**
+     * Determines whether a key matches the pattern
+     * @param key key to check
+     * @return true if the whole key matches
+     */
+    boolean matches(String key) {
+        if (prefixOnly) {
+            return key.startsWith(literalPrefix);
+        }
+        int p = 0;
+        int k = 0;
+        int starP = -1;
+        int starK = -1;
+        while (k < key.length()) {
+            if (p < pattern.length() && pattern.charAt(p) == '*') {
+                starP = p++;
+                starK = k;
+                continue;
+            }
+            int next = p < pattern.length() ? matchOne(p, key.charAt(k)) : -1;
+            if (next >= 0) {
+                p = next;
+                k++;
+            } else if (starP >= 0) {
+                p = starP + 1;
+                k = ++starK;
+            } else {
+                return false;
+            }
+        }
+        while (p < pattern.length() && pattern.charAt(p) == '*') {
+            p++;
+        }
+        return p == pattern.length();
+    }
+
+    /**
+     * Matches one character against the pattern element at a position, which must not be a star
+     * @param p position of the pattern element
+     * @param c character to match
+     * @return position after the element if it matches, or -1 if it does not
+     */
+    private int matchOne(int p, char c) {
+        char element = pattern.charAt(p);
+        if (element == '?') {
+            return p + 1;
+        }
+        if (element == '\\' && p + 1 < pattern.length()) {
+            return pattern.charAt(p + 1) == c ? p + 2 : -1;
+        }
+        if (element != '[') {
+            return element == c ? p + 1 : -1;
+        }
+        int i = p + 1;
+        boolean negated = i < pattern.length() && (pattern.charAt(i) == '^' || pattern.charAt(i) == '!');
+        if (negated) {
+            i++;
+        }
+        boolean found = false;
+        boolean first = true;
+        while (i < pattern.length() && (first || pattern.charAt(i) != ']')) {
+            first = false;
+            char low = pattern.charAt(i);
+            if (low == '\\' && i + 1 < pattern.length()) {
+                low = pattern.charAt(++i);
+            }
+            char high = low;
+            if (i + 2 < pattern.length() && pattern.charAt(i + 1) == '-' && pattern.charAt(i + 2) != ']') {
+                high = pattern.charAt(i + 2);
+                i += 2;
+            }
+            if (c >= Math.min(low, high) && c <= Math.max(low, high)) {
+                found = true;
+            }
+            i++;
+        }
+        if (i >= pattern.length()) {
+            // an unterminated set is matched as a literal bracket
+            return c == '[' ? p + 1 : -1;
+        }
+        return found != negated ? i + 1 : -1;
+    }
+}
@@ -0,0 +1,28 @@
+package org.multivaluedictionary;
+
+/**
+ * Hash functions shared by the structures that need more bits, or better mixed ones, than String.hashCode
+ */
+final class Hashing {
+
+    private Hashing() {
+    }
+
+    /**
+     * Hashes a string to 64 well-mixed bits: FNV-1a over its characters, finished with the MurmurHash3 mixer
+     * @param value string to hash
+     * @return hash of the string
+     */
+    static long hash64(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash = (hash ^ value.charAt(i)) * 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
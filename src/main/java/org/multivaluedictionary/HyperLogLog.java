@@ -0,0 +1,78 @@
+package org.multivaluedictionary;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Estimates the number of distinct strings offered to it in fixed space, with a standard error of about 0.8%. Each
+ * string is hashed to 64 bits; the top bits pick one of 16384 registers, which keeps the longest run of leading zeros
+ * seen in the remaining bits. Registers are packed four to an int and raised with compare-and-set, so strings can be
+ * offered from many threads without locking
+ */
+final class HyperLogLog {
+
+    /** Bits of the hash choosing the register */
+    private static final int PRECISION = 14;
+
+    private static final int REGISTERS = 1 << PRECISION;
+
+    /** Bias correction constant for this many registers */
+    private static final double ALPHA = 0.7213 / (1 + 1.079 / REGISTERS);
+
+    /** Registers, each one byte of an int */
+    private final AtomicIntegerArray registers = new AtomicIntegerArray(REGISTERS / 4);
+
+    /**
+     * Records a string
+     * @param value string to record
+     */
+    void offer(String value) {
+        long hash = Hashing.hash64(value);
+        int index = (int) (hash >>> (64 - PRECISION));
+        int rank = Long.numberOfLeadingZeros((hash << PRECISION) | (1L << (PRECISION - 1))) + 1;
+        int slot = index >>> 2;
+        int shift = (index & 3) << 3;
+        while (true) {
+            int packed = registers.get(slot);
+            if (((packed >>> shift) & 0xFF) >= rank) {
+                return;
+            }
+            int raised = (packed & ~(0xFF << shift)) | (rank << shift);
+            if (registers.compareAndSet(slot, packed, raised)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Estimates the number of distinct strings recorded since the sketch was created or last reset
+     * @return estimated distinct count
+     */
+    long estimate() {
+        double sum = 0;
+        int zeros = 0;
+        for (int slot = 0; slot < REGISTERS / 4; slot++) {
+            int packed = registers.get(slot);
+            for (int shift = 0; shift < 32; shift += 8) {
+                int rank = (packed >>> shift) & 0xFF;
+                sum += 1.0 / (1L << rank);
+                if (rank == 0) {
+                    zeros++;
+                }
+            }
+        }
+        double estimate = ALPHA * REGISTERS * REGISTERS / sum;
+        if (estimate <= 2.5 * REGISTERS && zeros > 0) {
+            estimate = REGISTERS * Math.log((double) REGISTERS / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    /**
+     * Forgets every string recorded so far
+     */
+    void reset() {
+        for (int slot = 0; slot < REGISTERS / 4; slot++) {
+            registers.set(slot, 0);
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package org.multivaluedictionary;
+
+import java.util.NoSuchElementException;
+
+/**
+ * Open-addressing set of non-negative ints with linear probing. Values are stored shifted by one so that zero marks
+ * an empty slot, and removal shifts later entries of the probe run back instead of leaving tombstones
+ */
+class IntHashSet {
+
+    /** Smallest table size; always a power of two */
+    private static final int MIN_CAPACITY = 4;
+
+    /** Slots holding value + 1, or 0 when empty */
+    private int[] table;
+
+    /** Number of values in the set */
+    private int size;
+
+    /**
+     * Initializes the set to be empty upon creation
+     */
+    IntHashSet() {
+        table = new int[MIN_CAPACITY];
+    }
+
+    /**
+     * Obtains the number of values in the set
+     * @return number of values
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Checks whether or not a value is in the set
+     * @param value value to verify
+     * @return true if the value is in the set, false otherwise
+     */
+    boolean contains(int value) {
+        int mask = table.length - 1;
+        int stored = value + 1;
+        for (int slot = mix(value) & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+            if (table[slot] == stored) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Adds a value to the set, growing the table past three-quarters load
+     * @param value non-negative value to add
+     * @return true if the value was added, false if it was already present
+     */
+    boolean add(int value) {
+        int mask = table.length - 1;
+        int stored = value + 1;
+        int slot = mix(value) & mask;
+        for (; table[slot] != 0; slot = (slot + 1) & mask) {
+            if (table[slot] == stored) {
+                return false;
+            }
+        }
+        table[slot] = stored;
+        if (++size * 4 > table.length * 3) {
+            rehash(table.length * 2);
+        }
+        return true;
+    }
+
+    /**
+     * Removes a value from the set, shrinking the table once it is mostly empty
+     * @param value value to remove
+     * @return true if the value was removed, false if it was not present
+     */
+    boolean remove(int value) {
+        int mask = table.length - 1;
+        int stored = value + 1;
+        int slot = mix(value) & mask;
+        for (; table[slot] != stored; slot = (slot + 1) & mask) {
+            if (table[slot] == 0) {
+                return false;
+            }
+        }
+        // backward-shift deletion keeps every remaining probe run contiguous
+        int hole = slot;
+        for (int next = (hole + 1) & mask; table[next] != 0; next = (next + 1) & mask) {
+            int home = mix(table[next] - 1) & mask;
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                table[hole] = table[next];
+                hole = next;
+            }
+        }
+        table[hole] = 0;
+        size--;
+        if (table.length > MIN_CAPACITY && size * 8 < table.length) {
+            rehash(table.length / 2);
+        }
+        return true;
+    }
+
+    /**
+     * Removes every value and releases the table
+     */
+    void clear() {
+        table = new int[MIN_CAPACITY];
+        size = 0;
+    }
+
+    /**
+     * Obtains a cursor positioned before the first value
+     * @return cursor over the values in table order
+     */
+    Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * Estimates the heap held by this set
+     * @return estimated size in bytes
+     */
+    long estimatedBytes() {
+        return MemoryEstimator.OBJECT_HEADER_BYTES + 8 + MemoryEstimator.arrayBytes(4, table.length);
+    }
+
+    private void rehash(int capacity) {
+        int[] old = table;
+        table = new int[capacity];
+        int mask = capacity - 1;
+        for (int stored : old) {
+            if (stored != 0) {
+                int slot = mix(stored - 1) & mask;
+                while (table[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                table[slot] = stored;
+            }
+        }
+    }
+
+    private static int mix(int value) {
+        int h = value * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Walks the table slot by slot; remove() deletes the value most recently returned
+     */
+    class Cursor {
+
+        private int next = -1;
+        private int last = -1;
+        private int[] iterated = table;
+
+        Cursor() {
+            advance();
+        }
+
+        boolean hasNext() {
+            return next < iterated.length;
+        }
+
+        int next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            last = iterated[next] - 1;
+            advance();
+            return last;
+        }
+
+        void remove() {
+            if (last < 0) {
+                throw new IllegalStateException();
+            }
+            // removal may shift or shrink the table, so keep walking a copy of what we started with
+            if (iterated == table) {
+                iterated = iterated.clone();
+            }
+            IntHashSet.this.remove(last);
+            last = -1;
+        }
+
+        private void advance() {
+            do {
+                next++;
+            } while (next < iterated.length && iterated[next] == 0);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package org.multivaluedictionary;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Keys of the multi-value dictionary in lexicographic order, kept up to date as a mutation listener. Each key maps to
+ * its member count so that the index knows when a key's last member goes. Prefix, pattern and range queries seek
+ * into the skip list and cost O(log n + keys visited)
+ */
+class KeyIndex implements MutationListener {
+
+    /** Member count of every key, ordered by key */
+    private final ConcurrentSkipListMap<String, Integer> memberCounts = new ConcurrentSkipListMap<>();
+
+    /**
+     * Initializes the index from the current contents of a key-member(s) pairing
+     * @param dictionary key-member(s) pairing to index
+     */
+    KeyIndex(Map<String, Set<String>> dictionary) {
+        for (Map.Entry<String, Set<String>> entry : dictionary.entrySet()) {
+            memberCounts.put(entry.getKey(), entry.getValue().size());
+        }
+    }
+
+    /**
+     * Obtains the keys matching a glob pattern, visiting only the keys that start with its literal prefix
+     * @param pattern glob pattern
+     * @return matching keys in lexicographic order
+     */
+    List<String> getKeysMatching(GlobPattern pattern) {
+        String prefix = pattern.getLiteralPrefix();
+        String end = prefixEnd(prefix);
+        NavigableMap<String, Integer> candidates = end == null ? memberCounts.tailMap(prefix, true)
+                : memberCounts.subMap(prefix, true, end, false);
+        List<String> keys = new ArrayList<>();
+        for (String key : candidates.keySet()) {
+            if (pattern.matches(key)) {
+                keys.add(key);
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * Obtains the keys within a lexicographic range
+     * @param from lowest key, or null for no lower bound
+     * @param fromInclusive whether the lowest key itself is in the range
+     * @param to highest key, or null for no upper bound
+     * @param toInclusive whether the highest key itself is in the range
+     * @return keys in the range in lexicographic order
+     */
+    List<String> getKeyRange(String from, boolean fromInclusive, String to, boolean toInclusive) {
+        if (from != null && to != null && from.compareTo(to) > 0) {
+            return new ArrayList<>();
+        }
+        NavigableMap<String, Integer> range = memberCounts;
+        if (from != null) {
+            range = range.tailMap(from, fromInclusive);
+        }
+        if (to != null) {
+            range = range.headMap(to, toInclusive);
+        }
+        return new ArrayList<>(range.keySet());
+    }
+
+    /**
+     * Obtains the next keys of a scan, in lexicographic order
+     * @param after last key already visited, or null to start from the first key
+     * @param prefix prefix every key visited must start with
+     * @param count most keys to return
+     * @return up to count keys after the given one that start with the prefix
+     */
+    List<String> keysAfter(String after, String prefix, int count) {
+        NavigableMap<String, Integer> range = after != null && after.compareTo(prefix) >= 0
+                ? memberCounts.tailMap(after, false) : memberCounts.tailMap(prefix, true);
+        String end = prefixEnd(prefix);
+        if (end != null) {
+            range = range.headMap(end, false);
+        }
+        List<String> keys = new ArrayList<>(Math.min(count, 1024));
+        for (String key : range.keySet()) {
+            if (keys.size() == count) {
+                break;
+            }
+            keys.add(key);
+        }
+        return keys;
+    }
+
+    @Override
+    public void added(String key, String member) {
+        memberCounts.merge(key, 1, Integer::sum);
+    }
+
+    @Override
+    public void removed(String key, String member) {
+        memberCounts.computeIfPresent(key, (k, count) -> count > 1 ? count - 1 : null);
+    }
+
+    @Override
+    public void removedAll(String key, Set<String> members) {
+        memberCounts.remove(key);
+    }
+
+    @Override
+    public void cleared() {
+        memberCounts.clear();
+    }
+
+    /**
+     * Obtains the first string after every string starting with a prefix
+     * @param prefix prefix of the range
+     * @return exclusive upper bound of the strings with the prefix, or null if there is none
+     */
+    static String prefixEnd(String prefix) {
+        for (int i = prefix.length() - 1; i >= 0; i--) {
+            char c = prefix.charAt(i);
+            if (c != Character.MAX_VALUE) {
+                return prefix.substring(0, i) + (char) (c + 1);
+            }
+        }
+        return null;
+    }
+}
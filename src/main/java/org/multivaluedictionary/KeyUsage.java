@@ -0,0 +1,40 @@
+package org.multivaluedictionary;
+
+/**
+ * How a key has been used, as seen by an eviction policy choosing which key to evict. Figures are approximate: they
+ * are updated without locking and may lag behind concurrent operations
+ */
+public interface KeyUsage {
+
+    /**
+     * Obtains the key
+     * @return key
+     */
+    String getKey();
+
+    /**
+     * Obtains when the key was last read or written, as a System.nanoTime value of the most recent write to the
+     * dictionary at that time
+     * @return time of last use in nanoseconds
+     */
+    long getLastAccessNanos();
+
+    /**
+     * Obtains a logarithmic estimate of how often the key is used, between 0 and 255, that decays while the key is
+     * not used
+     * @return access frequency estimate
+     */
+    int getFrequency();
+
+    /**
+     * Obtains the number of members of the key
+     * @return number of members
+     */
+    int getMemberCount();
+
+    /**
+     * Estimates the heap held by the key and its members
+     * @return estimated size in bytes
+     */
+    long getEstimatedBytes();
+}
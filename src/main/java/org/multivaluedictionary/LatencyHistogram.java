@@ -0,0 +1,134 @@
+package org.multivaluedictionary;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram with HDR-style log-linear buckets: values below 64 ns are counted exactly and every
+ * power of two above that is split into 32 equal buckets, so any recorded value is reported within about 3% of its
+ * true value. Recording is a single atomic increment plus two uncontended adders and never allocates
+ */
+public final class LatencyHistogram {
+
+    /** Linear buckets per power of two */
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /** Values below this are counted exactly */
+    private static final int EXACT_LIMIT = SUB_BUCKETS * 2;
+
+    /** Largest value told apart from larger ones, about 18 minutes in nanoseconds */
+    private static final long MAX_TRACKED = (1L << 40) - 1;
+
+    private static final int BUCKETS = index(MAX_TRACKED) + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder total = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Records one measured latency
+     * @param nanos latency in nanoseconds; negative values count as 0
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(index(Math.min(value, MAX_TRACKED)));
+        count.increment();
+        total.add(value);
+        max.accumulate(value);
+    }
+
+    /**
+     * Obtains the number of recorded latencies
+     * @return number of recorded latencies
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Obtains the mean of the recorded latencies
+     * @return mean latency in nanoseconds, or 0 if none were recorded
+     */
+    public double getMean() {
+        long recorded = count.sum();
+        return recorded == 0 ? 0 : (double) total.sum() / recorded;
+    }
+
+    /**
+     * Obtains the largest recorded latency
+     * @return largest latency in nanoseconds, or 0 if none were recorded
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Obtains the latency that the given fraction of recorded latencies do not exceed, to within the bucket precision
+     * @param percentile percentile between 0 and 100, for example 99.9
+     * @return latency in nanoseconds, or 0 if none were recorded
+     */
+    public long getPercentile(double percentile) {
+        long recorded = 0;
+        long[] snapshot = new long[BUCKETS];
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            snapshot[bucket] = counts.get(bucket);
+            recorded += snapshot[bucket];
+        }
+        if (recorded == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(recorded * Math.min(100, Math.max(0, percentile)) / 100));
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            seen += snapshot[bucket];
+            if (seen >= rank) {
+                return Math.min(highestValue(bucket), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * Forgets every recorded latency. Latencies recorded while the reset runs may be partly kept
+     */
+    public void reset() {
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            counts.set(bucket, 0);
+        }
+        count.reset();
+        total.reset();
+        max.reset();
+    }
+
+    /**
+     * Obtains the bucket of a value
+     * @param value non-negative value no larger than MAX_TRACKED
+     * @return bucket index
+     */
+    private static int index(long value) {
+        if (value < EXACT_LIMIT) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    /**
+     * Obtains the largest value counted in a bucket
+     * @param bucket bucket index
+     * @return largest value of the bucket
+     */
+    private static long highestValue(int bucket) {
+        if (bucket < EXACT_LIMIT) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long mantissa = bucket % SUB_BUCKETS + SUB_BUCKETS;
+        return ((mantissa + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,58 @@
+package org.multivaluedictionary;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Shard held in this process, mostly for testing sharded deployments without starting servers
+ */
+public final class LocalShard implements Shard {
+
+    private final String name;
+    private final MultiValueDictionary dictionary;
+
+    /** Executes the commands sent to the shard; guarded by this */
+    private final CommandProcessor processor;
+
+    /**
+     * Initializes the shard over a dictionary
+     * @param name unique name of the shard
+     * @param dictionary dictionary holding the shard's keys
+     */
+    public LocalShard(String name, MultiValueDictionary dictionary) {
+        this.name = name;
+        this.dictionary = dictionary;
+        this.processor = new CommandProcessor(dictionary, null, null);
+    }
+
+    /**
+     * Obtains the dictionary holding the shard's keys
+     * @return dictionary of the shard
+     */
+    public MultiValueDictionary getDictionary() {
+        return dictionary;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public synchronized List<String> execute(String commandLine) {
+        StringWriter result = new StringWriter();
+        processor.execute(commandLine, new PrintWriter(result));
+        List<String> lines = new ArrayList<>(Arrays.asList(result.toString().split("\n")));
+        while (!lines.isEmpty() && lines.get(lines.size() - 1).isEmpty()) {
+            lines.remove(lines.size() - 1);
+        }
+        return lines;
+    }
+
+    @Override
+    public void close() {
+    }
+}
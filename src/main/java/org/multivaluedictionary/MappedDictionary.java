@@ -0,0 +1,211 @@
+package org.multivaluedictionary;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Read-only key-member(s) pairing served straight from a mapped snapshot. Lookups binary search the hash-sorted key
+ * and member tables and compare UTF-8 bytes in place; strings are only decoded when they are handed to a caller
+ */
+class MappedDictionary extends AbstractMap<String, Set<String>> {
+
+    /** Mapping of the whole snapshot file */
+    private final ByteBuffer buffer;
+
+    private final int keyCount;
+    private final int keyTableOffset;
+    private final int memberTableOffset;
+
+    /**
+     * Initializes the pairing over a mapped snapshot whose header has already been validated
+     * @param buffer mapping of the whole snapshot file
+     */
+    MappedDictionary(ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.keyCount = buffer.getInt(8);
+        this.keyTableOffset = buffer.getInt(12);
+        this.memberTableOffset = buffer.getInt(16);
+    }
+
+    @Override
+    public int size() {
+        return keyCount;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key instanceof String && findKey((String) key) >= 0;
+    }
+
+    @Override
+    public Set<String> get(Object key) {
+        if (!(key instanceof String)) {
+            return null;
+        }
+        int slot = findKey((String) key);
+        return slot < 0 ? null : new MappedMemberSet(slot);
+    }
+
+    @Override
+    public Set<Entry<String, Set<String>>> entrySet() {
+        return new AbstractSet<Entry<String, Set<String>>>() {
+            @Override
+            public int size() {
+                return keyCount;
+            }
+
+            @Override
+            public Iterator<Entry<String, Set<String>>> iterator() {
+                return new Iterator<Entry<String, Set<String>>>() {
+                    private int slot;
+
+                    @Override
+                    public boolean hasNext() {
+                        return slot < keyCount;
+                    }
+
+                    @Override
+                    public Entry<String, Set<String>> next() {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        String key = string(buffer.getInt(keyEntry(slot) + 4));
+                        return new SimpleImmutableEntry<>(key, new MappedMemberSet(slot++));
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * Finds the key table slot of a key
+     * @param key key to find
+     * @return slot of the key, or -1 if the snapshot does not hold it
+     */
+    private int findKey(String key) {
+        int hash = key.hashCode();
+        int low = 0;
+        int high = keyCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (buffer.getInt(keyEntry(mid)) < hash) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        byte[] bytes = null;
+        for (int slot = low; slot < keyCount && buffer.getInt(keyEntry(slot)) == hash; slot++) {
+            if (bytes == null) {
+                bytes = key.getBytes(StandardCharsets.UTF_8);
+            }
+            if (stringEquals(buffer.getInt(keyEntry(slot) + 4), bytes)) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private int keyEntry(int slot) {
+        return keyTableOffset + slot * Snapshot.KEY_ENTRY_BYTES;
+    }
+
+    private String string(int offset) {
+        byte[] bytes = new byte[buffer.getInt(offset)];
+        ByteBuffer source = buffer.duplicate();
+        source.position(offset + 4);
+        source.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private boolean stringEquals(int offset, byte[] bytes) {
+        if (buffer.getInt(offset) != bytes.length) {
+            return false;
+        }
+        for (int i = 0; i < bytes.length; i++) {
+            if (buffer.get(offset + 4 + i) != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Members of one key, read from its run of the member table
+     */
+    private class MappedMemberSet extends AbstractSet<String> {
+
+        /** Index of the key's first member in the member table */
+        private final int first;
+
+        /** Number of members of the key */
+        private final int count;
+
+        MappedMemberSet(int slot) {
+            this.first = buffer.getInt(keyEntry(slot) + 8);
+            this.count = buffer.getInt(keyEntry(slot) + 12);
+        }
+
+        @Override
+        public int size() {
+            return count;
+        }
+
+        @Override
+        public boolean contains(Object member) {
+            if (!(member instanceof String)) {
+                return false;
+            }
+            int hash = member.hashCode();
+            int low = 0;
+            int high = count;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (buffer.getInt(memberEntry(mid)) < hash) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            byte[] bytes = null;
+            for (int index = low; index < count && buffer.getInt(memberEntry(index)) == hash; index++) {
+                if (bytes == null) {
+                    bytes = ((String) member).getBytes(StandardCharsets.UTF_8);
+                }
+                if (stringEquals(buffer.getInt(memberEntry(index) + 4), bytes)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public Iterator<String> iterator() {
+            return new Iterator<String>() {
+                private int index;
+
+                @Override
+                public boolean hasNext() {
+                    return index < count;
+                }
+
+                @Override
+                public String next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    return string(buffer.getInt(memberEntry(index++) + 4));
+                }
+            };
+        }
+
+        private int memberEntry(int index) {
+            return memberTableOffset + (first + index) * Snapshot.MEMBER_ENTRY_BYTES;
+        }
+    }
+}
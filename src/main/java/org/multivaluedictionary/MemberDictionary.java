@@ -0,0 +1,90 @@
+package org.multivaluedictionary;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Interns member strings into dense int ids so that per-key member sets can hold primitive ints instead of string
+ * references. Ids are never reused; a member keeps its id for the lifetime of the dictionary
+ */
+public class MemberDictionary {
+
+    /** Id returned for members that have never been interned */
+    public static final int NO_ID = -1;
+
+    /** Member string to id */
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+
+    /** Id to member string; published through the volatile reference after the slot is written */
+    private volatile String[] members = new String[16];
+
+    /** Next id to hand out */
+    private int nextId;
+
+    /**
+     * Obtains the id for a member, assigning the next free id if the member has not been seen before
+     * @param member member to intern
+     * @return id of the member
+     */
+    public int intern(String member) {
+        Integer id = ids.get(member);
+        if (id != null) {
+            return id;
+        }
+        synchronized (this) {
+            id = ids.get(member);
+            if (id != null) {
+                return id;
+            }
+            String[] table = members;
+            if (nextId == table.length) {
+                table = Arrays.copyOf(table, nextId * 2);
+            }
+            table[nextId] = member;
+            members = table;
+            ids.put(member, nextId);
+            return nextId++;
+        }
+    }
+
+    /**
+     * Obtains the id of a member without interning it
+     * @param member member to look up
+     * @return id of the member, or NO_ID if it was never interned
+     */
+    public int idOf(String member) {
+        Integer id = ids.get(member);
+        return id == null ? NO_ID : id;
+    }
+
+    /**
+     * Decodes an id back into its member string
+     * @param id id handed out by intern
+     * @return member string for the id
+     */
+    public String decode(int id) {
+        return members[id];
+    }
+
+    /**
+     * Obtains the number of distinct members interned so far
+     * @return number of interned members
+     */
+    public int size() {
+        return ids.size();
+    }
+
+    /**
+     * Estimates the heap held by the string table, the id map and the interned strings themselves
+     * @return estimated size in bytes
+     */
+    public long estimatedBytes() {
+        long bytes = MemoryEstimator.arrayBytes(MemoryEstimator.REFERENCE_BYTES, members.length);
+        for (String member : ids.keySet()) {
+            bytes += MemoryEstimator.stringBytes(member) + MemoryEstimator.HASH_ENTRY_BYTES
+                    + MemoryEstimator.BOXED_INT_BYTES;
+        }
+        return bytes + MemoryEstimator.hashTableBytes(ids.size());
+    }
+}
@@ -0,0 +1,77 @@
+package org.multivaluedictionary;
+
+import java.util.Iterator;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * Flattens a spliterator over member sets into a spliterator over their members without copying them. Splitting is
+ * delegated to the spliterator over the sets, so a parallel stream divides the work key by key
+ */
+class MemberSpliterator implements Spliterator<String>, Consumer<Set<String>> {
+
+    /** Member sets not yet started */
+    private final Spliterator<Set<String>> sets;
+
+    /** Members of the set currently being walked */
+    private Iterator<String> current;
+
+    /**
+     * Initializes the spliterator over the members of the given sets
+     * @param sets member sets to flatten
+     */
+    MemberSpliterator(Spliterator<Set<String>> sets) {
+        this.sets = sets;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super String> action) {
+        while (current == null || !current.hasNext()) {
+            current = null;
+            if (!sets.tryAdvance(this)) {
+                return false;
+            }
+        }
+        action.accept(current.next());
+        return true;
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super String> action) {
+        if (current != null) {
+            current.forEachRemaining(action);
+            current = null;
+        }
+        sets.forEachRemaining(members -> members.forEach(action));
+    }
+
+    @Override
+    public Spliterator<String> trySplit() {
+        Spliterator<Set<String>> prefix = sets.trySplit();
+        return prefix == null ? null : new MemberSpliterator(prefix);
+    }
+
+    /**
+     * Estimates the remaining work by the number of sets left, since member counts are unknown until visited
+     * @return estimated number of sets remaining
+     */
+    @Override
+    public long estimateSize() {
+        return sets.estimateSize();
+    }
+
+    @Override
+    public int characteristics() {
+        return NONNULL;
+    }
+
+    /**
+     * Starts walking the next member set; used as the action for the spliterator over sets to avoid a lambda per set
+     * @param members member set to walk next
+     */
+    @Override
+    public void accept(Set<String> members) {
+        current = members.iterator();
+    }
+}
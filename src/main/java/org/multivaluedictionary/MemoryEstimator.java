@@ -0,0 +1,114 @@
+package org.multivaluedictionary;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Rough heap-size estimates for a 64-bit JVM with compressed oops, used to report what each storage layout costs
+ */
+public final class MemoryEstimator {
+
+    /** Object header size */
+    static final int OBJECT_HEADER_BYTES = 12;
+
+    /** Array header size, including the length field */
+    static final int ARRAY_HEADER_BYTES = 16;
+
+    /** Compressed reference size */
+    static final int REFERENCE_BYTES = 4;
+
+    /** HashMap.Node: header, hash, key, value and next */
+    static final int HASH_ENTRY_BYTES = 32;
+
+    /** java.lang.Integer */
+    static final int BOXED_INT_BYTES = 16;
+
+    /** HashSet plus its backing HashMap, excluding the table */
+    static final int HASH_SET_BYTES = 16 + 48;
+
+    private MemoryEstimator() {
+    }
+
+    /**
+     * Estimates the size of an array
+     * @param elementBytes size of one element
+     * @param length number of elements
+     * @return estimated size in bytes, padded to eight bytes
+     */
+    static long arrayBytes(int elementBytes, int length) {
+        return align(ARRAY_HEADER_BYTES + (long) elementBytes * length);
+    }
+
+    /**
+     * Estimates the size of a string, counting the string object and a Latin-1 backing array
+     * @param value string to measure
+     * @return estimated size in bytes
+     */
+    static long stringBytes(String value) {
+        return align(OBJECT_HEADER_BYTES + 12) + arrayBytes(1, value.length());
+    }
+
+    /**
+     * Estimates the size of the bucket table a HashMap grows to for a number of entries at the default load factor
+     * @param entries number of entries
+     * @return estimated size in bytes
+     */
+    static long hashTableBytes(int entries) {
+        int buckets = 16;
+        while (buckets * 3L < entries * 4L) {
+            buckets <<= 1;
+        }
+        return arrayBytes(REFERENCE_BYTES, buckets);
+    }
+
+    /**
+     * Estimates what a member set would cost laid out as a HashSet of distinct String copies
+     * @param members members of the set
+     * @return estimated size in bytes
+     */
+    public static long hashSetBytes(Set<String> members) {
+        long bytes = HASH_SET_BYTES + hashTableBytes(members.size());
+        for (String member : members) {
+            bytes += HASH_ENTRY_BYTES + stringBytes(member);
+        }
+        return bytes;
+    }
+
+    /**
+     * Estimates the heap held by the member sets of a key-member(s) pairing. HashSets and compact sets are costed as if
+     * every member were its own String copy; encoded sets are costed as their int tables, with the shared member
+     * dictionary left for the caller to add once
+     * @param dictionary key-member(s) pairing to measure
+     * @return estimated size in bytes
+     */
+    public static long memberSetBytes(Map<String, Set<String>> dictionary) {
+        long bytes = 0;
+        for (Set<String> members : dictionary.values()) {
+            if (members instanceof EncodedMemberSet) {
+                bytes += ((EncodedMemberSet) members).estimatedBytes();
+            } else if (members instanceof CompactMemberSet) {
+                bytes += ((CompactMemberSet) members).estimatedBytes();
+            } else {
+                bytes += hashSetBytes(members);
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Estimates the heap the member sets of a key-member(s) pairing would take as plain HashSets
+     * @param dictionary key-member(s) pairing to measure
+     * @return estimated size in bytes
+     */
+    public static long hashLayoutBytes(Map<String, Set<String>> dictionary) {
+        long bytes = 0;
+        for (Set<String> members : dictionary.values()) {
+            bytes += hashSetBytes(members);
+        }
+        return bytes;
+    }
+
+    private static long align(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+}
@@ -0,0 +1,144 @@
+package org.multivaluedictionary;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Call counts and latencies of every operation of a multi-value dictionary and of every command run against it.
+ * Recording goes straight to a preallocated lock-free histogram, so many threads can record at once without
+ * contending on a lock
+ */
+public final class Metrics {
+
+    /**
+     * Operations of the multi-value dictionary whose latency is recorded
+     */
+    public enum Operation {
+        GET_KEYS("getKeys"),
+        GET_KEYS_MATCHING("getKeysMatching"),
+        GET_KEY_RANGE("getKeyRange"),
+        SCAN("scan"),
+        SCAN_MEMBERS("scanMembers"),
+        SCAN_ITEMS("scanItems"),
+        GET_MEMBERS("getMembers"),
+        ADD("add"),
+        ADD_ALL("addAll"),
+        REMOVE("remove"),
+        REMOVE_ALL("removeAll"),
+        CLEAR("clear"),
+        GET_KEY_COUNT("getKeyCount"),
+        GET_MEMBER_COUNT("getMemberCount"),
+        GET_TOTAL_MEMBER_COUNT("getTotalMemberCount"),
+        ESTIMATE_DISTINCT_MEMBERS("estimateDistinctMembers"),
+        KEY_EXISTS("keyExists"),
+        VALUE_EXISTS("valueExists"),
+        GET_ALL_MEMBERS("getAllMembers"),
+        GET_ITEMS("getItems"),
+        GET_INTERSECTION("getIntersection"),
+        GET_UNION("getUnion"),
+        GET_DIFFERENCE("getDifference"),
+        GET_KEYS_FOR_MEMBER("getKeysForMember"),
+        EXPIRE("expire");
+
+        /** Name the operation is exported under */
+        private final String exportedName;
+
+        Operation(String exportedName) {
+            this.exportedName = exportedName;
+        }
+
+        /**
+         * Obtains the name the operation is exported under, the name of its method
+         * @return exported name
+         */
+        public String getExportedName() {
+            return exportedName;
+        }
+    }
+
+    /** Latencies of each operation, by ordinal */
+    private final LatencyHistogram[] operations = new LatencyHistogram[Operation.values().length];
+
+    /** Latencies of each command, created on the first run of the command */
+    private final Map<String, LatencyHistogram> commands = new ConcurrentHashMap<>();
+
+    /**
+     * Initializes metrics with nothing recorded
+     */
+    public Metrics() {
+        for (int i = 0; i < operations.length; i++) {
+            operations[i] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * Records one call of a dictionary operation
+     * @param operation operation that was called
+     * @param nanos how long the call took
+     */
+    public void recordOperation(Operation operation, long nanos) {
+        operations[operation.ordinal()].record(nanos);
+    }
+
+    /**
+     * Records one run of a command. Callers should only pass names from a fixed set, since each name keeps its own
+     * histogram
+     * @param command name of the command
+     * @param nanos how long the command took
+     */
+    public void recordCommand(String command, long nanos) {
+        LatencyHistogram histogram = commands.get(command);
+        if (histogram == null) {
+            histogram = commands.computeIfAbsent(command, name -> new LatencyHistogram());
+        }
+        histogram.record(nanos);
+    }
+
+    /**
+     * Obtains the latencies recorded for an operation
+     * @param operation operation to look up
+     * @return latencies of the operation
+     */
+    public LatencyHistogram getOperation(Operation operation) {
+        return operations[operation.ordinal()];
+    }
+
+    /**
+     * Obtains the latencies recorded for a command
+     * @param command name of the command
+     * @return latencies of the command, or null if it has not run
+     */
+    public LatencyHistogram getCommand(String command) {
+        return commands.get(command);
+    }
+
+    /**
+     * Hands every operation and command that has been called at least once to an exporter, operations first and
+     * then commands in name order
+     * @param exporter exporter to hand the latencies to
+     */
+    public void export(MetricsExporter exporter) {
+        for (Operation operation : Operation.values()) {
+            LatencyHistogram histogram = operations[operation.ordinal()];
+            if (histogram.getCount() > 0) {
+                exporter.latency(operation.getExportedName(), histogram);
+            }
+        }
+        for (Map.Entry<String, LatencyHistogram> command : new TreeMap<>(commands).entrySet()) {
+            exporter.latency(command.getKey(), command.getValue());
+        }
+    }
+
+    /**
+     * Forgets everything recorded so far
+     */
+    public void reset() {
+        for (LatencyHistogram histogram : operations) {
+            histogram.reset();
+        }
+        for (LatencyHistogram histogram : commands.values()) {
+            histogram.reset();
+        }
+    }
+}
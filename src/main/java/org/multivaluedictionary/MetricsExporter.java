@@ -0,0 +1,22 @@
+package org.multivaluedictionary;
+
+/**
+ * Receives the metrics of a multi-value dictionary when they are exported, one figure at a time, so that an exporter
+ * can print them, push them to a monitoring system or collect them without the dictionary knowing which
+ */
+public interface MetricsExporter {
+
+    /**
+     * Called with a point-in-time figure such as the number of keys
+     * @param name name of the figure
+     * @param value current value
+     */
+    void gauge(String name, long value);
+
+    /**
+     * Called with the latencies recorded for one operation or command; its count is the number of calls
+     * @param name name of the operation or command
+     * @param histogram latencies recorded so far
+     */
+    void latency(String name, LatencyHistogram histogram);
+}
@@ -1,27 +1,100 @@
 package org.multivaluedictionary;
 
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.nio.file.Path;
+import java.util.AbstractMap;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BiConsumer;
+import java.util.function.LongSupplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Data structure to hold key-member(s) pairs and all other business logic to interact with them
  */
 public class MultiValueDictionary {
 
-    /** Key-member(s) dictionary */
-    private Map<String, Set<String>> dictionary;
+    /** Key-member(s) dictionary; a read-only mapped snapshot until the first write after loadSnapshot */
+    protected volatile Map<String, Set<String>> dictionary;
+
+    /** Layout used for the members of each key */
+    private final StorageMode storageMode;
+
+    /** Dictionary-wide member string table, only present in ENCODED storage mode */
+    private final MemberDictionary memberDictionary;
+
+    /** Listeners notified of every mutation; replaced wholesale so mutations can walk it without locking */
+    private volatile MutationListener[] listeners = new MutationListener[0];
+
+    /** Member counts and distinct member sketch */
+    private volatile CardinalityTracker cardinality;
+
+    /** Member to keys index, only present once enabled */
+    private volatile ReverseIndex reverseIndex;
+
+    /** Keys in lexicographic order, only present once enabled */
+    private volatile KeyIndex keyIndex;
+
+    /** Operation latencies, only present while metrics are enabled */
+    private volatile Metrics metrics;
+
+    /** Time to live of keys and members, only present once one has been set */
+    private volatile Expiry expiry;
+
+    /** Keeps the dictionary within a budget, only present once enabled */
+    private volatile EvictionTracker eviction;
+
+    /** Log every mutation is appended to, only present once enabled */
+    private volatile WriteAheadLog writeAheadLog;
+
+    /** Views still reachable, oldest first; a member set any of them shares must be copied before it is written to */
+    private final Deque<ViewReference> liveViews = new ConcurrentLinkedDeque<>();
+
+    /** Generation the view being taken or the next view will have; written under viewLock */
+    private volatile long viewGeneration;
+
+    /** Generation at which the member set of a key was last copied. Sets without one may predate every live view */
+    private final Map<String, Long> copiedAt = new ConcurrentHashMap<>();
+
+    /** Held while a view is taken, so views are taken one at a time */
+    private final Object viewLock = new Object();
+
+    /** Milliseconds of the monotonic clock that times to live are measured with */
+    private LongSupplier expiryClock = () -> System.nanoTime() / 1_000_000;
 
     /**
      * Initializes dictionary to be empty upon creation
      */
     public MultiValueDictionary() {
-        dictionary = new HashMap<>();
+        this(StorageMode.HASH);
+    }
+
+    /**
+     * Initializes dictionary to be empty upon creation, storing members with the given layout
+     * @param storageMode layout used for the members of each key
+     */
+    public MultiValueDictionary(StorageMode storageMode) {
+        this.dictionary = storageMode == StorageMode.OFF_HEAP ? new OffHeapDictionary(0) : new HashMap<>();
+        this.storageMode = storageMode;
+        this.memberDictionary = storageMode == StorageMode.ENCODED ? new MemberDictionary() : null;
+        recountMembers();
     }
 
     /**
@@ -30,6 +103,9 @@ public class MultiValueDictionary {
      */
     public MultiValueDictionary(Map<String, Set<String>> dictionary) {
         this.dictionary = dictionary;
+        this.storageMode = StorageMode.HASH;
+        this.memberDictionary = null;
+        recountMembers();
     }
 
     /**
@@ -37,11 +113,273 @@ public class MultiValueDictionary {
      * @return all keys in multi-value dictionary or null if there are none
      */
     public Set<String> getKeys() {
-        if (dictionary == null || dictionary.isEmpty()
-                || dictionary.keySet() == null || dictionary.keySet().isEmpty()) {
-            return null;
+        long start = startTimer();
+        try {
+            if (dictionary == null || dictionary.isEmpty()
+                    || dictionary.keySet() == null || dictionary.keySet().isEmpty()) {
+                return null;
+            }
+            return dictionary.keySet();
+        } finally {
+            stopTimer(Metrics.Operation.GET_KEYS, start);
+        }
+    }
+
+    /**
+     * Obtains the keys matching a glob pattern: {@code *} matches any run of characters, {@code ?} any one character,
+     * {@code [abc]} or {@code [a-z]} one character of a set, {@code [^a]} one character outside it, and a backslash
+     * escapes the next character. Once the key index is enabled only the keys starting with the pattern's literal
+     * prefix are visited, otherwise every key is
+     * @param pattern glob pattern
+     * @return matching keys in lexicographic order, empty if there are none
+     */
+    public List<String> getKeysMatching(String pattern) {
+        long start = startTimer();
+        try {
+            GlobPattern glob = new GlobPattern(pattern);
+            KeyIndex index = keyIndex;
+            if (index != null) {
+                return index.getKeysMatching(glob);
+            }
+
+            List<String> keys = new ArrayList<>();
+            for (String key : dictionary.keySet()) {
+                if (glob.matches(key)) {
+                    keys.add(key);
+                }
+            }
+            Collections.sort(keys);
+            return keys;
+        } finally {
+            stopTimer(Metrics.Operation.GET_KEYS_MATCHING, start);
+        }
+    }
+
+    /**
+     * Obtains the keys within a lexicographic range. Answers in O(log n + result) time once the key index is enabled,
+     * otherwise scans every key
+     * @param from lowest key, or null for no lower bound
+     * @param fromInclusive whether the lowest key itself is in the range
+     * @param to highest key, or null for no upper bound
+     * @param toInclusive whether the highest key itself is in the range
+     * @return keys in the range in lexicographic order, empty if there are none
+     */
+    public List<String> getKeyRange(String from, boolean fromInclusive, String to, boolean toInclusive) {
+        long start = startTimer();
+        try {
+            KeyIndex index = keyIndex;
+            if (index != null) {
+                return index.getKeyRange(from, fromInclusive, to, toInclusive);
+            }
+
+            List<String> keys = new ArrayList<>();
+            for (String key : dictionary.keySet()) {
+                int low = from == null ? 1 : key.compareTo(from);
+                int high = to == null ? -1 : key.compareTo(to);
+                if ((low > 0 || (low == 0 && fromInclusive)) && (high < 0 || (high == 0 && toInclusive))) {
+                    keys.add(key);
+                }
+            }
+            Collections.sort(keys);
+            return keys;
+        } finally {
+            stopTimer(Metrics.Operation.GET_KEY_RANGE, start);
+        }
+    }
+
+    /**
+     * Obtains the next page of an incremental scan over the keys. Each call visits up to count keys after the cursor,
+     * in lexicographic order, and returns those matching the pattern, so a page may hold fewer keys than count or
+     * none at all before the scan is complete. The first scan enables the key index if it is not already, after which
+     * a page costs O(log n + count) and only keys starting with the pattern's literal prefix are visited
+     * @param cursor ScanResult.START, or the cursor of the previous page
+     * @param pattern glob pattern keys must match, or null for every key
+     * @param count most keys to visit
+     * @return matching keys and the cursor resuming the scan
+     * @throws IllegalArgumentException cursor was not returned by a key scan, or count is not positive
+     */
+    public ScanResult<String> scan(String cursor, String pattern, int count) throws IllegalArgumentException {
+        long start = startTimer();
+        try {
+            String[] position = ScanResult.decode(cursor);
+            checkScanCount(count, position.length > 1);
+            GlobPattern glob = pattern == null ? null : new GlobPattern(pattern);
+            List<String> visited = nextKeys(position.length == 0 ? null : position[0],
+                    glob == null ? "" : glob.getLiteralPrefix(), count);
+            List<String> keys = new ArrayList<>(visited.size());
+            for (String key : visited) {
+                if (glob == null || glob.matches(key)) {
+                    keys.add(key);
+                }
+            }
+            return new ScanResult<>(visited.size() < count ? ScanResult.START
+                    : ScanResult.encode(visited.get(visited.size() - 1)), keys);
+        } finally {
+            stopTimer(Metrics.Operation.SCAN, start);
+        }
+    }
+
+    /**
+     * Obtains the next page of an incremental scan over the members of a key. Each call visits up to count members
+     * after the cursor, in lexicographic order, and returns those matching the pattern. Each page looks at every
+     * member of the key once, without copying them
+     * @param key key whose members are scanned
+     * @param cursor ScanResult.START, or the cursor of the previous page
+     * @param pattern glob pattern members must match, or null for every member
+     * @param count most members to visit
+     * @return matching members and the cursor resuming the scan; empty and complete if the key does not exist
+     * @throws IllegalArgumentException cursor was not returned by a member scan, or count is not positive
+     */
+    public ScanResult<String> scanMembers(String key, String cursor, String pattern, int count)
+            throws IllegalArgumentException {
+        long start = startTimer();
+        try {
+            String[] position = ScanResult.decode(cursor);
+            checkScanCount(count, position.length > 1);
+            expireIfDue(key);
+            recordAccess(key);
+            Set<String> members = dictionary.get(key);
+            if (members == null) {
+                return new ScanResult<>(ScanResult.START, new ArrayList<>());
+            }
+            GlobPattern glob = pattern == null ? null : new GlobPattern(pattern);
+            List<String> visited = smallestAfter(members, position.length == 0 ? null : position[0],
+                    glob == null ? "" : glob.getLiteralPrefix(), count);
+            List<String> page = new ArrayList<>(visited.size());
+            for (String member : visited) {
+                if (glob == null || glob.matches(member)) {
+                    page.add(member);
+                }
+            }
+            return new ScanResult<>(visited.size() < count ? ScanResult.START
+                    : ScanResult.encode(visited.get(visited.size() - 1)), page);
+        } finally {
+            stopTimer(Metrics.Operation.SCAN_MEMBERS, start);
+        }
+    }
+
+    /**
+     * Obtains the next page of an incremental scan over every key-member pair. Pairs are visited by key and then by
+     * member, both in lexicographic order. A page visits no more than count keys and ends after count pairs even
+     * within a key, so a key with many members is spread over several pages. Like scan, enables the key index
+     * @param cursor ScanResult.START, or the cursor of the previous page
+     * @param pattern glob pattern keys must match, or null for every key
+     * @param count most pairs to return
+     * @return key-member pairs and the cursor resuming the scan
+     * @throws IllegalArgumentException cursor was not returned by an item scan, or count is not positive
+     */
+    public ScanResult<Map.Entry<String, String>> scanItems(String cursor, String pattern, int count)
+            throws IllegalArgumentException {
+        long start = startTimer();
+        try {
+            String[] position = ScanResult.decode(cursor);
+            checkScanCount(count, false);
+            GlobPattern glob = pattern == null ? null : new GlobPattern(pattern);
+            String prefix = glob == null ? "" : glob.getLiteralPrefix();
+            List<Map.Entry<String, String>> page = new ArrayList<>();
+            String lastKey = position.length == 0 ? null : position[0];
+            String lastMember = position.length == 2 ? position[1] : null;
+            if (lastMember != null && (glob == null || glob.matches(lastKey))
+                    && scanMembersOf(lastKey, lastMember, count, page)) {
+                return itemPage(page, lastKey);
+            }
+            if (page.size() == count) {
+                return new ScanResult<>(ScanResult.encode(lastKey), page);
+            }
+            int wanted = count - page.size();
+            List<String> keys = nextKeys(lastKey, prefix, wanted);
+            int visited = 0;
+            while (visited < keys.size() && page.size() < count) {
+                lastKey = keys.get(visited++);
+                if ((glob == null || glob.matches(lastKey)) && scanMembersOf(lastKey, null, count, page)) {
+                    return itemPage(page, lastKey);
+                }
+            }
+            return new ScanResult<>(keys.size() < wanted && visited == keys.size() ? ScanResult.START
+                    : ScanResult.encode(lastKey), page);
+        } finally {
+            stopTimer(Metrics.Operation.SCAN_ITEMS, start);
+        }
+    }
+
+    /**
+     * Adds the members of one key after a given member to a page of an item scan, in lexicographic order
+     * @param key key whose members are added
+     * @param after last member already visited, or null to start from the first member
+     * @param count most pairs the page may hold
+     * @param page pairs of the page so far
+     * @return true if the page filled up before the key's last member, so the scan resumes within the key
+     */
+    private boolean scanMembersOf(String key, String after, int count,
+            List<Map.Entry<String, String>> page) {
+        Set<String> members = dictionary.get(key);
+        if (members == null) {
+            return false;
+        }
+        int room = count - page.size();
+        List<String> next = smallestAfter(members, after, "", room == Integer.MAX_VALUE ? room : room + 1);
+        for (int i = 0; i < next.size() && i < room; i++) {
+            page.add(new AbstractMap.SimpleImmutableEntry<>(key, next.get(i)));
+        }
+        return next.size() > room;
+    }
+
+    private static ScanResult<Map.Entry<String, String>> itemPage(List<Map.Entry<String, String>> page,
+            String key) {
+        return new ScanResult<>(ScanResult.encode(key, page.get(page.size() - 1).getValue()), page);
+    }
+
+    /**
+     * Obtains the next keys of a scan from the key index, enabling it first if need be: without it every page would
+     * look at every key, making a full scan quadratic in the number of keys
+     * @param after last key already visited, or null to start from the first key
+     * @param prefix prefix every key visited must start with
+     * @param count most keys to return
+     * @return up to count keys after the given one, in lexicographic order
+     */
+    private List<String> nextKeys(String after, String prefix, int count) {
+        KeyIndex index = keyIndex;
+        if (index == null) {
+            enableKeyIndex();
+            index = keyIndex;
+        }
+        return index.keysAfter(after, prefix, count);
+    }
+
+    /**
+     * Selects the lexicographically smallest strings after a given one in a single pass, holding no more than count
+     * of them at a time
+     * @param strings strings to select from
+     * @param after string every selected one must come after, or null for no bound
+     * @param prefix prefix every selected string must start with
+     * @param count most strings to select
+     * @return up to count strings in lexicographic order
+     */
+    private static List<String> smallestAfter(Iterable<String> strings, String after, String prefix, int count) {
+        PriorityQueue<String> largestFirst = new PriorityQueue<>(Math.min(count, 1024), Collections.reverseOrder());
+        for (String string : strings) {
+            if ((after != null && string.compareTo(after) <= 0) || !string.startsWith(prefix)) {
+                continue;
+            }
+            if (largestFirst.size() < count) {
+                largestFirst.add(string);
+            } else if (string.compareTo(largestFirst.peek()) < 0) {
+                largestFirst.poll();
+                largestFirst.add(string);
+            }
+        }
+        List<String> selected = new ArrayList<>(largestFirst);
+        Collections.sort(selected);
+        return selected;
+    }
+
+    private static void checkScanCount(int count, boolean itemCursor) throws IllegalArgumentException {
+        if (count <= 0) {
+            throw new IllegalArgumentException("count must be positive");
+        }
+        if (itemCursor) {
+            throw new IllegalArgumentException("invalid cursor");
         }
-        return dictionary.keySet();
     }
 
     /**
@@ -51,10 +389,29 @@ public class MultiValueDictionary {
      * @throws NoSuchElementException key does not exist
      */
     public Set<String> getMembers(String key) throws NoSuchElementException {
-        if (dictionary == null || dictionary.isEmpty() || dictionary.get(key) == null) {
+        Set<String> members = membersOrEmpty(key);
+        if (members.isEmpty()) {
             throw new NoSuchElementException("key does not exist");
         }
-        return dictionary.get(key);
+        return members;
+    }
+
+    /**
+     * Obtains all members of a specific key, or an empty set if the key does not exist. Looks the key up once and
+     * never throws or allocates
+     * @param key key to obtain all members from
+     * @return all members of the key, empty if it does not exist
+     */
+    public Set<String> membersOrEmpty(String key) {
+        long start = startTimer();
+        try {
+            expireIfDue(key);
+            recordAccess(key);
+            Set<String> members = dictionary.get(key);
+            return members == null ? Collections.<String>emptySet() : members;
+        } finally {
+            stopTimer(Metrics.Operation.GET_MEMBERS, start);
+        }
     }
 
     /**
@@ -64,15 +421,106 @@ public class MultiValueDictionary {
      * @throws UnsupportedOperationException member already exist for key
      */
     public void add(String key, String member) throws UnsupportedOperationException {
-        if (dictionary.keySet().contains(key) && dictionary.get(key).contains(member)) {
+        if (!tryAdd(key, member)) {
             throw new UnsupportedOperationException("value already exists");
         }
+    }
+
+    /**
+     * Adds a new member to a key, or a new key-member pair if the key does not already exist, reporting a member
+     * that is already there instead of throwing. Looks the key up once
+     * @param key key to add a member to
+     * @param member member to add
+     * @return true if the member was added, false if the key already held it
+     */
+    public boolean tryAdd(String key, String member) {
+        long start = startTimer();
+        try {
+            expireIfDue(key);
+            ensureWritable();
+            Set<String> members = dictionary.get(key);
+            if (members == null) {
+                members = newMemberSet();
+                members.add(member);
+                dictionary.put(key, members);
+            } else if (members.contains(member)) {
+                return false;
+            } else {
+                storedWritableMembers(key, members).add(member);
+            }
+            fireAdded(key, member);
+            evictIfNeeded(key);
+            return true;
+        } finally {
+            stopTimer(Metrics.Operation.ADD, start);
+        }
+    }
+
+    /**
+     * Adds several members to a key, creating the key if it does not already exist. Members the key already holds are
+     * skipped. Looks the key up once however many members are added
+     * @param key key to add the members to
+     * @param members members to add
+     * @return number of members that were added
+     */
+    public int addAll(String key, Collection<String> members) {
+        long start = startTimer();
+        try {
+            expireIfDue(key);
+            ensureWritable();
+            Set<String> current = dictionary.get(key);
+            int added = 0;
+            if (current == null) {
+                Set<String> created = newMemberSet();
+                created.addAll(members);
+                if (created.isEmpty()) {
+                    return 0;
+                }
+                dictionary.put(key, created);
+                for (String member : created) {
+                    fireAdded(key, member);
+                }
+                added = created.size();
+            } else {
+                Set<String> target = current;
+                boolean writable = false;
+                for (String member : members) {
+                    if (target.contains(member)) {
+                        continue;
+                    }
+                    if (!writable) {
+                        target = storedWritableMembers(key, target);
+                        writable = true;
+                    }
+                    target.add(member);
+                    fireAdded(key, member);
+                    added++;
+                }
+            }
+            if (added > 0) {
+                evictIfNeeded(key);
+            }
+            return added;
+        } finally {
+            stopTimer(Metrics.Operation.ADD_ALL, start);
+        }
+    }
 
-        if (dictionary.keySet().contains(key)) {
-            dictionary.get(key).add(member);
-        } else {
-            dictionary.put(key, new HashSet<String>(Arrays.asList(member)));
+    /**
+     * Adds the members of many keys at once. An empty multi-value dictionary is first resized to hold every key, so
+     * that loading it does not rehash as it grows
+     * @param items members to add, by key
+     * @return number of members that were added
+     */
+    public int putAll(Map<String, ? extends Collection<String>> items) {
+        if (dictionary.isEmpty()) {
+            presize(items.size());
+        }
+        int added = 0;
+        for (Map.Entry<String, ? extends Collection<String>> entry : items.entrySet()) {
+            added += addAll(entry.getKey(), entry.getValue());
         }
+        return added;
     }
 
     /**
@@ -83,16 +531,38 @@ public class MultiValueDictionary {
      * @throws NoSuchElementException member or key does not exist
      */
     public void remove(String key, String member) throws NoSuchElementException {
-        if (!dictionary.keySet().contains(key)) {
-            throw new NoSuchElementException("key does not exist");
-        } else if (!dictionary.get(key).contains(member)) {
-            throw new NoSuchElementException("value does not exist");
+        if (!tryRemove(key, member)) {
+            throw new NoSuchElementException(dictionary.containsKey(key) ? "value does not exist"
+                    : "key does not exist");
         }
+    }
+
+    /**
+     * Removes desired member from the desired key, removing the key along with its last member, and reports a
+     * missing key or member instead of throwing. Looks the key up once
+     * @param key key to remove member from
+     * @param member member to remove
+     * @return true if the member was removed, false if the key or member does not exist
+     */
+    public boolean tryRemove(String key, String member) {
+        long start = startTimer();
+        try {
+            expireIfDue(key);
+            ensureWritable();
+            Set<String> members = dictionary.get(key);
+            if (members == null || !members.contains(member)) {
+                return false;
+            }
 
-        if (dictionary.get(key).size() > 1) {
-            dictionary.get(key).remove(member);
-        } else {
-            dictionary.remove(key);
+            if (members.size() > 1) {
+                storedWritableMembers(key, members).remove(member);
+            } else {
+                dictionary.remove(key);
+            }
+            fireRemoved(key, member);
+            return true;
+        } finally {
+            stopTimer(Metrics.Operation.REMOVE, start);
         }
     }
 
@@ -102,18 +572,107 @@ public class MultiValueDictionary {
      * @throws NoSuchElementException key does not exist
      */
     public void removeAll(String key) throws NoSuchElementException {
-        if (!dictionary.keySet().contains(key)) {
+        if (!tryRemoveAll(key)) {
             throw new NoSuchElementException("key does not exist");
         }
+    }
 
-        dictionary.remove(key);
+    /**
+     * Removes all members of the desired key as well as the key itself, reporting a missing key instead of throwing.
+     * Looks the key up once
+     * @param key key to remove
+     * @return true if the key was removed, false if it does not exist
+     */
+    public boolean tryRemoveAll(String key) {
+        long start = startTimer();
+        try {
+            expireIfDue(key);
+            ensureWritable();
+            Set<String> members = dictionary.remove(key);
+            if (members == null) {
+                return false;
+            }
+            fireRemovedAll(key, members);
+            return true;
+        } finally {
+            stopTimer(Metrics.Operation.REMOVE_ALL, start);
+        }
     }
 
     /**
      * Clears entire multi-value dictionary
      */
     public void clear() {
-        dictionary.clear();
+        long start = startTimer();
+        try {
+            if (dictionary instanceof MappedDictionary) {
+                dictionary = newDictionary(0);
+            } else {
+                dictionary.clear();
+            }
+            fireCleared();
+        } finally {
+            stopTimer(Metrics.Operation.CLEAR, start);
+        }
+    }
+
+    /**
+     * Obtains the number of keys in constant time
+     * @return key count
+     */
+    public int getKeyCount() {
+        long start = startTimer();
+        try {
+            return dictionary == null ? 0 : dictionary.size();
+        } finally {
+            stopTimer(Metrics.Operation.GET_KEY_COUNT, start);
+        }
+    }
+
+    /**
+     * Obtains the number of members of a key in constant time
+     * @param key key whose members are counted
+     * @return member count, 0 if the key does not exist
+     */
+    public int getMemberCount(String key) {
+        long start = startTimer();
+        try {
+            expireIfDue(key);
+            recordAccess(key);
+            Set<String> members = dictionary.get(key);
+            return members == null ? 0 : members.size();
+        } finally {
+            stopTimer(Metrics.Operation.GET_MEMBER_COUNT, start);
+        }
+    }
+
+    /**
+     * Obtains the number of members across all keys in constant time, counting a member once for every key holding
+     * it. Members whose time to live has run out are counted until they are swept
+     * @return total member count
+     */
+    public long getTotalMemberCount() {
+        long start = startTimer();
+        try {
+            return cardinality.getMemberCount();
+        } finally {
+            stopTimer(Metrics.Operation.GET_TOTAL_MEMBER_COUNT, start);
+        }
+    }
+
+    /**
+     * Estimates the number of distinct members in constant time and space, with a standard error of about 0.8%. The
+     * estimate comes from a HyperLogLog sketch, which cannot forget a member: it covers every member added since the
+     * dictionary was last empty, including those removed since
+     * @return estimated distinct member count
+     */
+    public long estimateDistinctMembers() {
+        long start = startTimer();
+        try {
+            return cardinality.estimateDistinctMembers();
+        } finally {
+            stopTimer(Metrics.Operation.ESTIMATE_DISTINCT_MEMBERS, start);
+        }
     }
 
     /**
@@ -122,10 +681,16 @@ public class MultiValueDictionary {
      * @return true if the key exists, false otherwise
      */
     public boolean keyExists(String key) {
-        if (dictionary == null || dictionary.isEmpty()) {
-            return false;
+        long start = startTimer();
+        try {
+            expireIfDue(key);
+            if (dictionary == null || dictionary.isEmpty()) {
+                return false;
+            }
+            return dictionary.keySet().contains(key);
+        } finally {
+            stopTimer(Metrics.Operation.KEY_EXISTS, start);
         }
-        return dictionary.keySet().contains(key);
     }
 
     /**
@@ -135,10 +700,17 @@ public class MultiValueDictionary {
      * @return true if the desired member exists for the key in question, false otherwise
      */
     public boolean valueExists(String key, String member) {
-        if (dictionary == null || dictionary.isEmpty() || !dictionary.keySet().contains(key)) {
-            return false;
+        long start = startTimer();
+        try {
+            expireIfDue(key);
+            recordAccess(key);
+            if (dictionary == null || dictionary.isEmpty() || !dictionary.keySet().contains(key)) {
+                return false;
+            }
+            return dictionary.get(key).contains(member);
+        } finally {
+            stopTimer(Metrics.Operation.VALUE_EXISTS, start);
         }
-        return dictionary.get(key).contains(member);
     }
 
     /**
@@ -146,44 +718,898 @@ public class MultiValueDictionary {
      * @return list of all members across all keys in the multi-value dictionary
      */
     public List<String> getAllMembers() {
-        if (dictionary == null || dictionary.isEmpty()
-                || dictionary.keySet() == null || dictionary.keySet().isEmpty()) {
-            return null;
-        }
+        long start = startTimer();
+        try {
+            if (dictionary == null || dictionary.isEmpty()
+                    || dictionary.keySet() == null || dictionary.keySet().isEmpty()) {
+                return null;
+            }
 
-        List<String> allMembers = new ArrayList<>();
-        for (String key : dictionary.keySet()) {
-            allMembers.addAll(dictionary.get(key));
+            List<String> allMembers = new ArrayList<>();
+            for (String key : dictionary.keySet()) {
+                allMembers.addAll(dictionary.get(key));
+            }
+            return allMembers;
+        } finally {
+            stopTimer(Metrics.Operation.GET_ALL_MEMBERS, start);
         }
-        return allMembers;
     }
 
     /**
-     * Obtains all key-member(s) pairings in the multi-value dictionary
+     * Obtains all key-member(s) pairings in the multi-value dictionary. The pairings are live and change with every
+     * write; use snapshotView to read them while other threads write
      * @return all key-member(s) pairings in the multi-value dictionary
      */
     public Map<String, Set<String>> getItems() {
-        if (dictionary == null || dictionary.isEmpty()) {
-            return null;
+        long start = startTimer();
+        try {
+            if (dictionary == null || dictionary.isEmpty()) {
+                return null;
+            }
+            return dictionary;
+        } finally {
+            stopTimer(Metrics.Operation.GET_ITEMS, start);
         }
-        return dictionary;
     }
 
     /**
-     * Obtains intersection of two different keys in the multi-value dictionary
-     * @param key1 first key to compare values with
-     * @param key2 second key to compare values with
-     * @return intersection of values between the two keys
+     * Obtains a lazy stream over all members across all keys in the multi-value dictionary. Members are read from the
+     * live member sets as the stream is consumed, nothing is copied, and parallel streams split the work by key
+     * @return stream of all members across all keys, empty if there are none
      */
-    public Set<String> getIntersection(String key1, String key2) {
-        Set<String> intersection = new HashSet<>();
+    public Stream<String> membersStream() {
+        return StreamSupport.stream(new MemberSpliterator(dictionary.values().spliterator()), false);
+    }
 
-        for (String value : dictionary.get(key1)) {
-            if (dictionary.get(key2).contains(value)) {
-                intersection.add(value);
+    /**
+     * Obtains a lazy stream over all key-member(s) pairings in the multi-value dictionary. Entries are the live
+     * entries of the dictionary, so nothing is allocated per key or per member
+     * @return stream of all key-member(s) pairings, empty if there are none
+     */
+    public Stream<Map.Entry<String, Set<String>>> entriesStream() {
+        return dictionary.entrySet().stream();
+    }
+
+    /**
+     * Performs an action for every key-member pair in the multi-value dictionary without materializing the pairs
+     * @param action action to perform with each key and member
+     */
+    public void forEachItem(BiConsumer<String, String> action) {
+        for (Map.Entry<String, Set<String>> entry : dictionary.entrySet()) {
+            String key = entry.getKey();
+            for (String member : entry.getValue()) {
+                action.accept(key, member);
             }
         }
+    }
+
+    /**
+     * Takes a point-in-time view of the multi-value dictionary. Only key references are copied; member sets are
+     * shared until a write copies the set it is about to change, so a view costs O(keys) to take and each later
+     * write copies at most one set. Views can be read from any thread while writers carry on. The dictionary must not
+     * be modified while the view is being taken, unless it is thread-safe; a view of the thread-safe dictionary is
+     * only consistent per key, each key as of some moment while the view was taken, so writes to several keys racing
+     * the view may show for one key and not for an earlier one. In OFF_HEAP storage mode member sets cannot be shared,
+     * so the view is a full off-heap copy
+     * @return read-only view of the current contents
+     */
+    public DictionaryView snapshotView() {
+        Map<String, Set<String>> current = dictionary;
+        if (current instanceof MappedDictionary) {
+            return new DictionaryView(current);
+        }
+        Map<String, Set<String>> view = newDictionary(current.size());
+        if (current instanceof OffHeapDictionary) {
+            // the view is a full copy, so it shares no member set that writes would need to copy
+            captureView(current, view);
+            return new DictionaryView(view);
+        }
+        synchronized (viewLock) {
+            liveViews.removeIf(reference -> reference.get() == null);
+            long generation = viewGeneration;
+            liveViews.add(new ViewReference(view, generation));
+            captureView(current, view);
+            viewGeneration = generation + 1;
+        }
+        return new DictionaryView(view);
+    }
 
-        return intersection;
+    /**
+     * Obtains intersection of any number of keys in the multi-value dictionary. Keys that do not exist count as empty
+     * @param keys keys to compare values with
+     * @return intersection of values between the keys
+     */
+    public Set<String> getIntersection(String... keys) {
+        long start = startTimer();
+        try {
+            return SetAlgebra.intersection(memberSets(keys));
+        } finally {
+            stopTimer(Metrics.Operation.GET_INTERSECTION, start);
+        }
+    }
+
+    /**
+     * Obtains union of any number of keys in the multi-value dictionary. Keys that do not exist count as empty
+     * @param keys keys to combine values from
+     * @return union of values across the keys
+     */
+    public Set<String> getUnion(String... keys) {
+        long start = startTimer();
+        try {
+            return SetAlgebra.union(memberSets(keys));
+        } finally {
+            stopTimer(Metrics.Operation.GET_UNION, start);
+        }
+    }
+
+    /**
+     * Obtains the values of the first key that none of the other keys hold. Keys that do not exist count as empty
+     * @param key key to take values from
+     * @param otherKeys keys whose values are excluded
+     * @return difference between the first key and the others
+     */
+    public Set<String> getDifference(String key, String... otherKeys) {
+        long start = startTimer();
+        try {
+            Set<String> members = dictionary.get(key);
+            if (members == null) {
+                return new HashSet<>();
+            }
+            return SetAlgebra.difference(members, memberSets(otherKeys));
+        } finally {
+            stopTimer(Metrics.Operation.GET_DIFFERENCE, start);
+        }
+    }
+
+    /**
+     * Stores the intersection of keys into a destination key, replacing its members. The destination is removed if
+     * the intersection is empty
+     * @param destination key to store the result in
+     * @param keys keys to compare values with
+     * @return number of members stored
+     */
+    public int storeIntersection(String destination, String... keys) {
+        return store(destination, getIntersection(keys));
+    }
+
+    /**
+     * Stores the union of keys into a destination key, replacing its members. The destination is removed if the
+     * union is empty
+     * @param destination key to store the result in
+     * @param keys keys to combine values from
+     * @return number of members stored
+     */
+    public int storeUnion(String destination, String... keys) {
+        return store(destination, getUnion(keys));
+    }
+
+    /**
+     * Stores the difference between the first key and the others into a destination key, replacing its members. The
+     * destination is removed if the difference is empty
+     * @param destination key to store the result in
+     * @param key key to take values from
+     * @param otherKeys keys whose values are excluded
+     * @return number of members stored
+     */
+    public int storeDifference(String destination, String key, String... otherKeys) {
+        return store(destination, getDifference(key, otherKeys));
+    }
+
+    /**
+     * Adds a new member to a key that expires after a time to live, or a new key-member pair if the key does not
+     * already exist
+     * @param key key to add a member to
+     * @param member member to add
+     * @param ttlMillis milliseconds until the member expires
+     * @throws UnsupportedOperationException member already exist for key
+     * @throws IllegalArgumentException time to live is not positive
+     */
+    public void add(String key, String member, long ttlMillis)
+            throws UnsupportedOperationException, IllegalArgumentException {
+        checkTimeToLive(ttlMillis);
+        add(key, member);
+        expire(key, member, ttlMillis);
+    }
+
+    /**
+     * Sets a key to be removed with all of its members after a time to live, replacing any it had. The key keeps the
+     * time to live until it expires or is removed
+     * @param key key to expire
+     * @param ttlMillis milliseconds until the key expires
+     * @throws NoSuchElementException key does not exist
+     * @throws IllegalArgumentException time to live is not positive
+     */
+    public void expire(String key, long ttlMillis) throws NoSuchElementException, IllegalArgumentException {
+        long start = startTimer();
+        try {
+            checkTimeToLive(ttlMillis);
+            ensureWritable();
+            expireIfDue(key);
+            Set<String> members = dictionary.get(key);
+            if (members == null) {
+                throw new NoSuchElementException("key does not exist");
+            }
+            expiry().expireKey(key, members, ttlMillis);
+        } finally {
+            stopTimer(Metrics.Operation.EXPIRE, start);
+        }
+    }
+
+    /**
+     * Sets one member of a key to be removed after a time to live, replacing any it had. The key goes with its last
+     * member, as with remove
+     * @param key key holding the member
+     * @param member member to expire
+     * @param ttlMillis milliseconds until the member expires
+     * @throws NoSuchElementException member or key does not exist
+     * @throws IllegalArgumentException time to live is not positive
+     */
+    public void expire(String key, String member, long ttlMillis)
+            throws NoSuchElementException, IllegalArgumentException {
+        long start = startTimer();
+        try {
+            checkTimeToLive(ttlMillis);
+            ensureWritable();
+            expireIfDue(key);
+            Set<String> members = dictionary.get(key);
+            if (members == null) {
+                throw new NoSuchElementException("key does not exist");
+            } else if (!members.contains(member)) {
+                throw new NoSuchElementException("value does not exist");
+            }
+            expiry().expireMember(key, members, member, ttlMillis);
+        } finally {
+            stopTimer(Metrics.Operation.EXPIRE, start);
+        }
+    }
+
+    /**
+     * Removes keys and members whose time to live has run out, looking at no more than a bounded number of deadlines
+     * so that each call stays short. Expired entries are also removed whenever their key is used, but only sweeping
+     * removes those that are never used again, and whole-dictionary reads such as getItems may return expired entries
+     * that have not been swept yet. Call this regularly, from the thread that uses the dictionary unless it is
+     * thread-safe
+     * @param maxDeadlines most deadlines to look at
+     * @return number of members removed
+     */
+    public int sweepExpired(int maxDeadlines) {
+        Expiry current = expiry;
+        return current == null ? 0 : current.sweep(maxDeadlines);
+    }
+
+    /**
+     * Obtains the layout used for the members of each key
+     * @return storage mode of the multi-value dictionary
+     */
+    public StorageMode getStorageMode() {
+        return storageMode;
+    }
+
+    /**
+     * Estimates the heap held by the member sets in their current layout, including the shared member string table
+     * in ENCODED storage mode
+     * @return estimated size in bytes
+     */
+    public long estimatedMemberBytes() {
+        Map<String, Set<String>> current = dictionary;
+        if (current instanceof OffHeapDictionary) {
+            return ((OffHeapDictionary) current).estimatedHeapBytes();
+        }
+        long bytes = MemoryEstimator.memberSetBytes(current);
+        return memberDictionary == null ? bytes : bytes + memberDictionary.estimatedBytes();
+    }
+
+    /**
+     * Obtains the off-heap memory held by keys and members in OFF_HEAP storage mode
+     * @return bytes in use, or 0 in other storage modes
+     */
+    public long getOffHeapUsedBytes() {
+        Map<String, Set<String>> current = dictionary;
+        return current instanceof OffHeapDictionary ? ((OffHeapDictionary) current).getUsedBytes() : 0;
+    }
+
+    /**
+     * Obtains the off-heap memory reserved from the operating system in OFF_HEAP storage mode, including space freed
+     * by removals that is kept for reuse
+     * @return bytes reserved, or 0 in other storage modes
+     */
+    public long getOffHeapReservedBytes() {
+        Map<String, Set<String>> current = dictionary;
+        return current instanceof OffHeapDictionary ? ((OffHeapDictionary) current).getReservedBytes() : 0;
+    }
+
+    /**
+     * Estimates the heap the member sets would hold laid out as a HashSet of String copies per key, so that the
+     * saving of ENCODED storage mode can be measured against it
+     * @return estimated size in bytes
+     */
+    public long estimatedHashLayoutBytes() {
+        return MemoryEstimator.hashLayoutBytes(dictionary);
+    }
+
+    /**
+     * Replaces the members of a key with a computed result through the public mutators, so listeners and subclasses
+     * see the same operations as any other caller
+     * @param destination key to replace
+     * @param members members to store
+     * @return number of members stored
+     */
+    private int store(String destination, Set<String> members) {
+        if (keyExists(destination)) {
+            removeAll(destination);
+        }
+        for (String member : members) {
+            add(destination, member);
+        }
+        return members.size();
+    }
+
+    /**
+     * Obtains the member sets of keys, using an empty set for keys that do not exist
+     * @param keys keys to look up
+     * @return member set of each key, in order
+     */
+    private List<Set<String>> memberSets(String... keys) {
+        List<Set<String>> sets = new ArrayList<>(keys.length);
+        for (String key : keys) {
+            Set<String> members = dictionary.get(key);
+            sets.add(members == null ? Collections.<String>emptySet() : members);
+        }
+        return sets;
+    }
+
+    /**
+     * Removes a key, or those of its members, whose time to live has run out. Every operation on a single key calls
+     * this first
+     * @param key key about to be used
+     */
+    protected void expireIfDue(String key) {
+        Expiry current = expiry;
+        if (current != null) {
+            current.expireIfDue(key);
+        }
+    }
+
+    /**
+     * Records a read of a key for the eviction policy. Only reads of a single key's members call this; it takes no
+     * lock and allocates nothing
+     * @param key key that was read
+     */
+    protected void recordAccess(String key) {
+        EvictionTracker tracker = eviction;
+        if (tracker != null) {
+            tracker.touch(key);
+        }
+    }
+
+    /**
+     * Evicts keys if the last add took the multi-value dictionary over its budget
+     * @param addedKey key that was just added to, which is evicted last
+     */
+    protected void evictIfNeeded(String addedKey) {
+        EvictionTracker tracker = eviction;
+        if (tracker != null) {
+            tracker.evictIfNeeded(addedKey);
+        }
+    }
+
+    /**
+     * Replaces the clock that times to live are measured with, before any has been set
+     * @param clock milliseconds of a monotonic clock
+     */
+    void setExpiryClock(LongSupplier clock) {
+        expiryClock = clock;
+    }
+
+    private synchronized Expiry expiry() {
+        if (expiry == null) {
+            Expiry created = new Expiry(this, expiryClock);
+            addListener(created);
+            expiry = created;
+        }
+        return expiry;
+    }
+
+    private static void checkTimeToLive(long ttlMillis) throws IllegalArgumentException {
+        if (ttlMillis <= 0) {
+            throw new IllegalArgumentException("time to live must be positive");
+        }
+    }
+
+    /**
+     * Copies the key references of the dictionary into a view that has already been registered as live
+     * @param current dictionary to copy
+     * @param view empty map to copy into
+     */
+    protected void captureView(Map<String, Set<String>> current, Map<String, Set<String>> view) {
+        view.putAll(current);
+    }
+
+    /**
+     * Obtains a member set that may be written to, copying it first if a live view may share it. A view shares a set
+     * only if it was taken at or after the generation the set was copied at, so the set is copied unless every live
+     * view is older than its last copy; a set never copied is assumed shared. Every write to an existing member set
+     * goes through this
+     * @param key key of the members
+     * @param members current member set of the key
+     * @return the member set itself, or a copy of it that the caller must store under the key
+     */
+    protected Set<String> writableMembers(String key, Set<String> members) {
+        if (liveViews.isEmpty()) {
+            return members;
+        }
+        long newestView = newestLiveView();
+        if (newestView < 0) {
+            copiedAt.clear();
+            return members;
+        }
+        Long copied = copiedAt.get(key);
+        if (copied != null && copied > newestView) {
+            return members;
+        }
+        Set<String> copy = newMemberSet();
+        copy.addAll(members);
+        copiedAt.put(key, viewGeneration);
+        Expiry current = expiry;
+        if (current != null) {
+            current.memberSetCopied(key, members, copy);
+        }
+        return copy;
+    }
+
+    /**
+     * Finds the generation of the newest view still reachable, forgetting newer views that have been collected
+     * @return generation of the newest live view, or -1 if there is none
+     */
+    private long newestLiveView() {
+        Iterator<ViewReference> views = liveViews.descendingIterator();
+        while (views.hasNext()) {
+            ViewReference view = views.next();
+            if (view.get() != null) {
+                return view.generation;
+            }
+            views.remove();
+        }
+        return -1;
+    }
+
+    /**
+     * Obtains the member set of an existing key for writing, storing a copy under the key if the latest view shares
+     * the current one
+     * @param key existing key
+     * @param members current member set of the key
+     * @return member set that may be written to
+     */
+    private Set<String> storedWritableMembers(String key, Set<String> members) {
+        Set<String> writable = writableMembers(key, members);
+        if (writable != members) {
+            dictionary.put(key, writable);
+        }
+        return writable;
+    }
+
+    /**
+     * Copies a loaded snapshot out of its read-only mapping before the first write. Every mutator calls this first
+     */
+    protected void ensureWritable() {
+        if (dictionary instanceof MappedDictionary) {
+            synchronized (this) {
+                Map<String, Set<String>> mapped = dictionary;
+                if (mapped instanceof MappedDictionary) {
+                    Map<String, Set<String>> writable = newDictionary(mapped.size());
+                    for (Map.Entry<String, Set<String>> entry : mapped.entrySet()) {
+                        Set<String> members = newMemberSet();
+                        members.addAll(entry.getValue());
+                        writable.put(entry.getKey(), members);
+                    }
+                    dictionary = writable;
+                }
+            }
+        }
+    }
+
+    /**
+     * Replaces the empty key-member(s) map with one sized for a number of keys, ahead of a bulk load
+     * @param expectedKeys number of keys about to be added
+     */
+    protected synchronized void presize(int expectedKeys) {
+        if (dictionary.isEmpty() && !(dictionary instanceof MappedDictionary)) {
+            dictionary = newDictionary(expectedKeys);
+        }
+    }
+
+    /**
+     * Creates an empty key-member(s) map to hold the dictionary
+     * @param expectedKeys number of keys the map should hold without resizing
+     * @return empty map
+     */
+    protected Map<String, Set<String>> newDictionary(int expectedKeys) {
+        if (storageMode == StorageMode.OFF_HEAP) {
+            return new OffHeapDictionary(expectedKeys);
+        }
+        return new HashMap<>(Math.max(16, (int) (expectedKeys / 0.75f) + 1));
+    }
+
+    /**
+     * Creates an empty member set for a new key in the configured storage mode
+     * @return empty member set
+     */
+    protected Set<String> newMemberSet() {
+        if (storageMode == StorageMode.ENCODED) {
+            return new EncodedMemberSet(memberDictionary);
+        }
+        return new CompactMemberSet();
+    }
+
+    /**
+     * Obtains every key holding the desired member. Answers from the reverse index in O(result) time once it has been
+     * enabled, otherwise scans every key
+     * @param member member to look up
+     * @return keys holding the member, empty if there are none
+     */
+    public Set<String> getKeysForMember(String member) {
+        long start = startTimer();
+        try {
+            ReverseIndex index = reverseIndex;
+            if (index != null) {
+                return index.getKeys(member);
+            }
+
+            Set<String> keys = new HashSet<>();
+            for (Map.Entry<String, Set<String>> entry : dictionary.entrySet()) {
+                if (entry.getValue().contains(member)) {
+                    keys.add(entry.getKey());
+                }
+            }
+            return keys;
+        } finally {
+            stopTimer(Metrics.Operation.GET_KEYS_FOR_MEMBER, start);
+        }
+    }
+
+    /**
+     * Builds the member to keys index from the current contents and keeps it up to date from then on. Does nothing if
+     * the index is already enabled
+     */
+    public synchronized void enableReverseIndex() {
+        if (reverseIndex == null) {
+            ReverseIndex index = new ReverseIndex(dictionary);
+            addListener(index);
+            reverseIndex = index;
+        }
+    }
+
+    /**
+     * Builds the ordered key index from the current contents and keeps it up to date from then on, so that pattern
+     * and range queries over keys only visit the keys they could match. Does nothing if the index is already enabled
+     */
+    public synchronized void enableKeyIndex() {
+        if (keyIndex == null) {
+            KeyIndex index = new KeyIndex(dictionary);
+            addListener(index);
+            keyIndex = index;
+        }
+    }
+
+    /**
+     * Replays an existing write-ahead log into the multi-value dictionary and then appends every further mutation to
+     * it. The caller owns the returned log and closes it on shutdown
+     * @param path log file; created if it does not exist
+     * @param policy when appended records are forced to disk
+     * @return open write-ahead log
+     * @throws IOException log could not be replayed or opened
+     */
+    public WriteAheadLog enableWriteAheadLog(Path path, WriteAheadLog.SyncPolicy policy) throws IOException {
+        WriteAheadLog.replay(path, this);
+        WriteAheadLog log = new WriteAheadLog(path, policy);
+        addListener(log);
+        writeAheadLog = log;
+        return log;
+    }
+
+    /**
+     * Makes durable the write-ahead log records the calling thread appended whose sync was deferred. Thread-safe
+     * subclasses call it at the end of every mutation, once they no longer hold a lock on the key
+     */
+    protected void syncWriteAheadLog() {
+        WriteAheadLog log = writeAheadLog;
+        if (log != null) {
+            log.syncDeferred();
+        }
+    }
+
+    /**
+     * Publishes every mutation from now on of the keys matching a pattern, in batches of up to
+     * ChangePublisher.DEFAULT_MAX_BATCH events delivered from the common fork-join pool. The caller closes the
+     * returned publisher once it is no longer needed
+     * @param pattern glob pattern in the syntax of KEYS, such as a key or a prefix followed by *, or null for every key
+     * @return publisher of the matching mutations
+     */
+    public ChangePublisher publishChanges(String pattern) {
+        return publishChanges(pattern, ChangePublisher.DEFAULT_MAX_BATCH, ChangePublisher.DEFAULT_MAX_BUFFERED,
+                ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Publishes every mutation from now on of the keys matching a pattern. The caller closes the returned publisher
+     * once it is no longer needed
+     * @param pattern glob pattern in the syntax of KEYS, such as a key or a prefix followed by *, or null for every key
+     * @param maxBatch most events delivered in one batch
+     * @param maxBuffered most events buffered for a subscriber before it is failed and dropped
+     * @param executor runs the delivery of batches to subscribers
+     * @return publisher of the matching mutations
+     */
+    public ChangePublisher publishChanges(String pattern, int maxBatch, int maxBuffered, Executor executor) {
+        ChangePublisher publisher = new ChangePublisher(this, pattern, maxBatch, maxBuffered, executor);
+        addListener(publisher);
+        return publisher;
+    }
+
+    /**
+     * Writes a binary snapshot of the multi-value dictionary, replacing the file atomically. The dictionary must not
+     * be modified while the snapshot is written
+     * @param path file to write the snapshot to
+     * @throws IOException snapshot could not be written
+     */
+    public void saveSnapshot(Path path) throws IOException {
+        Snapshot.write(dictionary, path);
+    }
+
+    /**
+     * Replaces the contents of the multi-value dictionary with a snapshot. The snapshot is memory-mapped and reads are
+     * served from the mapping until the first write copies it into the configured storage. Listeners are not told
+     * about the replaced contents, except that enabled indexes, member counts and an eviction budget are rebuilt
+     * @param path snapshot to load
+     * @throws IOException snapshot could not be read
+     */
+    public void loadSnapshot(Path path) throws IOException {
+        Map<String, Set<String>> mapped = Snapshot.open(path);
+        synchronized (this) {
+            dictionary = mapped;
+            if (reverseIndex != null) {
+                removeListener(reverseIndex);
+                reverseIndex = null;
+                enableReverseIndex();
+            }
+            if (keyIndex != null) {
+                removeListener(keyIndex);
+                keyIndex = null;
+                enableKeyIndex();
+            }
+            recountMembers();
+            EvictionTracker tracker = eviction;
+            if (tracker != null) {
+                removeListener(tracker);
+                EvictionTracker rebuilt = tracker.rebuild(mapped);
+                addListener(rebuilt);
+                eviction = rebuilt;
+            }
+        }
+    }
+
+    /**
+     * Estimates the heap held by the member to keys index
+     * @return estimated size in bytes, or 0 if the index is not enabled
+     */
+    public long estimatedReverseIndexBytes() {
+        ReverseIndex index = reverseIndex;
+        return index == null ? 0 : index.estimatedBytes();
+    }
+
+    /**
+     * Starts recording the count and latency of every operation. Does nothing if metrics are already enabled
+     * @return metrics being recorded
+     */
+    public synchronized Metrics enableMetrics() {
+        if (metrics == null) {
+            metrics = new Metrics();
+        }
+        return metrics;
+    }
+
+    /**
+     * Stops recording operations; while disabled each operation only pays for one volatile read
+     */
+    public synchronized void disableMetrics() {
+        metrics = null;
+    }
+
+    /**
+     * Obtains the operation metrics being recorded
+     * @return metrics, or null if they are not enabled
+     */
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Hands the size of the multi-value dictionary, and the recorded latencies if metrics are enabled, to an
+     * exporter. The sizes are counted when this is called: the number of keys, the number of members across all keys
+     * and the number of members of the largest key
+     * @param exporter exporter to hand the metrics to
+     */
+    public void exportMetrics(MetricsExporter exporter) {
+        Map<String, Set<String>> current = dictionary;
+        long totalMembers = 0;
+        long largestSet = 0;
+        for (Set<String> members : current.values()) {
+            int size = members.size();
+            totalMembers += size;
+            largestSet = Math.max(largestSet, size);
+        }
+        exporter.gauge("keys", current.size());
+        exporter.gauge("members", totalMembers);
+        exporter.gauge("largestSet", largestSet);
+        if (current instanceof OffHeapDictionary) {
+            exporter.gauge("offHeapUsedBytes", ((OffHeapDictionary) current).getUsedBytes());
+            exporter.gauge("offHeapReservedBytes", ((OffHeapDictionary) current).getReservedBytes());
+        }
+        EvictionTracker tracker = eviction;
+        if (tracker != null) {
+            exporter.gauge("budgetedBytes", tracker.getEstimatedBytes());
+            exporter.gauge("evictedKeys", tracker.getEvictedKeys());
+            exporter.gauge("evictedMembers", tracker.getEvictedMembers());
+        }
+        WriteAheadLog log = writeAheadLog;
+        if (log != null) {
+            log.exportMetrics(exporter);
+        }
+
+        Metrics recorded = metrics;
+        if (recorded != null) {
+            recorded.export(exporter);
+        }
+    }
+
+    /**
+     * Keeps the multi-value dictionary within a budget from now on: whenever an add takes it over either limit, keys
+     * chosen by the policy are removed with all of their members until it is back within both. Evicted keys are
+     * removed through removeAll, so listeners see them go. Replaces any budget set before
+     * @param policy chooses which keys to evict
+     * @param maxMembers most members across all keys, or Long.MAX_VALUE for no limit
+     * @param maxBytes most heap held by keys and members as estimated by MemoryEstimator, or Long.MAX_VALUE for no
+     *                 limit
+     */
+    public synchronized void enableEviction(EvictionPolicy policy, long maxMembers, long maxBytes) {
+        disableEviction();
+        EvictionTracker tracker = new EvictionTracker(this, dictionary, policy, maxMembers, maxBytes);
+        addListener(tracker);
+        eviction = tracker;
+        tracker.evictIfNeeded(null);
+    }
+
+    /**
+     * Stops keeping the multi-value dictionary within a budget
+     */
+    public synchronized void disableEviction() {
+        if (eviction != null) {
+            removeListener(eviction);
+            eviction = null;
+        }
+    }
+
+    /**
+     * Obtains the number of keys evicted since the budget was set
+     * @return evicted keys, or 0 if there is no budget
+     */
+    public long getEvictedKeys() {
+        EvictionTracker tracker = eviction;
+        return tracker == null ? 0 : tracker.getEvictedKeys();
+    }
+
+    /**
+     * Obtains the number of members evicted along with their keys since the budget was set
+     * @return evicted members, or 0 if there is no budget
+     */
+    public long getEvictedMembers() {
+        EvictionTracker tracker = eviction;
+        return tracker == null ? 0 : tracker.getEvictedMembers();
+    }
+
+    /**
+     * Recounts the members from the current contents, which were replaced without notifying listeners
+     */
+    synchronized void recountMembers() {
+        CardinalityTracker recounted = new CardinalityTracker(dictionary);
+        if (cardinality != null) {
+            removeListener(cardinality);
+        }
+        addListener(recounted);
+        cardinality = recounted;
+    }
+
+    /**
+     * Registers a listener to be notified of every mutation from now on
+     * @param listener listener to register
+     */
+    public synchronized void addListener(MutationListener listener) {
+        MutationListener[] updated = Arrays.copyOf(listeners, listeners.length + 1);
+        updated[listeners.length] = listener;
+        listeners = updated;
+    }
+
+    /**
+     * Stops notifying a listener of mutations
+     * @param listener listener to unregister
+     */
+    public synchronized void removeListener(MutationListener listener) {
+        List<MutationListener> updated = new ArrayList<>(Arrays.asList(listeners));
+        updated.remove(listener);
+        listeners = updated.toArray(new MutationListener[0]);
+    }
+
+    /**
+     * Reads the clock at the start of an operation, but only if metrics are enabled
+     * @return start time in nanoseconds, or 0 if metrics are disabled
+     */
+    protected long startTimer() {
+        return metrics == null ? 0 : System.nanoTime();
+    }
+
+    /**
+     * Records the latency of an operation started with startTimer
+     * @param operation operation that finished
+     * @param start value startTimer returned
+     */
+    protected void stopTimer(Metrics.Operation operation, long start) {
+        Metrics recorded = metrics;
+        if (recorded != null && start != 0) {
+            recorded.recordOperation(operation, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Notifies every listener of an added member
+     * @param key key the member was added to
+     * @param member member that was added
+     */
+    protected void fireAdded(String key, String member) {
+        for (MutationListener listener : listeners) {
+            listener.added(key, member);
+        }
+    }
+
+    /**
+     * Notifies every listener of a removed member
+     * @param key key the member was removed from
+     * @param member member that was removed
+     */
+    protected void fireRemoved(String key, String member) {
+        for (MutationListener listener : listeners) {
+            listener.removed(key, member);
+        }
+    }
+
+    /**
+     * Notifies every listener of a removed key
+     * @param key key that was removed
+     * @param members members the key held
+     */
+    protected void fireRemovedAll(String key, Set<String> members) {
+        for (MutationListener listener : listeners) {
+            listener.removedAll(key, members);
+        }
+    }
+
+    /**
+     * Notifies every listener of a cleared dictionary
+     */
+    protected void fireCleared() {
+        for (MutationListener listener : listeners) {
+            listener.cleared();
+        }
+    }
+
+    /**
+     * Weak reference to the key-member(s) pairing of a view, along with the generation it was taken at
+     */
+    private static final class ViewReference extends WeakReference<Map<String, Set<String>>> {
+
+        final long generation;
+
+        ViewReference(Map<String, Set<String>> view, long generation) {
+            super(view);
+            this.generation = generation;
+        }
     }
 }
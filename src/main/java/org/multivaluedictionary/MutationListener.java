@@ -0,0 +1,36 @@
+package org.multivaluedictionary;
+
+import java.util.Set;
+
+/**
+ * Receives every successful mutation of a multi-value dictionary, after the change has been applied. Listeners are
+ * called on the mutating thread, so they must be quick and must not call back into the dictionary
+ */
+public interface MutationListener {
+
+    /**
+     * Called after a member has been added to a key
+     * @param key key the member was added to
+     * @param member member that was added
+     */
+    void added(String key, String member);
+
+    /**
+     * Called after a member has been removed from a key, including when the key went with it
+     * @param key key the member was removed from
+     * @param member member that was removed
+     */
+    void removed(String key, String member);
+
+    /**
+     * Called after a key and all of its members have been removed
+     * @param key key that was removed
+     * @param members members the key held when it was removed
+     */
+    void removedAll(String key, Set<String> members);
+
+    /**
+     * Called after the entire multi-value dictionary has been cleared
+     */
+    void cleared();
+}
@@ -0,0 +1,567 @@
+package org.multivaluedictionary;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Key-member(s) pairing that keeps every key and member string in off-heap slabs, so that the heap holds only two
+ * primitive arrays however large the dictionary grows. Keys are found through an open-addressing index of record
+ * addresses; each key record holds its string, its member count and the address of its own open-addressing table of
+ * member strings. Strings are stored as Latin-1 when they can be and as UTF-16 otherwise, so they are compared with
+ * a caller's string in place. Strings and sets are only created on the heap when they are handed to a caller. Not
+ * thread-safe
+ *
+ * Layouts:
+ * <pre>
+ * string      [int length &lt;&lt; 1 | latin1][Latin-1 bytes or UTF-16 chars]
+ * key record  [long generation][long member table address][int member count][int table capacity][key string]
+ * table slot  [int hash][long member string address], address 0 when empty
+ * </pre>
+ */
+class OffHeapDictionary extends AbstractMap<String, Set<String>> {
+
+    private static final int GENERATION_OFFSET = 0;
+    private static final int TABLE_OFFSET = 8;
+    private static final int COUNT_OFFSET = 16;
+    private static final int CAPACITY_OFFSET = 20;
+    private static final int KEY_OFFSET = 24;
+
+    private static final int SLOT_BYTES = 12;
+    private static final int MIN_TABLE_CAPACITY = 4;
+    private static final int MIN_INDEX_CAPACITY = 16;
+
+    /** Marks generations so they can never be mistaken for the contents of a reused block */
+    private static final long GENERATION_BASE = 1L << 62;
+
+    private final SlabAllocator allocator = new SlabAllocator();
+
+    /** Key record address of each index slot, 0 when empty */
+    private long[] records;
+
+    /** Key hash of each index slot */
+    private int[] hashes;
+
+    private int keyCount;
+
+    /** Generation given to the next key record, so member set views can tell a reused record from theirs */
+    private long nextGeneration = GENERATION_BASE;
+
+    /** Lowest generation of a live key record; records of older generations went with the slabs on a clear */
+    private long firstLiveGeneration = GENERATION_BASE;
+
+    /**
+     * Initializes an empty pairing
+     * @param expectedKeys number of keys the index should hold without growing
+     */
+    OffHeapDictionary(int expectedKeys) {
+        int capacity = Integer.highestOneBit(Math.max(MIN_INDEX_CAPACITY, expectedKeys * 2 - 1)) << 1;
+        records = new long[capacity];
+        hashes = new int[capacity];
+    }
+
+    /**
+     * Obtains the off-heap bytes held by keys and members
+     * @return bytes in use
+     */
+    long getUsedBytes() {
+        return allocator.getUsedBytes();
+    }
+
+    /**
+     * Obtains the off-heap memory reserved from the operating system, including free space in slabs
+     * @return bytes reserved
+     */
+    long getReservedBytes() {
+        return allocator.getReservedBytes();
+    }
+
+    /**
+     * Estimates the heap held by the pairing, which is only its index
+     * @return estimated size in bytes
+     */
+    long estimatedHeapBytes() {
+        return MemoryEstimator.arrayBytes(8, records.length) + MemoryEstimator.arrayBytes(4, hashes.length);
+    }
+
+    @Override
+    public int size() {
+        return keyCount;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key instanceof String && findKey((String) key) >= 0;
+    }
+
+    @Override
+    public Set<String> get(Object key) {
+        if (!(key instanceof String)) {
+            return null;
+        }
+        int slot = findKey((String) key);
+        return slot < 0 ? null : new OffHeapMemberSet(records[slot]);
+    }
+
+    /**
+     * Stores a key with a copy of the given members, replacing any members it had
+     * @param key key to store
+     * @param members members to copy off-heap
+     * @return null; members that were replaced are not materialized
+     */
+    @Override
+    public Set<String> put(String key, Set<String> members) {
+        if (members instanceof OffHeapMemberSet && ((OffHeapMemberSet) members).owner() == this
+                && ((OffHeapMemberSet) members).isValid()) {
+            members = new HashSet<>(members);
+        }
+        int slot = findKey(key);
+        if (slot >= 0) {
+            freeRecord(records[slot]);
+            deleteIndexSlot(slot);
+        }
+        long record = newRecord(key, members.size());
+        for (String member : members) {
+            addMember(record, member);
+        }
+        insertIndexSlot(record, key.hashCode());
+        return null;
+    }
+
+    /**
+     * Removes a key, freeing its record, its member table and its member strings
+     * @param key key to remove
+     * @return members the key held, materialized on the heap, or null if it did not exist
+     */
+    @Override
+    public Set<String> remove(Object key) {
+        if (!(key instanceof String)) {
+            return null;
+        }
+        int slot = findKey((String) key);
+        if (slot < 0) {
+            return null;
+        }
+        long record = records[slot];
+        Set<String> members = new HashSet<>(new OffHeapMemberSet(record));
+        freeRecord(record);
+        deleteIndexSlot(slot);
+        return members;
+    }
+
+    /**
+     * Removes every key, dropping all slabs at once
+     */
+    @Override
+    public void clear() {
+        allocator.clear();
+        firstLiveGeneration = nextGeneration;
+        records = new long[MIN_INDEX_CAPACITY];
+        hashes = new int[MIN_INDEX_CAPACITY];
+        keyCount = 0;
+    }
+
+    @Override
+    public Set<Entry<String, Set<String>>> entrySet() {
+        return new AbstractSet<Entry<String, Set<String>>>() {
+            @Override
+            public int size() {
+                return keyCount;
+            }
+
+            @Override
+            public Iterator<Entry<String, Set<String>>> iterator() {
+                return new SlotIterator<Entry<String, Set<String>>>(records.length) {
+                    @Override
+                    boolean occupied(int slot) {
+                        return records[slot] != 0;
+                    }
+
+                    @Override
+                    Entry<String, Set<String>> get(int slot) {
+                        long record = records[slot];
+                        return new SimpleImmutableEntry<>(readString(record + KEY_OFFSET),
+                                new OffHeapMemberSet(record));
+                    }
+                };
+            }
+        };
+    }
+
+    // Key index
+
+    private int findKey(String key) {
+        int hash = key.hashCode();
+        int mask = records.length - 1;
+        for (int slot = spread(hash) & mask; records[slot] != 0; slot = (slot + 1) & mask) {
+            if (hashes[slot] == hash && stringEquals(records[slot] + KEY_OFFSET, key)) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private void insertIndexSlot(long record, int hash) {
+        if ((keyCount + 1) * 2 > records.length) {
+            long[] oldRecords = records;
+            int[] oldHashes = hashes;
+            records = new long[oldRecords.length * 2];
+            hashes = new int[oldRecords.length * 2];
+            for (int slot = 0; slot < oldRecords.length; slot++) {
+                if (oldRecords[slot] != 0) {
+                    placeIndexSlot(oldRecords[slot], oldHashes[slot]);
+                }
+            }
+        }
+        placeIndexSlot(record, hash);
+        keyCount++;
+    }
+
+    private void placeIndexSlot(long record, int hash) {
+        int mask = records.length - 1;
+        int slot = spread(hash) & mask;
+        while (records[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        records[slot] = record;
+        hashes[slot] = hash;
+    }
+
+    /**
+     * Empties an index slot, shifting back later entries of its probe run so that lookups need no tombstones
+     * @param hole slot to empty
+     */
+    private void deleteIndexSlot(int hole) {
+        int mask = records.length - 1;
+        for (int next = (hole + 1) & mask; records[next] != 0; next = (next + 1) & mask) {
+            int ideal = spread(hashes[next]) & mask;
+            if (((next - ideal) & mask) >= ((next - hole) & mask)) {
+                records[hole] = records[next];
+                hashes[hole] = hashes[next];
+                hole = next;
+            }
+        }
+        records[hole] = 0;
+        hashes[hole] = 0;
+        keyCount--;
+    }
+
+    // Key records
+
+    private long newRecord(String key, int expectedMembers) {
+        long record = allocator.allocate(KEY_OFFSET + stringBytes(key));
+        int capacity = tableCapacity(expectedMembers);
+        long table = allocator.allocate(capacity * SLOT_BYTES);
+        allocator.zero(table, capacity * SLOT_BYTES);
+        allocator.putLong(record + GENERATION_OFFSET, nextGeneration++);
+        allocator.putLong(record + TABLE_OFFSET, table);
+        allocator.putInt(record + COUNT_OFFSET, 0);
+        allocator.putInt(record + CAPACITY_OFFSET, capacity);
+        writeString(record + KEY_OFFSET, key);
+        return record;
+    }
+
+    private void freeRecord(long record) {
+        long table = allocator.getLong(record + TABLE_OFFSET);
+        int capacity = allocator.getInt(record + CAPACITY_OFFSET);
+        for (int slot = 0; slot < capacity; slot++) {
+            long member = memberAddress(table, slot);
+            if (member != 0) {
+                allocator.free(member, storedStringBytes(member));
+            }
+        }
+        allocator.free(table, capacity * SLOT_BYTES);
+        allocator.putLong(record + GENERATION_OFFSET, 0);
+        allocator.free(record, KEY_OFFSET + storedStringBytes(record + KEY_OFFSET));
+    }
+
+    // Member tables
+
+    private int findMember(long record, String member) {
+        long table = allocator.getLong(record + TABLE_OFFSET);
+        int mask = allocator.getInt(record + CAPACITY_OFFSET) - 1;
+        int hash = member.hashCode();
+        for (int slot = spread(hash) & mask; ; slot = (slot + 1) & mask) {
+            long address = memberAddress(table, slot);
+            if (address == 0) {
+                return -1;
+            }
+            if (allocator.getInt(table + (long) slot * SLOT_BYTES) == hash && stringEquals(address, member)) {
+                return slot;
+            }
+        }
+    }
+
+    private boolean addMember(long record, String member) {
+        if (findMember(record, member) >= 0) {
+            return false;
+        }
+        int count = allocator.getInt(record + COUNT_OFFSET);
+        int capacity = allocator.getInt(record + CAPACITY_OFFSET);
+        if ((count + 1) * 4 > capacity * 3) {
+            resizeTable(record, capacity * 2);
+        }
+        long address = allocator.allocate(stringBytes(member));
+        writeString(address, member);
+        placeMember(allocator.getLong(record + TABLE_OFFSET), allocator.getInt(record + CAPACITY_OFFSET) - 1,
+                member.hashCode(), address);
+        allocator.putInt(record + COUNT_OFFSET, count + 1);
+        return true;
+    }
+
+    private boolean removeMember(long record, String member) {
+        int hole = findMember(record, member);
+        if (hole < 0) {
+            return false;
+        }
+        long table = allocator.getLong(record + TABLE_OFFSET);
+        int capacity = allocator.getInt(record + CAPACITY_OFFSET);
+        int mask = capacity - 1;
+        long address = memberAddress(table, hole);
+        allocator.free(address, storedStringBytes(address));
+        for (int next = (hole + 1) & mask; memberAddress(table, next) != 0; next = (next + 1) & mask) {
+            int hash = allocator.getInt(table + (long) next * SLOT_BYTES);
+            int ideal = spread(hash) & mask;
+            if (((next - ideal) & mask) >= ((next - hole) & mask)) {
+                setSlot(table, hole, hash, memberAddress(table, next));
+                hole = next;
+            }
+        }
+        setSlot(table, hole, 0, 0);
+
+        int count = allocator.getInt(record + COUNT_OFFSET) - 1;
+        allocator.putInt(record + COUNT_OFFSET, count);
+        if (capacity > MIN_TABLE_CAPACITY && count * 8 < capacity) {
+            resizeTable(record, capacity / 2);
+        }
+        return true;
+    }
+
+    private void resizeTable(long record, int newCapacity) {
+        long oldTable = allocator.getLong(record + TABLE_OFFSET);
+        int oldCapacity = allocator.getInt(record + CAPACITY_OFFSET);
+        long table = allocator.allocate(newCapacity * SLOT_BYTES);
+        allocator.zero(table, newCapacity * SLOT_BYTES);
+        for (int slot = 0; slot < oldCapacity; slot++) {
+            long address = memberAddress(oldTable, slot);
+            if (address != 0) {
+                placeMember(table, newCapacity - 1, allocator.getInt(oldTable + (long) slot * SLOT_BYTES), address);
+            }
+        }
+        allocator.free(oldTable, oldCapacity * SLOT_BYTES);
+        allocator.putLong(record + TABLE_OFFSET, table);
+        allocator.putInt(record + CAPACITY_OFFSET, newCapacity);
+    }
+
+    private void placeMember(long table, int mask, int hash, long address) {
+        int slot = spread(hash) & mask;
+        while (memberAddress(table, slot) != 0) {
+            slot = (slot + 1) & mask;
+        }
+        setSlot(table, slot, hash, address);
+    }
+
+    private long memberAddress(long table, int slot) {
+        return allocator.getLong(table + (long) slot * SLOT_BYTES + 4);
+    }
+
+    private void setSlot(long table, int slot, int hash, long address) {
+        allocator.putInt(table + (long) slot * SLOT_BYTES, hash);
+        allocator.putLong(table + (long) slot * SLOT_BYTES + 4, address);
+    }
+
+    private static int tableCapacity(int members) {
+        int capacity = MIN_TABLE_CAPACITY;
+        while (members * 4 > capacity * 3) {
+            capacity *= 2;
+        }
+        return capacity;
+    }
+
+    // Strings
+
+    private static int stringBytes(String value) {
+        return 4 + (isLatin1(value) ? value.length() : value.length() * 2);
+    }
+
+    private static boolean isLatin1(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) > 0xFF) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int storedStringBytes(long address) {
+        int header = allocator.getInt(address);
+        int length = header >>> 1;
+        return 4 + ((header & 1) != 0 ? length : length * 2);
+    }
+
+    private void writeString(long address, String value) {
+        boolean latin1 = isLatin1(value);
+        allocator.putInt(address, value.length() << 1 | (latin1 ? 1 : 0));
+        for (int i = 0; i < value.length(); i++) {
+            if (latin1) {
+                allocator.putByte(address + 4 + i, (byte) value.charAt(i));
+            } else {
+                allocator.putChar(address + 4 + 2L * i, value.charAt(i));
+            }
+        }
+    }
+
+    private boolean stringEquals(long address, String value) {
+        int header = allocator.getInt(address);
+        if (header >>> 1 != value.length()) {
+            return false;
+        }
+        boolean latin1 = (header & 1) != 0;
+        for (int i = 0; i < value.length(); i++) {
+            char stored = latin1 ? (char) (allocator.getByte(address + 4 + i) & 0xFF)
+                    : allocator.getChar(address + 4 + 2L * i);
+            if (stored != value.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String readString(long address) {
+        int header = allocator.getInt(address);
+        char[] chars = new char[header >>> 1];
+        boolean latin1 = (header & 1) != 0;
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = latin1 ? (char) (allocator.getByte(address + 4 + i) & 0xFF)
+                    : allocator.getChar(address + 4 + 2L * i);
+        }
+        return new String(chars);
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Walks the occupied slots of a table
+     * @param <T> type of the elements produced
+     */
+    private abstract static class SlotIterator<T> implements Iterator<T> {
+
+        private final int capacity;
+        private int slot = -1;
+        private int nextSlot = -1;
+
+        SlotIterator(int capacity) {
+            this.capacity = capacity;
+        }
+
+        abstract boolean occupied(int slot);
+
+        abstract T get(int slot);
+
+        @Override
+        public boolean hasNext() {
+            if (nextSlot <= slot) {
+                nextSlot = slot + 1;
+                while (nextSlot < capacity && !occupied(nextSlot)) {
+                    nextSlot++;
+                }
+            }
+            return nextSlot < capacity;
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            slot = nextSlot;
+            return get(slot);
+        }
+    }
+
+    /**
+     * Members of one key, read from and written to its off-heap member table. The view belongs to the key record it
+     * was created for; once that key is removed or the pairing cleared the view is empty
+     */
+    class OffHeapMemberSet extends AbstractSet<String> {
+
+        private final long record;
+        private final long generation;
+
+        OffHeapMemberSet(long record) {
+            this.record = record;
+            this.generation = allocator.getLong(record + GENERATION_OFFSET);
+        }
+
+        OffHeapDictionary owner() {
+            return OffHeapDictionary.this;
+        }
+
+        /**
+         * Checks whether the key this view was created for still exists, without reading the record once the
+         * pairing has been cleared since its slab is gone
+         * @return true if the view's key record is live
+         */
+        boolean isValid() {
+            return generation >= firstLiveGeneration && allocator.getLong(record + GENERATION_OFFSET) == generation;
+        }
+
+        /**
+         * Checks whether another set is a view of the same key record
+         * @param other set to compare with
+         * @return true if both views read the same members
+         */
+        boolean isSameSet(Set<String> other) {
+            return other instanceof OffHeapMemberSet && ((OffHeapMemberSet) other).record == record
+                    && ((OffHeapMemberSet) other).generation == generation;
+        }
+
+        @Override
+        public int size() {
+            return isValid() ? allocator.getInt(record + COUNT_OFFSET) : 0;
+        }
+
+        @Override
+        public boolean contains(Object member) {
+            return member instanceof String && isValid() && findMember(record, (String) member) >= 0;
+        }
+
+        @Override
+        public boolean add(String member) {
+            if (!isValid()) {
+                throw new IllegalStateException("key has been removed");
+            }
+            return addMember(record, member);
+        }
+
+        @Override
+        public boolean remove(Object member) {
+            return member instanceof String && isValid() && removeMember(record, (String) member);
+        }
+
+        @Override
+        public Iterator<String> iterator() {
+            if (!isValid()) {
+                return Collections.emptyIterator();
+            }
+            long table = allocator.getLong(record + TABLE_OFFSET);
+            return new SlotIterator<String>(allocator.getInt(record + CAPACITY_OFFSET)) {
+                @Override
+                boolean occupied(int slot) {
+                    return memberAddress(table, slot) != 0;
+                }
+
+                @Override
+                String get(int slot) {
+                    return readString(memberAddress(table, slot));
+                }
+            };
+        }
+    }
+}
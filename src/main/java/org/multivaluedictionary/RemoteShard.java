@@ -0,0 +1,83 @@
+package org.multivaluedictionary;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Shard served by a DictionaryServer, usually in another process. Commands go over one connection, one at a time;
+ * every result ends with a blank line, which is how the shard knows where it ends. A dropped connection is reopened
+ * by the next command
+ */
+public final class RemoteShard implements Shard {
+
+    private final String host;
+    private final int port;
+
+    /** Connection to the server and its reader, or null until the next command opens them; guarded by this */
+    private Socket socket;
+    private BufferedReader in;
+
+    /**
+     * Initializes the shard; it connects on its first command
+     * @param host host of the server
+     * @param port port of the server
+     */
+    public RemoteShard(String host, int port) {
+        this.host = host;
+        this.port = port;
+    }
+
+    /**
+     * Obtains the name of the shard, its host and port
+     * @return host:port of the server
+     */
+    @Override
+    public String getName() {
+        return host + ":" + port;
+    }
+
+    @Override
+    public synchronized List<String> execute(String commandLine) throws IOException {
+        try {
+            if (socket == null) {
+                socket = new Socket(host, port);
+                socket.setTcpNoDelay(true);
+                in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            }
+            OutputStream out = socket.getOutputStream();
+            out.write((commandLine + "\n").getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            List<String> lines = new ArrayList<>();
+            String line;
+            while ((line = in.readLine()) != null && !line.isEmpty()) {
+                lines.add(line);
+            }
+            if (line == null) {
+                throw new IOException("shard " + getName() + " closed the connection");
+            }
+            return lines;
+        } catch (IOException ioe) {
+            close();
+            throw ioe;
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (IOException ioe) {
+                // already closed
+            }
+            socket = null;
+            in = null;
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package org.multivaluedictionary;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Keeps a thread-safe multi-value dictionary a copy of a primary's, from a background thread. On connecting, the
+ * replica loads the full sync snapshot the primary sends and then applies each streamed record as it arrives; if the
+ * connection drops, it reconnects and full syncs again. The dictionary should only be written to by the replica, so
+ * servers over it accept read-only commands.
+ *
+ * Lag is measured in records, as how far the last applied record trails the primary's latest sequence number, and in
+ * milliseconds, as how long the last applied record took to arrive from the primary, or 0 once a heartbeat confirms
+ * the replica is caught up. The millisecond lag compares the clocks of both hosts, so it is only as accurate as they
+ * are in step
+ */
+public class ReplicaClient implements Closeable {
+
+    /** How long the replica waits before reconnecting after losing the primary */
+    private static final long RECONNECT_MILLIS = 1000;
+
+    /**
+     * Longest the replica waits to hear from the primary before treating the connection as lost, once the full sync
+     * has started arriving; preparing the snapshot before that may take as long as the dictionary needs
+     */
+    static final int READ_TIMEOUT_MILLIS = (int) (ReplicationPrimary.HEARTBEAT_MILLIS * 50);
+
+    private final ConcurrentMultiValueDictionary dictionary;
+    private final InetSocketAddress primary;
+    private final Thread thread;
+
+    private volatile Socket socket;
+    private volatile boolean running = true;
+    private volatile boolean synced;
+    private volatile long appliedSequence;
+    private volatile long primarySequence;
+    private volatile long lagMillis;
+    private volatile long fullSyncs;
+
+    /**
+     * Starts replicating a primary into a dictionary, replacing its contents at the first full sync
+     * @param dictionary dictionary to keep a copy of the primary's
+     * @param host host of the primary
+     * @param port replication port of the primary
+     */
+    ReplicaClient(ConcurrentMultiValueDictionary dictionary, String host, int port) {
+        this.dictionary = dictionary;
+        this.primary = new InetSocketAddress(host, port);
+        this.thread = new Thread(this::replicate, "replica");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Determines whether the replica has loaded a full sync and is streaming from the primary
+     * @return true while connected and synced
+     */
+    public boolean isSynced() {
+        return synced;
+    }
+
+    /**
+     * Obtains the primary's sequence number of the last record applied
+     * @return last applied sequence number
+     */
+    public long getAppliedSequence() {
+        return appliedSequence;
+    }
+
+    /**
+     * Obtains how many records the replica is behind the primary, as of the primary's last heartbeat
+     * @return records not yet applied
+     */
+    public long getLagRecords() {
+        return Math.max(0, primarySequence - appliedSequence);
+    }
+
+    /**
+     * Obtains how far the contents of the replica trail the primary in time
+     * @return lag in milliseconds
+     */
+    public long getLagMillis() {
+        return lagMillis;
+    }
+
+    /**
+     * Obtains the number of full syncs loaded since the replica started
+     * @return full syncs loaded
+     */
+    public long getFullSyncs() {
+        return fullSyncs;
+    }
+
+    /**
+     * Stops replicating, leaving the dictionary as it is, and waits for the background thread to finish
+     * @throws IOException connection could not be closed
+     */
+    @Override
+    public void close() throws IOException {
+        running = false;
+        Socket current = socket;
+        if (current != null) {
+            current.close();
+        }
+        thread.interrupt();
+        try {
+            thread.join(RECONNECT_MILLIS);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void replicate() {
+        while (running) {
+            try (Socket connection = new Socket()) {
+                socket = connection;
+                connection.connect(primary);
+                connection.setTcpNoDelay(true);
+                stream(connection);
+            } catch (IOException ioe) {
+                if (running) {
+                    System.err.println("Replication from " + primary + " interrupted: " + ioe.getMessage());
+                }
+            } finally {
+                synced = false;
+                socket = null;
+            }
+            try {
+                Thread.sleep(RECONNECT_MILLIS);
+            } catch (InterruptedException ie) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Sends the handshake, loads the full sync and applies streamed records until the connection drops. The primary
+     * sends nothing while it writes the full sync snapshot, so reads only time out once the full sync has begun
+     * @param connection connection to the primary
+     * @throws IOException connection failed or the primary sent something unexpected
+     */
+    private void stream(Socket connection) throws IOException {
+        DataOutputStream out = new DataOutputStream(connection.getOutputStream());
+        out.writeInt(ReplicationPrimary.MAGIC);
+        out.writeInt(ReplicationPrimary.VERSION);
+        out.flush();
+
+        DataInputStream in = new DataInputStream(new BufferedInputStream(connection.getInputStream()));
+        byte[] payload = new byte[256];
+        while (running) {
+            byte type = in.readByte();
+            long sequence = in.readLong();
+            switch (type) {
+                case ReplicationPrimary.FULL_SYNC:
+                    connection.setSoTimeout(READ_TIMEOUT_MILLIS);
+                    loadFullSync(in, in.readLong());
+                    appliedSequence = sequence;
+                    primarySequence = sequence;
+                    lagMillis = 0;
+                    fullSyncs++;
+                    synced = true;
+                    break;
+                case ReplicationPrimary.RECORD:
+                    long sentMillis = in.readLong();
+                    int length = in.readInt();
+                    if (payload.length < length) {
+                        payload = new byte[Math.max(length, payload.length * 2)];
+                    }
+                    in.readFully(payload, 0, length);
+                    WriteAheadLog.apply(ByteBuffer.wrap(payload, 0, length), dictionary);
+                    appliedSequence = sequence;
+                    primarySequence = Math.max(primarySequence, sequence);
+                    lagMillis = Math.max(0, System.currentTimeMillis() - sentMillis);
+                    break;
+                case ReplicationPrimary.HEARTBEAT:
+                    in.readLong();
+                    primarySequence = sequence;
+                    if (appliedSequence >= sequence) {
+                        lagMillis = 0;
+                    }
+                    break;
+                default:
+                    throw new IOException("unknown replication frame " + type);
+            }
+        }
+    }
+
+    /**
+     * Receives a full sync snapshot into a temporary file and loads it. The file is deleted once loaded; the
+     * dictionary keeps reading its mapping until the first replicated write copies it
+     * @param in stream positioned at the snapshot
+     * @param length length of the snapshot in bytes
+     * @throws IOException snapshot could not be received or loaded
+     */
+    private void loadFullSync(DataInputStream in, long length) throws IOException {
+        Path snapshot = Files.createTempFile("mvd-replica", ".snapshot");
+        try {
+            try (OutputStream file = Files.newOutputStream(snapshot)) {
+                byte[] buffer = new byte[64 * 1024];
+                long remaining = length;
+                while (remaining > 0) {
+                    int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                    if (read < 0) {
+                        throw new IOException("primary closed the connection during a full sync");
+                    }
+                    file.write(buffer, 0, read);
+                    remaining -= read;
+                }
+            }
+            dictionary.loadSnapshot(snapshot);
+        } finally {
+            try {
+                Files.deleteIfExists(snapshot);
+            } catch (IOException ioe) {
+                snapshot.toFile().deleteOnExit();
+            }
+        }
+    }
+}
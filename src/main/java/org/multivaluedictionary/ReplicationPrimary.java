@@ -0,0 +1,293 @@
+package org.multivaluedictionary;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Streams every mutation of a thread-safe multi-value dictionary to replicas over TCP. A replica that connects is
+ * first sent a full snapshot and then every mutation from a sequence number at or before the snapshot on, in the
+ * write-ahead log's record format. Replaying records the snapshot already reflects leaves it unchanged, and every
+ * later operation on a member is replayed in order, so the replica converges on the primary without writers ever
+ * being paused for longer than it takes to register the replica.
+ *
+ * Each replica has its own queue and sender thread, so a slow replica never holds up writers or other replicas; one
+ * that falls more than MAX_BACKLOG_BYTES behind is disconnected, and full syncs again when it reconnects. While there
+ * is nothing to send, heartbeats tell replicas the primary's latest sequence number so they can measure their lag.
+ *
+ * Frames sent to a replica start with a type byte: a full sync is followed by [long sequence][long length][snapshot],
+ * a record by [long sequence][long primary time in millis][int length][payload] and a heartbeat by [long sequence]
+ * [long primary time in millis]. A replica opens the connection by sending [int MAGIC][int VERSION]
+ */
+public class ReplicationPrimary implements MutationListener, Closeable {
+
+    /** "MVDR" */
+    static final int MAGIC = 0x4D564452;
+
+    static final int VERSION = 1;
+
+    static final byte FULL_SYNC = 1;
+    static final byte RECORD = 2;
+    static final byte HEARTBEAT = 3;
+
+    /** Longest a replica goes without hearing from the primary */
+    static final long HEARTBEAT_MILLIS = 100;
+
+    /** Most bytes of records a replica may have queued before it is disconnected */
+    private static final long MAX_BACKLOG_BYTES = 64 * 1024 * 1024;
+
+    /** Size of the buffer frames are written to each replica through */
+    private static final int SEND_BUFFER_BYTES = 64 * 1024;
+
+    private final ConcurrentMultiValueDictionary dictionary;
+    private final ServerSocket serverSocket;
+
+    /** Replicas being synced or streamed to */
+    private final List<Replica> replicas = new CopyOnWriteArrayList<>();
+
+    /** Sequence number of the last mutation; written under this */
+    private volatile long sequence;
+
+    private volatile boolean running = true;
+    private final AtomicLong fullSyncs = new AtomicLong();
+
+    /**
+     * Binds the primary to a port and starts accepting replicas. The primary only hears about mutations once it is
+     * registered as a listener of the dictionary, which ConcurrentMultiValueDictionary.enableReplication does
+     * @param dictionary dictionary to replicate
+     * @param port port to listen for replicas on, or 0 for any free port
+     * @throws IOException port could not be bound
+     */
+    ReplicationPrimary(ConcurrentMultiValueDictionary dictionary, int port) throws IOException {
+        this.dictionary = dictionary;
+        this.serverSocket = new ServerSocket();
+        serverSocket.bind(new InetSocketAddress(port));
+        Thread acceptor = new Thread(this::acceptReplicas, "replication-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     * Obtains the port replicas connect to
+     * @return bound port
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Obtains the sequence number of the last mutation, which replicas count their progress in
+     * @return mutations since the primary started
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Obtains the number of replicas connected
+     * @return connected replicas, including those still being synced
+     */
+    public int getReplicaCount() {
+        return replicas.size();
+    }
+
+    /**
+     * Obtains the number of full syncs sent since the primary started
+     * @return full syncs sent
+     */
+    public long getFullSyncs() {
+        return fullSyncs.get();
+    }
+
+    /**
+     * Stops accepting replicas and disconnects those connected
+     */
+    @Override
+    public void close() {
+        running = false;
+        try {
+            serverSocket.close();
+        } catch (IOException ioe) {
+            // nothing left to release
+        }
+        for (Replica replica : replicas) {
+            replica.disconnect();
+        }
+    }
+
+    @Override
+    public void added(String key, String member) {
+        append(WriteAheadLog.ADD, key, member);
+    }
+
+    @Override
+    public void removed(String key, String member) {
+        append(WriteAheadLog.REMOVE, key, member);
+    }
+
+    @Override
+    public void removedAll(String key, Set<String> members) {
+        append(WriteAheadLog.REMOVE_ALL, key, null);
+    }
+
+    @Override
+    public void cleared() {
+        append(WriteAheadLog.CLEAR, null, null);
+    }
+
+    /**
+     * Numbers a mutation and queues it for every replica. Records are only encoded while there are replicas
+     * @param operation operation byte
+     * @param key key of the operation, or null if it takes none
+     * @param member member of the operation, or null if it takes none
+     */
+    private synchronized void append(byte operation, String key, String member) {
+        long next = sequence + 1;
+        sequence = next;
+        if (replicas.isEmpty()) {
+            return;
+        }
+        byte[] keyBytes = key == null ? null : key.getBytes(StandardCharsets.UTF_8);
+        byte[] memberBytes = member == null ? null : member.getBytes(StandardCharsets.UTF_8);
+        int payloadBytes = 1 + (keyBytes == null ? 0 : 4 + keyBytes.length)
+                + (memberBytes == null ? 0 : 4 + memberBytes.length);
+        ByteBuffer frame = ByteBuffer.allocate(1 + 8 + 8 + 4 + payloadBytes);
+        frame.put(RECORD).putLong(next).putLong(System.currentTimeMillis()).putInt(payloadBytes).put(operation);
+        if (keyBytes != null) {
+            frame.putInt(keyBytes.length).put(keyBytes);
+        }
+        if (memberBytes != null) {
+            frame.putInt(memberBytes.length).put(memberBytes);
+        }
+        for (Replica replica : replicas) {
+            replica.offer(frame.array());
+        }
+    }
+
+    private void acceptReplicas() {
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                Thread sender = new Thread(() -> new Replica(socket).run(), "replication-send");
+                sender.setDaemon(true);
+                sender.start();
+            } catch (IOException ioe) {
+                if (running) {
+                    System.err.println("Replication accept failed: " + ioe.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Connection to one replica, with the records queued for it
+     */
+    private class Replica {
+
+        private final Socket socket;
+        private final LinkedBlockingQueue<byte[]> queue = new LinkedBlockingQueue<>();
+        private final AtomicLong queuedBytes = new AtomicLong();
+        private volatile boolean connected = true;
+
+        Replica(Socket socket) {
+            this.socket = socket;
+        }
+
+        /**
+         * Queues a record, disconnecting the replica instead if it has fallen too far behind
+         * @param frame encoded record
+         */
+        void offer(byte[] frame) {
+            if (queuedBytes.addAndGet(frame.length) > MAX_BACKLOG_BYTES) {
+                disconnect();
+            } else {
+                queue.offer(frame);
+            }
+        }
+
+        void disconnect() {
+            connected = false;
+            try {
+                socket.close();
+            } catch (IOException ioe) {
+                // already closed
+            }
+        }
+
+        /**
+         * Checks the replica's handshake, sends it a full sync and then streams records to it until either side
+         * disconnects
+         */
+        void run() {
+            Path snapshot = null;
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(),
+                    SEND_BUFFER_BYTES))) {
+                DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                    return;
+                }
+                long synced;
+                synchronized (ReplicationPrimary.this) {
+                    synced = sequence;
+                    replicas.add(this);
+                }
+                snapshot = Files.createTempFile("mvd-sync", ".snapshot");
+                dictionary.snapshotView().saveSnapshot(snapshot);
+                out.writeByte(FULL_SYNC);
+                out.writeLong(synced);
+                out.writeLong(Files.size(snapshot));
+                Files.copy(snapshot, out);
+                out.flush();
+                Files.delete(snapshot);
+                snapshot = null;
+                fullSyncs.incrementAndGet();
+
+                while (connected && running) {
+                    byte[] frame = queue.poll(HEARTBEAT_MILLIS, TimeUnit.MILLISECONDS);
+                    if (frame == null) {
+                        out.writeByte(HEARTBEAT);
+                        out.writeLong(sequence);
+                        out.writeLong(System.currentTimeMillis());
+                    }
+                    while (frame != null) {
+                        queuedBytes.addAndGet(-frame.length);
+                        out.write(frame);
+                        frame = queue.poll();
+                    }
+                    out.flush();
+                }
+            } catch (IOException ioe) {
+                // the replica went away; it full syncs again when it reconnects
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            } finally {
+                replicas.remove(this);
+                disconnect();
+                if (snapshot != null) {
+                    try {
+                        Files.deleteIfExists(snapshot);
+                    } catch (IOException ioe) {
+                        // left for the temporary directory to clean up
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package org.multivaluedictionary;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Inverse of the multi-value dictionary: for every member, the set of keys holding it. Kept up to date as a
+ * mutation listener so that finding the keys of a member costs O(result) instead of a scan over every key
+ */
+class ReverseIndex implements MutationListener {
+
+    /** Member to the keys holding it */
+    private final Map<String, Set<String>> keysByMember = new ConcurrentHashMap<>();
+
+    /**
+     * Initializes the index from the current contents of a key-member(s) pairing
+     * @param dictionary key-member(s) pairing to index
+     */
+    ReverseIndex(Map<String, Set<String>> dictionary) {
+        for (Map.Entry<String, Set<String>> entry : dictionary.entrySet()) {
+            for (String member : entry.getValue()) {
+                added(entry.getKey(), member);
+            }
+        }
+    }
+
+    /**
+     * Obtains the keys holding a member
+     * @param member member to look up
+     * @return unmodifiable view of the keys holding the member, empty if there are none
+     */
+    Set<String> getKeys(String member) {
+        Set<String> keys = keysByMember.get(member);
+        return keys == null ? Collections.emptySet() : Collections.unmodifiableSet(keys);
+    }
+
+    @Override
+    public void added(String key, String member) {
+        keysByMember.compute(member, (m, keys) -> {
+            if (keys == null) {
+                keys = ConcurrentHashMap.newKeySet();
+            }
+            keys.add(key);
+            return keys;
+        });
+    }
+
+    @Override
+    public void removed(String key, String member) {
+        keysByMember.computeIfPresent(member, (m, keys) -> {
+            keys.remove(key);
+            return keys.isEmpty() ? null : keys;
+        });
+    }
+
+    @Override
+    public void removedAll(String key, Set<String> members) {
+        for (String member : members) {
+            removed(key, member);
+        }
+    }
+
+    @Override
+    public void cleared() {
+        keysByMember.clear();
+    }
+
+    /**
+     * Estimates the heap held by the index. Member and key strings are shared with the dictionary and not counted
+     * @return estimated size in bytes
+     */
+    long estimatedBytes() {
+        long bytes = MemoryEstimator.hashTableBytes(keysByMember.size());
+        for (Set<String> keys : keysByMember.values()) {
+            bytes += MemoryEstimator.HASH_ENTRY_BYTES + MemoryEstimator.HASH_SET_BYTES
+                    + MemoryEstimator.hashTableBytes(keys.size())
+                    + (long) MemoryEstimator.HASH_ENTRY_BYTES * keys.size();
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,105 @@
+package org.multivaluedictionary;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * One page of an incremental scan, along with the cursor that resumes the scan after it. Scans walk their keys or
+ * members in lexicographic order and the cursor records the last one visited, so a scan never returns anything twice
+ * once it is past it, whatever rehashing or writes happen between calls. Entries added or removed while a scan runs
+ * may or may not be returned; entries present throughout are returned exactly once
+ * @param <T> type of the items scanned
+ */
+public final class ScanResult<T> {
+
+    /** Cursor that starts a scan, and that is returned once a scan is complete */
+    public static final String START = "0";
+
+    /** Prefix of every cursor other than START, so that no position encodes to START */
+    private static final char POSITION = 'k';
+
+    /** Separates the parts of a cursor recording a key and a member */
+    private static final char SEPARATOR = '.';
+
+    private final String cursor;
+    private final List<T> items;
+
+    /**
+     * Initializes a page
+     * @param cursor cursor resuming the scan after this page, or START if the scan is complete
+     * @param items items of this page
+     */
+    ScanResult(String cursor, List<T> items) {
+        this.cursor = cursor;
+        this.items = items;
+    }
+
+    /**
+     * Obtains the cursor to pass to the next call of the scan
+     * @return cursor resuming the scan, or START if the scan is complete
+     */
+    public String getCursor() {
+        return cursor;
+    }
+
+    /**
+     * Obtains the items of this page. A page may be empty even though the scan is not complete
+     * @return items in scan order
+     */
+    public List<T> getItems() {
+        return items;
+    }
+
+    /**
+     * Determines whether the scan has visited everything
+     * @return true if there is nothing left to scan
+     */
+    public boolean isComplete() {
+        return START.equals(cursor);
+    }
+
+    /**
+     * Encodes a scan position as an opaque cursor
+     * @param position last key visited, optionally followed by the last member visited within it
+     * @return cursor
+     */
+    static String encode(String... position) {
+        StringBuilder cursor = new StringBuilder().append(POSITION);
+        for (int i = 0; i < position.length; i++) {
+            if (i > 0) {
+                cursor.append(SEPARATOR);
+            }
+            cursor.append(Base64.getUrlEncoder().withoutPadding()
+                    .encodeToString(position[i].getBytes(StandardCharsets.UTF_8)));
+        }
+        return cursor.toString();
+    }
+
+    /**
+     * Decodes a cursor into the scan position it records
+     * @param cursor cursor returned by a previous page, or START
+     * @return last key visited, optionally followed by the last member visited within it, or an empty array for START
+     * @throws IllegalArgumentException cursor was not returned by a scan
+     */
+    static String[] decode(String cursor) throws IllegalArgumentException {
+        if (START.equals(cursor)) {
+            return new String[0];
+        }
+        if (cursor.isEmpty() || cursor.charAt(0) != POSITION) {
+            throw new IllegalArgumentException("invalid cursor");
+        }
+        String[] parts = cursor.substring(1).split("\\" + SEPARATOR, -1);
+        if (parts.length > 2) {
+            throw new IllegalArgumentException("invalid cursor");
+        }
+        for (int i = 0; i < parts.length; i++) {
+            try {
+                parts[i] = new String(Base64.getUrlDecoder().decode(parts[i]), StandardCharsets.UTF_8);
+            } catch (IllegalArgumentException iae) {
+                throw new IllegalArgumentException("invalid cursor");
+            }
+        }
+        return parts;
+    }
+}
@@ -0,0 +1,121 @@
+package org.multivaluedictionary;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * Intersection, union and difference over any number of member sets. Work is driven by the set that bounds the
+ * result, and sets large enough to pay for it are processed on the fork/join common pool
+ */
+final class SetAlgebra {
+
+    /** Size of the driving set at which the parallel path is taken */
+    static final int PARALLEL_THRESHOLD = 1 << 16;
+
+    /** Orders sets from smallest to largest */
+    private static final Comparator<Set<String>> BY_SIZE = Comparator.comparingInt(Set::size);
+
+    private SetAlgebra() {
+    }
+
+    /**
+     * Obtains the members common to every set. Iterates the smallest set and probes the others from smallest to
+     * largest, so a member is rejected by the most selective set first
+     * @param sets sets to intersect
+     * @return new set holding the intersection
+     */
+    static Set<String> intersection(List<Set<String>> sets) {
+        if (sets.isEmpty()) {
+            return new HashSet<>();
+        }
+        List<Set<String>> bySize = new ArrayList<>(sets);
+        bySize.sort(BY_SIZE);
+        Set<String> smallest = bySize.get(0);
+        if (smallest.isEmpty()) {
+            return new HashSet<>();
+        }
+
+        List<Set<String>> others = bySize.subList(1, bySize.size());
+        return filter(smallest, member -> {
+            for (Set<String> other : others) {
+                if (!other.contains(member)) {
+                    return false;
+                }
+            }
+            return true;
+        });
+    }
+
+    /**
+     * Obtains the members of the first set that are in none of the others
+     * @param first set to take members from
+     * @param others sets whose members are excluded
+     * @return new set holding the difference
+     */
+    static Set<String> difference(Set<String> first, List<Set<String>> others) {
+        if (first.isEmpty()) {
+            return new HashSet<>();
+        }
+        List<Set<String>> bySize = new ArrayList<>(others);
+        bySize.removeIf(Set::isEmpty);
+        if (bySize.isEmpty()) {
+            return new HashSet<>(first);
+        }
+        // larger sets are more likely to hold a member, so probe them first
+        bySize.sort(BY_SIZE.reversed());
+        return filter(first, member -> {
+            for (Set<String> other : bySize) {
+                if (other.contains(member)) {
+                    return false;
+                }
+            }
+            return true;
+        });
+    }
+
+    /**
+     * Obtains the members held by any of the sets
+     * @param sets sets to unite
+     * @return new set holding the union
+     */
+    static Set<String> union(List<Set<String>> sets) {
+        long total = 0;
+        Set<String> largest = null;
+        for (Set<String> members : sets) {
+            total += members.size();
+            if (largest == null || members.size() > largest.size()) {
+                largest = members;
+            }
+        }
+        if (total >= PARALLEL_THRESHOLD) {
+            return sets.parallelStream().flatMap(Set::stream).collect(Collectors.toSet());
+        }
+
+        // start from the largest set so the result table is sized once
+        Set<String> union = largest == null ? new HashSet<>() : new HashSet<>(largest);
+        for (Set<String> members : sets) {
+            if (members != largest) {
+                union.addAll(members);
+            }
+        }
+        return union;
+    }
+
+    private static Set<String> filter(Set<String> source, Predicate<String> keep) {
+        if (source.size() >= PARALLEL_THRESHOLD) {
+            return source.parallelStream().filter(keep).collect(Collectors.toSet());
+        }
+        Set<String> result = new HashSet<>();
+        for (String member : source) {
+            if (keep.test(member)) {
+                result.add(member);
+            }
+        }
+        return result;
+    }
+}
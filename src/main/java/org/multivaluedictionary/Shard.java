@@ -0,0 +1,27 @@
+package org.multivaluedictionary;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * One node of a sharded deployment, which a ShardRouter sends the commands for its keys to. A shard speaks the same
+ * command language as the command-line interface, whether it lives in this process or behind a DictionaryServer
+ */
+public interface Shard extends Closeable {
+
+    /**
+     * Obtains the name the shard is placed on the hash ring by; it must stay the same across restarts so that keys
+     * keep their shard
+     * @return unique name of the shard
+     */
+    String getName();
+
+    /**
+     * Executes one command line on the shard. Safe to call from several threads at once
+     * @param commandLine command to execute
+     * @return lines of the result, without the blank line that ends it
+     * @throws IOException shard could not be reached
+     */
+    List<String> execute(String commandLine) throws IOException;
+}
@@ -0,0 +1,382 @@
+package org.multivaluedictionary;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Spreads the keys of one logical dictionary over several shards by consistent hashing. The router takes over the
+ * commands of a CommandProcessor: commands on a single key go straight to the shard owning it, set operations over
+ * keys on different shards fetch each key's members in parallel and combine them here, and commands over the whole
+ * dictionary are sent to every shard in parallel and their results merged. Writes spanning shards, and commands
+ * whose state cannot be merged over the command language, are refused
+ */
+public final class ShardRouter implements Closeable {
+
+    /** Points each shard is placed at on the ring unless told otherwise */
+    public static final int DEFAULT_VIRTUAL_NODES = 160;
+
+    /** Every shard, in ring order */
+    private final List<Shard> shards;
+
+    /** Assigns keys to shards */
+    private final ConsistentHashRing ring;
+
+    /** Sends commands to several shards at once */
+    private final ExecutorService gatherPool;
+
+    /**
+     * Initializes a router placing each shard at DEFAULT_VIRTUAL_NODES points
+     * @param shards shards with unique names; the same names give the same placement of keys
+     */
+    public ShardRouter(List<? extends Shard> shards) {
+        this(shards, DEFAULT_VIRTUAL_NODES);
+    }
+
+    /**
+     * Initializes a router
+     * @param shards shards with unique names; the same names give the same placement of keys
+     * @param virtualNodes points each shard is placed at on the ring
+     */
+    public ShardRouter(List<? extends Shard> shards, int virtualNodes) {
+        this.shards = new ArrayList<>(shards);
+        List<String> names = new ArrayList<>();
+        for (Shard shard : shards) {
+            names.add(shard.getName());
+        }
+        if (new HashSet<>(names).size() != names.size()) {
+            throw new IllegalArgumentException("shard names must be unique: " + names);
+        }
+        this.ring = new ConsistentHashRing(names, virtualNodes);
+        this.gatherPool = Executors.newFixedThreadPool(shards.size(), runnable -> {
+            Thread thread = new Thread(runnable, "shard-gather");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Finds the shard owning a key
+     * @param key key to look up
+     * @return shard the key's commands are sent to
+     */
+    public Shard getShardFor(String key) {
+        return shards.get(ring.shardFor(key));
+    }
+
+    /**
+     * Registers a routed version of every dictionary command in a registry, replacing the local ones. Only EXIT is left
+     * alone; the statistics of each shard are read from the shard itself
+     * @param commands registry of the processor the router takes over
+     */
+    public void registerCommands(CommandRegistry commands) {
+        commands.register("KEYS", 0, 1, this::keys)
+                .register("KEYRANGE", 2, this::keyRange)
+                .register("MEMBERS", 1, this::forwardToOwner)
+                .register("SSCAN", 2, 6, this::forwardToOwner)
+                .register("ADD", 2, this::forwardToOwner)
+                .register("REMOVE", 2, this::forwardToOwner)
+                .register("REMOVEALL", 1, this::forwardToOwner)
+                .register("CLEAR", 0, this::clear)
+                .register("COUNT", 0, this::count)
+                .register("SCARD", 1, this::forwardToOwner)
+                .register("KEYEXISTS", 1, this::forwardToOwner)
+                .register("VALUEEXISTS", 2, this::forwardToOwner)
+                .register("ALLMEMBERS", 0, this::concatenate)
+                .register("ITEMS", 0, this::concatenate)
+                .register("KEYSFOR", 1, this::concatenate)
+                .register("INTERSECTION", 2, CommandRegistry.VARIADIC, this::intersection)
+                .register("UNION", 2, CommandRegistry.VARIADIC, this::union)
+                .register("DIFF", 2, CommandRegistry.VARIADIC, this::difference)
+                .register("INTERSECTIONSTORE", 3, CommandRegistry.VARIADIC, this::store)
+                .register("UNIONSTORE", 3, CommandRegistry.VARIADIC, this::store)
+                .register("DIFFSTORE", 3, CommandRegistry.VARIADIC, this::store)
+                .register("EXPIRE", 2, 3, this::forwardToOwner);
+        for (String name : new String[] {"SCAN", "ISCAN", "DISTINCTCOUNT", "BULKLOAD", "SAVE", "LOAD", "STATS", "WATCH",
+                "UNWATCH"}) {
+            commands.register(name, 0, CommandRegistry.VARIADIC, this::unsupported);
+        }
+    }
+
+    /**
+     * Stops the gather threads and closes every shard
+     * @throws IOException a shard could not be closed
+     */
+    @Override
+    public void close() throws IOException {
+        gatherPool.shutdown();
+        for (Shard shard : shards) {
+            shard.close();
+        }
+    }
+
+    private boolean forwardToOwner(CommandTokenizer tokens, PrintWriter out) {
+        Shard owner = getShardFor(tokens.get(1));
+        try {
+            printLines(out, owner.execute(commandLine(tokens)));
+        } catch (IOException ioe) {
+            printUnavailable(out, owner, ioe);
+        }
+        return true;
+    }
+
+    private boolean keys(CommandTokenizer tokens, PrintWriter out) {
+        List<String> keys = gatherItems(commandLine(tokens), out);
+        if (keys != null) {
+            if (tokens.size() == 2) {
+                // pattern matches come back sorted from each shard
+                Collections.sort(keys);
+            }
+            printList(out, keys);
+        }
+        return true;
+    }
+
+    private boolean keyRange(CommandTokenizer tokens, PrintWriter out) {
+        List<String> keys = gatherItems(commandLine(tokens), out);
+        if (keys != null) {
+            Collections.sort(keys);
+            printList(out, keys);
+        }
+        return true;
+    }
+
+    private boolean concatenate(CommandTokenizer tokens, PrintWriter out) {
+        List<String> items = gatherItems(commandLine(tokens), out);
+        if (items != null) {
+            printList(out, items);
+        }
+        return true;
+    }
+
+    private boolean count(CommandTokenizer tokens, PrintWriter out) {
+        List<List<String>> results = gather(shards, commandLine(tokens), out);
+        if (results != null) {
+            long keys = 0;
+            long members = 0;
+            for (List<String> lines : results) {
+                keys += Long.parseLong(lines.get(0).substring(lines.get(0).lastIndexOf(' ') + 1));
+                members += Long.parseLong(lines.get(1).substring(lines.get(1).lastIndexOf(' ') + 1));
+            }
+            out.printf("1) keys %d\n2) members %d\n\n", keys, members);
+        }
+        return true;
+    }
+
+    private boolean clear(CommandTokenizer tokens, PrintWriter out) {
+        if (gather(shards, commandLine(tokens), out) != null) {
+            out.println(") Cleared\n");
+        }
+        return true;
+    }
+
+    private boolean intersection(CommandTokenizer tokens, PrintWriter out) {
+        List<Set<String>> sets = memberSets(tokens, out);
+        if (sets != null) {
+            Set<String> result = new LinkedHashSet<>(sets.get(0));
+            for (Set<String> set : sets.subList(1, sets.size())) {
+                result.retainAll(set);
+            }
+            printList(out, result);
+        }
+        return true;
+    }
+
+    private boolean union(CommandTokenizer tokens, PrintWriter out) {
+        List<Set<String>> sets = memberSets(tokens, out);
+        if (sets != null) {
+            Set<String> result = new LinkedHashSet<>();
+            for (Set<String> set : sets) {
+                result.addAll(set);
+            }
+            printList(out, result);
+        }
+        return true;
+    }
+
+    private boolean difference(CommandTokenizer tokens, PrintWriter out) {
+        List<Set<String>> sets = memberSets(tokens, out);
+        if (sets != null) {
+            Set<String> result = new LinkedHashSet<>(sets.get(0));
+            for (Set<String> set : sets.subList(1, sets.size())) {
+                result.removeAll(set);
+            }
+            printList(out, result);
+        }
+        return true;
+    }
+
+    private boolean store(CommandTokenizer tokens, PrintWriter out) {
+        Shard owner = getShardFor(tokens.get(1));
+        for (int i = 2; i < tokens.size(); i++) {
+            if (getShardFor(tokens.get(i)) != owner) {
+                out.println(") ERROR, every key of a STORE command must live on the same shard\n");
+                return true;
+            }
+        }
+        return forwardToOwner(tokens, out);
+    }
+
+    private boolean unsupported(CommandTokenizer tokens, PrintWriter out) {
+        out.println(") ERROR, " + tokens.get(0) + " is not supported across shards\n");
+        return true;
+    }
+
+    /**
+     * Fetches the members of every key of a set operation. When every key lives on one shard the whole operation is
+     * sent there instead, and null returned after printing its result
+     * @param tokens set operation with its keys
+     * @param out where to print the result of a forwarded operation or an error
+     * @return members of each key in order, empty for keys that do not exist, or null if the result was printed
+     */
+    private List<Set<String>> memberSets(CommandTokenizer tokens, PrintWriter out) {
+        Shard owner = getShardFor(tokens.get(1));
+        boolean colocated = true;
+        for (int i = 2; i < tokens.size() && colocated; i++) {
+            colocated = getShardFor(tokens.get(i)) == owner;
+        }
+        if (colocated) {
+            forwardToOwner(tokens, out);
+            return null;
+        }
+        List<Future<List<String>>> pending = new ArrayList<>();
+        for (int i = 1; i < tokens.size(); i++) {
+            Shard shard = getShardFor(tokens.get(i));
+            String command = "MEMBERS " + tokens.get(i);
+            pending.add(gatherPool.submit(() -> shard.execute(command)));
+        }
+        List<Set<String>> sets = new ArrayList<>();
+        for (int i = 0; i < pending.size(); i++) {
+            List<String> lines = await(pending.get(i), getShardFor(tokens.get(i + 1)), out);
+            if (lines == null) {
+                return null;
+            }
+            // a key that does not exist is an error from MEMBERS but an empty set to set operations
+            sets.add(isError(lines) ? Collections.<String>emptySet() : new LinkedHashSet<>(items(lines)));
+        }
+        return sets;
+    }
+
+    /**
+     * Sends a command to every shard and collects the items of their results
+     * @param commandLine command to send
+     * @param out where to print an error
+     * @return items of every shard's result, or null if an error was printed
+     */
+    private List<String> gatherItems(String commandLine, PrintWriter out) {
+        List<List<String>> results = gather(shards, commandLine, out);
+        if (results == null) {
+            return null;
+        }
+        List<String> items = new ArrayList<>();
+        for (List<String> lines : results) {
+            items.addAll(items(lines));
+        }
+        return items;
+    }
+
+    /**
+     * Sends a command to several shards in parallel
+     * @param targets shards to send the command to
+     * @param commandLine command to send
+     * @param out where to print an error
+     * @return result lines of each shard in order, or null if a shard failed or answered with an error, which was
+     *         printed
+     */
+    private List<List<String>> gather(List<Shard> targets, String commandLine, PrintWriter out) {
+        List<Future<List<String>>> pending = new ArrayList<>();
+        for (Shard shard : targets) {
+            pending.add(gatherPool.submit(() -> shard.execute(commandLine)));
+        }
+        List<List<String>> results = new ArrayList<>();
+        for (int i = 0; i < pending.size(); i++) {
+            List<String> lines = await(pending.get(i), targets.get(i), out);
+            if (lines == null) {
+                return null;
+            }
+            if (isError(lines)) {
+                printLines(out, lines);
+                return null;
+            }
+            results.add(lines);
+        }
+        return results;
+    }
+
+    /**
+     * Waits for a shard's result
+     * @param result pending result
+     * @param shard shard computing it
+     * @param out where to print an error
+     * @return result lines, or null if the shard failed, which was printed
+     */
+    private static List<String> await(Future<List<String>> result, Shard shard, PrintWriter out) {
+        try {
+            return result.get();
+        } catch (ExecutionException ee) {
+            printUnavailable(out, shard, ee.getCause());
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            printUnavailable(out, shard, ie);
+        }
+        return null;
+    }
+
+    /**
+     * Extracts the items of a numbered list
+     * @param lines result lines of a command printing a list
+     * @return items without their numbers, empty for an empty set
+     */
+    private static List<String> items(List<String> lines) {
+        List<String> items = new ArrayList<>(lines.size());
+        for (String line : lines) {
+            int separator = line.indexOf(") ");
+            if (separator > 0) {
+                items.add(line.substring(separator + 2));
+            }
+        }
+        return items;
+    }
+
+    private static boolean isError(List<String> lines) {
+        return !lines.isEmpty() && lines.get(0).startsWith(") ERROR");
+    }
+
+    private static String commandLine(CommandTokenizer tokens) {
+        return String.join(" ", tokens.from(0));
+    }
+
+    private static void printList(PrintWriter out, Collection<String> items) {
+        if (items.isEmpty()) {
+            out.println("(empty set)\n");
+        } else {
+            int itemNum = 1;
+            for (String item : items) {
+                out.printf("%d) %s\n", itemNum++, item);
+            }
+            out.println();
+        }
+    }
+
+    private static void printLines(PrintWriter out, List<String> lines) {
+        for (String line : lines) {
+            out.println(line);
+        }
+        out.println();
+    }
+
+    private static void printUnavailable(PrintWriter out, Shard shard, Throwable cause) {
+        out.println(") ERROR, shard " + shard.getName() + " is unavailable: " + cause.getMessage() + "\n");
+    }
+}
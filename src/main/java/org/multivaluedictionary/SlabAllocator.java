@@ -0,0 +1,196 @@
+package org.multivaluedictionary;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Allocates blocks of off-heap memory out of 1 MiB direct buffer slabs. Block sizes are rounded up to a power of two
+ * and freed blocks are kept on an intrusive free list per size, so they are reused by later allocations of the same
+ * size without the garbage collector ever seeing them. Blocks larger than a slab get a direct buffer of their own,
+ * which is dropped when they are freed. Addresses are longs holding the slab number plus one in the high half and the
+ * offset in the low half, so 0 is never a valid address. Not thread-safe
+ */
+final class SlabAllocator {
+
+    /** Size of each shared slab */
+    static final int SLAB_BYTES = 1 << 20;
+
+    /** Smallest block; a freed block must hold the address of the next free one */
+    private static final int MIN_BLOCK_BYTES = 16;
+
+    private static final int MIN_SIZE_CLASS = Integer.numberOfTrailingZeros(MIN_BLOCK_BYTES);
+    private static final int MAX_SIZE_CLASS = Integer.numberOfTrailingZeros(SLAB_BYTES);
+
+    private ByteBuffer[] slabs = new ByteBuffer[16];
+    private int slabCount;
+
+    /** Slab numbers of dropped dedicated buffers, for reuse */
+    private int[] freeSlabNumbers = new int[16];
+    private int freeSlabCount;
+
+    /** Head of the free list of each size class, or 0 */
+    private final long[] freeLists = new long[MAX_SIZE_CLASS + 1];
+
+    /** Shared slab that new blocks are carved from, and where its unused space starts */
+    private int currentSlab = -1;
+    private int currentOffset = SLAB_BYTES;
+
+    private long usedBytes;
+    private long reservedBytes;
+
+    /**
+     * Allocates a block
+     * @param bytes number of bytes needed
+     * @return address of a block of at least that many bytes, with undefined contents
+     */
+    long allocate(int bytes) {
+        int sizeClass = sizeClass(bytes);
+        if (sizeClass > MAX_SIZE_CLASS) {
+            int slab = addSlab(ByteBuffer.allocateDirect(1 << sizeClass));
+            usedBytes += 1L << sizeClass;
+            return address(slab, 0);
+        }
+
+        int blockBytes = 1 << sizeClass;
+        usedBytes += blockBytes;
+        long free = freeLists[sizeClass];
+        if (free != 0) {
+            freeLists[sizeClass] = getLong(free);
+            return free;
+        }
+        if (currentOffset + blockBytes > SLAB_BYTES) {
+            currentSlab = addSlab(ByteBuffer.allocateDirect(SLAB_BYTES));
+            currentOffset = 0;
+        }
+        long address = address(currentSlab, currentOffset);
+        currentOffset += blockBytes;
+        return address;
+    }
+
+    /**
+     * Frees a block for reuse
+     * @param address address of the block
+     * @param bytes number of bytes it was allocated with
+     */
+    void free(long address, int bytes) {
+        int sizeClass = sizeClass(bytes);
+        usedBytes -= 1L << sizeClass;
+        if (sizeClass > MAX_SIZE_CLASS) {
+            int slab = slab(address);
+            reservedBytes -= slabs[slab].capacity();
+            slabs[slab] = null;
+            if (freeSlabCount == freeSlabNumbers.length) {
+                freeSlabNumbers = Arrays.copyOf(freeSlabNumbers, freeSlabCount * 2);
+            }
+            freeSlabNumbers[freeSlabCount++] = slab;
+            return;
+        }
+        putLong(address, freeLists[sizeClass]);
+        freeLists[sizeClass] = address;
+    }
+
+    /**
+     * Drops every slab, freeing all blocks at once
+     */
+    void clear() {
+        slabs = new ByteBuffer[16];
+        slabCount = 0;
+        freeSlabCount = 0;
+        Arrays.fill(freeLists, 0);
+        currentSlab = -1;
+        currentOffset = SLAB_BYTES;
+        usedBytes = 0;
+        reservedBytes = 0;
+    }
+
+    /**
+     * Obtains the bytes held by allocated blocks, including the rounding of their sizes
+     * @return bytes in use
+     */
+    long getUsedBytes() {
+        return usedBytes;
+    }
+
+    /**
+     * Obtains the off-heap memory reserved from the operating system
+     * @return bytes of all slabs
+     */
+    long getReservedBytes() {
+        return reservedBytes;
+    }
+
+    byte getByte(long address) {
+        return slabs[slab(address)].get(offset(address));
+    }
+
+    void putByte(long address, byte value) {
+        slabs[slab(address)].put(offset(address), value);
+    }
+
+    char getChar(long address) {
+        return slabs[slab(address)].getChar(offset(address));
+    }
+
+    void putChar(long address, char value) {
+        slabs[slab(address)].putChar(offset(address), value);
+    }
+
+    int getInt(long address) {
+        return slabs[slab(address)].getInt(offset(address));
+    }
+
+    void putInt(long address, int value) {
+        slabs[slab(address)].putInt(offset(address), value);
+    }
+
+    long getLong(long address) {
+        return slabs[slab(address)].getLong(offset(address));
+    }
+
+    void putLong(long address, long value) {
+        slabs[slab(address)].putLong(offset(address), value);
+    }
+
+    /**
+     * Fills a range with zeros
+     * @param address start of the range
+     * @param bytes length of the range, a multiple of 4
+     */
+    void zero(long address, int bytes) {
+        ByteBuffer slab = slabs[slab(address)];
+        int offset = offset(address);
+        for (int i = 0; i < bytes; i += 4) {
+            slab.putInt(offset + i, 0);
+        }
+    }
+
+    private int addSlab(ByteBuffer buffer) {
+        reservedBytes += buffer.capacity();
+        if (freeSlabCount > 0) {
+            int slab = freeSlabNumbers[--freeSlabCount];
+            slabs[slab] = buffer;
+            return slab;
+        }
+        if (slabCount == slabs.length) {
+            slabs = Arrays.copyOf(slabs, slabCount * 2);
+        }
+        slabs[slabCount] = buffer;
+        return slabCount++;
+    }
+
+    private static int sizeClass(int bytes) {
+        return Math.max(MIN_SIZE_CLASS, 32 - Integer.numberOfLeadingZeros(Math.max(1, bytes) - 1));
+    }
+
+    private static long address(int slab, int offset) {
+        return ((long) (slab + 1) << 32) | offset;
+    }
+
+    private static int slab(long address) {
+        return (int) (address >>> 32) - 1;
+    }
+
+    private static int offset(long address) {
+        return (int) address;
+    }
+}
@@ -0,0 +1,171 @@
+package org.multivaluedictionary;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Compact binary snapshot of a multi-value dictionary that can be opened through a memory mapping without decoding
+ * it. All offsets are ints from the start of the file, which limits a snapshot to 2 GiB.
+ *
+ * Layout, big-endian:
+ * <pre>
+ * header       magic, version, key count, key table offset, member table offset, reserved   (6 ints)
+ * string pool  every distinct key and member once, as [int UTF-8 length][UTF-8 bytes]
+ * key table    per key, sorted by (hash, key): [hash][key string offset][first member index][member count]
+ * member table per key, sorted by hash: [hash][member string offset]
+ * </pre>
+ */
+public final class Snapshot {
+
+    /** "MVD1" */
+    static final int MAGIC = 0x4D564431;
+
+    static final int VERSION = 1;
+
+    static final int HEADER_BYTES = 24;
+
+    static final int KEY_ENTRY_BYTES = 16;
+
+    static final int MEMBER_ENTRY_BYTES = 8;
+
+    /** Orders strings by hash code first so lookups can binary search on it */
+    static final Comparator<String> BY_HASH = Comparator.comparingInt(String::hashCode)
+            .thenComparing(Comparator.naturalOrder());
+
+    private Snapshot() {
+    }
+
+    /**
+     * Writes a snapshot of a key-member(s) pairing. The snapshot is written to a temporary file, forced to disk and
+     * then moved over the destination, so readers only ever see the previous snapshot or the complete new one
+     * @param dictionary key-member(s) pairing to write
+     * @param path file to write the snapshot to
+     * @throws IOException snapshot could not be written
+     */
+    public static void write(Map<String, Set<String>> dictionary, Path path) throws IOException {
+        Path absolute = path.toAbsolutePath();
+        Path temporary = Files.createTempFile(absolute.getParent(), absolute.getFileName().toString(), ".tmp");
+        try {
+            writeTo(dictionary, temporary);
+            try {
+                Files.move(temporary, absolute, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException amnse) {
+                Files.move(temporary, absolute, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Maps a snapshot into memory. Keys and members are decoded from the mapping only as they are read
+     * @param path snapshot to open
+     * @return read-only key-member(s) pairing backed by the mapping
+     * @throws IOException snapshot could not be read or is not a snapshot
+     */
+    public static Map<String, Set<String>> open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("snapshot is larger than 2 GiB");
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.limit() < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+                throw new IOException("not a dictionary snapshot: " + path);
+            }
+            if (buffer.getInt(4) != VERSION) {
+                throw new IOException("unsupported snapshot version " + buffer.getInt(4));
+            }
+            return new MappedDictionary(buffer);
+        }
+    }
+
+    private static void writeTo(Map<String, Set<String>> dictionary, Path path) throws IOException {
+        List<String> keys = new ArrayList<>(dictionary.keySet());
+        keys.sort(BY_HASH);
+
+        Map<String, Integer> offsets = new HashMap<>();
+        int memberCount = 0;
+        int keyTableOffset;
+        int memberTableOffset;
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(path, StandardOpenOption.WRITE), 64 * 1024))) {
+            out.write(new byte[HEADER_BYTES]);
+            for (String key : keys) {
+                writeString(out, key, offsets);
+                for (String member : dictionary.get(key)) {
+                    writeString(out, member, offsets);
+                }
+            }
+
+            keyTableOffset = checkedOffset(out.size());
+            for (String key : keys) {
+                int size = dictionary.get(key).size();
+                out.writeInt(key.hashCode());
+                out.writeInt(offsets.get(key));
+                out.writeInt(memberCount);
+                out.writeInt(size);
+                memberCount += size;
+            }
+
+            memberTableOffset = checkedOffset(out.size());
+            checkedOffset(memberTableOffset + (long) memberCount * MEMBER_ENTRY_BYTES);
+            for (String key : keys) {
+                List<String> members = new ArrayList<>(dictionary.get(key));
+                members.sort(BY_HASH);
+                for (String member : members) {
+                    out.writeInt(member.hashCode());
+                    out.writeInt(offsets.get(member));
+                }
+            }
+        }
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            header.putInt(MAGIC).putInt(VERSION).putInt(keys.size()).putInt(keyTableOffset)
+                    .putInt(memberTableOffset).putInt(0).flip();
+            channel.write(header, 0);
+            channel.force(true);
+        }
+    }
+
+    /**
+     * Appends a string to the pool unless it is already there
+     * @param out pool being written
+     * @param value string to write
+     * @param offsets offset of every string already written
+     * @throws IOException snapshot could not be written
+     */
+    private static void writeString(DataOutputStream out, String value, Map<String, Integer> offsets)
+            throws IOException {
+        if (!offsets.containsKey(value)) {
+            offsets.put(value, checkedOffset(out.size()));
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static int checkedOffset(long offset) throws IOException {
+        // DataOutputStream.size saturates at Integer.MAX_VALUE, so treat reaching it as overflowing too
+        if (offset >= Integer.MAX_VALUE) {
+            throw new IOException("snapshot would be larger than 2 GiB");
+        }
+        return (int) offset;
+    }
+}
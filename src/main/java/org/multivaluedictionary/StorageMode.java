@@ -0,0 +1,16 @@
+package org.multivaluedictionary;
+
+/**
+ * Layout used to store the members of each key in the multi-value dictionary
+ */
+public enum StorageMode {
+
+    /** Members of each key are held as strings: alone, in a small array for a few, or in a hash set past that */
+    HASH,
+
+    /** Members are interned into a dictionary-wide string-to-int table and each key holds a primitive int set */
+    ENCODED,
+
+    /** Keys and members are held in off-heap slabs and only become heap objects when they are read */
+    OFF_HEAP
+}
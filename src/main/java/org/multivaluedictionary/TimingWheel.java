@@ -0,0 +1,171 @@
+package org.multivaluedictionary;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hierarchical timing wheel of key deadlines. Four levels of 64 slots each cover 2^24 ticks; a deadline goes into the
+ * lowest level whose range reaches it and moves down a level each time the level below wraps around, so scheduling
+ * and advancing are O(1) per deadline however many are pending. Deadlines beyond the top level are parked in its
+ * furthest slot and placed again when it comes round. Not thread-safe
+ */
+final class TimingWheel {
+
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+    private static final int LEVELS = 4;
+
+    /** Ticks covered by all levels together */
+    private static final long RANGE = 1L << (SLOT_BITS * LEVELS);
+
+    /** Length of one tick in milliseconds */
+    private final long tickMillis;
+
+    /** Head of the timer list of each slot of each level */
+    private final Timer[][] slots = new Timer[LEVELS][SLOTS];
+
+    /** Number of timers in each level */
+    private final int[] levelSizes = new int[LEVELS];
+
+    /** Timers whose tick has been reached but that have not been polled yet */
+    private final ArrayDeque<Timer> ready = new ArrayDeque<>();
+
+    /** Last tick that has been advanced to */
+    private long currentTick;
+
+    /** Timers scheduled and not polled yet */
+    private int size;
+
+    /**
+     * Initializes an empty wheel at time 0
+     * @param tickMillis length of one tick in milliseconds; deadlines are rounded up to whole ticks
+     */
+    TimingWheel(long tickMillis) {
+        this.tickMillis = tickMillis;
+    }
+
+    /**
+     * Schedules a key to be polled once its deadline has passed
+     * @param key key to poll
+     * @param deadline milliseconds since time 0 after which the key is due
+     */
+    void schedule(String key, long deadline) {
+        long tick = (Math.max(0, deadline) + tickMillis - 1) / tickMillis;
+        place(new Timer(key, tick));
+        size++;
+    }
+
+    /**
+     * Obtains the number of keys scheduled and not polled yet
+     * @return number of pending keys
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Advances the wheel towards a time and takes keys that are due by then, stopping once enough have been taken so
+     * that a caller can spread a burst of deadlines over several calls
+     * @param now milliseconds since time 0
+     * @param maxKeys most keys to take
+     * @return due keys, in deadline order up to the tick length; the same key may appear more than once
+     */
+    List<String> poll(long now, int maxKeys) {
+        long nowTick = Math.max(0, now) / tickMillis;
+        List<String> due = new ArrayList<>(Math.min(maxKeys, size));
+        while (due.size() < maxKeys) {
+            Timer timer = ready.poll();
+            if (timer != null) {
+                due.add(timer.key);
+                size--;
+            } else if (currentTick >= nowTick) {
+                break;
+            } else if (size == 0) {
+                currentTick = nowTick;
+            } else {
+                skipEmptyTicks(nowTick);
+                advance();
+            }
+        }
+        return due;
+    }
+
+    /**
+     * Moves to the next tick, moving the timers of every level that wraps around down to lower levels and making the
+     * timers of the new tick ready
+     */
+    private void advance() {
+        currentTick++;
+        for (int level = LEVELS - 1; level > 0; level--) {
+            if ((currentTick & ((1L << (SLOT_BITS * level)) - 1)) == 0) {
+                cascade(level, (int) (currentTick >>> (SLOT_BITS * level)) & SLOT_MASK);
+            }
+        }
+        cascade(0, (int) currentTick & SLOT_MASK);
+    }
+
+    /**
+     * Jumps to just before the next tick that can make a timer ready or move one, so that long stretches without
+     * deadlines cost nothing. Levels below the lowest non-empty one have nothing to cascade, so ticks up to that
+     * level's next wrap are skipped
+     * @param nowTick tick not to go beyond
+     */
+    private void skipEmptyTicks(long nowTick) {
+        int emptyLevels = 0;
+        while (emptyLevels < LEVELS && levelSizes[emptyLevels] == 0) {
+            emptyLevels++;
+        }
+        if (emptyLevels == 0 || emptyLevels == LEVELS) {
+            return;
+        }
+        int bits = SLOT_BITS * emptyLevels;
+        long beforeWrap = (((currentTick >>> bits) + 1) << bits) - 1;
+        currentTick = Math.max(currentTick, Math.min(beforeWrap, nowTick - 1));
+    }
+
+    private void cascade(int level, int slot) {
+        Timer timer = slots[level][slot];
+        slots[level][slot] = null;
+        while (timer != null) {
+            Timer next = timer.next;
+            timer.next = null;
+            levelSizes[level]--;
+            place(timer);
+            timer = next;
+        }
+    }
+
+    private void place(Timer timer) {
+        if (timer.tick <= currentTick) {
+            ready.add(timer);
+            return;
+        }
+        long tick = Math.min(timer.tick, currentTick + RANGE - 1);
+        long delta = tick - currentTick;
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= 1L << (SLOT_BITS * (level + 1))) {
+            level++;
+        }
+        int slot = (int) (tick >>> (SLOT_BITS * level)) & SLOT_MASK;
+        timer.next = slots[level][slot];
+        slots[level][slot] = timer;
+        levelSizes[level]++;
+    }
+
+    /**
+     * Deadline of one key, linked into its slot
+     */
+    private static class Timer {
+
+        final String key;
+        final long tick;
+        Timer next;
+
+        Timer(String key, long tick) {
+            this.key = key;
+            this.tick = tick;
+        }
+    }
+}
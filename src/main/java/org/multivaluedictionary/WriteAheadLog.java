@@ -0,0 +1,561 @@
+package org.multivaluedictionary;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only binary log of every mutation of a multi-value dictionary, replayed on startup to rebuild it. Records are
+ * buffered and made durable in groups according to a SyncPolicy, so one fsync covers every record appended since the
+ * previous one.
+ *
+ * Each record is laid out as [int payload length][int CRC32 of payload][payload], where the payload is an operation
+ * byte followed by length-prefixed UTF-8 key and member strings as the operation requires. A torn record at the end
+ * of the log is discarded on replay.
+ */
+public class WriteAheadLog implements MutationListener, Closeable {
+
+    static final byte ADD = 1;
+    static final byte REMOVE = 2;
+    static final byte REMOVE_ALL = 3;
+    static final byte CLEAR = 4;
+
+    /** Bytes of framing before each payload */
+    private static final int HEADER_BYTES = 8;
+
+    /** Size of the in-memory buffer records are encoded into before being written */
+    private static final int BUFFER_BYTES = 64 * 1024;
+
+    /** File the log is appended to */
+    private final FileChannel channel;
+
+    /** When buffered records are made durable */
+    private final SyncPolicy policy;
+
+    /** Records encoded but not yet written to the channel; guarded by this */
+    private ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+
+    /** Checksum of the record being encoded; guarded by this */
+    private final CRC32 crc = new CRC32();
+
+    /** Timer driving interval syncs, only present for SyncPolicy.everyMillis */
+    private final ScheduledExecutorService syncTimer;
+
+    /** Serializes fsyncs so that waiting writers share the next one */
+    private final Object syncLock = new Object();
+
+    /** Sequence number of the last appended record; guarded by this */
+    private long appendedSequence;
+
+    /** Bytes appended since the last sync; guarded by this */
+    private long unsyncedBytes;
+
+    /** Sequence number of the last record known to be durable */
+    private volatile long syncedSequence;
+
+    /**
+     * Whether syncs the policy calls for after a record are left to syncDeferred instead of running in the listener
+     */
+    private volatile boolean deferSyncs;
+
+    /** Last record each thread appended whose sync was deferred, or 0 once it is durable */
+    private final ThreadLocal<long[]> deferredSequence = ThreadLocal.withInitial(() -> new long[1]);
+
+    private volatile long appendedBytes;
+    private volatile long syncCount;
+    private volatile long syncNanos;
+    private volatile long maxSyncNanos;
+    private final long openedNanos = System.nanoTime();
+
+    /**
+     * Opens a log for appending, discarding a torn record at its end if there is one
+     * @param path file to append to; created if it does not exist
+     * @param policy when buffered records are made durable
+     * @throws IOException log could not be opened
+     */
+    public WriteAheadLog(Path path, SyncPolicy policy) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        this.policy = policy;
+        channel.truncate(validLength(channel));
+        channel.position(channel.size());
+        if (policy.intervalMillis > 0) {
+            syncTimer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "wal-sync");
+                thread.setDaemon(true);
+                return thread;
+            });
+            syncTimer.scheduleWithFixedDelay(this::syncQuietly, policy.intervalMillis, policy.intervalMillis,
+                    TimeUnit.MILLISECONDS);
+        } else {
+            syncTimer = null;
+        }
+    }
+
+    /**
+     * Replays every complete record of a log into a dictionary. Operations that no longer apply, such as adding a
+     * member the dictionary already holds, are skipped so a log can be replayed over a dictionary that was loaded from
+     * a newer snapshot
+     * @param path log to replay; nothing is replayed if it does not exist
+     * @param dictionary dictionary to apply the records to
+     * @return number of records replayed
+     * @throws IOException log could not be read
+     */
+    public static long replay(Path path, MultiValueDictionary dictionary) throws IOException {
+        if (!Files.exists(path)) {
+            return 0;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            RecordReader reader = new RecordReader(channel);
+            long records = 0;
+            ByteBuffer payload;
+            while ((payload = reader.next()) != null) {
+                apply(payload, dictionary);
+                records++;
+            }
+            return records;
+        }
+    }
+
+    @Override
+    public void added(String key, String member) {
+        append(ADD, key, member);
+    }
+
+    @Override
+    public void removed(String key, String member) {
+        append(REMOVE, key, member);
+    }
+
+    @Override
+    public void removedAll(String key, Set<String> members) {
+        append(REMOVE_ALL, key, null);
+    }
+
+    @Override
+    public void cleared() {
+        append(CLEAR, null, null);
+    }
+
+    /**
+     * Writes every buffered record and forces it to disk
+     * @throws IOException log could not be written
+     */
+    public void sync() throws IOException {
+        long target;
+        synchronized (this) {
+            target = appendedSequence;
+        }
+        syncTo(target);
+    }
+
+    /**
+     * Leaves the syncs the policy calls for after a record to syncDeferred from now on. A thread-safe dictionary
+     * appends records from inside ConcurrentHashMap.compute, where an fsync would hold the key's bin lock and stall
+     * every writer to the same bin; it calls syncDeferred once the lock is released instead
+     */
+    void deferSyncs() {
+        deferSyncs = true;
+    }
+
+    /**
+     * Makes durable every record the calling thread appended whose sync was deferred. Writers that arrive together
+     * still share one fsync
+     * @throws UncheckedIOException log could not be written
+     */
+    void syncDeferred() throws UncheckedIOException {
+        long[] sequence = deferredSequence.get();
+        if (sequence[0] == 0) {
+            return;
+        }
+        long target = sequence[0];
+        sequence[0] = 0;
+        try {
+            syncTo(target);
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+    }
+
+    /**
+     * Discards every record, typically right after a snapshot covering them has been written. Mutations must not run
+     * between writing that snapshot and truncating the log, or they are lost from both
+     * @throws IOException log could not be truncated
+     */
+    public void truncate() throws IOException {
+        synchronized (syncLock) {
+            synchronized (this) {
+                buffer.clear();
+                channel.truncate(0);
+                channel.position(0);
+                channel.force(true);
+                unsyncedBytes = 0;
+                syncedSequence = appendedSequence;
+            }
+        }
+    }
+
+    /**
+     * Syncs any buffered records and closes the log
+     * @throws IOException log could not be written
+     */
+    @Override
+    public void close() throws IOException {
+        if (syncTimer != null) {
+            syncTimer.shutdown();
+        }
+        sync();
+        channel.close();
+    }
+
+    /**
+     * Obtains the number of records appended since the log was opened
+     * @return number of records appended
+     */
+    public synchronized long getAppendedRecords() {
+        return appendedSequence;
+    }
+
+    /**
+     * Obtains the number of bytes appended since the log was opened
+     * @return number of bytes appended
+     */
+    public long getAppendedBytes() {
+        return appendedBytes;
+    }
+
+    /**
+     * Obtains the number of fsyncs issued since the log was opened
+     * @return number of fsyncs
+     */
+    public long getSyncCount() {
+        return syncCount;
+    }
+
+    /**
+     * Obtains the average time an fsync took
+     * @return average fsync latency in microseconds, or 0 if there have been none
+     */
+    public double getAverageSyncMicros() {
+        long syncs = syncCount;
+        return syncs == 0 ? 0 : syncNanos / 1000.0 / syncs;
+    }
+
+    /**
+     * Obtains the longest time an fsync took
+     * @return maximum fsync latency in microseconds
+     */
+    public double getMaxSyncMicros() {
+        return maxSyncNanos / 1000.0;
+    }
+
+    /**
+     * Obtains the rate records have been appended at since the log was opened
+     * @return records appended per second
+     */
+    public double getRecordsPerSecond() {
+        double seconds = (System.nanoTime() - openedNanos) / 1e9;
+        return seconds <= 0 ? 0 : getAppendedRecords() / seconds;
+    }
+
+    /**
+     * Hands the progress of the log to an exporter as gauges
+     * @param exporter exporter to hand the gauges to
+     */
+    void exportMetrics(MetricsExporter exporter) {
+        exporter.gauge("walRecords", getAppendedRecords());
+        exporter.gauge("walBytes", getAppendedBytes());
+        exporter.gauge("walRecordsPerSecond", Math.round(getRecordsPerSecond()));
+        exporter.gauge("walSyncs", getSyncCount());
+        exporter.gauge("walSyncMeanMicros", Math.round(getAverageSyncMicros()));
+        exporter.gauge("walSyncMaxMicros", Math.round(getMaxSyncMicros()));
+    }
+
+    /**
+     * Encodes a record into the buffer and makes it durable if the sync policy calls for it
+     * @param operation operation byte
+     * @param key key of the operation, or null if it takes none
+     * @param member member of the operation, or null if it takes none
+     */
+    private void append(byte operation, String key, String member) {
+        byte[] keyBytes = key == null ? null : key.getBytes(StandardCharsets.UTF_8);
+        byte[] memberBytes = member == null ? null : member.getBytes(StandardCharsets.UTF_8);
+        int payloadBytes = 1 + (keyBytes == null ? 0 : 4 + keyBytes.length)
+                + (memberBytes == null ? 0 : 4 + memberBytes.length);
+        long sequence;
+        boolean syncNow;
+        try {
+            synchronized (this) {
+                if (buffer.remaining() < HEADER_BYTES + payloadBytes) {
+                    writeBuffer();
+                    if (buffer.capacity() < HEADER_BYTES + payloadBytes) {
+                        buffer = ByteBuffer.allocateDirect(HEADER_BYTES + payloadBytes);
+                    }
+                }
+                int start = buffer.position();
+                buffer.putInt(payloadBytes).putInt(0).put(operation);
+                putString(keyBytes);
+                putString(memberBytes);
+                ByteBuffer payload = buffer.duplicate();
+                payload.position(start + HEADER_BYTES).limit(buffer.position());
+                crc.reset();
+                crc.update(payload);
+                buffer.putInt(start + 4, (int) crc.getValue());
+
+                sequence = ++appendedSequence;
+                appendedBytes += HEADER_BYTES + payloadBytes;
+                unsyncedBytes += HEADER_BYTES + payloadBytes;
+                syncNow = policy.everyOperation
+                        || (policy.bytesThreshold > 0 && unsyncedBytes >= policy.bytesThreshold);
+            }
+            if (syncNow && deferSyncs) {
+                deferredSequence.get()[0] = sequence;
+            } else if (syncNow) {
+                syncTo(sequence);
+            }
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+    }
+
+    private void putString(byte[] bytes) {
+        if (bytes != null) {
+            buffer.putInt(bytes.length).put(bytes);
+        }
+    }
+
+    /**
+     * Makes every record up to a sequence number durable. Writers that arrive while another fsync is running wait
+     * for it and then find their record already covered, or cover everyone that queued up with a single fsync
+     * @param sequence sequence number that must be durable on return
+     * @throws IOException log could not be written
+     */
+    private void syncTo(long sequence) throws IOException {
+        if (syncedSequence >= sequence) {
+            return;
+        }
+        synchronized (syncLock) {
+            if (syncedSequence >= sequence) {
+                return;
+            }
+            long covered;
+            synchronized (this) {
+                writeBuffer();
+                covered = appendedSequence;
+                unsyncedBytes = 0;
+            }
+            long start = System.nanoTime();
+            channel.force(false);
+            long elapsed = System.nanoTime() - start;
+            syncNanos += elapsed;
+            maxSyncNanos = Math.max(maxSyncNanos, elapsed);
+            syncCount++;
+            syncedSequence = covered;
+        }
+    }
+
+    private void syncQuietly() {
+        try {
+            sync();
+        } catch (IOException ioe) {
+            System.err.println("Write-ahead log sync failed: " + ioe.getMessage());
+        }
+    }
+
+    /**
+     * Writes the buffered records to the channel; caller holds this
+     * @throws IOException log could not be written
+     */
+    private void writeBuffer() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Finds the length of the leading run of complete, intact records in a log
+     * @param channel log to inspect
+     * @return offset just past the last intact record
+     * @throws IOException log could not be read
+     */
+    private static long validLength(FileChannel channel) throws IOException {
+        RecordReader reader = new RecordReader(channel);
+        while (reader.next() != null) {
+            // skip to the end of the intact records
+        }
+        return reader.validLength;
+    }
+
+    /**
+     * Applies one record to a dictionary, skipping an operation that no longer applies
+     * @param payload payload of the record, positioned at its operation byte
+     * @param dictionary dictionary to apply the record to
+     */
+    static void apply(ByteBuffer payload, MultiValueDictionary dictionary) {
+        byte operation = payload.get();
+        // operations already reflected in the dictionary are skipped
+        switch (operation) {
+            case ADD:
+                dictionary.tryAdd(getString(payload), getString(payload));
+                break;
+            case REMOVE:
+                dictionary.tryRemove(getString(payload), getString(payload));
+                break;
+            case REMOVE_ALL:
+                dictionary.tryRemoveAll(getString(payload));
+                break;
+            case CLEAR:
+                dictionary.clear();
+                break;
+            default:
+                throw new IllegalStateException("Unknown write-ahead log operation " + operation);
+        }
+    }
+
+    private static String getString(ByteBuffer payload) {
+        byte[] bytes = new byte[payload.getInt()];
+        payload.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads framed records from the start of a log, stopping at the end or at the first torn or corrupt record
+     */
+    private static class RecordReader {
+
+        private final FileChannel channel;
+        private final ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        private final CRC32 crc = new CRC32();
+        private ByteBuffer payload = ByteBuffer.allocate(256);
+        private long position;
+        private long validLength;
+
+        RecordReader(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        /**
+         * Reads the next intact record
+         * @return payload of the record, or null at the end of the intact records
+         * @throws IOException log could not be read
+         */
+        ByteBuffer next() throws IOException {
+            header.clear();
+            if (!readFully(header)) {
+                return null;
+            }
+            int length = header.getInt(0);
+            if (length <= 0 || position + length > channel.size()) {
+                return null;
+            }
+            if (payload.capacity() < length) {
+                payload = ByteBuffer.allocate(Math.max(length, payload.capacity() * 2));
+            }
+            payload.clear().limit(length);
+            if (!readFully(payload)) {
+                return null;
+            }
+            payload.flip();
+            crc.reset();
+            crc.update(payload.array(), 0, length);
+            if ((int) crc.getValue() != header.getInt(4)) {
+                return null;
+            }
+            validLength = position;
+            return payload;
+        }
+
+        private boolean readFully(ByteBuffer target) throws IOException {
+            while (target.hasRemaining()) {
+                int read = channel.read(target, position);
+                if (read < 0) {
+                    return false;
+                }
+                position += read;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * When appended records are forced to disk
+     */
+    public static final class SyncPolicy {
+
+        private final boolean everyOperation;
+        private final long intervalMillis;
+        private final long bytesThreshold;
+
+        private SyncPolicy(boolean everyOperation, long intervalMillis, long bytesThreshold) {
+            this.everyOperation = everyOperation;
+            this.intervalMillis = intervalMillis;
+            this.bytesThreshold = bytesThreshold;
+        }
+
+        /**
+         * Makes every operation durable before the mutation returns. Concurrent writers still share fsyncs
+         * @return sync policy
+         */
+        public static SyncPolicy everyOperation() {
+            return new SyncPolicy(true, 0, 0);
+        }
+
+        /**
+         * Forces the log from a background thread on a fixed interval; up to that much acknowledged work may be lost
+         * @param millis interval between fsyncs
+         * @return sync policy
+         */
+        public static SyncPolicy everyMillis(long millis) {
+            if (millis <= 0) {
+                throw new IllegalArgumentException("sync interval must be positive");
+            }
+            return new SyncPolicy(false, millis, 0);
+        }
+
+        /**
+         * Forces the log once at least the given number of bytes have been appended since the last fsync
+         * @param bytes bytes to accumulate between fsyncs
+         * @return sync policy
+         */
+        public static SyncPolicy everyBytes(long bytes) {
+            if (bytes <= 0) {
+                throw new IllegalArgumentException("sync byte threshold must be positive");
+            }
+            return new SyncPolicy(false, 0, bytes);
+        }
+
+        /**
+         * Parses a sync policy as written on the command line: "always", "&lt;n&gt;ms" or "&lt;n&gt;b"
+         * @param value policy to parse
+         * @return sync policy
+         * @throws IllegalArgumentException value is not a sync policy
+         */
+        public static SyncPolicy parse(String value) throws IllegalArgumentException {
+            try {
+                if (value.equals("always")) {
+                    return everyOperation();
+                } else if (value.endsWith("ms")) {
+                    return everyMillis(Long.parseLong(value.substring(0, value.length() - 2)));
+                } else if (value.endsWith("b")) {
+                    return everyBytes(Long.parseLong(value.substring(0, value.length() - 1)));
+                }
+            } catch (NumberFormatException nfe) {
+                // fall through to the error below
+            }
+            throw new IllegalArgumentException("unsupported sync policy " + value);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package org.multivaluedictionary;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests the bulk mutation methods and loading delimited files
+ */
+public class TestBulkLoad {
+
+    @TempDir
+    Path directory;
+
+    // ADDALL, PUTALL
+
+    /**
+     * Tests ADDALL/PUTALL functionality - adds only the members a key does not hold yet and reports how many
+     */
+    @Test
+    public void testAddAllPutAll() {
+        Map<String, Set<String>> expectedValues = new HashMap<>();
+        expectedValues.put("foo", new HashSet<>(Arrays.asList("bar", "baz", "bang")));
+        expectedValues.put("zip", new HashSet<>(Arrays.asList("zap")));
+        for (MultiValueDictionary mvd : Arrays.asList(new MultiValueDictionary(),
+                new MultiValueDictionary(StorageMode.ENCODED), new MultiValueDictionary(StorageMode.OFF_HEAP),
+                new ConcurrentMultiValueDictionary())) {
+            mvd.enableReverseIndex();
+            Map<String, List<String>> items = new HashMap<>();
+            items.put("foo", Arrays.asList("bar", "baz", "bar"));
+            items.put("zip", Arrays.asList("zap"));
+            items.put("empty", Arrays.<String>asList());
+            assertEquals(3, mvd.putAll(items));
+            assertEquals(1, mvd.addAll("foo", Arrays.asList("bar", "bang")));
+            assertEquals(0, mvd.addAll("foo", Arrays.asList("bar", "bang")));
+            assertEquals(expectedValues, mvd.getItems());
+            assertEquals(new HashSet<>(Arrays.asList("foo")), mvd.getKeysForMember("bang"));
+        }
+    }
+
+    // BULKLOAD
+
+    /**
+     * Tests BULKLOAD functionality - lines split across parse ranges, blank lines, CRLF endings and duplicates all
+     * load correctly
+     */
+    @Test
+    public void testLoad_Csv() throws IOException {
+        StringBuilder csv = new StringBuilder();
+        Map<String, Set<String>> expectedValues = new HashMap<>();
+        for (int i = 0; i < 600_000; i++) {
+            String key = "key" + (i % 5000);
+            csv.append(key).append(',').append("member").append(i).append(i % 3 == 0 ? "\r\n" : "\n");
+            expectedValues.computeIfAbsent(key, k -> new HashSet<>()).add("member" + i);
+        }
+        csv.append("\nkey0,member0,extra\nlonely\n,orphan\n");
+        expectedValues.get("key0").add("extra");
+        Path file = directory.resolve("pairs.csv");
+        Files.write(file, csv.toString().getBytes(StandardCharsets.UTF_8));
+        assertTrue(Files.size(file) > 8 * 1024 * 1024);
+
+        MultiValueDictionary mvd = new MultiValueDictionary();
+        BulkLoader.Result result = BulkLoader.load(mvd, file);
+        assertEquals(600_003, result.getLines());
+        assertEquals(2, result.getSkippedLines());
+        assertEquals(600_002, result.getPairs());
+        assertEquals(600_001, result.getAdded());
+        assertEquals(expectedValues, mvd.getItems());
+    }
+
+    /**
+     * Tests BULKLOAD functionality - TSV files split on tabs and the command reports the load
+     */
+    @Test
+    public void testLoad_TsvCommand() throws IOException {
+        Path file = directory.resolve("pairs.tsv");
+        Files.write(file, "foo\tbar\tbaz\nzip\tza,p\n".getBytes(StandardCharsets.UTF_8));
+        MultiValueDictionary mvd = new MultiValueDictionary();
+        StringWriter result = new StringWriter();
+        new CommandProcessor(mvd, null, null).execute("BULKLOAD " + file, new PrintWriter(result));
+        assertTrue(result.toString().startsWith(") Loaded 3 members from 2 lines (0 skipped) in "));
+        assertEquals(new HashSet<>(Arrays.asList("za,p")), mvd.getMembers("zip"));
+    }
+}
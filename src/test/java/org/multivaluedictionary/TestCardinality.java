@@ -0,0 +1,105 @@
+package org.multivaluedictionary;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests constant-time key and member counts and the distinct member estimate
+ */
+public class TestCardinality {
+
+    // COUNTS
+
+    /**
+     * Tests COUNT functionality - key, member and per-key counts follow every mutation, snapshot load and clear
+     */
+    @Test
+    public void testCounts(@TempDir Path directory) throws Exception {
+        for (MultiValueDictionary mvd : Arrays.asList(new MultiValueDictionary(),
+                new MultiValueDictionary(StorageMode.ENCODED), new ConcurrentMultiValueDictionary())) {
+            mvd.add("foo", "bar");
+            mvd.add("foo", "baz");
+            mvd.add("qux", "bar");
+            mvd.tryAdd("qux", "bar");
+            assertEquals(2, mvd.getKeyCount());
+            assertEquals(3, mvd.getTotalMemberCount());
+            assertEquals(2, mvd.getMemberCount("foo"));
+            assertEquals(0, mvd.getMemberCount("missing"));
+
+            mvd.remove("foo", "bar");
+            mvd.addAll("big", Arrays.asList("a", "b", "c"));
+            assertEquals(5, mvd.getTotalMemberCount());
+            mvd.removeAll("big");
+            assertEquals(2, mvd.getKeyCount());
+            assertEquals(2, mvd.getTotalMemberCount());
+
+            Path snapshot = directory.resolve("counts.snapshot");
+            mvd.saveSnapshot(snapshot);
+            mvd.clear();
+            assertEquals(0, mvd.getKeyCount());
+            assertEquals(0, mvd.getTotalMemberCount());
+            mvd.loadSnapshot(snapshot);
+            assertEquals(2, mvd.getKeyCount());
+            assertEquals(2, mvd.getTotalMemberCount());
+            assertEquals(1, mvd.getMemberCount("qux"));
+        }
+    }
+
+    // DISTINCTCOUNT
+
+    /**
+     * Tests DISTINCTCOUNT functionality - the estimate is within one for small counts, a few percent for large ones
+     * and starts over once the dictionary empties
+     */
+    @Test
+    public void testDistinctEstimate() {
+        MultiValueDictionary mvd = new ConcurrentMultiValueDictionary();
+        for (int i = 0; i < 50; i++) {
+            mvd.add("key" + (i % 7), "member" + i);
+            mvd.tryAdd("other", "member" + i);
+        }
+        assertEquals(100, mvd.getTotalMemberCount());
+        assertTrue(Math.abs(mvd.estimateDistinctMembers() - 50) <= 1);
+
+        mvd.clear();
+        assertEquals(0, mvd.estimateDistinctMembers());
+        for (int i = 0; i < 200_000; i++) {
+            mvd.add("key" + (i % 1000), "member" + i);
+        }
+        long estimate = mvd.estimateDistinctMembers();
+        assertTrue(Math.abs(estimate - 200_000) < 200_000 * 0.03, "estimate " + estimate);
+        assertEquals(200_000, new ConcurrentMultiValueDictionary(mvd.getItems()).getTotalMemberCount());
+    }
+
+    /**
+     * Tests COUNT/SCARD/DISTINCTCOUNT functionality - commands print the counts
+     */
+    @Test
+    public void testCommands() {
+        MultiValueDictionary mvd = new MultiValueDictionary();
+        CommandProcessor processor = new CommandProcessor(mvd, null, null);
+        execute(processor, "ADD foo bar");
+        execute(processor, "ADD foo baz");
+        execute(processor, "ADD qux bar");
+        assertEquals("1) keys 2\n2) members 3\n\n", execute(processor, "COUNT"));
+        assertEquals(") 2\n\n", execute(processor, "SCARD foo"));
+        assertEquals(") 0\n\n", execute(processor, "SCARD missing"));
+        assertEquals(") 2\n\n", execute(processor, "DISTINCTCOUNT"));
+        execute(processor, "CLEAR");
+        assertEquals("1) keys 0\n2) members 0\n\n", execute(processor, "COUNT"));
+    }
+
+    private static String execute(CommandProcessor processor, String command) {
+        StringWriter result = new StringWriter();
+        processor.execute(command, new PrintWriter(result));
+        return result.toString();
+    }
+}
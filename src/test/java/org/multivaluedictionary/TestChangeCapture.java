@@ -0,0 +1,366 @@
+package org.multivaluedictionary;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.function.BooleanSupplier;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests publishing the mutations of a dictionary to subscribers
+ */
+public class TestChangeCapture {
+
+    /** Longest a test waits for changes to be delivered */
+    private static final long DELIVERY_MILLIS = 10_000;
+
+    /** Delivers batches on the mutating thread, so tests see them as soon as the mutation returns */
+    private static final Executor DIRECT = Runnable::run;
+
+    // FILTERING, BATCHING
+
+    /**
+     * Tests change publishing functionality - only changes to matching keys are published, in order and in batches
+     */
+    @Test
+    public void testFilteredBatches() {
+        MultiValueDictionary mvd = new MultiValueDictionary();
+        RecordingSubscriber subscriber = new RecordingSubscriber(Long.MAX_VALUE);
+        try (ChangePublisher publisher = mvd.publishChanges("user:*", 2, 100, DIRECT)) {
+            publisher.subscribe(subscriber);
+            mvd.add("user:1", "a");
+            mvd.add("other", "b");
+            mvd.addAll("user:2", Arrays.asList("c", "d"));
+            mvd.remove("user:1", "a");
+            mvd.removeAll("user:2");
+            mvd.removeAll("other");
+            mvd.clear();
+            assertEquals(Arrays.asList("added user:1 a", "added user:2 c", "added user:2 d", "removed user:1 a",
+                    "removedall user:2", "cleared"), subscriber.events());
+            assertEquals(0, subscriber.errors.size());
+        }
+        assertTrue(subscriber.completed);
+    }
+
+    /**
+     * Tests change publishing functionality - events buffered while a subscriber has no demand are batched together
+     */
+    @Test
+    public void testBatching() {
+        MultiValueDictionary mvd = new MultiValueDictionary();
+        RecordingSubscriber subscriber = new RecordingSubscriber(0);
+        try (ChangePublisher publisher = mvd.publishChanges(null, 4, 100, DIRECT)) {
+            publisher.subscribe(subscriber);
+            for (int i = 0; i < 10; i++) {
+                mvd.add("key", "member" + i);
+            }
+            assertEquals(0, subscriber.batches.size());
+            subscriber.subscription.request(Long.MAX_VALUE);
+            assertEquals(Arrays.asList(4, 4, 2), subscriber.batchSizes());
+            mvd.add("key", "last");
+            assertEquals(Arrays.asList(4, 4, 2, 1), subscriber.batchSizes());
+        }
+    }
+
+    // BACKPRESSURE
+
+    /**
+     * Tests backpressure functionality - a subscriber only receives what it requested, and one that falls too far
+     * behind is failed and dropped without holding up writers
+     */
+    @Test
+    public void testBackpressure() {
+        MultiValueDictionary mvd = new MultiValueDictionary();
+        RecordingSubscriber subscriber = new RecordingSubscriber(1);
+        try (ChangePublisher publisher = mvd.publishChanges(null, 1, 5, DIRECT)) {
+            publisher.subscribe(subscriber);
+            for (int i = 0; i < 5; i++) {
+                mvd.add("key", "member" + i);
+            }
+            assertEquals(Arrays.asList("added key member0"), subscriber.events());
+            subscriber.subscription.request(2);
+            assertEquals(3, subscriber.events().size());
+            assertEquals(1, publisher.getSubscriberCount());
+
+            for (int i = 5; i < 100; i++) {
+                mvd.add("key", "member" + i);
+            }
+            assertEquals(100, mvd.getMembers("key").size());
+            assertEquals(1, subscriber.errors.size());
+            assertTrue(subscriber.errors.get(0) instanceof IllegalStateException);
+            assertEquals(0, publisher.getSubscriberCount());
+            assertEquals(3, subscriber.events().size());
+        }
+    }
+
+    /**
+     * Tests change publishing functionality - concurrent writers are published from the shared pool, each key's
+     * changes in order
+     */
+    @Test
+    public void testConcurrentWriters() throws Exception {
+        ConcurrentMultiValueDictionary mvd = new ConcurrentMultiValueDictionary();
+        RecordingSubscriber subscriber = new RecordingSubscriber(Long.MAX_VALUE);
+        try (ChangePublisher publisher = mvd.publishChanges(null)) {
+            publisher.subscribe(subscriber);
+            List<Thread> writers = new ArrayList<>();
+            for (int w = 0; w < 4; w++) {
+                String key = "key" + w;
+                Thread writer = new Thread(() -> {
+                    for (int i = 0; i < 1000; i++) {
+                        mvd.add(key, "member" + i);
+                    }
+                });
+                writer.start();
+                writers.add(writer);
+            }
+            for (Thread writer : writers) {
+                writer.join();
+            }
+            await(() -> subscriber.events().size() == 4000);
+            int[] next = new int[4];
+            for (String event : subscriber.events()) {
+                String[] parts = event.split(" ");
+                int writer = parts[1].charAt(3) - '0';
+                assertEquals("member" + next[writer]++, parts[2]);
+            }
+        }
+    }
+
+    // WATCH
+
+    /**
+     * Tests watch functionality - WATCH prints matching changes to the writer it was issued on until UNWATCH
+     */
+    @Test
+    public void testWatchCommand() throws Exception {
+        MultiValueDictionary mvd = new MultiValueDictionary();
+        CommandProcessor processor = new CommandProcessor(mvd, null, null);
+        StringWriter watched = new StringWriter();
+        PrintWriter watchOut = new PrintWriter(watched);
+        assertEquals(") Watching\n\n", execute(processor, "WATCH foo*", watchOut, watched));
+        execute(processor, "ADD foo bar");
+        execute(processor, "ADD baz bar");
+        execute(processor, "REMOVEALL foo");
+        await(() -> watched.toString().contains("removedall foo\n\n"));
+        String changes = watched.toString();
+        assertTrue(changes.startsWith(") changes\n1) added foo bar\n"), changes);
+        assertTrue(!changes.contains("baz"), changes);
+        assertTrue(changes.endsWith("removedall foo\n\n"), changes);
+        synchronized (watchOut) {
+            watched.getBuffer().setLength(0);
+        }
+
+        assertEquals(") Unwatched\n\n", execute(processor, "UNWATCH", watchOut, watched));
+        execute(processor, "ADD foo again");
+        Thread.sleep(100);
+        assertEquals("", watched.toString());
+    }
+
+    /**
+     * Tests watch functionality - a server pushes changes made by other clients to a watching connection
+     */
+    @Test
+    public void testWatchOverServer() throws Exception {
+        DictionaryServer server = new DictionaryServer(new CommandProcessor(new MultiValueDictionary(), null, null), 0);
+        Thread serverThread = startServer(server);
+        try (Socket watcher = new Socket("localhost", server.getPort());
+                Socket writer = new Socket("localhost", server.getPort())) {
+            BufferedReader watchIn = new BufferedReader(new InputStreamReader(watcher.getInputStream(),
+                    StandardCharsets.UTF_8));
+            send(watcher, "WATCH");
+            assertEquals(") Watching", watchIn.readLine());
+            assertEquals("", watchIn.readLine());
+
+            BufferedReader writeIn = new BufferedReader(new InputStreamReader(writer.getInputStream(),
+                    StandardCharsets.UTF_8));
+            send(writer, "ADD foo bar");
+            assertEquals(") Added", writeIn.readLine());
+            assertEquals(") changes", watchIn.readLine());
+            assertEquals("1) added foo bar", watchIn.readLine());
+            assertEquals("", watchIn.readLine());
+        } finally {
+            server.close();
+            serverThread.join();
+        }
+    }
+
+    /**
+     * Tests watch functionality - a watching client that stops reading has its watch ended once its unsent output
+     * reaches the server's limit, and is told so once it reads again
+     */
+    @Test
+    public void testWatchEndsWhenNotRead() throws Exception {
+        ConcurrentMultiValueDictionary mvd = new ConcurrentMultiValueDictionary();
+        CommandProcessor processor = new CommandProcessor(mvd, null, null);
+        DictionaryServer server = new DictionaryServer(processor, 0);
+        Thread serverThread = startServer(server);
+        try (Socket watcher = new Socket("localhost", server.getPort())) {
+            BufferedReader watchIn = new BufferedReader(new InputStreamReader(watcher.getInputStream(),
+                    StandardCharsets.UTF_8));
+            send(watcher, "WATCH");
+            assertEquals(") Watching", watchIn.readLine());
+            assertEquals("", watchIn.readLine());
+
+            char[] padding = new char[1024];
+            Arrays.fill(padding, 'x');
+            String member = new String(padding);
+            for (int i = 0; i < 40_000 && processor.getWatchCount() > 0; i++) {
+                mvd.add("key" + i, member);
+            }
+            await(() -> processor.getWatchCount() == 0);
+            String line;
+            do {
+                line = watchIn.readLine();
+            } while (line != null && !line.startsWith(") ERROR"));
+            assertEquals(") ERROR, watch ended: changes are not being read", line);
+        } finally {
+            server.close();
+            serverThread.join();
+        }
+    }
+
+    /**
+     * Tests watch functionality - closing a connection stops its watches, even ones no change has matched yet
+     */
+    @Test
+    public void testWatchStoppedOnClose() throws Exception {
+        CommandProcessor processor = new CommandProcessor(new MultiValueDictionary(), null, null);
+        DictionaryServer server = new DictionaryServer(processor, 0);
+        Thread serverThread = startServer(server);
+        try {
+            try (Socket watcher = new Socket("localhost", server.getPort())) {
+                BufferedReader watchIn = new BufferedReader(new InputStreamReader(watcher.getInputStream(),
+                        StandardCharsets.UTF_8));
+                send(watcher, "WATCH nothing*");
+                assertEquals(") Watching", watchIn.readLine());
+                assertEquals(1, processor.getWatchCount());
+            }
+            await(() -> processor.getWatchCount() == 0);
+        } finally {
+            server.close();
+            serverThread.join();
+        }
+    }
+
+    private static Thread startServer(DictionaryServer server) {
+        Thread serverThread = new Thread(() -> {
+            try {
+                server.run();
+            } catch (IOException ioe) {
+                throw new IllegalStateException(ioe);
+            }
+        });
+        serverThread.start();
+        return serverThread;
+    }
+
+    private static void send(Socket socket, String command) throws IOException {
+        OutputStream out = socket.getOutputStream();
+        out.write((command + "\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + DELIVERY_MILLIS;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "timed out waiting for changes");
+            Thread.sleep(10);
+        }
+    }
+
+    private static String execute(CommandProcessor processor, String command) {
+        StringWriter result = new StringWriter();
+        processor.execute(command, new PrintWriter(result));
+        return result.toString();
+    }
+
+    /**
+     * Executes a command on a writer that WATCH may also print to, taking the command's result out of its buffer
+     * @param processor executes the command
+     * @param command command to execute
+     * @param out writer to execute the command on
+     * @param buffer buffer the writer prints to
+     * @return result of the command
+     */
+    private static String execute(CommandProcessor processor, String command, PrintWriter out, StringWriter buffer) {
+        synchronized (out) {
+            processor.execute(command, out);
+            out.flush();
+            String result = buffer.toString();
+            buffer.getBuffer().setLength(0);
+            return result;
+        }
+    }
+
+    /**
+     * Records every batch it receives, starting with a given demand
+     */
+    private static class RecordingSubscriber implements Flow.Subscriber<List<ChangeEvent>> {
+
+        private final long initialDemand;
+        private final List<List<ChangeEvent>> batches = new CopyOnWriteArrayList<>();
+        private final List<Throwable> errors = new CopyOnWriteArrayList<>();
+        private volatile Flow.Subscription subscription;
+        private volatile boolean completed;
+
+        RecordingSubscriber(long initialDemand) {
+            this.initialDemand = initialDemand;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            if (initialDemand > 0) {
+                subscription.request(initialDemand);
+            }
+        }
+
+        @Override
+        public void onNext(List<ChangeEvent> batch) {
+            batches.add(batch);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            errors.add(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+        }
+
+        List<String> events() {
+            List<String> events = new ArrayList<>();
+            for (List<ChangeEvent> batch : batches) {
+                for (ChangeEvent event : batch) {
+                    events.add(event.toString());
+                }
+            }
+            return events;
+        }
+
+        List<Integer> batchSizes() {
+            List<Integer> sizes = new ArrayList<>();
+            for (List<ChangeEvent> batch : batches) {
+                sizes.add(batch.size());
+            }
+            return sizes;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package org.multivaluedictionary;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.CharBuffer;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests tokenizing command lines and dispatching them through the command registry
+ */
+public class TestCommandProcessor {
+
+    // TOKENIZER
+
+    /**
+     * Tests tokenizing functionality - lines split exactly like String.split on a single space
+     */
+    @Test
+    public void testTokenizer_MatchesSplit() {
+        CommandTokenizer tokens = new CommandTokenizer();
+        String[] lines = {"ADD foo bar", "ADD  foo bar", "KEYS ", "KEYS   ", " KEYS", "", " ", "a b c d e f g h i j k"};
+        for (String line : lines) {
+            String[] expected = line.split(" ");
+            if (expected.length == 1 && expected[0].isEmpty()) {
+                expected = new String[0];
+            }
+            assertEquals(expected.length, tokens.reset(line), line);
+            assertArrayEquals(expected, tokens.from(0), line);
+        }
+    }
+
+    /**
+     * Tests tokenizing functionality - tokens are compared, hashed and parsed in place
+     */
+    @Test
+    public void testTokenizer_InPlace() {
+        CommandTokenizer tokens = new CommandTokenizer();
+        tokens.reset(CharBuffer.wrap("xxEXPIRE foo -42 9223372036854775807 9223372036854775808 4x".toCharArray(), 2,
+                57).slice());
+        assertTrue(tokens.tokenEquals(0, "EXPIRE"));
+        assertFalse(tokens.tokenEquals(0, "EXPIRES"));
+        assertEquals("foo".hashCode(), tokens.tokenHash(1));
+        assertEquals("foo", tokens.get(1));
+        assertEquals(-42, tokens.parseLong(2));
+        assertEquals(Long.MAX_VALUE, tokens.parseLong(3));
+        assertThrows(NumberFormatException.class, () -> tokens.parseLong(4));
+        assertThrows(NumberFormatException.class, () -> tokens.parseLong(5));
+        assertThrows(IndexOutOfBoundsException.class, () -> tokens.get(6));
+    }
+
+    // REGISTRY
+
+    /**
+     * Tests registry functionality - commands are found by name and their declared arguments are enforced
+     */
+    @Test
+    public void testRegistry_LookupAndArity() {
+        CommandRegistry registry = new CommandRegistry();
+        for (int i = 0; i < 100; i++) {
+            registry.register("CMD" + i, i % 3, (tokens, out) -> true);
+        }
+        registry.register("ANY", 1, CommandRegistry.VARIADIC, (tokens, out) -> false);
+        assertEquals(101, registry.getNames().length);
+
+        CommandTokenizer tokens = new CommandTokenizer();
+        tokens.reset("CMD41 a b");
+        assertEquals("CMD41", registry.lookup(tokens).getName());
+        assertTrue(registry.lookup(tokens).acceptsArguments(tokens));
+        tokens.reset("CMD42 a b");
+        assertFalse(registry.lookup(tokens).acceptsArguments(tokens));
+        tokens.reset("ANY a b c d");
+        assertTrue(registry.lookup(tokens).acceptsArguments(tokens));
+        tokens.reset("ANY");
+        assertFalse(registry.lookup(tokens).acceptsArguments(tokens));
+        tokens.reset("cmd41 a b");
+        assertNull(registry.lookup(tokens));
+        tokens.reset("");
+        assertNull(registry.lookup(tokens));
+
+        assertThrows(IllegalArgumentException.class, () -> registry.register("TWO WORDS", 0, (t, out) -> true));
+        assertThrows(IllegalArgumentException.class, () -> registry.register("BAD", 2, 1, (t, out) -> true));
+    }
+
+    // PROCESSOR
+
+    /**
+     * Tests command functionality - built-in commands keep their output and new commands can be registered
+     */
+    @Test
+    public void testProcessor_Commands() {
+        MultiValueDictionary mvd = new MultiValueDictionary();
+        CommandProcessor processor = new CommandProcessor(mvd, null, null);
+        assertEquals(") Added\n\n", execute(processor, "ADD foo bar"));
+        assertEquals(") ERROR, value already exists\n\n", execute(processor, "ADD foo bar"));
+        assertEquals(") ERROR, Incorrect number of arguments\n\n", execute(processor, "ADD foo"));
+        assertEquals(") ERROR, Incorrect number of arguments\n\n", execute(processor, "ADD  foo bar"));
+        assertEquals(") ERROR, Unsupported operation; please try again\n\n", execute(processor, "add foo bar"));
+        assertEquals(") ERROR, Unsupported operation; please try again\n\n", execute(processor, " "));
+        assertEquals("1) bar\n\n", execute(processor, "MEMBERS foo"));
+        assertEquals(") ERROR, Incorrect number of arguments\n\n", execute(processor, "SAVE"));
+
+        processor.getCommands().register("SIZE", 0, (tokens, out) -> {
+            out.println(") " + mvd.getAllMembers().size() + "\n");
+            return true;
+        });
+        assertEquals(") 1\n\n", execute(processor, "SIZE"));
+        assertTrue(processor.execute("EXIT foo", new PrintWriter(new StringWriter())));
+        assertEquals(") ERROR, Incorrect number of arguments\n\n", execute(processor, "EXIT foo"));
+        assertFalse(processor.execute("EXIT", new PrintWriter(new StringWriter())));
+    }
+
+    private static String execute(CommandProcessor processor, String command) {
+        StringWriter result = new StringWriter();
+        processor.execute(command, new PrintWriter(result));
+        return result.toString();
+    }
+}
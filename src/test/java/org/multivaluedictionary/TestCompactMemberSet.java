@@ -0,0 +1,133 @@
+package org.multivaluedictionary;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests the member set that adapts its layout to its size
+ */
+public class TestCompactMemberSet {
+
+    /**
+     * Tests ADD/REMOVE functionality - the set behaves like a HashSet while growing past and shrinking below every
+     * layout threshold
+     */
+    @Test
+    public void testAddRemove_AcrossLayouts() {
+        CompactMemberSet members = new CompactMemberSet();
+        Set<String> expected = new HashSet<>();
+        int count = CompactMemberSet.ARRAY_THRESHOLD * 2;
+        for (int i = 0; i < count; i++) {
+            assertTrue(members.add("member" + i));
+            assertFalse(members.add("member" + i));
+            expected.add("member" + i);
+            assertEquals(expected, members);
+            assertEquals(expected.hashCode(), members.hashCode());
+        }
+        for (int i = 0; i < count; i++) {
+            assertTrue(members.remove("member" + i));
+            assertFalse(members.remove("member" + i));
+            expected.remove("member" + i);
+            assertEquals(expected, members);
+            assertFalse(members.contains("member" + i));
+        }
+        assertTrue(members.isEmpty());
+        assertFalse(members.contains(null));
+    }
+
+    /**
+     * Tests iterator functionality - removing through the iterator visits every member exactly once
+     */
+    @Test
+    public void testIteratorRemove() {
+        CompactMemberSet members = new CompactMemberSet();
+        members.addAll(Arrays.asList("a", "b", "c", "d"));
+        Set<String> seen = new HashSet<>();
+        Iterator<String> iterator = members.iterator();
+        while (iterator.hasNext()) {
+            String member = iterator.next();
+            assertTrue(seen.add(member));
+            if (!member.equals("c")) {
+                iterator.remove();
+            }
+        }
+        assertEquals(4, seen.size());
+        assertEquals(new HashSet<>(Arrays.asList("c")), members);
+
+        members.removeIf("c"::equals);
+        assertTrue(members.isEmpty());
+    }
+
+    /**
+     * Tests REMOVE functionality - removing every member while iterating empties the set, including when removing
+     * collapses the array to its single member layout
+     */
+    @Test
+    public void testIteratorRemove_CollapseToSingle() {
+        CompactMemberSet members = new CompactMemberSet();
+        members.addAll(Arrays.asList("a", "b"));
+        assertTrue(members.removeIf(member -> true));
+        assertTrue(members.isEmpty());
+
+        members.addAll(Arrays.asList("a", "b", "c"));
+        Set<String> seen = new HashSet<>();
+        Iterator<String> iterator = members.iterator();
+        while (iterator.hasNext()) {
+            assertTrue(seen.add(iterator.next()));
+            iterator.remove();
+        }
+        assertEquals(new HashSet<>(Arrays.asList("a", "b", "c")), seen);
+        assertTrue(members.isEmpty());
+
+        MultiValueDictionary mvd = new MultiValueDictionary();
+        mvd.addAll("k", Arrays.asList("a", "b"));
+        mvd.getMembers("k").retainAll(new HashSet<>());
+        assertTrue(mvd.membersOrEmpty("k").isEmpty());
+    }
+
+    /**
+     * Tests ADD/REMOVE functionality - the dictionary keeps handing out the same set object as a key's set changes
+     * layout
+     */
+    @Test
+    public void testDictionary_KeepsSetIdentity() {
+        MultiValueDictionary mvd = new MultiValueDictionary();
+        mvd.add("foo", "member0");
+        Set<String> members = mvd.getItems().get("foo");
+        for (int i = 1; i <= CompactMemberSet.ARRAY_THRESHOLD; i++) {
+            mvd.add("foo", "member" + i);
+        }
+        assertSame(members, mvd.getItems().get("foo"));
+        assertEquals(CompactMemberSet.ARRAY_THRESHOLD + 1, members.size());
+        for (int i = 1; i <= CompactMemberSet.ARRAY_THRESHOLD; i++) {
+            mvd.remove("foo", "member" + i);
+        }
+        assertSame(members, mvd.getItems().get("foo"));
+        assertEquals(new HashSet<>(Arrays.asList("member0")), mvd.getMembers("foo"));
+    }
+
+    /**
+     * Tests memory estimates - keys with one or a few members cost well under half of a HashSet per key
+     */
+    @Test
+    public void testEstimatedBytes_SmallSets() {
+        MultiValueDictionary mvd = new MultiValueDictionary();
+        for (int i = 0; i < 1000; i++) {
+            mvd.add("key" + i, "member" + i);
+            if (i % 2 == 0) {
+                mvd.add("key" + i, "other" + i);
+                mvd.add("key" + i, "third" + i);
+            }
+        }
+        assertTrue(mvd.estimatedMemberBytes() * 2 < mvd.estimatedHashLayoutBytes());
+    }
+}
@@ -0,0 +1,141 @@
+package org.multivaluedictionary;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests the thread-safe multi-value dictionary
+ */
+public class TestConcurrentMultiValueDictionary {
+
+    private static final int THREADS = 8;
+
+    /**
+     * Tests ADD/REMOVE functionality - keeps the same semantics as the single-threaded dictionary
+     */
+    @Test
+    public void testAddRemove_SameSemantics() {
+        Map<String, Set<String>> expectedValues = new HashMap<>();
+        expectedValues.put("foo", new HashSet<>(Arrays.asList("baz")));
+        MultiValueDictionary mvd = new ConcurrentMultiValueDictionary();
+        mvd.add("foo", "bar");
+        mvd.add("foo", "baz");
+        UnsupportedOperationException uoe = assertThrows(UnsupportedOperationException.class, () -> {
+            mvd.add("foo", "bar");
+        });
+        assertEquals("value already exists", uoe.getMessage());
+        mvd.remove("foo", "bar");
+        assertEquals(expectedValues, mvd.getItems());
+
+        mvd.remove("foo", "baz");
+        assertFalse(mvd.keyExists("foo"));
+        assertNull(mvd.getItems());
+        NoSuchElementException nsee = assertThrows(NoSuchElementException.class, () -> {
+            mvd.remove("foo", "baz");
+        });
+        assertEquals("key does not exist", nsee.getMessage());
+    }
+
+    /**
+     * Tests ADD functionality - only one of many threads racing to add the same member succeeds
+     */
+    @Test
+    public void testAdd_RacingDuplicates() throws Exception {
+        MultiValueDictionary mvd = new ConcurrentMultiValueDictionary();
+        AtomicInteger added = new AtomicInteger();
+        runConcurrently(thread -> {
+            for (int i = 0; i < 1000; i++) {
+                try {
+                    mvd.add("key" + (i % 10), "member" + i);
+                    added.incrementAndGet();
+                } catch (UnsupportedOperationException uoe) {
+                    // another thread won the race
+                }
+            }
+        });
+        assertEquals(1000, added.get());
+        assertEquals(1000, mvd.getAllMembers().size());
+    }
+
+    /**
+     * Tests status-returning functionality - exactly one of many threads racing to add or remove the same member sees
+     * true
+     */
+    @Test
+    public void testTryAddTryRemove_Racing() throws Exception {
+        MultiValueDictionary mvd = new ConcurrentMultiValueDictionary();
+        AtomicInteger added = new AtomicInteger();
+        AtomicInteger removed = new AtomicInteger();
+        runConcurrently(thread -> {
+            for (int i = 0; i < 1000; i++) {
+                if (mvd.tryAdd("key" + (i % 10), "member" + i)) {
+                    added.incrementAndGet();
+                }
+            }
+        });
+        runConcurrently(thread -> {
+            for (int i = 0; i < 1000; i++) {
+                if (mvd.tryRemove("key" + (i % 10), "member" + i)) {
+                    removed.incrementAndGet();
+                }
+            }
+        });
+        assertEquals(1000, added.get());
+        assertEquals(1000, removed.get());
+        assertNull(mvd.getKeys());
+    }
+
+    /**
+     * Tests REMOVE functionality - keys disappear with their last member even while other threads add and remove
+     */
+    @Test
+    public void testRemove_ConcurrentAddAndRemove() throws Exception {
+        MultiValueDictionary mvd = new ConcurrentMultiValueDictionary();
+        runConcurrently(thread -> {
+            for (int i = 0; i < 1000; i++) {
+                String member = "member" + thread + "-" + i;
+                mvd.add("shared", member);
+                mvd.remove("shared", member);
+            }
+        });
+        assertFalse(mvd.keyExists("shared"));
+        assertNull(mvd.getKeys());
+    }
+
+    private static void runConcurrently(ThreadBody body) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int thread = 0; thread < THREADS; thread++) {
+                int id = thread;
+                futures.add(executor.submit(() -> body.run(id)));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private interface ThreadBody {
+        void run(int thread);
+    }
+}
@@ -0,0 +1,134 @@
+package org.multivaluedictionary;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Tests serving the command set over TCP
+ */
+public class TestDictionaryServer {
+
+    private MultiValueDictionary dictionary;
+    private DictionaryServer server;
+    private Thread serverThread;
+
+    @BeforeEach
+    public void startServer() throws IOException {
+        dictionary = new MultiValueDictionary();
+        server = new DictionaryServer(new CommandProcessor(dictionary, null, null), 0);
+        serverThread = new Thread(() -> {
+            try {
+                server.run();
+            } catch (IOException ioe) {
+                throw new IllegalStateException(ioe);
+            }
+        });
+        serverThread.start();
+    }
+
+    @AfterEach
+    public void stopServer() throws InterruptedException {
+        server.close();
+        serverThread.join();
+    }
+
+    /**
+     * Tests pipelining - commands sent in one write are answered in order, and EXIT closes the connection
+     */
+    @Test
+    public void testPipelinedCommands() throws IOException {
+        try (Socket socket = new Socket("localhost", server.getPort())) {
+            OutputStream out = socket.getOutputStream();
+            out.write("ADD foo bar\nADD foo bar\r\nMEMBERS foo\nREMOVEALL foo\nKEYS\nEXIT\nKEYS\n"
+                    .getBytes(StandardCharsets.UTF_8));
+            out.flush();
+
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+                    StandardCharsets.UTF_8));
+            List<String> lines = new ArrayList<>();
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (!line.isEmpty()) {
+                    lines.add(line);
+                }
+            }
+            assertEquals(5, lines.size());
+            assertEquals(") Added", lines.get(0));
+            assertEquals(") ERROR, value already exists", lines.get(1));
+            assertEquals("1) bar", lines.get(2));
+            assertEquals(") Removed", lines.get(3));
+            assertEquals("(empty set)", lines.get(4));
+        }
+    }
+
+    /**
+     * Tests line length - a command line longer than the limit is answered with an error and the connection closed
+     */
+    @Test
+    public void testLineTooLong() throws IOException {
+        try (Socket socket = new Socket("localhost", server.getPort())) {
+            OutputStream out = socket.getOutputStream();
+            byte[] line = new byte[DictionaryServer.MAX_LINE_BYTES];
+            Arrays.fill(line, (byte) 'x');
+            out.write(line);
+            out.flush();
+            socket.shutdownOutput();
+
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+                    StandardCharsets.UTF_8));
+            assertEquals(") ERROR, command line longer than " + DictionaryServer.MAX_LINE_BYTES + " bytes",
+                    in.readLine());
+            assertEquals("", in.readLine());
+            assertNull(in.readLine());
+        }
+    }
+
+    /**
+     * Tests shared state - many clients writing at once all land in the one dictionary
+     */
+    @Test
+    public void testConcurrentClients() throws Exception {
+        List<Thread> clients = new ArrayList<>();
+        for (int client = 0; client < 4; client++) {
+            int id = client;
+            Thread thread = new Thread(() -> {
+                try (Socket socket = new Socket("localhost", server.getPort())) {
+                    StringBuilder commands = new StringBuilder();
+                    for (int i = 0; i < 500; i++) {
+                        commands.append("ADD key").append(id).append(" member").append(i).append('\n');
+                    }
+                    commands.append("EXIT\n");
+                    socket.getOutputStream().write(commands.toString().getBytes(StandardCharsets.UTF_8));
+                    BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+                            StandardCharsets.UTF_8));
+                    while (in.readLine() != null) {
+                        // drain until the server closes the connection
+                    }
+                } catch (IOException ioe) {
+                    throw new IllegalStateException(ioe);
+                }
+            });
+            thread.start();
+            clients.add(thread);
+        }
+        for (Thread client : clients) {
+            client.join();
+        }
+        assertEquals(2000, dictionary.getAllMembers().size());
+        assertEquals(4, dictionary.getKeysForMember("member0").size());
+    }
+}
@@ -0,0 +1,137 @@
+package org.multivaluedictionary;
+
+import java.lang.ref.WeakReference;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests point-in-time views of the dictionary
+ */
+public class TestDictionaryView {
+
+    /**
+     * Tests isolation - writes after a view is taken, to new and existing keys, do not show in it
+     */
+    @Test
+    public void testViewIsIsolated() {
+        MultiValueDictionary mvd = new MultiValueDictionary();
+        mvd.add("foo", "bar");
+        mvd.add("foo", "baz");
+        mvd.add("bang", "zip");
+        DictionaryView view = mvd.snapshotView();
+
+        mvd.add("foo", "new");
+        mvd.remove("foo", "bar");
+        mvd.removeAll("bang");
+        mvd.add("zap", "zop");
+
+        assertEquals(new HashSet<>(Arrays.asList("bar", "baz")), view.getMembers("foo"));
+        assertTrue(view.valueExists("bang", "zip"));
+        assertFalse(view.keyExists("zap"));
+        assertEquals(3, view.membersStream().count());
+        assertEquals(new HashSet<>(Arrays.asList("baz", "new")), mvd.getMembers("foo"));
+        assertThrows(UnsupportedOperationException.class, () -> view.getMembers("foo").add("x"));
+        assertThrows(NoSuchElementException.class, () -> view.getMembers("zap"));
+    }
+
+    /**
+     * Tests several views - each keeps its own point in time, and a set is copied once per view at most
+     */
+    @Test
+    public void testSuccessiveViews() {
+        MultiValueDictionary mvd = new MultiValueDictionary(StorageMode.ENCODED);
+        mvd.add("foo", "a");
+        DictionaryView first = mvd.snapshotView();
+        mvd.add("foo", "b");
+        DictionaryView second = mvd.snapshotView();
+        mvd.add("foo", "c");
+        mvd.add("foo", "d");
+        assertEquals(1, first.getMembers("foo").size());
+        assertEquals(2, second.getMembers("foo").size());
+        assertEquals(4, mvd.getMembers("foo").size());
+    }
+
+    /**
+     * Tests several views - an older view stays isolated once a newer one has been garbage collected
+     */
+    @Test
+    public void testOlderViewOutlivesNewer() throws InterruptedException {
+        MultiValueDictionary mvd = new MultiValueDictionary();
+        mvd.add("foo", "a");
+        mvd.add("foo", "b");
+        DictionaryView first = mvd.snapshotView();
+        WeakReference<DictionaryView> second = new WeakReference<>(mvd.snapshotView());
+        for (int attempt = 0; attempt < 50 && second.get() != null; attempt++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        mvd.add("foo", "c");
+        mvd.add("bar", "d");
+        mvd.add("bar", "e");
+        assertEquals(new HashSet<>(Arrays.asList("a", "b")), first.getMembers("foo"));
+        assertFalse(first.keyExists("bar"));
+        assertEquals(3, mvd.getMembers("foo").size());
+    }
+
+    /**
+     * Tests views of a loaded snapshot - the view reads the mapping and is unaffected by the first write
+     */
+    @Test
+    public void testViewOfMappedSnapshot(@TempDir Path directory) throws Exception {
+        MultiValueDictionary mvd = new MultiValueDictionary();
+        mvd.add("foo", "bar");
+        Path file = directory.resolve("dictionary.snapshot");
+        mvd.saveSnapshot(file);
+        mvd.loadSnapshot(file);
+        DictionaryView view = mvd.snapshotView();
+        mvd.add("foo", "baz");
+        assertEquals(new HashSet<>(Arrays.asList("bar")), view.getMembers("foo"));
+    }
+
+    /**
+     * Tests a long scan racing writers - iterating a view of the thread-safe dictionary never fails and always sees
+     * the same contents
+     */
+    @Test
+    public void testScanWhileWriting() throws InterruptedException {
+        ConcurrentMultiValueDictionary mvd = new ConcurrentMultiValueDictionary();
+        for (int i = 0; i < 1000; i++) {
+            mvd.add("key" + (i % 100), "member" + i);
+        }
+        AtomicBoolean running = new AtomicBoolean(true);
+        Thread writer = new Thread(() -> {
+            int i = 1000;
+            while (running.get()) {
+                mvd.add("key" + (i % 100), "member" + i);
+                mvd.remove("key" + (i % 100), "member" + i);
+                mvd.add("key" + (i % 100), "member" + i);
+                i++;
+            }
+        });
+        writer.start();
+        try {
+            for (int scan = 0; scan < 50; scan++) {
+                DictionaryView view = mvd.snapshotView();
+                long first = view.membersStream().count();
+                long[] second = new long[1];
+                view.forEachItem((key, member) -> second[0]++);
+                assertEquals(first, second[0]);
+                assertTrue(first >= 1000);
+            }
+        } finally {
+            running.set(false);
+            writer.join();
+        }
+    }
+}
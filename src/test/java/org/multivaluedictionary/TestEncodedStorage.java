@@ -0,0 +1,107 @@
+package org.multivaluedictionary;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests the dictionary-encoded member storage mode
+ */
+public class TestEncodedStorage {
+
+    /**
+     * Tests ADD/REMOVE functionality - encoded member sets read back as the same strings that were added
+     */
+    @Test
+    public void testAddRemove_DecodesMembers() {
+        Map<String, Set<String>> expectedValues = new HashMap<>();
+        expectedValues.put("foo", new HashSet<>(Arrays.asList("bar", "baz")));
+        expectedValues.put("bang", new HashSet<>(Arrays.asList("bar")));
+        MultiValueDictionary mvd = new MultiValueDictionary(StorageMode.ENCODED);
+        mvd.add("foo", "bar");
+        mvd.add("foo", "baz");
+        mvd.add("foo", "zip");
+        mvd.add("bang", "bar");
+        mvd.remove("foo", "zip");
+        assertEquals(expectedValues, mvd.getItems());
+        assertTrue(mvd.valueExists("bang", "bar"));
+        assertFalse(mvd.valueExists("bang", "baz"));
+        assertFalse(mvd.valueExists("bang", "never-added"));
+
+        mvd.remove("bang", "bar");
+        assertFalse(mvd.keyExists("bang"));
+        mvd.clear();
+        assertNull(mvd.getItems());
+    }
+
+    /**
+     * Tests the int set - values survive growth, removal with backward shifting and removal through a cursor
+     */
+    @Test
+    public void testIntHashSet_AddRemoveIterate() {
+        IntHashSet set = new IntHashSet();
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(set.add(i * 7));
+        }
+        assertFalse(set.add(7));
+        for (int i = 0; i < 1000; i += 2) {
+            assertTrue(set.remove(i * 7));
+        }
+        assertFalse(set.remove(0));
+        assertEquals(500, set.size());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i % 2 == 1, set.contains(i * 7));
+        }
+
+        IntHashSet.Cursor cursor = set.cursor();
+        int visited = 0;
+        while (cursor.hasNext()) {
+            cursor.next();
+            cursor.remove();
+            visited++;
+        }
+        assertEquals(500, visited);
+        assertEquals(0, set.size());
+    }
+
+    /**
+     * Tests member iteration - removing through the decoded view's iterator removes from the key
+     */
+    @Test
+    public void testIterator_Remove() {
+        MultiValueDictionary mvd = new MultiValueDictionary(StorageMode.ENCODED);
+        mvd.add("foo", "bar");
+        mvd.add("foo", "baz");
+        Iterator<String> members = mvd.getMembers("foo").iterator();
+        while (members.hasNext()) {
+            if (members.next().equals("bar")) {
+                members.remove();
+            }
+        }
+        assertEquals(new HashSet<>(Arrays.asList("baz")), mvd.getMembers("foo"));
+    }
+
+    /**
+     * Tests memory estimates - a shared vocabulary costs less encoded than as per-key String copies
+     */
+    @Test
+    public void testEstimatedMemberBytes_SharedVocabulary() {
+        MultiValueDictionary mvd = new MultiValueDictionary(StorageMode.ENCODED);
+        for (int key = 0; key < 1000; key++) {
+            for (int member = 0; member < 8; member++) {
+                mvd.add("key" + key, "shared-member-value-" + member);
+            }
+        }
+        assertTrue(mvd.estimatedMemberBytes() < mvd.estimatedHashLayoutBytes());
+    }
+}
@@ -0,0 +1,156 @@
+package org.multivaluedictionary;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests keeping the dictionary within a member or memory budget
+ */
+public class TestEviction {
+
+    /**
+     * Tests the member budget - whole keys are evicted until the total is back within it, and counted
+     */
+    @Test
+    public void testMemberBudget() {
+        MultiValueDictionary mvd = new MultiValueDictionary();
+        mvd.enableReverseIndex();
+        mvd.enableEviction(EvictionPolicy.random(), 10, Long.MAX_VALUE);
+        for (int i = 0; i < 100; i++) {
+            mvd.add("key" + i, "a");
+            mvd.add("key" + i, "b");
+        }
+        assertTrue(mvd.getAllMembers().size() <= 10);
+        assertTrue(mvd.keyExists("key99"));
+        assertEquals(100 - mvd.getKeys().size(), mvd.getEvictedKeys());
+        assertEquals(mvd.getEvictedKeys() * 2, mvd.getEvictedMembers());
+        assertEquals(mvd.getKeys(), mvd.getKeysForMember("a"));
+    }
+
+    /**
+     * Tests the memory budget - the estimate follows adds and removes and keys are evicted once it is exceeded
+     */
+    @Test
+    public void testMemoryBudget() {
+        MultiValueDictionary mvd = new MultiValueDictionary();
+        mvd.enableEviction(EvictionPolicy.leastRecentlyUsed(), Long.MAX_VALUE, 10_000);
+        for (int i = 0; i < 1000; i++) {
+            mvd.add("key" + i, "member" + i);
+        }
+        assertTrue(mvd.getEvictedKeys() > 0);
+        long keys = mvd.getKeys().size();
+        assertEquals(1000, keys + mvd.getEvictedKeys());
+        assertTrue(keys * 100 < 10_000);
+
+        mvd.clear();
+        mvd.add("foo", "bar");
+        assertEquals(1000 - keys, mvd.getEvictedKeys());
+    }
+
+    /**
+     * Tests budgets set over existing contents - the dictionary is brought within budget straight away
+     */
+    @Test
+    public void testEnableOverBudget() {
+        MultiValueDictionary mvd = new MultiValueDictionary();
+        for (int i = 0; i < 20; i++) {
+            mvd.add("key" + i, "member");
+        }
+        mvd.enableEviction(EvictionPolicy.leastFrequentlyUsed(), 5, Long.MAX_VALUE);
+        assertEquals(5, mvd.getKeys().size());
+        assertEquals(15, mvd.getEvictedKeys());
+    }
+
+    /**
+     * Tests LRU - with a sample larger than the dictionary, recently read keys outlive keys that were not read
+     */
+    @Test
+    public void testLeastRecentlyUsed() {
+        MultiValueDictionary mvd = new MultiValueDictionary();
+        mvd.enableEviction(sampling(EvictionPolicy.leastRecentlyUsed()), 11, Long.MAX_VALUE);
+        for (int i = 0; i < 10; i++) {
+            mvd.add("key" + i, "member");
+        }
+        mvd.add("marker", "member");
+        for (int i = 0; i < 5; i++) {
+            mvd.getMembers("key" + i);
+        }
+        for (int i = 0; i < 5; i++) {
+            mvd.add("new" + i, "member");
+        }
+        for (int i = 0; i < 5; i++) {
+            assertTrue(mvd.keyExists("key" + i), "key" + i);
+        }
+    }
+
+    /**
+     * Tests LFU - keys read many times outlive keys read once
+     */
+    @Test
+    public void testLeastFrequentlyUsed() {
+        MultiValueDictionary mvd = new MultiValueDictionary();
+        mvd.enableEviction(sampling(EvictionPolicy.leastFrequentlyUsed()), 10, Long.MAX_VALUE);
+        for (int i = 0; i < 10; i++) {
+            mvd.add("key" + i, "member");
+        }
+        for (int round = 0; round < 2000; round++) {
+            for (int i = 0; i < 3; i++) {
+                mvd.valueExists("key" + i, "member");
+            }
+        }
+        for (int i = 0; i < 7; i++) {
+            mvd.add("new" + i, "member");
+        }
+        for (int i = 0; i < 3; i++) {
+            assertTrue(mvd.keyExists("key" + i), "key" + i);
+        }
+    }
+
+    /**
+     * Tests eviction from many threads - the thread-safe dictionary stays within budget
+     */
+    @Test
+    public void testConcurrentEviction() throws InterruptedException {
+        ConcurrentMultiValueDictionary mvd = new ConcurrentMultiValueDictionary();
+        mvd.enableEviction(EvictionPolicy.leastRecentlyUsed(), 100, Long.MAX_VALUE);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            int id = t;
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 2000; i++) {
+                    mvd.add("key" + id + "-" + i, "member");
+                    mvd.valueExists("key" + id + "-" + i, "member");
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertTrue(mvd.getKeys().size() <= 100);
+        assertEquals(8000, mvd.getKeys().size() + mvd.getEvictedKeys());
+    }
+
+    /**
+     * Wraps a policy to sample so many keys that it behaves like the exact policy
+     */
+    private static EvictionPolicy sampling(EvictionPolicy policy) {
+        return new EvictionPolicy() {
+            @Override
+            public int getSampleSize() {
+                return 256;
+            }
+
+            @Override
+            public boolean isBetterVictim(KeyUsage candidate, KeyUsage current) {
+                return policy.isBetterVictim(candidate, current);
+            }
+        };
+    }
+}
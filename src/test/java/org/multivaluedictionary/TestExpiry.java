@@ -0,0 +1,217 @@
+package org.multivaluedictionary;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests time to live of keys and members
+ */
+public class TestExpiry {
+
+    private final AtomicLong clock = new AtomicLong(1_000_000);
+    private MultiValueDictionary mvd;
+
+    @BeforeEach
+    public void setUp() {
+        mvd = new MultiValueDictionary();
+        mvd.setExpiryClock(clock::get);
+    }
+
+    // Lazy expiry
+
+    /**
+     * Tests key expiry - the key and all its members go once the time to live has passed and it is next used
+     */
+    @Test
+    public void testExpireKey() {
+        mvd.add("foo", "bar");
+        mvd.add("foo", "baz");
+        mvd.expire("foo", 1000);
+        clock.addAndGet(999);
+        assertTrue(mvd.keyExists("foo"));
+        clock.addAndGet(1);
+        assertFalse(mvd.keyExists("foo"));
+        assertNull(mvd.getKeys());
+    }
+
+    /**
+     * Tests expiry with views - copying a member set for a view keeps the key's and its members' deadlines
+     */
+    @Test
+    public void testDeadlinesSurviveViewCopies() {
+        mvd.add("foo", "a");
+        mvd.add("foo", "b");
+        mvd.expire("foo", 1000);
+        mvd.add("bang", "zip");
+        mvd.add("bang", "zap", 500);
+        DictionaryView view = mvd.snapshotView();
+        mvd.add("foo", "x");
+        mvd.add("bang", "zop");
+        clock.addAndGet(500);
+        mvd.sweepExpired(100);
+        assertEquals(new HashSet<>(Arrays.asList("zip", "zop")), mvd.getMembers("bang"));
+        clock.addAndGet(500);
+        mvd.sweepExpired(100);
+        assertFalse(mvd.keyExists("foo"));
+        assertFalse(mvd.valueExists("foo", "a"));
+        assertEquals(new HashSet<>(Arrays.asList("a", "b")), view.getMembers("foo"));
+        assertTrue(view.valueExists("bang", "zap"));
+    }
+
+    /**
+     * Tests member expiry - only the member goes, and the key goes with its last member
+     */
+    @Test
+    public void testExpireMember() {
+        mvd.add("foo", "bar", 1000);
+        mvd.add("foo", "baz");
+        mvd.add("bang", "zip", 500);
+        clock.addAndGet(1000);
+        assertEquals(new HashSet<>(Arrays.asList("baz")), mvd.getMembers("foo"));
+        assertThrows(NoSuchElementException.class, () -> mvd.getMembers("bang"));
+    }
+
+    /**
+     * Tests member expiry - thousands of members of one key expiring together are all removed at once, in both
+     * dictionaries
+     */
+    @Test
+    public void testManyMembersExpireTogether() {
+        for (MultiValueDictionary dictionary : Arrays.asList(mvd, new ConcurrentMultiValueDictionary())) {
+            dictionary.setExpiryClock(clock::get);
+            for (int i = 0; i < 20_000; i++) {
+                dictionary.add("foo", "member" + i, 1000);
+            }
+            dictionary.add("foo", "kept");
+            clock.addAndGet(1000);
+            assertTrue(dictionary.keyExists("foo"));
+            assertEquals(new HashSet<>(Arrays.asList("kept")), dictionary.getMembers("foo"));
+        }
+    }
+
+    /**
+     * Tests re-adding - a key removed and added again does not keep its old time to live
+     */
+    @Test
+    public void testReaddedKeyKeepsNoDeadline() {
+        mvd.add("foo", "bar");
+        mvd.expire("foo", 1000);
+        mvd.remove("foo", "bar");
+        mvd.add("foo", "bar");
+        clock.addAndGet(2000);
+        assertTrue(mvd.valueExists("foo", "bar"));
+        assertEquals(0, mvd.sweepExpired(100));
+    }
+
+    /**
+     * Tests invalid arguments - missing keys or members and non-positive times to live are rejected
+     */
+    @Test
+    public void testExpireErrors() {
+        mvd.add("foo", "bar");
+        assertThrows(NoSuchElementException.class, () -> mvd.expire("bang", 1000));
+        assertThrows(NoSuchElementException.class, () -> mvd.expire("foo", "bang", 1000));
+        assertThrows(IllegalArgumentException.class, () -> mvd.expire("foo", 0));
+    }
+
+    // Sweeper
+
+    /**
+     * Tests sweeping - unused expired entries are removed in bounded batches, and listeners see them go
+     */
+    @Test
+    public void testSweepInBatches() {
+        mvd.enableReverseIndex();
+        for (int i = 0; i < 100; i++) {
+            mvd.add("key" + i, "member", 1000 + i * 10);
+        }
+        mvd.add("forever", "member");
+        assertEquals(0, mvd.sweepExpired(10));
+
+        clock.addAndGet(5000);
+        assertEquals(10, mvd.sweepExpired(10));
+        assertEquals(91, mvd.getKeys().size());
+        int swept = 10;
+        while (swept < 100) {
+            swept += mvd.sweepExpired(10);
+        }
+        assertEquals(new HashSet<>(Arrays.asList("forever")), mvd.getKeys());
+        assertEquals(new HashSet<>(Arrays.asList("forever")), mvd.getKeysForMember("member"));
+    }
+
+    /**
+     * Tests long times to live - deadlines beyond every level of the timing wheel still expire on time
+     */
+    @Test
+    public void testLongTimeToLive() {
+        long threeDays = 3L * 24 * 60 * 60 * 1000;
+        mvd.add("foo", "bar", threeDays);
+        clock.addAndGet(threeDays - 10);
+        assertEquals(0, mvd.sweepExpired(10));
+        clock.addAndGet(10);
+        assertEquals(1, mvd.sweepExpired(10));
+        assertFalse(mvd.keyExists("foo"));
+    }
+
+    /**
+     * Tests the timing wheel - every deadline is polled once, never before it has passed and within a tick after
+     */
+    @Test
+    public void testTimingWheel() {
+        TimingWheel wheel = new TimingWheel(10);
+        Random random = new Random(42);
+        long[] deadlines = new long[10_000];
+        for (int i = 0; i < deadlines.length; i++) {
+            deadlines[i] = (long) Math.pow(10, random.nextDouble() * 9);
+            wheel.schedule(Integer.toString(i), deadlines[i]);
+        }
+        int polled = 0;
+        for (long now = 0; polled < deadlines.length; now += 1 + now / 100) {
+            for (String key : wheel.poll(now, Integer.MAX_VALUE)) {
+                long deadline = deadlines[Integer.parseInt(key)];
+                assertTrue(deadline <= now, key);
+                assertTrue(now - deadline <= 10 + now / 100, key);
+                polled++;
+            }
+        }
+        assertEquals(0, wheel.size());
+    }
+
+    // EXPIRE
+
+    /**
+     * Tests EXPIRE functionality - sets the time to live of a key or member in seconds
+     */
+    @Test
+    public void testExpireCommand() {
+        CommandProcessor processor = new CommandProcessor(mvd, null, null);
+        mvd.add("foo", "bar");
+        mvd.add("foo", "baz");
+        assertEquals(") Expiry set\n\n", execute(processor, "EXPIRE foo bar 1"));
+        assertEquals(") ERROR, value does not exist\n\n", execute(processor, "EXPIRE foo bang 1"));
+        assertEquals(") ERROR, time to live must be a whole number of seconds\n\n",
+                execute(processor, "EXPIRE foo soon"));
+        clock.addAndGet(1000);
+        assertEquals("1) baz\n\n", execute(processor, "MEMBERS foo"));
+    }
+
+    private static String execute(CommandProcessor processor, String command) {
+        StringWriter result = new StringWriter();
+        processor.execute(command, new PrintWriter(result));
+        return result.toString();
+    }
+}
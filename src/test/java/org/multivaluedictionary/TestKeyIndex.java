@@ -0,0 +1,104 @@
+package org.multivaluedictionary;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests pattern and range queries over keys, with and without the ordered key index
+ */
+public class TestKeyIndex {
+
+    // PATTERNS
+
+    /**
+     * Tests glob functionality - wildcards, sets, negated sets and escapes match like Redis KEYS
+     */
+    @Test
+    public void testGlobPattern() {
+        assertTrue(new GlobPattern("user:*").matches("user:123:name"));
+        assertFalse(new GlobPattern("user:*").matches("users"));
+        assertTrue(new GlobPattern("h?llo").matches("hello"));
+        assertFalse(new GlobPattern("h?llo").matches("hllo"));
+        assertTrue(new GlobPattern("h*llo").matches("heeeello"));
+        assertTrue(new GlobPattern("h[ae]llo").matches("hallo"));
+        assertFalse(new GlobPattern("h[ae]llo").matches("hillo"));
+        assertTrue(new GlobPattern("h[^e]llo").matches("hallo"));
+        assertFalse(new GlobPattern("h[^e]llo").matches("hello"));
+        assertTrue(new GlobPattern("h[a-c]llo").matches("hbllo"));
+        assertTrue(new GlobPattern("a\\*b").matches("a*b"));
+        assertFalse(new GlobPattern("a\\*b").matches("axb"));
+        assertTrue(new GlobPattern("*:*:name").matches("user:1:name"));
+        assertEquals("user:", new GlobPattern("user:*:name").getLiteralPrefix());
+        assertEquals("a*b", new GlobPattern("a\\*b?").getLiteralPrefix());
+        assertEquals("", new GlobPattern("*").getLiteralPrefix());
+    }
+
+    // KEYS, KEYRANGE
+
+    /**
+     * Tests KEYS/KEYRANGE functionality - indexed and scanning dictionaries agree as keys come and go
+     */
+    @Test
+    public void testQueries_IndexedAndScanned() {
+        MultiValueDictionary indexed = new ConcurrentMultiValueDictionary();
+        indexed.enableKeyIndex();
+        MultiValueDictionary scanned = new MultiValueDictionary();
+        for (MultiValueDictionary mvd : Arrays.asList(indexed, scanned)) {
+            for (int user = 0; user < 20; user++) {
+                mvd.add("user:" + user + ":name", "name" + user);
+                mvd.add("user:" + user + ":name", "alias" + user);
+                mvd.add("user:" + user + ":email", "email" + user);
+            }
+            mvd.add("session:1", "user:1");
+            mvd.remove("user:3:name", "name3");
+            mvd.remove("user:3:name", "alias3");
+            mvd.removeAll("user:4:email");
+
+            assertEquals(Arrays.asList("user:1:email", "user:1:name"), mvd.getKeysMatching("user:1:*"));
+            assertEquals(Arrays.asList("user:3:email"), mvd.getKeysMatching("user:3:*"));
+            assertEquals(Arrays.asList("user:4:name"), mvd.getKeysMatching("user:4:*"));
+            assertEquals(19, mvd.getKeysMatching("user:*:name").size());
+            assertEquals(Arrays.asList("session:1"), mvd.getKeysMatching("s*"));
+            assertEquals(Collections.emptyList(), mvd.getKeysMatching("nobody*"));
+            assertEquals(Arrays.asList("session:1", "user:0:email"), mvd.getKeyRange(null, true, "user:0:email", true));
+            assertEquals(Arrays.asList("user:0:name", "user:10:email"),
+                    mvd.getKeyRange("user:0:email", false, "user:10:name", false));
+            assertEquals(Collections.emptyList(), mvd.getKeyRange("z", true, "a", true));
+        }
+        indexed.clear();
+        assertEquals(Collections.emptyList(), indexed.getKeysMatching("*"));
+    }
+
+    /**
+     * Tests KEYS/KEYRANGE functionality - commands parse patterns and range bounds
+     */
+    @Test
+    public void testCommands() {
+        MultiValueDictionary mvd = new MultiValueDictionary();
+        mvd.enableKeyIndex();
+        CommandProcessor processor = new CommandProcessor(mvd, null, null);
+        execute(processor, "ADD foo bar");
+        execute(processor, "ADD baz bang");
+        assertEquals("1) baz\n\n", execute(processor, "KEYS ba*"));
+        assertEquals("(empty set)\n\n", execute(processor, "KEYS x*"));
+        assertEquals("1) baz\n\n", execute(processor, "KEYRANGE [baz (foo"));
+        assertEquals("1) baz\n2) foo\n\n", execute(processor, "KEYRANGE - +"));
+        assertEquals("1) foo\n\n", execute(processor, "KEYRANGE (baz +"));
+        assertEquals(") ERROR, range bounds must be -, + or a key starting with [ or (\n\n",
+                execute(processor, "KEYRANGE baz +"));
+    }
+
+    private static String execute(CommandProcessor processor, String command) {
+        StringWriter result = new StringWriter();
+        processor.execute(command, new PrintWriter(result));
+        return result.toString();
+    }
+}
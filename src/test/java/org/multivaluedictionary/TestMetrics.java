@@ -0,0 +1,143 @@
+package org.multivaluedictionary;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests operation metrics and the STATS command
+ */
+public class TestMetrics {
+
+    // LatencyHistogram
+
+    /**
+     * Tests percentiles - values are reported within the precision of their bucket
+     */
+    @Test
+    public void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1; value <= 100_000; value++) {
+            histogram.record(value);
+        }
+        assertEquals(100_000, histogram.getCount());
+        assertEquals(100_000, histogram.getMax());
+        assertEquals(50_000.5, histogram.getMean(), 0.001);
+        assertEquals(50_000, histogram.getPercentile(50), 50_000 * 0.04);
+        assertEquals(99_000, histogram.getPercentile(99), 99_000 * 0.04);
+        assertEquals(99_900, histogram.getPercentile(99.9), 99_900 * 0.04);
+        assertEquals(100_000, histogram.getPercentile(100));
+        assertEquals(1, histogram.getPercentile(0));
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getPercentile(99));
+    }
+
+    /**
+     * Tests small values - latencies below 64 ns are counted exactly
+     */
+    @Test
+    public void testExactSmallValues() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(3);
+        histogram.record(7);
+        histogram.record(-5);
+        assertEquals(0, histogram.getPercentile(33));
+        assertEquals(3, histogram.getPercentile(66));
+        assertEquals(7, histogram.getPercentile(100));
+    }
+
+    // Dictionary metrics
+
+    /**
+     * Tests operation metrics - calls are counted whether they succeed or throw, and nothing is recorded once disabled
+     */
+    @Test
+    public void testOperationMetrics() {
+        MultiValueDictionary mvd = new MultiValueDictionary();
+        assertNull(mvd.getMetrics());
+        Metrics metrics = mvd.enableMetrics();
+        mvd.add("foo", "bar");
+        mvd.add("foo", "baz");
+        assertThrows(UnsupportedOperationException.class, () -> mvd.add("foo", "bar"));
+        assertThrows(NoSuchElementException.class, () -> mvd.getMembers("bang"));
+        mvd.valueExists("foo", "bar");
+
+        assertEquals(3, metrics.getOperation(Metrics.Operation.ADD).getCount());
+        assertEquals(1, metrics.getOperation(Metrics.Operation.GET_MEMBERS).getCount());
+        assertEquals(1, metrics.getOperation(Metrics.Operation.VALUE_EXISTS).getCount());
+        assertEquals(0, metrics.getOperation(Metrics.Operation.CLEAR).getCount());
+
+        mvd.disableMetrics();
+        mvd.add("foo", "bang");
+        assertEquals(3, metrics.getOperation(Metrics.Operation.ADD).getCount());
+    }
+
+    /**
+     * Tests concurrent recording - no call is lost when many threads record at once
+     */
+    @Test
+    public void testConcurrentRecording() throws InterruptedException {
+        ConcurrentMultiValueDictionary mvd = new ConcurrentMultiValueDictionary();
+        Metrics metrics = mvd.enableMetrics();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            int id = t;
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    mvd.add("key" + id, "member" + i);
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(4000, metrics.getOperation(Metrics.Operation.ADD).getCount());
+    }
+
+    // STATS
+
+    /**
+     * Tests STATS functionality - reports sizes always and latencies of used operations and commands once enabled
+     */
+    @Test
+    public void testStats() {
+        MultiValueDictionary mvd = new MultiValueDictionary();
+        CommandProcessor processor = new CommandProcessor(mvd, null, null);
+        execute(processor, "ADD foo bar");
+        execute(processor, "ADD foo baz");
+        execute(processor, "ADD bang bar");
+
+        String disabled = execute(processor, "STATS");
+        assertTrue(disabled.startsWith("1) keys 2\n2) members 3\n3) largestSet 2\n"));
+        assertFalse(disabled.contains("count="));
+
+        mvd.enableMetrics();
+        execute(processor, "ADD zip zap");
+        execute(processor, "NOSUCHCOMMAND");
+        String enabled = execute(processor, "STATS");
+        assertTrue(enabled.contains(") add count=1 "));
+        assertTrue(enabled.contains(") ADD count=1 "));
+        assertTrue(enabled.contains(") UNSUPPORTED count=1 "));
+        assertEquals(1, mvd.getMetrics().getCommand("STATS").getCount());
+    }
+
+    private static String execute(CommandProcessor processor, String command) {
+        StringWriter result = new StringWriter();
+        processor.execute(command, new PrintWriter(result));
+        return result.toString();
+    }
+}
@@ -217,6 +217,33 @@ public class TestMultiValueDictionary {
         assertEquals(expectedValues, mvd.getItems());
     }
 
+    // TRYADD, TRYREMOVE, TRYREMOVEALL, MEMBERSOREMPTY
+
+    /**
+     * Tests status-returning functionality - reports duplicates and missing keys or members as false instead of
+     * throwing, leaving the multi-value dictionary unchanged
+     */
+    @Test
+    public void testTryMethods() {
+        Map<String, Set<String>> expectedValues = new HashMap<>();
+        expectedValues.put("foo", new HashSet<>(Arrays.asList("bar", "baz")));
+        MultiValueDictionary mvd = new MultiValueDictionary();
+        assertTrue(mvd.tryAdd("foo", "bar"));
+        assertTrue(mvd.tryAdd("foo", "baz"));
+        assertFalse(mvd.tryAdd("foo", "bar"));
+        assertFalse(mvd.tryRemove("foo", "bang"));
+        assertFalse(mvd.tryRemove("bang", "bar"));
+        assertFalse(mvd.tryRemoveAll("bang"));
+        assertEquals(expectedValues, mvd.getItems());
+        assertEquals(expectedValues.get("foo"), mvd.membersOrEmpty("foo"));
+        assertTrue(mvd.membersOrEmpty("bang").isEmpty());
+
+        assertTrue(mvd.tryRemove("foo", "bar"));
+        assertTrue(mvd.tryRemoveAll("foo"));
+        assertFalse(mvd.tryRemove("foo", "baz"));
+        assertNull(mvd.getItems());
+    }
+
     // CLEAR
 
     /**
@@ -321,6 +348,41 @@ public class TestMultiValueDictionary {
         assertNull(mvd.getItems());
     }
 
+    // STREAMS
+
+    /**
+     * Tests ALLMEMBERS streaming - streams every member of every key, sequentially and in parallel
+     */
+    @Test
+    public void testMembersStream() {
+        MultiValueDictionary mvd = new MultiValueDictionary();
+        assertEquals(0, mvd.membersStream().count());
+        for (int key = 0; key < 100; key++) {
+            for (int member = 0; member <= key; member++) {
+                mvd.add("key" + key, "member" + member);
+            }
+        }
+        assertEquals(5050, mvd.membersStream().count());
+        assertEquals(5050, mvd.membersStream().parallel().count());
+        assertEquals(100, mvd.membersStream().parallel().filter("member0"::equals).count());
+    }
+
+    /**
+     * Tests ITEMS streaming - streams the live key-member(s) pairings and visits every pair
+     */
+    @Test
+    public void testEntriesStream() {
+        Map<String, Set<String>> mvdValues = new HashMap<>();
+        mvdValues.put("foo", new HashSet<>(Arrays.asList("bar", "baz")));
+        mvdValues.put("baz", new HashSet<>(Arrays.asList("bang")));
+        MultiValueDictionary mvd = new MultiValueDictionary(mvdValues);
+        assertEquals(3, mvd.entriesStream().mapToInt(entry -> entry.getValue().size()).sum());
+
+        Map<String, Set<String>> visited = new HashMap<>();
+        mvd.forEachItem((key, member) -> visited.computeIfAbsent(key, k -> new HashSet<>()).add(member));
+        assertEquals(mvdValues, visited);
+    }
+
     // INTERSECTION
 
     @Test
@@ -348,4 +410,127 @@ public class TestMultiValueDictionary {
         MultiValueDictionary mvd = new MultiValueDictionary(mvdValues);
         assertEquals(expectedValues, mvd.getIntersection("foo", "baz"));
     }
+
+    /**
+     * Tests INTERSECTION functionality - intersects any number of keys and treats a missing key as empty
+     */
+    @Test
+    public void testGetIntersection_ManyKeys() {
+        Map<String, Set<String>> mvdValues = new HashMap<>();
+        mvdValues.put("foo", new HashSet<>(Arrays.asList("bar", "baz", "bang")));
+        mvdValues.put("baz", new HashSet<>(Arrays.asList("bar", "baz")));
+        mvdValues.put("bang", new HashSet<>(Arrays.asList("baz")));
+        MultiValueDictionary mvd = new MultiValueDictionary(mvdValues);
+        assertEquals(new HashSet<>(Arrays.asList("baz")), mvd.getIntersection("foo", "baz", "bang"));
+        assertTrue(mvd.getIntersection("foo", "missing").isEmpty());
+    }
+
+    /**
+     * Tests INTERSECTION functionality - sets past the parallel threshold give the same result
+     */
+    @Test
+    public void testGetIntersection_Parallel() {
+        MultiValueDictionary mvd = new MultiValueDictionary();
+        for (int i = 0; i < SetAlgebra.PARALLEL_THRESHOLD * 2; i++) {
+            mvd.add("all", "member" + i);
+            if (i % 2 == 0) {
+                mvd.add("even", "member" + i);
+            }
+            if (i % 3 == 0) {
+                mvd.add("third", "member" + i);
+            }
+        }
+        Set<String> intersection = mvd.getIntersection("all", "even", "third");
+        assertEquals((SetAlgebra.PARALLEL_THRESHOLD * 2 + 5) / 6, intersection.size());
+        assertTrue(intersection.contains("member6"));
+        assertFalse(intersection.contains("member4"));
+    }
+
+    // UNION
+
+    /**
+     * Tests UNION functionality - combines the members of every key
+     */
+    @Test
+    public void testGetUnion() {
+        Map<String, Set<String>> mvdValues = new HashMap<>();
+        mvdValues.put("foo", new HashSet<>(Arrays.asList("bar", "baz")));
+        mvdValues.put("baz", new HashSet<>(Arrays.asList("bang")));
+        MultiValueDictionary mvd = new MultiValueDictionary(mvdValues);
+        assertEquals(new HashSet<>(Arrays.asList("bar", "baz", "bang")), mvd.getUnion("foo", "baz", "missing"));
+    }
+
+    // DIFF
+
+    /**
+     * Tests DIFF functionality - keeps the members of the first key that no other key holds
+     */
+    @Test
+    public void testGetDifference() {
+        Map<String, Set<String>> mvdValues = new HashMap<>();
+        mvdValues.put("foo", new HashSet<>(Arrays.asList("bar", "baz", "bang")));
+        mvdValues.put("baz", new HashSet<>(Arrays.asList("bar")));
+        mvdValues.put("bang", new HashSet<>(Arrays.asList("bang")));
+        MultiValueDictionary mvd = new MultiValueDictionary(mvdValues);
+        assertEquals(new HashSet<>(Arrays.asList("baz")), mvd.getDifference("foo", "baz", "bang"));
+        assertTrue(mvd.getDifference("missing", "foo").isEmpty());
+    }
+
+    // INTERSECTIONSTORE, UNIONSTORE, DIFFSTORE
+
+    /**
+     * Tests the store variants - replace the destination key with the result and drop it when the result is empty
+     */
+    @Test
+    public void testStore() {
+        Map<String, Set<String>> mvdValues = new HashMap<>();
+        mvdValues.put("foo", new HashSet<>(Arrays.asList("bar", "baz")));
+        mvdValues.put("baz", new HashSet<>(Arrays.asList("bar", "bang")));
+        mvdValues.put("dest", new HashSet<>(Arrays.asList("old")));
+        MultiValueDictionary mvd = new MultiValueDictionary(mvdValues);
+        assertEquals(1, mvd.storeIntersection("dest", "foo", "baz"));
+        assertEquals(new HashSet<>(Arrays.asList("bar")), mvd.getMembers("dest"));
+        assertEquals(3, mvd.storeUnion("dest", "foo", "baz"));
+        assertEquals(new HashSet<>(Arrays.asList("bar", "baz", "bang")), mvd.getMembers("dest"));
+        assertEquals(0, mvd.storeDifference("dest", "foo", "foo"));
+        assertFalse(mvd.keyExists("dest"));
+    }
+
+    // KEYSFOR
+
+    /**
+     * Tests KEYSFOR functionality - the reverse index follows add, remove, removeAll and clear
+     */
+    @Test
+    public void testGetKeysForMember_ReverseIndex() {
+        Map<String, Set<String>> mvdValues = new HashMap<>();
+        mvdValues.put("foo", new HashSet<>(Arrays.asList("bar", "baz")));
+        MultiValueDictionary mvd = new MultiValueDictionary(mvdValues);
+        mvd.enableReverseIndex();
+        mvd.add("bang", "bar");
+        mvd.add("zip", "bar");
+        assertEquals(new HashSet<>(Arrays.asList("foo", "bang", "zip")), mvd.getKeysForMember("bar"));
+
+        mvd.remove("bang", "bar");
+        mvd.removeAll("foo");
+        assertEquals(new HashSet<>(Arrays.asList("zip")), mvd.getKeysForMember("bar"));
+        assertTrue(mvd.getKeysForMember("baz").isEmpty());
+        assertTrue(mvd.estimatedReverseIndexBytes() > 0);
+
+        mvd.clear();
+        assertTrue(mvd.getKeysForMember("bar").isEmpty());
+    }
+
+    /**
+     * Tests KEYSFOR functionality - answers by scanning when the reverse index is not enabled
+     */
+    @Test
+    public void testGetKeysForMember_Scan() {
+        Map<String, Set<String>> mvdValues = new HashMap<>();
+        mvdValues.put("foo", new HashSet<>(Arrays.asList("bar", "baz")));
+        mvdValues.put("baz", new HashSet<>(Arrays.asList("bar")));
+        MultiValueDictionary mvd = new MultiValueDictionary(mvdValues);
+        assertEquals(new HashSet<>(Arrays.asList("foo", "baz")), mvd.getKeysForMember("bar"));
+        assertEquals(0, mvd.estimatedReverseIndexBytes());
+    }
 }
@@ -0,0 +1,163 @@
+package org.multivaluedictionary;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests OFF_HEAP storage mode
+ */
+public class TestOffHeapStorage {
+
+    /**
+     * Tests the basic operations - behave exactly as in HASH storage mode, including non-Latin-1 strings
+     */
+    @Test
+    public void testOperations() {
+        MultiValueDictionary mvd = new MultiValueDictionary(StorageMode.OFF_HEAP);
+        mvd.add("foo", "bar");
+        mvd.add("foo", "\u00e9t\u00e9");
+        mvd.add("\u6771\u4eac", "\u30c6\u30b9\u30c8");
+        assertThrows(UnsupportedOperationException.class, () -> mvd.add("foo", "bar"));
+        assertEquals(new HashSet<>(Arrays.asList("bar", "\u00e9t\u00e9")), mvd.getMembers("foo"));
+        assertTrue(mvd.valueExists("\u6771\u4eac", "\u30c6\u30b9\u30c8"));
+        assertFalse(mvd.valueExists("foo", "baz"));
+
+        mvd.remove("foo", "bar");
+        mvd.removeAll("\u6771\u4eac");
+        assertEquals(new HashSet<>(Arrays.asList("foo")), mvd.getKeys());
+        assertThrows(NoSuchElementException.class, () -> mvd.remove("foo", "bar"));
+        mvd.remove("foo", "\u00e9t\u00e9");
+        assertFalse(mvd.keyExists("foo"));
+    }
+
+    /**
+     * Tests random operations - the contents always match a HASH dictionary given the same operations
+     */
+    @Test
+    public void testMatchesHashStorage() {
+        MultiValueDictionary offHeap = new MultiValueDictionary(StorageMode.OFF_HEAP);
+        Map<String, Set<String>> expected = new HashMap<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 50_000; i++) {
+            String key = "key" + random.nextInt(200);
+            String member = "member" + random.nextInt(random.nextBoolean() ? 5 : 500);
+            if (random.nextInt(3) > 0) {
+                if (expected.computeIfAbsent(key, k -> new HashSet<>()).add(member)) {
+                    offHeap.add(key, member);
+                }
+            } else if (expected.containsKey(key) && expected.get(key).remove(member)) {
+                offHeap.remove(key, member);
+                if (expected.get(key).isEmpty()) {
+                    expected.remove(key);
+                }
+            } else if (random.nextInt(50) == 0 && expected.remove(key) != null) {
+                offHeap.removeAll(key);
+            }
+        }
+        assertEquals(expected, new HashMap<>(offHeap.getItems()));
+    }
+
+    /**
+     * Tests freeing - removing members and keys gives their memory back, and clear drops the slabs
+     */
+    @Test
+    public void testMemoryIsFreed() {
+        MultiValueDictionary mvd = new MultiValueDictionary(StorageMode.OFF_HEAP);
+        assertEquals(0, mvd.getOffHeapUsedBytes());
+        for (int i = 0; i < 10_000; i++) {
+            mvd.add("big", "member" + i);
+        }
+        mvd.add("small", "member");
+        long used = mvd.getOffHeapUsedBytes();
+        assertTrue(used > 10_000 * 16);
+        assertTrue(mvd.getOffHeapReservedBytes() >= used);
+
+        for (int i = 0; i < 9_999; i++) {
+            mvd.remove("big", "member" + i);
+        }
+        assertTrue(mvd.getOffHeapUsedBytes() < used / 100);
+        mvd.removeAll("big");
+        mvd.remove("small", "member");
+        assertEquals(0, mvd.getOffHeapUsedBytes());
+
+        mvd.add("foo", "bar");
+        mvd.clear();
+        assertEquals(0, mvd.getOffHeapUsedBytes());
+        assertEquals(0, mvd.getOffHeapReservedBytes());
+        assertTrue(mvd.estimatedMemberBytes() < 1024);
+    }
+
+    /**
+     * Tests CLEAR functionality - a member set obtained before a clear reads as empty rather than touching the dropped
+     * slabs, and stays empty once the key is added again
+     */
+    @Test
+    public void testMembersHeldAcrossClear() {
+        MultiValueDictionary mvd = new MultiValueDictionary(StorageMode.OFF_HEAP);
+        mvd.addAll("foo", Arrays.asList("bar", "baz"));
+        Set<String> members = mvd.getMembers("foo");
+        mvd.clear();
+        assertEquals(0, members.size());
+        assertTrue(members.isEmpty());
+        assertFalse(members.contains("bar"));
+        assertFalse(members.iterator().hasNext());
+        assertFalse(members.remove("bar"));
+
+        mvd.add("foo", "qux");
+        assertTrue(members.isEmpty());
+        assertEquals(new HashSet<>(Arrays.asList("qux")), mvd.getMembers("foo"));
+    }
+
+    /**
+     * Tests views - a view is a full off-heap copy, so writes after it go straight to the key's own member set, which
+     * callers holding it keep seeing
+     */
+    @Test
+    public void testViewNeedsNoCopies() {
+        MultiValueDictionary mvd = new MultiValueDictionary(StorageMode.OFF_HEAP);
+        mvd.addAll("foo", Arrays.asList("bar", "baz"));
+        Set<String> members = mvd.getMembers("foo");
+        DictionaryView view = mvd.snapshotView();
+        mvd.add("foo", "qux");
+        mvd.remove("foo", "bar");
+        assertEquals(new HashSet<>(Arrays.asList("baz", "qux")), members);
+        assertEquals(new HashSet<>(Arrays.asList("bar", "baz")), view.getMembers("foo"));
+    }
+
+    /**
+     * Tests snapshots and expiry - both work on off-heap contents
+     */
+    @Test
+    public void testSnapshotAndExpiry(@TempDir Path directory) throws Exception {
+        MultiValueDictionary mvd = new MultiValueDictionary(StorageMode.OFF_HEAP);
+        long[] clock = {0};
+        mvd.setExpiryClock(() -> clock[0]);
+        mvd.add("foo", "bar");
+        mvd.add("foo", "baz", 1000);
+        Path file = directory.resolve("dictionary.snapshot");
+        mvd.saveSnapshot(file);
+
+        clock[0] = 1000;
+        assertEquals(new HashSet<>(Arrays.asList("bar")), mvd.getMembers("foo"));
+
+        MultiValueDictionary loaded = new MultiValueDictionary(StorageMode.OFF_HEAP);
+        loaded.loadSnapshot(file);
+        loaded.add("foo", "bang");
+        assertEquals(new HashSet<>(Arrays.asList("bar", "baz", "bang")), loaded.getMembers("foo"));
+        assertTrue(loaded.getOffHeapUsedBytes() > 0);
+    }
+}
@@ -0,0 +1,332 @@
+package org.multivaluedictionary;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests streaming mutations from a primary to replicas over TCP
+ */
+public class TestReplication {
+
+    /** Longest a test waits for a replica to catch up */
+    private static final long CATCH_UP_MILLIS = 10_000;
+
+    // FULL SYNC, STREAMING
+
+    /**
+     * Tests replication functionality - a replica loads the primary's contents and then follows every mutation
+     */
+    @Test
+    public void testFullSyncThenStream() throws Exception {
+        ConcurrentMultiValueDictionary primary = new ConcurrentMultiValueDictionary();
+        primary.add("foo", "bar");
+        primary.add("foo", "baz");
+        primary.add("qux", "bar");
+        ConcurrentMultiValueDictionary replica = new ConcurrentMultiValueDictionary();
+        replica.add("stale", "member");
+        try (ReplicationPrimary replication = primary.enableReplication(0);
+                ReplicaClient client = replica.replicateFrom("localhost", replication.getPort())) {
+            awaitCaughtUp(replication, client);
+            assertEquals(contents(primary), contents(replica));
+            assertEquals(1, client.getFullSyncs());
+
+            primary.add("foo", "bang");
+            primary.remove("qux", "bar");
+            primary.addAll("many", Arrays.asList("a", "b", "c"));
+            primary.removeAll("foo");
+            primary.add("after", "clear");
+            awaitCaughtUp(replication, client);
+            assertEquals(contents(primary), contents(replica));
+            assertEquals(1, replication.getReplicaCount());
+
+            primary.clear();
+            awaitCaughtUp(replication, client);
+            assertEquals(0, replica.getKeyCount());
+
+            Map<String, Long> gauges = new HashMap<>();
+            replica.exportMetrics(new MetricsExporter() {
+                @Override
+                public void gauge(String name, long value) {
+                    gauges.put(name, value);
+                }
+
+                @Override
+                public void latency(String name, LatencyHistogram histogram) {
+                }
+            });
+            assertEquals(1, (long) gauges.get("replicationSynced"));
+            assertEquals(replication.getSequence(), (long) gauges.get("replicationSequence"));
+            assertEquals(0, (long) gauges.get("replicationLagRecords"));
+            assertTrue(gauges.get("replicationLagMillis") >= 0);
+        }
+    }
+
+    /**
+     * Tests replication functionality - a replica waits for a full sync snapshot that takes the primary longer than
+     * the replica's read timeout to prepare, instead of reconnecting and asking for another
+     */
+    @Test
+    public void testSlowFullSync() throws Exception {
+        AtomicInteger views = new AtomicInteger();
+        ConcurrentMultiValueDictionary primary = new ConcurrentMultiValueDictionary() {
+            @Override
+            public DictionaryView snapshotView() {
+                if (views.incrementAndGet() == 1) {
+                    try {
+                        Thread.sleep(ReplicaClient.READ_TIMEOUT_MILLIS + 1000);
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return super.snapshotView();
+            }
+        };
+        primary.add("foo", "bar");
+        ConcurrentMultiValueDictionary replica = new ConcurrentMultiValueDictionary();
+        try (ReplicationPrimary replication = primary.enableReplication(0);
+                ReplicaClient client = replica.replicateFrom("localhost", replication.getPort())) {
+            awaitCaughtUp(replication, client);
+            assertEquals(contents(primary), contents(replica));
+            assertEquals(1, views.get());
+            assertEquals(1, client.getFullSyncs());
+        }
+    }
+
+    /**
+     * Tests replication functionality - replicas syncing while writers are busy converge on the primary
+     */
+    @Test
+    public void testSyncDuringWrites() throws Exception {
+        ConcurrentMultiValueDictionary primary = new ConcurrentMultiValueDictionary();
+        for (int i = 0; i < 5000; i++) {
+            primary.add("key" + (i % 100), "member" + i);
+        }
+        AtomicBoolean running = new AtomicBoolean(true);
+        List<Thread> writers = new ArrayList<>();
+        for (int w = 0; w < 4; w++) {
+            int seed = w;
+            Thread writer = new Thread(() -> {
+                for (int i = seed; running.get(); i += 4) {
+                    String key = "key" + (i % 100);
+                    primary.tryAdd(key, "new" + i);
+                    primary.tryRemove(key, "member" + (i % 5000));
+                    if (i % 997 == 0) {
+                        primary.tryRemoveAll("key" + ((i / 997) % 100));
+                    }
+                }
+            });
+            writer.start();
+            writers.add(writer);
+        }
+        ConcurrentMultiValueDictionary first = new ConcurrentMultiValueDictionary();
+        ConcurrentMultiValueDictionary second = new ConcurrentMultiValueDictionary();
+        try (ReplicationPrimary replication = primary.enableReplication(0);
+                ReplicaClient firstClient = first.replicateFrom("localhost", replication.getPort());
+                ReplicaClient secondClient = second.replicateFrom("localhost", replication.getPort())) {
+            await(() -> firstClient.isSynced() && secondClient.isSynced());
+            Thread.sleep(200);
+            running.set(false);
+            for (Thread writer : writers) {
+                writer.join();
+            }
+            awaitCaughtUp(replication, firstClient);
+            awaitCaughtUp(replication, secondClient);
+            assertEquals(contents(primary), contents(first));
+            assertEquals(contents(primary), contents(second));
+        } finally {
+            running.set(false);
+        }
+    }
+
+    // READ-ONLY REPLICAS
+
+    /**
+     * Tests replication functionality - a replica in its own process serves reads and refuses writes
+     */
+    @Test
+    public void testReplicaProcess() throws Exception {
+        ConcurrentMultiValueDictionary primary = new ConcurrentMultiValueDictionary();
+        primary.add("foo", "bar");
+        try (ReplicationPrimary replication = primary.enableReplication(0)) {
+            String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+            Process process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                    Application.class.getName(), "--port", "0", "--replica-of", "localhost:" + replication.getPort())
+                    .redirectError(ProcessBuilder.Redirect.INHERIT).start();
+            try {
+                BufferedReader stdout = new BufferedReader(new InputStreamReader(process.getInputStream(),
+                        StandardCharsets.UTF_8));
+                String listening = stdout.readLine();
+                int port = Integer.parseInt(listening.substring(listening.lastIndexOf(' ') + 1));
+                await(() -> replication.getFullSyncs() == 1);
+                primary.add("foo", "baz");
+                await(() -> "1) bar\n2) baz".equals(sendQuietly(port, "MEMBERS foo")));
+                assertEquals(") ERROR, read-only replica; send writes to the primary", send(port, "ADD foo bang"));
+            } finally {
+                process.destroy();
+                process.waitFor();
+            }
+        }
+    }
+
+    /**
+     * Tests read-only functionality - a read-only processor refuses every command that modifies the dictionary
+     */
+    @Test
+    public void testReadOnlyCommands() {
+        MultiValueDictionary mvd = new MultiValueDictionary();
+        mvd.add("foo", "bar");
+        CommandProcessor processor = new CommandProcessor(mvd, null, null);
+        processor.setReadOnly(true);
+        String refused = ") ERROR, read-only replica; send writes to the primary\n\n";
+        assertEquals(refused, execute(processor, "ADD foo baz"));
+        assertEquals(refused, execute(processor, "REMOVEALL foo"));
+        assertEquals(refused, execute(processor, "UNIONSTORE dest foo foo"));
+        assertEquals(refused, execute(processor, "CLEAR"));
+        assertEquals("1) bar\n\n", execute(processor, "MEMBERS foo"));
+        processor.setReadOnly(false);
+        assertEquals(") Added\n\n", execute(processor, "ADD foo baz"));
+    }
+
+    /**
+     * Tests load functionality - a primary refuses LOAD, whose contents would never reach its replicas
+     */
+    @Test
+    public void testLoadRefusedOnPrimary(@TempDir Path directory) throws Exception {
+        ConcurrentMultiValueDictionary primary = new ConcurrentMultiValueDictionary();
+        primary.add("foo", "bar");
+        Path snapshot = directory.resolve("primary.snapshot");
+        CommandProcessor processor = new CommandProcessor(primary, snapshot, null);
+        assertEquals(") Saved\n\n", execute(processor, "SAVE"));
+        try (ReplicationPrimary replication = primary.enableReplication(0)) {
+            assertEquals(") ERROR, cannot load while replication is enabled\n\n", execute(processor, "LOAD"));
+        }
+        assertEquals(") Loaded\n\n", execute(new CommandProcessor(new ConcurrentMultiValueDictionary(), snapshot,
+                null), "LOAD"));
+    }
+
+    /**
+     * Tests save functionality - SAVE on a replica writes a consistent snapshot of every key while the replica keeps
+     * applying writes, and keeps the write-ahead log since records logged during the save may be missing from it
+     */
+    @Test
+    public void testSaveWhileApplying(@TempDir Path directory) throws Exception {
+        ConcurrentMultiValueDictionary replica = new ConcurrentMultiValueDictionary();
+        Path snapshot = directory.resolve("replica.snapshot");
+        Set<String> members = new HashSet<>(Arrays.asList("a", "b", "c"));
+        AtomicBoolean running = new AtomicBoolean(true);
+        Thread applier = new Thread(() -> {
+            for (int i = 0; running.get(); i++) {
+                replica.addAll("key" + (i % 50), members);
+                replica.tryRemoveAll("key" + ((i + 25) % 50));
+            }
+        });
+        try (WriteAheadLog wal = replica.enableWriteAheadLog(directory.resolve("replica.wal"),
+                WriteAheadLog.SyncPolicy.everyMillis(1000))) {
+            CommandProcessor processor = new CommandProcessor(replica, snapshot, wal);
+            processor.setReadOnly(true);
+            applier.start();
+            for (int i = 0; i < 20; i++) {
+                assertEquals(") Saved\n\n", execute(processor, "SAVE"));
+                MultiValueDictionary saved = new MultiValueDictionary();
+                saved.loadSnapshot(snapshot);
+                for (Map.Entry<String, Set<String>> entry : contents(saved).entrySet()) {
+                    assertEquals(members, entry.getValue(), entry.getKey());
+                }
+            }
+            running.set(false);
+            applier.join();
+            wal.sync();
+            assertTrue(Files.size(directory.resolve("replica.wal")) > 0);
+        } finally {
+            running.set(false);
+        }
+    }
+
+    private static void awaitCaughtUp(ReplicationPrimary replication, ReplicaClient client)
+            throws InterruptedException {
+        await(() -> client.isSynced() && client.getAppliedSequence() == replication.getSequence());
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + CATCH_UP_MILLIS;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "timed out waiting for the replica");
+            Thread.sleep(10);
+        }
+    }
+
+    private static Map<String, Set<String>> contents(MultiValueDictionary mvd) {
+        Map<String, Set<String>> contents = new HashMap<>();
+        Map<String, Set<String>> items = mvd.getItems();
+        if (items != null) {
+            for (Map.Entry<String, Set<String>> entry : items.entrySet()) {
+                contents.put(entry.getKey(), new HashSet<>(entry.getValue()));
+            }
+        }
+        return contents;
+    }
+
+    /**
+     * Sends one command to a server and collects the lines of its result
+     * @param port port of the server
+     * @param command command to send
+     * @return non-empty lines of the result, joined by newlines
+     * @throws IOException server could not be reached
+     */
+    private static String send(int port, String command) throws IOException {
+        try (Socket socket = new Socket("localhost", port)) {
+            OutputStream out = socket.getOutputStream();
+            out.write((command + "\nEXIT\n").getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+                    StandardCharsets.UTF_8));
+            StringBuilder result = new StringBuilder();
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (!line.isEmpty()) {
+                    result.append(result.length() == 0 ? "" : "\n").append(line);
+                }
+            }
+            return result.toString();
+        }
+    }
+
+    private static String sendQuietly(int port, String command) {
+        try {
+            return send(port, command);
+        } catch (IOException ioe) {
+            return null;
+        }
+    }
+
+    private static String execute(CommandProcessor processor, String command) {
+        StringWriter result = new StringWriter();
+        processor.execute(command, new PrintWriter(result));
+        return result.toString();
+    }
+}
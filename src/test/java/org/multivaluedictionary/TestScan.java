@@ -0,0 +1,180 @@
+package org.multivaluedictionary;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests cursor-based incremental scans over keys, members and key-member pairs
+ */
+public class TestScan {
+
+    // SCAN
+
+    /**
+     * Tests SCAN functionality - dictionaries with and without the key index enabled up front page through every
+     * matching key exactly once, the first scan enabling the index, which then follows later writes
+     */
+    @Test
+    public void testScan_IndexedAndScanned() {
+        MultiValueDictionary indexed = new ConcurrentMultiValueDictionary();
+        indexed.enableKeyIndex();
+        MultiValueDictionary scanned = new MultiValueDictionary();
+        for (MultiValueDictionary mvd : Arrays.asList(indexed, scanned)) {
+            for (int i = 0; i < 250; i++) {
+                mvd.add("user:" + i, "member");
+                mvd.add("group:" + i, "member");
+            }
+
+            List<String> keys = scanAll(mvd, null, 7);
+            assertEquals(500, keys.size());
+            assertEquals(500, new HashSet<>(keys).size());
+            assertEquals("group:0", keys.get(0));
+
+            List<String> users = scanAll(mvd, "user:1*", 10);
+            assertEquals(111, users.size());
+            for (String user : users) {
+                assertTrue(user.startsWith("user:1"));
+            }
+
+            ScanResult<String> page = mvd.scan(ScanResult.START, "nobody*", 10);
+            assertTrue(page.isComplete());
+            assertTrue(page.getItems().isEmpty());
+            assertThrows(IllegalArgumentException.class, () -> mvd.scan("bogus", null, 10));
+            assertThrows(IllegalArgumentException.class, () -> mvd.scan(ScanResult.START, null, 0));
+
+            mvd.add("user:1000", "member");
+            mvd.removeAll("user:1");
+            List<String> later = scanAll(mvd, "user:1*", 10);
+            assertEquals(111, later.size());
+            assertTrue(later.contains("user:1000"));
+            assertFalse(later.contains("user:1"));
+        }
+    }
+
+    /**
+     * Tests SCAN functionality - keys present throughout are returned exactly once while other keys come and go
+     */
+    @Test
+    public void testScan_ConcurrentWrites() throws InterruptedException {
+        MultiValueDictionary mvd = new ConcurrentMultiValueDictionary();
+        mvd.enableKeyIndex();
+        for (int i = 0; i < 2000; i++) {
+            mvd.add("stable:" + i, "member");
+        }
+        AtomicBoolean running = new AtomicBoolean(true);
+        Thread writer = new Thread(() -> {
+            for (int i = 0; running.get(); i++) {
+                mvd.add("churn:" + (i % 500), "member");
+                mvd.tryRemoveAll("churn:" + ((i + 250) % 500));
+            }
+        });
+        writer.start();
+        try {
+            List<String> keys = scanAll(mvd, "stable:*", 13);
+            assertEquals(2000, keys.size());
+            assertEquals(2000, new HashSet<>(keys).size());
+        } finally {
+            running.set(false);
+            writer.join();
+        }
+    }
+
+    // SSCAN, ISCAN
+
+    /**
+     * Tests SSCAN/ISCAN functionality - members and key-member pairs are paged, splitting keys across pages
+     */
+    @Test
+    public void testScanMembersAndItems() {
+        MultiValueDictionary mvd = new MultiValueDictionary();
+        for (int i = 0; i < 25; i++) {
+            mvd.add("big", "m" + i);
+        }
+        mvd.add("small", "x");
+        mvd.add("tiny", "y");
+
+        Set<String> members = new HashSet<>();
+        String cursor = ScanResult.START;
+        do {
+            ScanResult<String> page = mvd.scanMembers("big", cursor, "m1*", 4);
+            members.addAll(page.getItems());
+            cursor = page.getCursor();
+        } while (!ScanResult.START.equals(cursor));
+        assertEquals(11, members.size());
+        assertTrue(mvd.scanMembers("missing", ScanResult.START, null, 4).isComplete());
+
+        List<String> pairs = new ArrayList<>();
+        cursor = ScanResult.START;
+        int pages = 0;
+        do {
+            ScanResult<Map.Entry<String, String>> page = mvd.scanItems(cursor, null, 10);
+            assertTrue(page.getItems().size() <= 10);
+            for (Map.Entry<String, String> pair : page.getItems()) {
+                pairs.add(pair.getKey() + ":" + pair.getValue());
+            }
+            cursor = page.getCursor();
+            pages++;
+        } while (!ScanResult.START.equals(cursor));
+        assertEquals(27, pairs.size());
+        assertEquals(27, new HashSet<>(pairs).size());
+        assertEquals(3, pages);
+        assertEquals("tiny:y", pairs.get(26));
+        assertFalse(mvd.scanItems(ScanResult.START, "s*", 1).isComplete());
+        assertThrows(IllegalArgumentException.class,
+                () -> mvd.scan(mvd.scanItems(ScanResult.START, null, 1).getCursor(), null, 10));
+    }
+
+    /**
+     * Tests SCAN/SSCAN/ISCAN functionality - commands parse MATCH and COUNT and print the next cursor
+     */
+    @Test
+    public void testCommands() {
+        MultiValueDictionary mvd = new MultiValueDictionary();
+        CommandProcessor processor = new CommandProcessor(mvd, null, null);
+        execute(processor, "ADD foo bar");
+        execute(processor, "ADD foo baz");
+        execute(processor, "ADD qux bar");
+        assertEquals(") cursor 0\n1) foo\n2) qux\n\n", execute(processor, "SCAN 0"));
+        assertEquals(") cursor 0\n1) qux\n\n", execute(processor, "SCAN 0 MATCH q* COUNT 5"));
+        String first = execute(processor, "SSCAN foo 0 COUNT 1");
+        assertTrue(first.endsWith("\n1) bar\n\n"));
+        String cursor = first.substring(") cursor ".length(), first.indexOf('\n'));
+        assertEquals(") cursor " + cursor.replace("YmFy", "YmF6") + "\n1) baz\n\n",
+                execute(processor, "SSCAN foo " + cursor + " COUNT 1"));
+        assertEquals(") cursor 0\n1) foo: bar\n2) foo: baz\n3) qux: bar\n\n", execute(processor, "ISCAN 0"));
+        assertEquals(") ERROR, syntax error\n\n", execute(processor, "SCAN 0 MATCH"));
+        assertEquals(") ERROR, count must be a positive whole number\n\n", execute(processor, "SCAN 0 COUNT 0"));
+        assertEquals(") ERROR, invalid cursor\n\n", execute(processor, "SCAN 42"));
+    }
+
+    private static List<String> scanAll(MultiValueDictionary mvd, String pattern, int count) {
+        List<String> keys = new ArrayList<>();
+        String cursor = ScanResult.START;
+        do {
+            ScanResult<String> page = mvd.scan(cursor, pattern, count);
+            keys.addAll(page.getItems());
+            cursor = page.getCursor();
+        } while (!ScanResult.START.equals(cursor));
+        return keys;
+    }
+
+    private static String execute(CommandProcessor processor, String command) {
+        StringWriter result = new StringWriter();
+        processor.execute(command, new PrintWriter(result));
+        return result.toString();
+    }
+}
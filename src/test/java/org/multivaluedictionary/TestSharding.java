@@ -0,0 +1,239 @@
+package org.multivaluedictionary;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests spreading keys over shards by consistent hashing
+ */
+public class TestSharding {
+
+    // RING
+
+    /**
+     * Tests consistent hashing functionality - shards own even shares of the keys, and adding a shard only moves keys
+     * onto the new shard, about its share of them
+     */
+    @Test
+    public void testRingBalanceAndMovement() {
+        int keys = 100_000;
+        ConsistentHashRing four = new ConsistentHashRing(Arrays.asList("a", "b", "c", "d"), 160);
+        ConsistentHashRing five = new ConsistentHashRing(Arrays.asList("a", "b", "c", "d", "e"), 160);
+        int[] owned = new int[4];
+        int moved = 0;
+        for (int i = 0; i < keys; i++) {
+            String key = "key" + i;
+            int before = four.shardFor(key);
+            int after = five.shardFor(key);
+            owned[before]++;
+            if (before != after) {
+                assertEquals(4, after);
+                moved++;
+            }
+        }
+        for (int count : owned) {
+            assertTrue(Math.abs(count - keys / 4) < keys / 20, "uneven share: " + Arrays.toString(owned));
+        }
+        assertTrue(moved > keys * 0.15 && moved < keys * 0.25, moved + " keys moved");
+    }
+
+    // ROUTING
+
+    /**
+     * Tests routing functionality - single-key commands reach only the shard owning the key
+     */
+    @Test
+    public void testSingleKeyRouting() throws IOException {
+        List<LocalShard> shards = localShards(3);
+        try (ShardRouter router = new ShardRouter(shards)) {
+            CommandProcessor processor = routingProcessor(router);
+            for (int i = 0; i < 300; i++) {
+                assertEquals(") Added\n\n", execute(processor, "ADD key" + i + " member" + i));
+            }
+            for (int i = 0; i < 300; i++) {
+                String key = "key" + i;
+                for (LocalShard shard : shards) {
+                    assertEquals(shard == router.getShardFor(key), shard.getDictionary().keyExists(key));
+                }
+            }
+            for (LocalShard shard : shards) {
+                assertTrue(shard.getDictionary().getKeyCount() > 50);
+            }
+            assertEquals("1) member7\n\n", execute(processor, "MEMBERS key7"));
+            assertEquals(") ERROR, value already exists\n\n", execute(processor, "ADD key7 member7"));
+            assertEquals(") true\n\n", execute(processor, "VALUEEXISTS key7 member7"));
+            assertEquals(") Removed\n\n", execute(processor, "REMOVEALL key7"));
+            assertEquals(") false\n\n", execute(processor, "KEYEXISTS key7"));
+        }
+    }
+
+    /**
+     * Tests scatter-gather functionality - commands over every key merge the results of all shards
+     */
+    @Test
+    public void testScatterGather() throws IOException {
+        List<LocalShard> shards = localShards(3);
+        try (ShardRouter router = new ShardRouter(shards)) {
+            CommandProcessor processor = routingProcessor(router);
+            for (int i = 0; i < 30; i++) {
+                execute(processor, "ADD key" + i + " shared");
+                execute(processor, "ADD key" + i + " own" + i);
+            }
+            assertEquals("1) keys 30\n2) members 60\n\n", execute(processor, "COUNT"));
+            assertEquals(60, lines(execute(processor, "ALLMEMBERS")).size());
+            assertEquals(30, lines(execute(processor, "KEYSFOR shared")).size());
+            assertEquals(Arrays.asList("1) key2", "2) key20", "3) key21", "4) key22", "5) key23", "6) key24",
+                    "7) key25", "8) key26", "9) key27", "10) key28", "11) key29"),
+                    lines(execute(processor, "KEYS key2*")));
+            assertEquals(Arrays.asList("1) key10", "2) key11", "3) key12"),
+                    lines(execute(processor, "KEYRANGE [key10 [key12")));
+
+            String[] apart = keysOnDifferentShards(router);
+            execute(processor, "ADD " + apart[0] + " only");
+            assertEquals("1) shared\n\n", execute(processor, "INTERSECTION " + apart[0] + " " + apart[1]));
+            assertEquals(4, lines(execute(processor, "UNION " + apart[0] + " " + apart[1])).size());
+            assertEquals(2, lines(execute(processor, "DIFF " + apart[0] + " " + apart[1] + " missing")).size());
+            assertEquals("(empty set)\n\n", execute(processor, "INTERSECTION " + apart[0] + " missing"));
+
+            assertEquals(") Cleared\n\n", execute(processor, "CLEAR"));
+            assertEquals("(empty set)\n\n", execute(processor, "KEYS"));
+            for (LocalShard shard : shards) {
+                assertEquals(0, shard.getDictionary().getKeyCount());
+            }
+        }
+    }
+
+    /**
+     * Tests routing functionality - STORE commands run on a shard holding all of their keys and are refused across
+     * shards, and commands with no merged form are refused
+     */
+    @Test
+    public void testStoreAndUnsupported() throws IOException {
+        List<LocalShard> shards = localShards(2);
+        try (ShardRouter router = new ShardRouter(shards)) {
+            CommandProcessor processor = routingProcessor(router);
+            String[] apart = keysOnDifferentShards(router);
+            String together = apart[0];
+            for (int i = 0; router.getShardFor(together) != router.getShardFor(apart[1]); i++) {
+                together = "other" + i;
+            }
+            assertNotSame(router.getShardFor(apart[0]), router.getShardFor(apart[1]));
+            assertSame(router.getShardFor(together), router.getShardFor(apart[1]));
+            execute(processor, "ADD " + apart[1] + " bar");
+            assertEquals(") ERROR, every key of a STORE command must live on the same shard\n\n",
+                    execute(processor, "UNIONSTORE " + apart[0] + " " + apart[1] + " " + apart[1]));
+            assertFalse(shards.get(0).getDictionary().keyExists(apart[0])
+                    || shards.get(1).getDictionary().keyExists(apart[0]));
+            assertEquals(") Stored 1\n\n",
+                    execute(processor, "UNIONSTORE " + together + " " + apart[1] + " " + apart[1]));
+            assertEquals("1) bar\n\n", execute(processor, "MEMBERS " + together));
+
+            assertEquals(") ERROR, SCAN is not supported across shards\n\n", execute(processor, "SCAN 0"));
+            assertEquals(") ERROR, DISTINCTCOUNT is not supported across shards\n\n",
+                    execute(processor, "DISTINCTCOUNT"));
+        }
+    }
+
+    // REMOTE SHARDS
+
+    /**
+     * Tests routing functionality - shards served over TCP behave like local ones
+     */
+    @Test
+    public void testRemoteShards() throws Exception {
+        List<DictionaryServer> servers = new ArrayList<>();
+        List<Thread> serverThreads = new ArrayList<>();
+        List<Shard> shards = new ArrayList<>();
+        try {
+            for (int i = 0; i < 2; i++) {
+                DictionaryServer server = new DictionaryServer(
+                        new CommandProcessor(new MultiValueDictionary(), null, null), 0);
+                Thread serverThread = new Thread(() -> {
+                    try {
+                        server.run();
+                    } catch (IOException ioe) {
+                        throw new IllegalStateException(ioe);
+                    }
+                });
+                serverThread.start();
+                servers.add(server);
+                serverThreads.add(serverThread);
+                shards.add(new RemoteShard("localhost", server.getPort()));
+            }
+            try (ShardRouter router = new ShardRouter(shards)) {
+                CommandProcessor processor = routingProcessor(router);
+                for (int i = 0; i < 20; i++) {
+                    execute(processor, "ADD key" + i + " member");
+                }
+                assertEquals("1) keys 20\n2) members 20\n\n", execute(processor, "COUNT"));
+                assertEquals("1) member\n\n", execute(processor, "MEMBERS key3"));
+                assertEquals(20, lines(execute(processor, "KEYSFOR member")).size());
+                String[] apart = keysOnDifferentShards(router);
+                assertEquals("1) member\n\n", execute(processor, "INTERSECTION " + apart[0] + " " + apart[1]));
+            }
+        } finally {
+            for (DictionaryServer server : servers) {
+                server.close();
+            }
+            for (Thread serverThread : serverThreads) {
+                serverThread.join();
+            }
+        }
+    }
+
+    private static List<LocalShard> localShards(int count) {
+        List<LocalShard> shards = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            shards.add(new LocalShard("shard" + i, new MultiValueDictionary()));
+        }
+        return shards;
+    }
+
+    private static CommandProcessor routingProcessor(ShardRouter router) {
+        CommandProcessor processor = new CommandProcessor(new MultiValueDictionary(), null, null);
+        router.registerCommands(processor.getCommands());
+        return processor;
+    }
+
+    /**
+     * Finds two of the keys key0 to key19 owned by different shards
+     * @param router router placing the keys
+     * @return the two keys
+     */
+    private static String[] keysOnDifferentShards(ShardRouter router) {
+        for (int i = 1; i < 20; i++) {
+            if (router.getShardFor("key" + i) != router.getShardFor("key0")) {
+                return new String[] {"key0", "key" + i};
+            }
+        }
+        throw new IllegalStateException("every key landed on one shard");
+    }
+
+    private static List<String> lines(String result) {
+        List<String> lines = new ArrayList<>();
+        for (String line : result.split("\n")) {
+            if (!line.isEmpty()) {
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+
+    private static String execute(CommandProcessor processor, String command) {
+        StringWriter result = new StringWriter();
+        processor.execute(command, new PrintWriter(result));
+        return result.toString();
+    }
+}
@@ -0,0 +1,95 @@
+package org.multivaluedictionary;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests the memory-mapped binary snapshot format
+ */
+public class TestSnapshot {
+
+    @TempDir
+    Path directory;
+
+    /**
+     * Tests SAVE/LOAD functionality - a loaded snapshot reads back every key and member, including keys and members
+     * whose hash codes collide and multi-byte characters
+     */
+    @Test
+    public void testSaveLoad_RoundTrip() throws IOException {
+        Map<String, Set<String>> mvdValues = new HashMap<>();
+        mvdValues.put("Aa", new HashSet<>(Arrays.asList("Aa", "BB", "bar")));
+        mvdValues.put("BB", new HashSet<>(Arrays.asList("BB")));
+        mvdValues.put("f\u00fc", new HashSet<>(Arrays.asList("b\u00e4r", "\u65e5\u672c")));
+        Path path = directory.resolve("dictionary.snapshot");
+        new MultiValueDictionary(mvdValues).saveSnapshot(path);
+
+        MultiValueDictionary mvd = new MultiValueDictionary();
+        mvd.loadSnapshot(path);
+        assertEquals(mvdValues, mvd.getItems());
+        assertTrue(mvd.keyExists("Aa"));
+        assertTrue(mvd.keyExists("BB"));
+        assertFalse(mvd.keyExists("C#"));
+        assertTrue(mvd.valueExists("Aa", "BB"));
+        assertFalse(mvd.valueExists("BB", "Aa"));
+        assertTrue(mvd.valueExists("f\u00fc", "\u65e5\u672c"));
+        assertEquals(new HashSet<>(Arrays.asList("BB")), mvd.getIntersection("Aa", "BB"));
+    }
+
+    /**
+     * Tests LOAD functionality - the first write copies the mapping into writable storage
+     */
+    @Test
+    public void testLoad_WriteAfterLoad() throws IOException {
+        Map<String, Set<String>> mvdValues = new HashMap<>();
+        mvdValues.put("foo", new HashSet<>(Arrays.asList("bar", "baz")));
+        Path path = directory.resolve("dictionary.snapshot");
+        new MultiValueDictionary(mvdValues).saveSnapshot(path);
+
+        MultiValueDictionary mvd = new ConcurrentMultiValueDictionary();
+        mvd.loadSnapshot(path);
+        UnsupportedOperationException uoe = assertThrows(UnsupportedOperationException.class, () -> {
+            mvd.add("foo", "bar");
+        });
+        assertEquals("value already exists", uoe.getMessage());
+        mvd.add("foo", "bang");
+        mvd.remove("foo", "bar");
+        assertEquals(new HashSet<>(Arrays.asList("baz", "bang")), mvd.getMembers("foo"));
+
+        mvd.loadSnapshot(path);
+        mvd.clear();
+        assertFalse(mvd.keyExists("foo"));
+    }
+
+    /**
+     * Tests SAVE functionality - saving replaces an existing snapshot and leaves no temporary files behind
+     */
+    @Test
+    public void testSave_ReplacesAtomically() throws IOException {
+        Path path = directory.resolve("dictionary.snapshot");
+        MultiValueDictionary mvd = new MultiValueDictionary();
+        mvd.add("foo", "bar");
+        mvd.saveSnapshot(path);
+        mvd.add("foo", "baz");
+        mvd.saveSnapshot(path);
+
+        MultiValueDictionary loaded = new MultiValueDictionary();
+        loaded.loadSnapshot(path);
+        assertEquals(new HashSet<>(Arrays.asList("bar", "baz")), loaded.getMembers("foo"));
+        assertEquals(1, Files.list(directory).count());
+    }
+}
@@ -0,0 +1,165 @@
+package org.multivaluedictionary;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests the write-ahead log that makes the multi-value dictionary durable
+ */
+public class TestWriteAheadLog {
+
+    @TempDir
+    Path directory;
+
+    /**
+     * Tests replay - a new dictionary rebuilt from the log matches the one that wrote it
+     */
+    @Test
+    public void testReplay_RebuildsDictionary() throws IOException {
+        Path path = directory.resolve("dictionary.wal");
+        MultiValueDictionary mvd = new MultiValueDictionary();
+        try (WriteAheadLog wal = mvd.enableWriteAheadLog(path, WriteAheadLog.SyncPolicy.everyOperation())) {
+            mvd.add("foo", "bar");
+            mvd.add("foo", "baz");
+            mvd.add("bang", "zip");
+            mvd.add("gone", "soon");
+            mvd.remove("foo", "bar");
+            mvd.removeAll("gone");
+            assertEquals(6, wal.getAppendedRecords());
+            assertEquals(6, wal.getSyncCount());
+        }
+
+        Map<String, Set<String>> expectedValues = new HashMap<>();
+        expectedValues.put("foo", new HashSet<>(Arrays.asList("baz")));
+        expectedValues.put("bang", new HashSet<>(Arrays.asList("zip")));
+        MultiValueDictionary replayed = new MultiValueDictionary();
+        try (WriteAheadLog wal = replayed.enableWriteAheadLog(path, WriteAheadLog.SyncPolicy.everyOperation())) {
+            assertEquals(expectedValues, replayed.getItems());
+            replayed.clear();
+        }
+
+        MultiValueDictionary cleared = new MultiValueDictionary();
+        assertEquals(7, WriteAheadLog.replay(path, cleared));
+        assertNull(cleared.getItems());
+    }
+
+    /**
+     * Tests replay - a torn record at the end of the log is dropped and the log stays appendable
+     */
+    @Test
+    public void testReplay_TornTail() throws IOException {
+        Path path = directory.resolve("dictionary.wal");
+        MultiValueDictionary mvd = new MultiValueDictionary();
+        try (WriteAheadLog wal = mvd.enableWriteAheadLog(path, WriteAheadLog.SyncPolicy.everyOperation())) {
+            mvd.add("foo", "bar");
+            mvd.add("foo", "baz");
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+
+        MultiValueDictionary reopened = new MultiValueDictionary();
+        try (WriteAheadLog wal = reopened.enableWriteAheadLog(path, WriteAheadLog.SyncPolicy.everyOperation())) {
+            assertEquals(new HashSet<>(Arrays.asList("bar")), reopened.getMembers("foo"));
+            reopened.add("foo", "bang");
+        }
+
+        MultiValueDictionary replayed = new MultiValueDictionary();
+        WriteAheadLog.replay(path, replayed);
+        assertEquals(new HashSet<>(Arrays.asList("bar", "bang")), replayed.getMembers("foo"));
+    }
+
+    /**
+     * Tests group commit - a byte threshold covers many records with each fsync
+     */
+    @Test
+    public void testSyncPolicy_GroupsByBytes() throws IOException {
+        Path path = directory.resolve("dictionary.wal");
+        MultiValueDictionary mvd = new MultiValueDictionary();
+        try (WriteAheadLog wal = mvd.enableWriteAheadLog(path, WriteAheadLog.SyncPolicy.parse("4096b"))) {
+            for (int i = 0; i < 1000; i++) {
+                mvd.add("key" + i, "member" + i);
+            }
+            assertTrue(wal.getSyncCount() > 0);
+            assertTrue(wal.getSyncCount() < 100);
+            assertTrue(wal.getAppendedBytes() > 4096);
+        }
+        assertEquals(1000, WriteAheadLog.replay(path, new MultiValueDictionary()));
+    }
+
+    /**
+     * Tests sync functionality - the thread-safe dictionary syncs every operation after releasing the key's lock,
+     * yet before the mutation returns
+     */
+    @Test
+    public void testSyncPolicy_ConcurrentSyncsOutsideLock() throws IOException {
+        Path path = directory.resolve("dictionary.wal");
+        ConcurrentMultiValueDictionary mvd = new ConcurrentMultiValueDictionary();
+        try (WriteAheadLog wal = mvd.enableWriteAheadLog(path, WriteAheadLog.SyncPolicy.everyOperation())) {
+            long[] syncsInListener = new long[1];
+            mvd.addListener(new MutationListener() {
+                @Override
+                public void added(String key, String member) {
+                    syncsInListener[0] = wal.getSyncCount();
+                }
+
+                @Override
+                public void removed(String key, String member) {
+                }
+
+                @Override
+                public void removedAll(String key, Set<String> members) {
+                }
+
+                @Override
+                public void cleared() {
+                }
+            });
+            mvd.add("foo", "bar");
+            assertEquals(0, syncsInListener[0]);
+            assertEquals(1, wal.getSyncCount());
+            mvd.addAll("foo", Arrays.asList("baz", "qux"));
+            assertEquals(1, syncsInListener[0]);
+            assertEquals(2, wal.getSyncCount());
+            mvd.removeAll("foo");
+            assertEquals(3, wal.getSyncCount());
+        }
+        assertEquals(4, WriteAheadLog.replay(path, new MultiValueDictionary()));
+    }
+
+    /**
+     * Tests STATS functionality - the progress of the log is reported once it is enabled
+     */
+    @Test
+    public void testStats_ReportsLog() throws IOException {
+        MultiValueDictionary mvd = new MultiValueDictionary();
+        try (WriteAheadLog wal = mvd.enableWriteAheadLog(directory.resolve("dictionary.wal"),
+                WriteAheadLog.SyncPolicy.everyOperation())) {
+            mvd.add("foo", "bar");
+            mvd.add("foo", "baz");
+            StringWriter result = new StringWriter();
+            new CommandProcessor(mvd, null, wal).execute("STATS", new PrintWriter(result));
+            String stats = result.toString();
+            assertTrue(stats.contains(") walRecords 2\n"), stats);
+            assertTrue(stats.contains(") walSyncs 2\n"), stats);
+            assertTrue(stats.contains(") walSyncMeanMicros "), stats);
+            assertTrue(stats.contains(") walRecordsPerSecond "), stats);
+        }
+    }
+}